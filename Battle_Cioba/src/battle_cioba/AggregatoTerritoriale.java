@@ -0,0 +1,214 @@
+package battle_cioba;
+
+/**
+ * Nodo della gerarchia di aggregazione Territorio → Regione → Stato → Mondo.
+ * Ogni nodo tiene in cache le somme dei propri figli; quando un figlio cambia,
+ * la differenza viene propagata verso l'alto lungo la catena dei padri.
+ * Le letture sono quindi O(1) e gli aggiornamenti O(profondità).
+ */
+public class AggregatoTerritoriale {
+
+    /**
+     * Nodo padre (null per la radice).
+     */
+    private AggregatoTerritoriale padre;
+
+    /**
+     * Stato da mantenere allineato con popolazione e potenza (solo per i nodi di Stato).
+     */
+    private final Stato stato;
+
+    /**
+     * Popolazione totale (somma dei civili dei territori).
+     */
+    private long popolazione;
+
+    /**
+     * Numero di territori terrestri.
+     */
+    private int territoriTerrestri;
+
+    /**
+     * Numero di territori marini.
+     */
+    private int territoriMarini;
+
+    /**
+     * Numero di basi militari.
+     */
+    private int basiMilitari;
+
+    /**
+     * Somma del valore strategico dei centri.
+     */
+    private long valoreStrategico;
+
+    /**
+     * Somma della potenza militare delle basi.
+     */
+    private long potenzaMilitare;
+
+    /**
+     * Somma dei rivoltosi delle regioni.
+     */
+    private long rivoltosi;
+
+    /**
+     * Crea un nodo non associato a uno Stato (Regione o Mondo).
+     */
+    public AggregatoTerritoriale() {
+        this(null);
+    }
+
+    /**
+     * Crea un nodo che mantiene aggiornati popolazione e potenza dello Stato indicato.
+     *
+     * @param stato stato associato (può essere null)
+     */
+    public AggregatoTerritoriale(Stato stato) {
+        this.stato = stato;
+    }
+
+    /* =========================== GETTER =========================== */
+
+    public AggregatoTerritoriale getPadre() {
+        return padre;
+    }
+
+    public long getPopolazione() {
+        return popolazione;
+    }
+
+    public int getTerritoriTerrestri() {
+        return territoriTerrestri;
+    }
+
+    public int getTerritoriMarini() {
+        return territoriMarini;
+    }
+
+    public int getTerritoriTotali() {
+        return territoriTerrestri + territoriMarini;
+    }
+
+    public int getBasiMilitari() {
+        return basiMilitari;
+    }
+
+    public long getValoreStrategico() {
+        return valoreStrategico;
+    }
+
+    public long getPotenzaMilitare() {
+        return potenzaMilitare;
+    }
+
+    public long getRivoltosi() {
+        return rivoltosi;
+    }
+
+    /* =========================== AGGIORNAMENTO =========================== */
+
+    /**
+     * Sposta il nodo sotto un nuovo padre, trasferendo le proprie somme
+     * dalla vecchia catena di antenati alla nuova.
+     *
+     * @param nuovoPadre nuovo nodo padre (può essere null)
+     */
+    public void setPadre(AggregatoTerritoriale nuovoPadre) {
+        if (nuovoPadre == padre) {
+            return;
+        }
+        if (padre != null) {
+            padre.applicaDelta(-popolazione, -territoriTerrestri, -territoriMarini,
+                    -basiMilitari, -valoreStrategico, -potenzaMilitare);
+            padre.applicaDeltaRivoltosi(-rivoltosi);
+        }
+        padre = nuovoPadre;
+        if (padre != null) {
+            padre.applicaDelta(popolazione, territoriTerrestri, territoriMarini,
+                    basiMilitari, valoreStrategico, potenzaMilitare);
+            padre.applicaDeltaRivoltosi(rivoltosi);
+        }
+    }
+
+    /**
+     * Applica una variazione a questo nodo e a tutti i suoi antenati.
+     *
+     * @param dPopolazione variazione della popolazione
+     * @param dTerrestri variazione dei territori terrestri
+     * @param dMarini variazione dei territori marini
+     * @param dBasi variazione delle basi militari
+     * @param dValore variazione del valore strategico
+     * @param dPotenza variazione della potenza militare
+     */
+    public void applicaDelta(long dPopolazione, int dTerrestri, int dMarini,
+                             int dBasi, long dValore, long dPotenza) {
+        for (AggregatoTerritoriale nodo = this; nodo != null; nodo = nodo.padre) {
+            nodo.popolazione += dPopolazione;
+            nodo.territoriTerrestri += dTerrestri;
+            nodo.territoriMarini += dMarini;
+            nodo.basiMilitari += dBasi;
+            nodo.valoreStrategico += dValore;
+            nodo.potenzaMilitare += dPotenza;
+            nodo.sincronizzaStato();
+        }
+    }
+
+    /**
+     * Applica una variazione dei rivoltosi a questo nodo e a tutti i suoi antenati.
+     *
+     * @param dRivoltosi variazione dei rivoltosi
+     */
+    public void applicaDeltaRivoltosi(long dRivoltosi) {
+        if (dRivoltosi == 0) {
+            return;
+        }
+        for (AggregatoTerritoriale nodo = this; nodo != null; nodo = nodo.padre) {
+            nodo.rivoltosi += dRivoltosi;
+            nodo.sincronizzaStato();
+        }
+    }
+
+    /**
+     * Azzera le somme del nodo senza propagare (usato durante la ricostruzione completa).
+     */
+    void azzera() {
+        popolazione = 0;
+        territoriTerrestri = 0;
+        territoriMarini = 0;
+        basiMilitari = 0;
+        valoreStrategico = 0;
+        potenzaMilitare = 0;
+        rivoltosi = 0;
+        sincronizzaStato();
+    }
+
+    /**
+     * Aggiorna il collegamento al padre senza spostare le somme
+     * (usato durante la ricostruzione completa, quando i nodi sono azzerati).
+     */
+    void collegaPadre(AggregatoTerritoriale nuovoPadre) {
+        padre = nuovoPadre;
+    }
+
+    private void sincronizzaStato() {
+        if (stato != null) {
+            stato.setPopolazione(popolazione);
+            stato.setPotenza((int) Math.min(Integer.MAX_VALUE, potenzaMilitare));
+            // L'opposizione è la percentuale di rivoltosi sulla popolazione
+            stato.setOpposizione(popolazione > 0 ? (int) Math.min(100, rivoltosi * 100 / popolazione) : 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Popolazione: " + popolazione
+                + " | Terrestri: " + territoriTerrestri
+                + " | Marini: " + territoriMarini
+                + " | Basi: " + basiMilitari
+                + " | Valore strategico: " + valoreStrategico
+                + " | Potenza militare: " + potenzaMilitare
+                + " | Rivoltosi: " + rivoltosi;
+    }
+}
@@ -0,0 +1,168 @@
+package battle_cioba;
+
+/**
+ * Mantiene la gerarchia di aggregazione Territorio → Regione → Stato → Mondo.
+ * Per ogni cella ricorda l'ultimo contributo versato e il nodo che lo ha ricevuto;
+ * quando un territorio (o il suo centro) cambia, propaga solo la differenza.
+ */
+class AggregazioneMondo implements OsservatoreMondo {
+
+    /**
+     * Potenza militare attribuita a ogni base indicata da countBasiMilitari.
+     */
+    static final int POTENZA_PER_BASE = 10;
+
+    /**
+     * Nodo radice (Mondo).
+     */
+    private final AggregatoTerritoriale radice;
+
+    /**
+     * Nodo di regione che ha ricevuto il contributo di ogni cella (null se nessuno).
+     */
+    private AggregatoTerritoriale[] nodoCella = new AggregatoTerritoriale[0];
+
+    /**
+     * Ultimo contributo di ogni cella: popolazione.
+     */
+    private long[] popolazioneCella = new long[0];
+
+    /**
+     * Ultimo contributo di ogni cella: 1 se terrestre.
+     */
+    private byte[] terrestreCella = new byte[0];
+
+    /**
+     * Ultimo contributo di ogni cella: 1 se marina.
+     */
+    private byte[] marinaCella = new byte[0];
+
+    /**
+     * Ultimo contributo di ogni cella: basi militari.
+     */
+    private int[] basiCella = new int[0];
+
+    /**
+     * Ultimo contributo di ogni cella: valore strategico.
+     */
+    private int[] valoreCella = new int[0];
+
+    /**
+     * Ultimo contributo di ogni cella: potenza militare.
+     */
+    private int[] potenzaCella = new int[0];
+
+    AggregazioneMondo(AggregatoTerritoriale radice) {
+        this.radice = radice;
+    }
+
+    /**
+     * Ricostruisce tutte le somme percorrendo il mondo una sola volta.
+     *
+     * @param mondo mondo da aggregare
+     */
+    void ricostruisci(Mondo mondo) {
+        radice.azzera();
+        for (Stato stato : mondo.getStati()) {
+            stato.getAggregato().azzera();
+            stato.getAggregato().collegaPadre(radice);
+            for (Regione regione : stato.getRegioni()) {
+                regione.getAggregato().azzera();
+                regione.getAggregato().collegaPadre(regione.getStato() == stato ? stato.getAggregato() : null);
+            }
+        }
+
+        Territorio[][] mappa = mondo.getMappaTerritori();
+        int numCelle = mappa == null ? 0 : mondo.getRighe() * mondo.getColonne();
+        nodoCella = new AggregatoTerritoriale[numCelle];
+        popolazioneCella = new long[numCelle];
+        terrestreCella = new byte[numCelle];
+        marinaCella = new byte[numCelle];
+        basiCella = new int[numCelle];
+        valoreCella = new int[numCelle];
+        potenzaCella = new int[numCelle];
+
+        for (int cella = 0; cella < numCelle; cella++) {
+            Territorio t = mondo.getTerritorio(cella);
+            if (t != null) {
+                aggiorna(t);
+            }
+        }
+
+        // I rivoltosi non dipendono dalle celle: si riversano dalle regioni
+        for (Stato stato : mondo.getStati()) {
+            for (Regione regione : stato.getRegioni()) {
+                regione.getAggregato().applicaDeltaRivoltosi(regione.getRivoltosi());
+            }
+        }
+    }
+
+    @Override
+    public void territorioModificato(Territorio territorio) {
+        aggiorna(territorio);
+    }
+
+    @Override
+    public void centroImpostato(Territorio territorio, Centro vecchio, Centro nuovo) {
+        aggiorna(territorio);
+    }
+
+    @Override
+    public void centroModificato(Centro centro) {
+        if (centro.getTerritorio() != null && centro.getTerritorio().getCentro() == centro) {
+            aggiorna(centro.getTerritorio());
+        }
+    }
+
+    /**
+     * Ricalcola il contributo di un territorio e propaga la differenza.
+     */
+    private void aggiorna(Territorio t) {
+        int cella = t.getIndiceCella();
+        if (cella < 0 || cella >= nodoCella.length) {
+            return;
+        }
+
+        AggregatoTerritoriale nuovoNodo = t.getRegioneObj() != null ? t.getRegioneObj().getAggregato() : null;
+        long popolazione = t.getNumCivili();
+        int terrestre = t.isAcqua() ? 0 : 1;
+        int marina = t.isAcqua() ? 1 : 0;
+        int basi = t.getCountBasiMilitari();
+        int valore = 0;
+        int potenza = t.getCountBasiMilitari() * POTENZA_PER_BASE;
+        Centro centro = t.getCentro();
+        if (centro != null) {
+            valore = centro.calcolaValoreStrategico();
+            if (centro instanceof BaseMilitare) {
+                basi++;
+                potenza += ((BaseMilitare) centro).calcolaPotenzaMilitare();
+            }
+        }
+
+        AggregatoTerritoriale vecchioNodo = nodoCella[cella];
+        if (vecchioNodo == nuovoNodo) {
+            if (nuovoNodo != null) {
+                nuovoNodo.applicaDelta(popolazione - popolazioneCella[cella],
+                        terrestre - terrestreCella[cella], marina - marinaCella[cella],
+                        basi - basiCella[cella], valore - valoreCella[cella],
+                        potenza - potenzaCella[cella]);
+            }
+        } else {
+            if (vecchioNodo != null) {
+                vecchioNodo.applicaDelta(-popolazioneCella[cella], -terrestreCella[cella],
+                        -marinaCella[cella], -basiCella[cella], -valoreCella[cella], -potenzaCella[cella]);
+            }
+            if (nuovoNodo != null) {
+                nuovoNodo.applicaDelta(popolazione, terrestre, marina, basi, valore, potenza);
+            }
+            nodoCella[cella] = nuovoNodo;
+        }
+
+        popolazioneCella[cella] = popolazione;
+        terrestreCella[cella] = (byte) terrestre;
+        marinaCella[cella] = (byte) marina;
+        basiCella[cella] = basi;
+        valoreCella[cella] = valore;
+        potenzaCella[cella] = potenza;
+    }
+}
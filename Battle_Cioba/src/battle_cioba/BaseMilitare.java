@@ -72,6 +72,7 @@ public class BaseMilitare extends Centro {
 
     public void setNumeroTruppe(int numeroTruppe) {
         this.numeroTruppe = numeroTruppe;
+        notificaModifica();
     }
 
     public int getLivelloArmamento() {
@@ -80,6 +81,7 @@ public class BaseMilitare extends Centro {
 
     public void setLivelloArmamento(int livelloArmamento) {
         this.livelloArmamento = Math.max(1, Math.min(10, livelloArmamento));
+        notificaModifica();
     }
 
     public TipoBase getTipoBase() {
@@ -88,6 +90,7 @@ public class BaseMilitare extends Centro {
 
     public void setTipoBase(TipoBase tipoBase) {
         this.tipoBase = tipoBase;
+        notificaModifica();
     }
     
     /**
@@ -140,14 +143,36 @@ public class BaseMilitare extends Centro {
      * @return Potenza dell'attacco
      */
     public int eseguiAzioneMilitare(String obiettivo) {
-        // L'efficacia dell'azione dipende dalle truppe e dall'armamento
-        int potenzaAttacco = numeroTruppe * livelloArmamento / 200;
-        
         // Simulazione di una variazione casuale nell'efficacia
         double fattoreCasuale = 0.8 + Math.random() * 0.4; // Tra 0.8 e 1.2
-        potenzaAttacco = (int) (potenzaAttacco * fattoreCasuale);
-        
-        return potenzaAttacco;
+        return calcolaPotenzaAttacco(numeroTruppe, livelloArmamento, fattoreCasuale);
+    }
+    
+    /**
+     * Simula un'azione militare usando un generatore deterministico.
+     * 
+     * @param obiettivo Descrizione dell'obiettivo
+     * @param generatore Flusso casuale da cui estrarre la variazione
+     * @return Potenza dell'attacco
+     */
+    public int eseguiAzioneMilitare(String obiettivo, GeneratoreCasuale generatore) {
+        double fattoreCasuale = 0.8 + generatore.prossimoDouble() * 0.4;
+        return calcolaPotenzaAttacco(numeroTruppe, livelloArmamento, fattoreCasuale);
+    }
+    
+    /**
+     * Calcola la potenza di un attacco. È la stessa formula usata da
+     * eseguiAzioneMilitare, resa statica per il risolutore dei combattimenti.
+     * 
+     * @param numeroTruppe Truppe impegnate
+     * @param livelloArmamento Livello di armamento (1-10)
+     * @param fattoreCasuale Variazione casuale (tra 0.8 e 1.2)
+     * @return Potenza dell'attacco
+     */
+    public static int calcolaPotenzaAttacco(int numeroTruppe, int livelloArmamento, double fattoreCasuale) {
+        // L'efficacia dell'azione dipende dalle truppe e dall'armamento
+        int potenzaAttacco = numeroTruppe * livelloArmamento / 200;
+        return (int) (potenzaAttacco * fattoreCasuale);
     }
     
     @Override
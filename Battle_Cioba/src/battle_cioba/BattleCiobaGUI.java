@@ -23,6 +23,12 @@ public class BattleCiobaGUI extends JFrame {
     private Mondo mondo;
     private MapPanel mapPanel;
     private JPanel controlPanel;
+    
+    // Partita (sistemi di gioco), motore di simulazione dei giorni e relativi controlli
+    private Partita partita;
+    private MotoreSimulazione motore;
+    private JLabel etichettaGiorno;
+    private JButton avviaPausaButton;
     private int cellSize = 20;
     private Map<String, Color> coloriStati;
     
@@ -41,6 +47,20 @@ public class BattleCiobaGUI extends JFrame {
     private boolean mostraRegioni = false;
     private boolean mostraTerritori = false;
     private boolean mostraCentri = true;
+    private boolean mostraInfluenza = false;
+    
+    // Stato dominante e intensità della mappa d'influenza, copiati una volta per disegno
+    private int[] dominanteInfluenza = new int[0];
+    private float[] intensitaInfluenza = new float[0];
+    
+    // Nebbia di guerra: le celle che lo stato osservato non vede vengono scurite
+    private boolean mostraNebbia = false;
+    private int statoNebbia = -1;
+    private JCheckBox mostraNebbiaBox;
+    
+    // Lettore delle modifiche del mondo: a fine giorno si ridisegnano solo le celle cambiate
+    private BusEventiMondo.Lettore lettoreEventi;
+    private final AreaModificata areaModificata = new AreaModificata();
     
     // Flag per il debug - mostra una griglia di base anche senza territori
     private boolean debugMode = true;
@@ -231,6 +251,27 @@ public class BattleCiobaGUI extends JFrame {
         });
         controlPanel.add(mostraCentriBox);
         
+        JCheckBox mostraInfluenzaBox = new JCheckBox("Mostra Influenza", mostraInfluenza);
+        mostraInfluenzaBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                mostraInfluenza = mostraInfluenzaBox.isSelected();
+                mapPanel.repaint();
+            }
+        });
+        controlPanel.add(mostraInfluenzaBox);
+        
+        mostraNebbiaBox = new JCheckBox("Nebbia di Guerra", mostraNebbia);
+        mostraNebbiaBox.setToolTipText("Scurisce le celle non viste dallo stato scelto (tasto destro: \"Vedi come questo stato\")");
+        mostraNebbiaBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                mostraNebbia = mostraNebbiaBox.isSelected();
+                mapPanel.repaint();
+            }
+        });
+        controlPanel.add(mostraNebbiaBox);
+        
         JCheckBox effettoParallasseBox = new JCheckBox("Effetto Parallasse", effettoParallasse);
         effettoParallasseBox.addActionListener(new ActionListener() {
             @Override
@@ -274,6 +315,9 @@ public class BattleCiobaGUI extends JFrame {
         
         add(controlPanel, BorderLayout.SOUTH);
         
+        // Pannello per il controllo del tempo (in alto)
+        add(creaPannelloTempo(), BorderLayout.NORTH);
+        
         // Inizializza i colori per gli stati (ora mondo è inizializzato)
         generaColoriPerStati();
         
@@ -284,6 +328,167 @@ public class BattleCiobaGUI extends JFrame {
         mapPanel.repaint();
     }
     
+    /**
+     * Crea il motore di simulazione e il pannello per bloccare, velocizzare
+     * e rallentare il tempo.
+     * 
+     * @return pannello dei controlli del tempo
+     */
+    private JPanel creaPannelloTempo() {
+        partita = new Partita(mondo);
+        motore = partita.getMotore();
+        lettoreEventi = partita.getEventiMondo().nuovoLettore();
+        
+        // Il motore gira su un thread dedicato: teniamo solo l'ultimo riepilogo
+        // e aggiorniamo l'etichetta sull'Event Dispatch Thread
+        final java.util.concurrent.atomic.AtomicReference<RiepilogoGiorno> ultimo = 
+                new java.util.concurrent.atomic.AtomicReference<>();
+        motore.aggiungiOsservatore(riepilogo -> {
+            if (ultimo.getAndSet(riepilogo) == null) {
+                SwingUtilities.invokeLater(() -> {
+                    RiepilogoGiorno r = ultimo.getAndSet(null);
+                    if (r != null) {
+                        aggiornaPannelloTempo(r);
+                        ridisegnaModifiche();
+                    }
+                });
+            }
+        });
+        motore.avvia();
+        
+        JPanel pannelloTempo = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        
+        JButton rallentaButton = new JButton("<< Rallenta");
+        rallentaButton.addActionListener(e -> {
+            motore.rallenta();
+            aggiornaPannelloTempo(motore.getUltimoRiepilogo());
+        });
+        pannelloTempo.add(rallentaButton);
+        
+        avviaPausaButton = new JButton("Avvia Tempo");
+        avviaPausaButton.addActionListener(e -> {
+            if (motore.isInPausa()) {
+                motore.riprendi();
+            } else {
+                motore.pausa();
+            }
+            aggiornaPannelloTempo(motore.getUltimoRiepilogo());
+        });
+        pannelloTempo.add(avviaPausaButton);
+        
+        JButton velocizzaButton = new JButton("Velocizza >>");
+        velocizzaButton.addActionListener(e -> {
+            motore.velocizza();
+            aggiornaPannelloTempo(motore.getUltimoRiepilogo());
+        });
+        pannelloTempo.add(velocizzaButton);
+        
+        etichettaGiorno = new JLabel();
+        pannelloTempo.add(etichettaGiorno);
+        aggiornaPannelloTempo(null);
+        
+        return pannelloTempo;
+    }
+    
+    /**
+     * Rettangolo delle celle toccate dagli eventi letti dal bus.
+     */
+    private class AreaModificata implements BusEventiMondo.Consumatore {
+        int rigaMin, rigaMax, colonnaMin, colonnaMax;
+        boolean tutto;
+        final List<Integer> statiCreati = new ArrayList<>();
+        
+        void azzera() {
+            rigaMin = colonnaMin = Integer.MAX_VALUE;
+            rigaMax = colonnaMax = -1;
+            tutto = false;
+            statiCreati.clear();
+        }
+        
+        boolean isVuota() {
+            return !tutto && rigaMax < 0;
+        }
+        
+        @Override
+        public void evento(BusEventiMondo.Tipo tipo, int cella, int stato, long valore) {
+            if (cella < 0) {
+                // Uno stato nato o scomparso cambia i colori ovunque
+                if (tipo == BusEventiMondo.Tipo.STATO_CREATO) {
+                    statiCreati.add(stato);
+                }
+                tutto = true;
+                return;
+            }
+            int riga = cella / mondo.getColonne(), colonna = cella % mondo.getColonne();
+            rigaMin = Math.min(rigaMin, riga);
+            rigaMax = Math.max(rigaMax, riga);
+            colonnaMin = Math.min(colonnaMin, colonna);
+            colonnaMax = Math.max(colonnaMax, colonna);
+        }
+        
+        @Override
+        public void eventiPersi(long numero) {
+            tutto = true;
+        }
+    }
+    
+    /**
+     * Legge le modifiche del mondo dal bus degli eventi e ridisegna solo il
+     * rettangolo delle celle cambiate (con un bordo per confini e icone).
+     * Ridisegna tutto se sono cambiati gli stati (dando un colore a quelli
+     * nati), se sono andati persi eventi o se è attiva una sovrapposizione
+     * che cambia ogni giorno (influenza, nebbia di guerra).
+     */
+    private void ridisegnaModifiche() {
+        if (lettoreEventi == null || mapPanel == null || mondo.getColonne() == 0) {
+            return;
+        }
+        areaModificata.azzera();
+        lettoreEventi.leggi(areaModificata);
+        for (int indice : areaModificata.statiCreati) {
+            coloraNuovoStato(indice);
+        }
+        if (mostraInfluenza || mostraNebbia || areaModificata.tutto) {
+            mapPanel.repaint();
+            return;
+        }
+        if (areaModificata.isVuota()) {
+            return;
+        }
+        int bordo = 2;
+        double lato = cellSize * zoomFactor;
+        int x = viewPosition.x + (int) Math.floor((areaModificata.colonnaMin - bordo) * lato);
+        int y = viewPosition.y + (int) Math.floor((areaModificata.rigaMin - bordo) * lato);
+        int larghezza = (int) Math.ceil((areaModificata.colonnaMax - areaModificata.colonnaMin + 1 + 2 * bordo) * lato);
+        int altezza = (int) Math.ceil((areaModificata.rigaMax - areaModificata.rigaMin + 1 + 2 * bordo) * lato);
+        mapPanel.repaint(x, y, larghezza, altezza);
+    }
+    
+    /**
+     * Aggiorna l'etichetta del giorno e il pulsante di pausa.
+     * 
+     * @param riepilogo ultimo riepilogo ricevuto (può essere null)
+     */
+    private void aggiornaPannelloTempo(RiepilogoGiorno riepilogo) {
+        avviaPausaButton.setText(motore.isInPausa() ? "Avvia Tempo" : "Blocca Tempo");
+        
+        StringBuilder testo = new StringBuilder();
+        testo.append("Giorno: ").append(motore.getGiorno())
+             .append("  |  Velocità: x").append(motore.getMoltiplicatore());
+        if (motore.isInPausa()) {
+            testo.append(" (in pausa)");
+        }
+        String errore = motore.getErroreFase();
+        if (errore != null) {
+            testo.append("  |  Errore nella ").append(errore);
+        }
+        if (riepilogo != null) {
+            testo.append("  |  Reddito: ").append(riepilogo.getIndicatore("reddito_giornaliero")).append("/giorno");
+            testo.append("  |  Durata giorno: ").append(riepilogo.getDurataTotale() / 1000).append(" µs");
+        }
+        etichettaGiorno.setText(testo.toString());
+    }
+    
     /**
      * Configura le interazioni del mouse per panning e zooming.
      * @param panel il pannello a cui aggiungere le interazioni
@@ -387,6 +592,42 @@ public class BattleCiobaGUI extends JFrame {
         }
     }
     
+    /**
+     * Assegna un colore a uno stato nato durante la partita (secessione):
+     * tra alcuni colori brillanti casuali sceglie il più lontano da quelli
+     * già usati, così la nuova regione si distingue dallo stato d'origine.
+     * 
+     * @param indice indice dello stato creato
+     */
+    private void coloraNuovoStato(int indice) {
+        String nome;
+        synchronized (mondo) {
+            Stato stato = mondo.getStatoPerIndice(indice);
+            if (stato == null) return;
+            nome = stato.getNome();
+        }
+        if (coloriStati.containsKey(nome)) return;
+        
+        Random random = new Random();
+        Color migliore = null;
+        int distanzaMigliore = -1;
+        for (int tentativo = 0; tentativo < 16; tentativo++) {
+            Color candidato = new Color(100 + random.nextInt(156), 100 + random.nextInt(156), 100 + random.nextInt(156));
+            int distanza = Integer.MAX_VALUE;
+            for (Color usato : coloriStati.values()) {
+                int dr = candidato.getRed() - usato.getRed();
+                int dg = candidato.getGreen() - usato.getGreen();
+                int db = candidato.getBlue() - usato.getBlue();
+                distanza = Math.min(distanza, dr * dr + dg * dg + db * db);
+            }
+            if (distanza > distanzaMigliore) {
+                migliore = candidato;
+                distanzaMigliore = distanza;
+            }
+        }
+        coloriStati.put(nome, migliore);
+    }
+    
     /**
      * Genera la mappa dei territori dal file CSV.
      */
@@ -444,7 +685,9 @@ public class BattleCiobaGUI extends JFrame {
             
             // Ora carica effettivamente il file attraverso il metodo del mondo
             System.out.println("DEBUG: Chiamata a mondo.generaTerritori...");
-            mondo.generaTerritori(percorsoFile);
+            synchronized (mondo) {
+                mondo.generaTerritori(percorsoFile);
+            }
             
             System.out.println("DEBUG: Mappa generata con successo");
             if (mondo.getMappaTerritori() != null) {
@@ -783,7 +1026,11 @@ public class BattleCiobaGUI extends JFrame {
         }
         
         // Passa i nomi al metodo del mondo per generare gli stati
-        int statiCreati = mondo.generaStati(numStati, nomiStati, nomiPresidenti, cognomiPresidenti, nomiCapitali, nomiCapoluoghi);
+        int statiCreati;
+        synchronized (mondo) {
+            statiCreati = mondo.generaStati(numStati, nomiStati, nomiPresidenti, cognomiPresidenti, nomiCapitali, nomiCapoluoghi);
+        }
+        partita.inizializzaSistemi(); // I sistemi di simulazione ripartono dal nuovo mondo
         generaColoriPerStati(); // Aggiorna i colori per i nuovi stati
         mapPanel.repaint(); // Ridisegna la GUI
         
@@ -806,13 +1053,24 @@ public class BattleCiobaGUI extends JFrame {
         StringBuilder stats = new StringBuilder();
         stats.append("=== STATISTICHE DEGLI STATI ===\n\n");
         
-        for (Stato stato : mondo.getStati()) {
-            stats.append("Stato: ").append(stato.getNome()).append("\n");
-            stats.append("Popolazione: ").append(stato.getPopolazione()).append("\n");
-            stats.append("Regioni: ").append(stato.getRegioni().size()).append("\n");
-            stats.append("Potenza militare: ").append(stato.getPotenza()).append("\n");
-            stats.append("Capitale: ").append(stato.getCapitale() != null ? 
-                    stato.getCapitale().getNome() : "Nessuna").append("\n\n");
+        // Il thread di simulazione modifica il mondo: leggiamo con il lock acquisito
+        synchronized (mondo) {
+            for (Stato stato : mondo.getStati()) {
+                stats.append("Stato: ").append(stato.getNome()).append("\n");
+                stats.append("Popolazione: ").append(stato.getPopolazione()).append("\n");
+                stats.append("Regioni: ").append(stato.getRegioni().size()).append("\n");
+                stats.append("Potenza militare: ").append(stato.getPotenza()).append("\n");
+                stats.append("Tesoro: ").append(partita.getEconomia().getTesoro(stato))
+                     .append(" (+").append(partita.getEconomia().getRedditoGiornaliero(stato)).append("/giorno)\n");
+                Capitale capitale = stato.getCentroCapitale();
+                if (capitale != null) {
+                    stats.append("Stabilità politica: ").append(capitale.getStabilitaPolitica()).append("%")
+                         .append(capitale.aRischioDiRibellione() ? " (a rischio di ribellione)" : "").append("\n");
+                }
+                stats.append("Opposizione: ").append(stato.getOpposizione()).append("%\n");
+                stats.append("Capitale: ").append(stato.getCapitale() != null ? 
+                        stato.getCapitale().getNome() : "Nessuna").append("\n\n");
+            }
         }
         
         // Mostra le statistiche in una finestra di dialogo con scrolling
@@ -887,9 +1145,37 @@ public class BattleCiobaGUI extends JFrame {
         // Lista per tenere traccia dei centri da disegnare sopra la griglia
         List<CentroVisualizzato> centriDaDisegnare = new ArrayList<>();
         
+        // Mappa d'influenza: una sola copia in blocco per tutto il disegno
+        boolean disegnaInfluenza = mostraInfluenza && partita != null;
+        if (disegnaInfluenza) {
+            if (dominanteInfluenza.length != righe * colonne) {
+                dominanteInfluenza = new int[righe * colonne];
+                intensitaInfluenza = new float[righe * colonne];
+            }
+            partita.getInfluenza().copiaDominanti(dominanteInfluenza, intensitaInfluenza);
+        }
+        
+        // Nebbia di guerra: senza uno stato scelto si guarda dal primo stato del mondo
+        Visibilita visibilita = mostraNebbia && partita != null ? partita.getVisibilita() : null;
+        int osservatore = statoNebbia;
+        if (visibilita != null && mondo.getStatoPerIndice(osservatore) == null && !mondo.getStati().isEmpty()) {
+            osservatore = mondo.getStati().get(0).getIndice();
+        }
+        Color coloreNebbia = new Color(0, 0, 0, 170);
+        
+        // Solo le celle dentro l'area da ridisegnare, più un bordo per confini e icone
+        int rigaInizio = 0, rigaFine = righe, colonnaInizio = 0, colonnaFine = colonne;
+        Rectangle areaClip = g.getClipBounds();
+        if (areaClip != null) {
+            rigaInizio = Math.max(0, Math.floorDiv(areaClip.y, cellSize) - 2);
+            rigaFine = Math.min(righe, Math.floorDiv(areaClip.y + areaClip.height, cellSize) + 3);
+            colonnaInizio = Math.max(0, Math.floorDiv(areaClip.x, cellSize) - 2);
+            colonnaFine = Math.min(colonne, Math.floorDiv(areaClip.x + areaClip.width, cellSize) + 3);
+        }
+        
         try {
-            for (int i = 0; i < righe; i++) {
-                for (int j = 0; j < colonne; j++) {
+            for (int i = rigaInizio; i < rigaFine; i++) {
+                for (int j = colonnaInizio; j < colonnaFine; j++) {
                     Territorio t = mappaTerritori[i][j];
                     if (t == null) {
                         contatoreNull++;
@@ -917,6 +1203,22 @@ public class BattleCiobaGUI extends JFrame {
                     
                     // Disegna il territorio di base
                     g.fillRect(x, y, cellSize, cellSize);
+                    
+                    // Velatura con il colore dello stato dominante, più intensa dove l'influenza è forte
+                    int cella = i * colonne + j;
+                    if (disegnaInfluenza && dominanteInfluenza[cella] >= 0) {
+                        Stato dominante = mondo.getStatoPerIndice(dominanteInfluenza[cella]);
+                        Color base = dominante != null ? coloriStati.getOrDefault(dominante.getNome(), Color.GRAY) : Color.GRAY;
+                        int alfa = (int) Math.min(180, 40 + intensitaInfluenza[cella] * 6);
+                        g.setColor(new Color(base.getRed(), base.getGreen(), base.getBlue(), alfa));
+                        g.fillRect(x, y, cellSize, cellSize);
+                    }
+                    
+                    if (visibilita != null && !visibilita.isVisibile(osservatore, cella)) {
+                        g.setColor(coloreNebbia);
+                        g.fillRect(x, y, cellSize, cellSize);
+                    }
+                    
                     g.setColor(Color.BLACK);
                     g.drawRect(x, y, cellSize, cellSize);
                     
@@ -1159,6 +1461,9 @@ public class BattleCiobaGUI extends JFrame {
                 territorioBaseMilitare.setCentro(baseMilitare);
             }
             
+            // Collega i nuovi centri ai sistemi di simulazione
+            partita.inizializzaSistemi();
+            
             // Aggiorna i colori per gli stati
             generaColoriPerStati();
             
@@ -1473,19 +1778,38 @@ public class BattleCiobaGUI extends JFrame {
                     }
                     popupMenu.add(itemStatistiche);
                     
-                    // Opzione "Diplomazia" (esempio)
+                    // Opzione "Diplomazia": relazioni con gli altri stati
                     JMenuItem itemDiplomazia = new JMenuItem("Diplomazia");
-                    itemDiplomazia.setEnabled(statoTrovato);
-                    if (statoTrovato) {
-                        itemDiplomazia.addActionListener(ev -> {
-                            JOptionPane.showMessageDialog(this, 
-                                "Funzionalità di diplomazia non ancora implementata", 
-                                "Diplomazia",
-                                JOptionPane.INFORMATION_MESSAGE);
-                        });
+                    itemDiplomazia.setEnabled(statoTrovato && partita != null);
+                    if (statoTrovato && partita != null) {
+                        Stato statoFinale = statoSelezionato; // variabile finale per lambda
+                        itemDiplomazia.addActionListener(ev -> mostraDiplomazia(statoFinale));
                     }
                     popupMenu.add(itemDiplomazia);
                     
+                    // Opzione "Scelte politiche": decisioni del governo
+                    JMenuItem itemPolitica = new JMenuItem("Scelte politiche");
+                    itemPolitica.setEnabled(statoTrovato && partita != null);
+                    if (statoTrovato && partita != null) {
+                        Stato statoFinale = statoSelezionato; // variabile finale per lambda
+                        itemPolitica.addActionListener(ev -> mostraSceltePolitiche(statoFinale));
+                    }
+                    popupMenu.add(itemPolitica);
+                    
+                    // Opzione "Vedi come questo stato": nebbia di guerra dal suo punto di vista
+                    JMenuItem itemNebbia = new JMenuItem("Vedi come questo stato");
+                    itemNebbia.setEnabled(statoTrovato && partita != null);
+                    if (statoTrovato && partita != null) {
+                        Stato statoFinale = statoSelezionato; // variabile finale per lambda
+                        itemNebbia.addActionListener(ev -> {
+                            statoNebbia = statoFinale.getIndice();
+                            mostraNebbia = true;
+                            mostraNebbiaBox.setSelected(true);
+                            mapPanel.repaint();
+                        });
+                    }
+                    popupMenu.add(itemNebbia);
+                    
                     // Aggiungi un separatore
                     popupMenu.addSeparator();
                     
@@ -1543,4 +1867,99 @@ public class BattleCiobaGUI extends JFrame {
         InfoStato dialog = new InfoStato(this, true, stato);
         dialog.setVisible(true);
     }
-}
\ No newline at end of file
+    
+    /**
+     * Mostra le relazioni diplomatiche di uno stato e permette di mettere in
+     * coda una dichiarazione di guerra, una proposta di alleanza, la pace o
+     * l'uscita dall'alleanza, che verrà applicata al prossimo giorno.
+     * 
+     * @param stato stato selezionato
+     */
+    private void mostraDiplomazia(Stato stato) {
+        Diplomazia diplomazia = partita.getDiplomazia();
+        int s = stato.getIndice();
+        
+        // Elenco delle relazioni con tutti gli altri stati
+        StringBuilder testo = new StringBuilder();
+        List<Stato> altri = new ArrayList<>();
+        synchronized (mondo) {
+            for (Stato altro : mondo.getStati()) {
+                if (altro == stato) continue;
+                altri.add(altro);
+                int a = altro.getIndice();
+                testo.append(altro.getNome()).append(": ")
+                     .append(diplomazia.getRelazione(s, a).getNome())
+                     .append(" (opinione ").append(diplomazia.getOpinione(s, a)).append(")\n");
+            }
+        }
+        if (altri.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Non ci sono altri stati", "Diplomazia - " + stato.getNome(),
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        JTextArea areaRelazioni = new JTextArea(testo.toString(), Math.min(12, altri.size()), 32);
+        areaRelazioni.setEditable(false);
+        JComboBox<String> sceltaStato = new JComboBox<>();
+        for (Stato altro : altri) {
+            sceltaStato.addItem(altro.getNome());
+        }
+        
+        JPanel pannello = new JPanel(new BorderLayout(5, 5));
+        pannello.add(new JScrollPane(areaRelazioni), BorderLayout.CENTER);
+        pannello.add(sceltaStato, BorderLayout.SOUTH);
+        
+        String[] azioni = {"Dichiara guerra", "Proponi alleanza", "Firma la pace", "Lascia l'alleanza", "Chiudi"};
+        int scelta = JOptionPane.showOptionDialog(this, pannello, "Diplomazia - " + stato.getNome(),
+                JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, azioni, azioni[azioni.length - 1]);
+        if (scelta < 0 || scelta == azioni.length - 1) {
+            return;
+        }
+        
+        int altro = altri.get(sceltaStato.getSelectedIndex()).getIndice();
+        ComandoAI.Tipo[] tipi = {ComandoAI.Tipo.DICHIARA_GUERRA, ComandoAI.Tipo.PROPONI_ALLEANZA,
+                ComandoAI.Tipo.FIRMA_PACE, ComandoAI.Tipo.LASCIA_ALLEANZA};
+        partita.getIntelligenza().proponi(new ComandoAI(tipi[scelta], s, -1, altro, 0, 0));
+        JOptionPane.showMessageDialog(this,
+                "\"" + azioni[scelta] + "\" verrà applicata al prossimo giorno",
+                "Diplomazia - " + stato.getNome(), JOptionPane.INFORMATION_MESSAGE);
+    }
+    
+    /**
+     * Mostra stabilità e consenso di uno stato e permette di mettere in coda
+     * una scelta politica, che verrà applicata al prossimo giorno.
+     * 
+     * @param stato stato selezionato
+     */
+    private void mostraSceltePolitiche(Stato stato) {
+        StringBuilder testo = new StringBuilder();
+        synchronized (mondo) {
+            Capitale capitale = stato.getCentroCapitale();
+            testo.append("Stabilità: ").append(capitale != null ? capitale.getStabilitaPolitica() + "%" : "nessuna capitale")
+                 .append("\nOpposizione: ").append(stato.getOpposizione()).append("%")
+                 .append("\nTesoro: ").append(partita.getEconomia().getTesoro(stato)).append("\n\n");
+            for (Regione regione : stato.getRegioni()) {
+                testo.append(regione.getNome()).append(": consenso ").append(regione.getConsensi())
+                     .append(", rivoltosi ").append(regione.getRivoltosi()).append("\n");
+            }
+        }
+        JTextArea areaRegioni = new JTextArea(testo.toString(), 12, 32);
+        areaRegioni.setEditable(false);
+        JComboBox<SceltaPolitica> sceltaPolitica = new JComboBox<>(SceltaPolitica.values());
+        
+        JPanel pannello = new JPanel(new BorderLayout(5, 5));
+        pannello.add(new JScrollPane(areaRegioni), BorderLayout.CENTER);
+        pannello.add(sceltaPolitica, BorderLayout.SOUTH);
+        
+        String[] azioni = {"Decidi", "Chiudi"};
+        int scelta = JOptionPane.showOptionDialog(this, pannello, "Scelte politiche - " + stato.getNome(),
+                JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, azioni, azioni[1]);
+        if (scelta != 0) {
+            return;
+        }
+        SceltaPolitica decisione = (SceltaPolitica) sceltaPolitica.getSelectedItem();
+        partita.getPolitica().proponi(stato, decisione);
+        JOptionPane.showMessageDialog(this,
+                "\"" + decisione.getNome() + "\" verrà applicata al prossimo giorno (costo " + decisione.getCosto() + ")",
+                "Scelte politiche - " + stato.getNome(), JOptionPane.INFORMATION_MESSAGE);
+    }
+}
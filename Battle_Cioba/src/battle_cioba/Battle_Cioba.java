@@ -8,6 +8,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
@@ -20,9 +21,16 @@ public class Battle_Cioba {
 
     /**
      * Metodo main per avviare l'applicazione.
+     * Con "--headless" come primo argomento la simulazione gira senza
+     * interfaccia grafica (vedi EsecuzioneHeadless) e AWT non viene caricato.
      * @param args the command line arguments
+     * @throws Exception se l'esecuzione senza interfaccia non può partire
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--headless")) {
+            EsecuzioneHeadless.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         // Avvia l'interfaccia grafica nell'Event Dispatch Thread
         SwingUtilities.invokeLater(new Runnable() {
             @Override
@@ -0,0 +1,109 @@
+package battle_cioba;
+
+/**
+ * Misura dei kernel della popolazione su una mappa sintetica.
+ * Confronta kernel scalare e vettoriale, su un thread e a blocchi
+ * paralleli, e controlla che diano tutti lo stesso risultato.
+ * <p>
+ * Uso: java --add-modules jdk.incubator.vector -Xmx2g
+ * battle_cioba.BenchmarkPopolazione [celle] [passi]
+ * (senza --add-modules viene misurato solo il kernel scalare).
+ */
+final class BenchmarkPopolazione {
+
+    /**
+     * Celle predefinite (una mappa 5000 x 5000).
+     */
+    static final int CELLE = 25_000_000;
+
+    /**
+     * Passi misurati predefiniti per ogni variante.
+     */
+    static final int PASSI = 20;
+
+    /**
+     * Passi di riscaldamento (compilazione JIT) prima di ogni misura.
+     */
+    static final int RISCALDAMENTO = 5;
+
+    private BenchmarkPopolazione() {
+    }
+
+    public static void main(String[] args) {
+        int celle = args.length > 0 ? Integer.parseInt(args[0]) : CELLE;
+        int passi = args.length > 1 ? Integer.parseInt(args[1]) : PASSI;
+        ColonnePopolazione colonne = new ColonnePopolazione(celle);
+
+        KernelPopolazione vettoriale = KernelPopolazione.migliore();
+        System.out.println("Celle: " + celle + ", passi: " + passi
+                + ", thread: " + Runtime.getRuntime().availableProcessors());
+        long riferimento = misura("scalare", KernelPopolazione.SCALARE, false, colonne, passi, 0);
+        misura("scalare parallelo", KernelPopolazione.SCALARE, true, colonne, passi, riferimento);
+        if (vettoriale == KernelPopolazione.SCALARE) {
+            System.out.println("Vector API non disponibile: avviare con --add-modules jdk.incubator.vector");
+            return;
+        }
+        misura(vettoriale.getNome(), vettoriale, false, colonne, passi, riferimento);
+        misura(vettoriale.getNome() + " parallelo", vettoriale, true, colonne, passi, riferimento);
+    }
+
+    /**
+     * Riempie le colonne, esegue riscaldamento e passi misurati e stampa il
+     * tempo per passo.
+     *
+     * @param riferimento impronta attesa (0 = nessun controllo)
+     * @return impronta dei civili alla fine
+     */
+    private static long misura(String nome, KernelPopolazione kernel, boolean parallelo,
+            ColonnePopolazione colonne, int passi, long riferimento) {
+        riempi(colonne);
+        for (int i = 0; i < RISCALDAMENTO; i++) {
+            kernel.avanzaTutte(colonne, parallelo);
+        }
+        long inizio = System.nanoTime();
+        for (int i = 0; i < passi; i++) {
+            kernel.avanzaTutte(colonne, parallelo);
+        }
+        double ms = (System.nanoTime() - inizio) / 1e6 / passi;
+        long impronta = impronta(colonne);
+        System.out.printf("%-32s %9.2f ms/passo %9.1f Mcelle/s%s%n", nome, ms,
+                colonne.dimensione / ms / 1000.0,
+                riferimento != 0 && impronta != riferimento ? "  RISULTATO DIVERSO" : "");
+        return impronta;
+    }
+
+    /**
+     * Valori pseudo-casuali riproducibili: un'acqua ogni otto celle, alcune
+     * città oltre la capacità e qualche cella con perdite di guerra.
+     */
+    private static void riempi(ColonnePopolazione colonne) {
+        GeneratoreCasuale casuale = new GeneratoreCasuale(12345);
+        for (int c = 0; c < colonne.dimensione; c++) {
+            colonne.resto[c] = 0f;
+            colonne.perdite[c] = 0f;
+            if (casuale.prossimoInt(8) == 0) {
+                colonne.civili[c] = 0;
+                colonne.crescita[c] = 0f;
+                colonne.inversoCapacita[c] = 0f;
+                continue;
+            }
+            int fertilita = casuale.prossimoInt(101);
+            long capacita = ModelloPopolazione.CAPACITA_BASE + ModelloPopolazione.CAPACITA_PER_FERTILITA * fertilita;
+            colonne.civili[c] = 800 + casuale.prossimoInt(15000);
+            colonne.crescita[c] = (float) (ModelloPopolazione.TASSO_ANNUO_MASSIMO * fertilita / 100.0 / 365.0);
+            colonne.inversoCapacita[c] = 1f / capacita;
+            if (casuale.prossimoInt(50) == 0) {
+                colonne.perdite[c] = ModelloPopolazione.PERDITA_CONQUISTA;
+            }
+        }
+    }
+
+    private static long impronta(ColonnePopolazione colonne) {
+        long h = 1;
+        for (int c = 0; c < colonne.dimensione; c++) {
+            h = h * 31 + colonne.civili[c];
+            h = h * 31 + Float.floatToIntBits(colonne.resto[c]);
+        }
+        return h;
+    }
+}
@@ -0,0 +1,333 @@
+package battle_cioba;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flusso delle modifiche del mondo per chi lo guarda senza simularlo
+ * (disegno della mappa, pannelli delle statistiche, intelligenza artificiale).
+ * <p>
+ * Gli eventi stanno in un anello di posizioni preallocate (array paralleli
+ * di primitivi, nessun oggetto per evento). Scrive un solo thread: le
+ * notifiche del mondo arrivano con il lock del mondo acquisito, quindi in
+ * serie. I lettori sono quanti si vuole, ognuno con la propria posizione, e
+ * non prendono lock né rallentano chi scrive: lo scrittore non li aspetta.
+ * Un lettore rimasto indietro di più di un giro dell'anello perde gli eventi
+ * sovrascritti e ne viene avvisato, così può ridisegnare o ricalcolare tutto.
+ * <p>
+ * Pubblicazione: lo scrittore riempie la posizione e poi rende visibile il
+ * cursore con una scrittura release. Prima di riempire una posizione già
+ * usata mette una barriera store-store, così un lettore che vede i dati
+ * nuovi vede anche il cursore che li rende non più validi: il lettore copia
+ * l'evento, mette una barriera load-load e controlla il cursore prima di
+ * consegnarlo.
+ */
+public class BusEventiMondo implements OsservatoreMondo {
+
+    /**
+     * Tipi di evento.
+     */
+    public enum Tipo {
+        /**
+         * Una cella ha cambiato proprietario: stato = nuovo (-1 nessuno), valore = precedente.
+         */
+        PROPRIETARIO,
+        /**
+         * Su una cella è stato costruito o tolto un centro: valore = ordinale di
+         * Centro.TipoCentro, -1 se il centro è stato tolto.
+         */
+        CENTRO,
+        /**
+         * I civili di una cella sono cambiati: valore = differenza.
+         */
+        POPOLAZIONE,
+        /**
+         * Uno stato è entrato nel mondo (cella -1).
+         */
+        STATO_CREATO,
+        /**
+         * Uno stato è uscito dal mondo (cella -1).
+         */
+        STATO_RIMOSSO
+    }
+
+    /**
+     * Riceve gli eventi letti.
+     */
+    public interface Consumatore {
+
+        /**
+         * Un evento, nell'ordine di pubblicazione.
+         *
+         * @param tipo tipo dell'evento
+         * @param cella indice di cella (-1 per gli eventi sugli stati)
+         * @param stato indice dello stato coinvolto
+         * @param valore dato dell'evento (vedi Tipo)
+         */
+        void evento(Tipo tipo, int cella, int stato, long valore);
+
+        /**
+         * Il lettore è rimasto indietro e alcuni eventi sono stati sovrascritti.
+         *
+         * @param numero eventi persi
+         */
+        default void eventiPersi(long numero) {
+        }
+    }
+
+    /**
+     * Posizione di lettura di un consumatore. Ogni lettore va usato da un solo thread.
+     */
+    public final class Lettore {
+
+        /**
+         * Prossimo evento da leggere.
+         */
+        private long prossimo;
+
+        private long persi;
+
+        private Lettore(long inizio) {
+            this.prossimo = inizio;
+        }
+
+        /**
+         * Consegna tutti gli eventi pubblicati da dopo l'ultima lettura.
+         *
+         * @param consumatore destinatario degli eventi
+         * @return eventi consegnati
+         */
+        public int leggi(Consumatore consumatore) {
+            return leggi(consumatore, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Consegna al più massimo eventi, per distribuire il lavoro su più letture.
+         *
+         * @param consumatore destinatario degli eventi
+         * @param massimo numero massimo di eventi da consegnare
+         * @return eventi consegnati
+         */
+        public int leggi(Consumatore consumatore, int massimo) {
+            int consegnati = 0;
+            long fine = cursore.getAcquire();
+            while (prossimo < fine && consegnati < massimo) {
+                if (fine - prossimo > capacita) {
+                    salta(consumatore, fine);
+                    continue;
+                }
+                int i = (int) prossimo & maschera;
+                byte t = tipi[i];
+                int c = celle[i];
+                int s = stati[i];
+                long v = valori[i];
+                VarHandle.loadLoadFence();
+                long ora = cursore.getAcquire();
+                if (ora - prossimo > capacita - 1) {
+                    // Lo scrittore ha iniziato a riusare la posizione durante la copia
+                    salta(consumatore, ora);
+                    fine = ora;
+                    continue;
+                }
+                consumatore.evento(TIPI[t], c, s, v);
+                prossimo++;
+                consegnati++;
+            }
+            return consegnati;
+        }
+
+        /**
+         * Si porta al cursore corrente: gli eventi non letti sono persi.
+         */
+        private void salta(Consumatore consumatore, long cursoreCorrente) {
+            long numero = cursoreCorrente - prossimo;
+            persi += numero;
+            prossimo = cursoreCorrente;
+            consumatore.eventiPersi(numero);
+        }
+
+        /**
+         * Eventi pubblicati e non ancora letti.
+         *
+         * @return ritardo del lettore
+         */
+        public long getRitardo() {
+            return cursore.getAcquire() - prossimo;
+        }
+
+        public long getPersi() {
+            return persi;
+        }
+    }
+
+    /**
+     * Posizioni predefinite dell'anello.
+     */
+    public static final int CAPACITA = 1 << 16;
+
+    private static final Tipo[] TIPI = Tipo.values();
+
+    /**
+     * Posizioni dell'anello (potenza di due) e maschera per l'indice.
+     */
+    private final int capacita, maschera;
+
+    /**
+     * Eventi: array paralleli preallocati.
+     */
+    private final byte[] tipi;
+    private final int[] celle;
+    private final int[] stati;
+    private final long[] valori;
+
+    /**
+     * Numero di eventi pubblicati (il prossimo evento va in cursore & maschera).
+     */
+    private final AtomicLong cursore = new AtomicLong();
+
+    /**
+     * Mondo osservato.
+     */
+    private Mondo mondo;
+
+    /**
+     * Proprietario e civili di ogni cella all'ultimo evento (solo per lo scrittore).
+     */
+    private int[] proprietario = new int[0];
+    private long[] civili = new long[0];
+
+    /**
+     * Crea un bus con la capacità predefinita.
+     */
+    public BusEventiMondo() {
+        this(CAPACITA);
+    }
+
+    /**
+     * Costruttore principale.
+     *
+     * @param capacita posizioni dell'anello (arrotondate alla potenza di due successiva)
+     */
+    public BusEventiMondo(int capacita) {
+        int n = Integer.highestOneBit(Math.max(2, capacita) - 1) << 1;
+        this.capacita = n;
+        this.maschera = n - 1;
+        this.tipi = new byte[n];
+        this.celle = new int[n];
+        this.stati = new int[n];
+        this.valori = new long[n];
+    }
+
+    /**
+     * Legge proprietari e civili correnti, da cui partono le differenze.
+     *
+     * @param mondo mondo di gioco
+     */
+    public void inizializza(Mondo mondo) {
+        this.mondo = mondo;
+        int n = mondo.getRighe() * mondo.getColonne();
+        proprietario = new int[n];
+        civili = new long[n];
+        for (int c = 0; c < n; c++) {
+            Territorio t = mondo.getTerritorio(c);
+            proprietario[c] = t != null ? mondo.indiceStato(t.getStatoPadrone()) : -1;
+            civili[c] = t != null ? t.getNumCivili() : 0;
+        }
+    }
+
+    /**
+     * Crea un lettore che riceverà gli eventi pubblicati da ora in poi.
+     *
+     * @return nuovo lettore
+     */
+    public Lettore nuovoLettore() {
+        return new Lettore(cursore.getAcquire());
+    }
+
+    public int getCapacita() {
+        return capacita;
+    }
+
+    /**
+     * Eventi pubblicati dalla creazione del bus.
+     *
+     * @return numero di eventi
+     */
+    public long getPubblicati() {
+        return cursore.getAcquire();
+    }
+
+    /**
+     * Scrive un evento nella prossima posizione e lo rende visibile.
+     */
+    private void pubblica(Tipo tipo, int cella, int stato, long valore) {
+        long seq = cursore.getPlain();
+        int i = (int) seq & maschera;
+        // Il cursore che invalida il vecchio contenuto deve essere visibile prima dei nuovi dati
+        VarHandle.storeStoreFence();
+        tipi[i] = (byte) tipo.ordinal();
+        celle[i] = cella;
+        stati[i] = stato;
+        valori[i] = valore;
+        cursore.setRelease(seq + 1);
+    }
+
+    /* =========================== OSSERVATORE =========================== */
+
+    @Override
+    public void territorioModificato(Territorio territorio) {
+        controlla(territorio);
+    }
+
+    @Override
+    public void territorioTrasferito(Territorio territorio, Stato vecchio, Stato nuovo) {
+        controlla(territorio);
+    }
+
+    @Override
+    public void centroImpostato(Territorio territorio, Centro vecchio, Centro nuovo) {
+        int c = cella(territorio);
+        if (c >= 0) {
+            pubblica(Tipo.CENTRO, c, proprietario[c], nuovo != null ? nuovo.getTipo().ordinal() : -1);
+        }
+    }
+
+    @Override
+    public void statoAggiunto(Stato stato) {
+        pubblica(Tipo.STATO_CREATO, -1, stato.getIndice(), 0);
+    }
+
+    @Override
+    public void statoRimosso(Stato stato) {
+        pubblica(Tipo.STATO_RIMOSSO, -1, stato.getIndice(), 0);
+    }
+
+    /**
+     * Confronta proprietario e civili con gli ultimi pubblicati.
+     */
+    private void controlla(Territorio t) {
+        int c = cella(t);
+        if (c < 0) {
+            return;
+        }
+        int nuovo = mondo.indiceStato(t.getStatoPadrone());
+        if (nuovo != proprietario[c]) {
+            int vecchio = proprietario[c];
+            proprietario[c] = nuovo;
+            pubblica(Tipo.PROPRIETARIO, c, nuovo, vecchio);
+        }
+        long delta = t.getNumCivili() - civili[c];
+        if (delta != 0) {
+            civili[c] += delta;
+            pubblica(Tipo.POPOLAZIONE, c, nuovo, delta);
+        }
+    }
+
+    private int cella(Territorio t) {
+        if (mondo == null || t == null) {
+            return -1;
+        }
+        int c = t.getIndiceCella();
+        return c >= 0 && c < proprietario.length ? c : -1;
+    }
+}
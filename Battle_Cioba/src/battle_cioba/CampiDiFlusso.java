@@ -0,0 +1,409 @@
+package battle_cioba;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Archivio dei campi di flusso condivisi.
+ * <p>
+ * Quando molte unità marciano sullo stesso obiettivo (tipicamente una
+ * capitale nemica) un A* per unità ripete quasi lo stesso lavoro. Qui invece
+ * si calcola un solo Dijkstra all'indietro dall'obiettivo per ogni coppia
+ * (obiettivo, funzione di costo): ne esce un CampoDiFlusso da cui ogni unità
+ * legge in O(1) la direzione del prossimo passo.
+ * <p>
+ * I campi vengono calcolati da un gruppo di thread di lavoro, in parallelo al
+ * giorno di simulazione: richiedi() restituisce subito il campo se è pronto,
+ * altrimenti avvia il calcolo e restituisce null. Chi deve restare
+ * deterministico non può dipendere da quando un calcolo finisce: richiede il
+ * campo in anticipo e poi lo ottiene con attendi(). I campi considerano solo
+ * il terreno, non la proprietà delle celle, così sono condivisibili tra stati
+ * diversi.
+ * <p>
+ * Quando una cella cambia terreno vengono invalidati solo i campi in cui la
+ * cella (o una sua vicina) era raggiungibile; il nuovo calcolo parte subito.
+ * I thread di lavoro leggono il terreno senza blocchi: se una cella cambia
+ * durante un calcolo, il campo prodotto è già invalidato e viene rifatto.
+ */
+public class CampiDiFlusso implements OsservatoreMondo {
+
+    /**
+     * Numero massimo di campi tenuti in memoria (i meno usati vengono scartati).
+     */
+    public static final int CAPACITA = 64;
+
+    /**
+     * Costo relativo (in decimi) di un passo diagonale.
+     */
+    private static final int DIAGONALE_DECIMI = 14;
+
+    /**
+     * Numero dei gruppi di thread creati (per i nomi dei thread).
+     */
+    private static final AtomicInteger NUMERO_GRUPPO = new AtomicInteger();
+
+    /**
+     * true per usare 8 direzioni, false per 4.
+     */
+    private final boolean diagonali;
+
+    /**
+     * Thread di lavoro che calcolano i campi.
+     */
+    private final ExecutorService lavoratori;
+
+    /**
+     * Righe, colonne e numero di celle della mappa.
+     */
+    private int righe, colonne, numCelle;
+
+    /**
+     * true per le celle marine (letto anche dai thread di lavoro).
+     */
+    private boolean[] acqua = new boolean[0];
+
+    /**
+     * Profondità media delle celle marine (0 per quelle terrestri).
+     */
+    private int[] profondita = new int[0];
+
+    /**
+     * Campi richiesti, in ordine di accesso.
+     */
+    private final LinkedHashMap<Long, Voce> voci;
+
+    /**
+     * Identificativo compatto di ogni funzione di costo usata (per la chiave).
+     */
+    private final Map<CostoMovimento, Integer> idCosti;
+
+    /**
+     * Statistiche: campi calcolati, campi invalidati, richieste soddisfatte.
+     */
+    private long calcolati, invalidati, richiestePronte, richieste;
+
+    /**
+     * Crea l'archivio con movimento in 4 direzioni e un thread di lavoro per
+     * processore (lasciandone uno alla simulazione).
+     */
+    public CampiDiFlusso() {
+        this(false, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Costruttore principale.
+     *
+     * @param diagonali true per permettere i passi diagonali
+     * @param numThread numero di thread di lavoro
+     */
+    public CampiDiFlusso(boolean diagonali, int numThread) {
+        this.diagonali = diagonali;
+        int gruppo = NUMERO_GRUPPO.incrementAndGet();
+        AtomicInteger contatore = new AtomicInteger();
+        this.lavoratori = Executors.newFixedThreadPool(Math.max(1, numThread), r -> {
+            Thread t = new Thread(r, "Campi-di-flusso-" + gruppo + "-" + contatore.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.idCosti = new IdentityHashMap<>();
+        this.voci = new LinkedHashMap<>(CAPACITA * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Voce> piuVecchia) {
+                return size() > CAPACITA;
+            }
+        };
+    }
+
+    /**
+     * Legge il terreno di tutte le celle e scarta i campi esistenti.
+     *
+     * @param mondo mondo di gioco
+     */
+    public synchronized void inizializza(Mondo mondo) {
+        this.righe = mondo.getRighe();
+        this.colonne = mondo.getColonne();
+        this.numCelle = righe * colonne;
+        acqua = new boolean[numCelle];
+        profondita = new int[numCelle];
+        for (int c = 0; c < numCelle; c++) {
+            Territorio t = mondo.getTerritorio(c);
+            if (t != null) {
+                acqua[c] = t.isAcqua();
+                profondita[c] = profonditaDi(t);
+            }
+        }
+        voci.clear();
+    }
+
+    /* =========================== RICHIESTE =========================== */
+
+    /**
+     * Restituisce il campo verso un obiettivo, se è già pronto e aggiornato.
+     * Altrimenti ne avvia il calcolo in background.
+     *
+     * @param obiettivo cella obiettivo
+     * @param costo funzione di costo
+     * @return campo pronto, oppure null se è in calcolo
+     */
+    public synchronized CampoDiFlusso richiedi(int obiettivo, CostoMovimento costo) {
+        if (obiettivo < 0 || obiettivo >= numCelle || costo == null) {
+            return null;
+        }
+        richieste++;
+        Voce voce = voce(obiettivo, costo);
+        if (voce.pronto != null && voce.pronto.getVersione() == voce.versione) {
+            richiestePronte++;
+            return voce.pronto;
+        }
+        avvia(voce);
+        return null;
+    }
+
+    /**
+     * Come richiedi, ma attende che il campo sia pronto.
+     *
+     * @param obiettivo cella obiettivo
+     * @param costo funzione di costo
+     * @return campo aggiornato, oppure null se la richiesta non è valida
+     *         o i thread di lavoro sono stati fermati
+     * @throws InterruptedException se il thread viene interrotto durante l'attesa
+     */
+    public synchronized CampoDiFlusso attendi(int obiettivo, CostoMovimento costo) throws InterruptedException {
+        CampoDiFlusso campo = richiedi(obiettivo, costo);
+        while (campo == null && obiettivo >= 0 && obiettivo < numCelle && costo != null
+                && !lavoratori.isShutdown()) {
+            wait();
+            campo = richiedi(obiettivo, costo);
+        }
+        return campo;
+    }
+
+    /**
+     * Ferma i thread di lavoro. I campi già pronti restano utilizzabili.
+     */
+    public void chiudi() {
+        lavoratori.shutdownNow();
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    public boolean isDiagonali() {
+        return diagonali;
+    }
+
+    private Voce voce(int obiettivo, CostoMovimento costo) {
+        Integer id = idCosti.get(costo);
+        if (id == null) {
+            id = idCosti.size();
+            idCosti.put(costo, id);
+        }
+        Long chiave = (long) id * numCelle + obiettivo;
+        Voce voce = voci.get(chiave);
+        if (voce == null) {
+            voce = new Voce(chiave, obiettivo, costo);
+            voci.put(chiave, voce);
+        }
+        return voce;
+    }
+
+    /**
+     * Affida il calcolo della versione corrente ai thread di lavoro,
+     * se non è già in corso.
+     */
+    private void avvia(Voce voce) {
+        if (voce.inCalcolo || lavoratori.isShutdown()) {
+            return;
+        }
+        voce.inCalcolo = true;
+        int versione = voce.versione;
+        boolean[] a = acqua;
+        int[] p = profondita;
+        int r = righe, c = colonne;
+        lavoratori.execute(() -> pubblica(voce, calcola(voce.obiettivo, voce.costo, versione, a, p, r, c)));
+    }
+
+    /**
+     * Rende disponibile un campo calcolato; se nel frattempo è stato
+     * invalidato, ne avvia subito il ricalcolo.
+     */
+    private synchronized void pubblica(Voce voce, CampoDiFlusso campo) {
+        voce.inCalcolo = false;
+        calcolati++;
+        if (voci.get(voce.chiave) != voce) {
+            notifyAll(); // scartato dalla cache durante il calcolo: chi attende lo richiede
+            return;
+        }
+        if (campo.getVersione() == voce.versione) {
+            voce.pronto = campo;
+            notifyAll();
+        } else {
+            avvia(voce);
+        }
+    }
+
+    /* =========================== CALCOLO =========================== */
+
+    /**
+     * Dijkstra all'indietro dall'obiettivo. L'obiettivo è sempre accessibile;
+     * le celle impraticabili ricevono una direzione (un'unità ferma lì può
+     * uscirne) ma non vengono attraversate.
+     */
+    private CampoDiFlusso calcola(int obiettivo, CostoMovimento costo, int versione,
+            boolean[] acqua, int[] profondita, int righe, int colonne) {
+        int n = righe * colonne;
+        int[] costoVerso = new int[n];
+        byte[] direzione = new byte[n];
+        Arrays.fill(costoVerso, -1);
+        Arrays.fill(direzione, CampoDiFlusso.NESSUNA);
+        int minimo = Math.max(1, costo.costoMinimo());
+        int numDirezioni = diagonali ? 8 : 4;
+        HeapBinario coda = new HeapBinario(1024);
+        costoVerso[obiettivo] = 0;
+        coda.inserisci(obiettivo, 0);
+        while (!coda.isVuoto()) {
+            int priorita = coda.prioritaMinima();
+            int c = coda.estrai();
+            if (priorita > costoVerso[c]) {
+                continue; // copia obsoleta nell'heap
+            }
+            int passoBase = costo.costoCella(acqua[c], profondita[c], -1, -1);
+            if (passoBase < 0) {
+                if (c != obiettivo) {
+                    continue;
+                }
+                passoBase = minimo;
+            }
+            int r = c / colonne, col = c % colonne;
+            for (int d = 0; d < numDirezioni; d++) {
+                int nr = r - CampoDiFlusso.DELTA_RIGA[d], nc = col - CampoDiFlusso.DELTA_COLONNA[d];
+                if (nr < 0 || nr >= righe || nc < 0 || nc >= colonne) {
+                    continue;
+                }
+                int v = nr * colonne + nc;
+                int passo = d < 4 ? passoBase : passoBase * DIAGONALE_DECIMI / 10;
+                int nuovoCosto = costoVerso[c] + passo;
+                if (costoVerso[v] < 0 || nuovoCosto < costoVerso[v]) {
+                    costoVerso[v] = nuovoCosto;
+                    direzione[v] = (byte) d; // da v si va verso c
+                    if (costo.costoCella(acqua[v], profondita[v], -1, -1) >= 0) {
+                        coda.inserisci(v, nuovoCosto);
+                    }
+                }
+            }
+        }
+        direzione[obiettivo] = CampoDiFlusso.NESSUNA;
+        return new CampoDiFlusso(obiettivo, costo, colonne, costoVerso, direzione, versione);
+    }
+
+    /* =========================== NOTIFICHE =========================== */
+
+    /**
+     * Se la cella cambia terreno invalida i campi in cui lei o una vicina
+     * era raggiungibile (e quelli ancora in calcolo).
+     */
+    @Override
+    public synchronized void territorioModificato(Territorio territorio) {
+        int c = territorio.getIndiceCella();
+        if (c < 0 || c >= numCelle) {
+            return;
+        }
+        boolean nuovaAcqua = territorio.isAcqua();
+        int nuovaProfondita = profonditaDi(territorio);
+        if (acqua[c] == nuovaAcqua && profondita[c] == nuovaProfondita) {
+            return;
+        }
+        acqua[c] = nuovaAcqua;
+        profondita[c] = nuovaProfondita;
+        for (Voce voce : voci.values()) {
+            if (voce.inCalcolo || (voce.pronto != null && toccato(voce.pronto, c))) {
+                voce.versione++;
+                invalidati++;
+                avvia(voce);
+            }
+        }
+    }
+
+    private boolean toccato(CampoDiFlusso campo, int c) {
+        if (campo.isRaggiungibile(c)) {
+            return true;
+        }
+        int r = c / colonne, col = c % colonne;
+        for (int d = 0; d < 4; d++) {
+            int nr = r + CampoDiFlusso.DELTA_RIGA[d], nc = col + CampoDiFlusso.DELTA_COLONNA[d];
+            if (nr >= 0 && nr < righe && nc >= 0 && nc < colonne && campo.isRaggiungibile(nr * colonne + nc)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int profonditaDi(Territorio t) {
+        return t instanceof TerritorioMarino ? ((TerritorioMarino) t).getProfonditaMedia() : 0;
+    }
+
+    /* =========================== STATISTICHE =========================== */
+
+    public synchronized long getCalcolati() {
+        return calcolati;
+    }
+
+    public synchronized long getInvalidati() {
+        return invalidati;
+    }
+
+    public synchronized long getRichieste() {
+        return richieste;
+    }
+
+    public synchronized long getRichiestePronte() {
+        return richiestePronte;
+    }
+
+    public synchronized int getNumCampi() {
+        return voci.size();
+    }
+
+    /**
+     * Stato di un campo nell'archivio.
+     */
+    private static final class Voce {
+
+        /**
+         * Chiave nella cache.
+         */
+        final Long chiave;
+
+        /**
+         * Cella obiettivo e funzione di costo.
+         */
+        final int obiettivo;
+        final CostoMovimento costo;
+
+        /**
+         * Versione richiesta (cresce a ogni invalidazione).
+         */
+        int versione;
+
+        /**
+         * Ultimo campo calcolato (può essere di una versione precedente).
+         */
+        CampoDiFlusso pronto;
+
+        /**
+         * true se un thread di lavoro sta calcolando il campo.
+         */
+        boolean inCalcolo;
+
+        Voce(Long chiave, int obiettivo, CostoMovimento costo) {
+            this.chiave = chiave;
+            this.obiettivo = obiettivo;
+            this.costo = costo;
+        }
+    }
+}
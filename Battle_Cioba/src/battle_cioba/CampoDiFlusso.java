@@ -0,0 +1,135 @@
+package battle_cioba;
+
+/**
+ * Campo di flusso verso una cella obiettivo: per ogni cella della mappa il
+ * costo per raggiungere l'obiettivo e la direzione del primo passo.
+ * È immutabile e condiviso da tutte le unità con lo stesso obiettivo e la
+ * stessa classe di movimento; quando il terreno cambia ne viene calcolato
+ * uno nuovo (vedi CampiDiFlusso).
+ */
+public class CampoDiFlusso {
+
+    /**
+     * Direzione delle celle da cui l'obiettivo non è raggiungibile
+     * (e dell'obiettivo stesso).
+     */
+    public static final byte NESSUNA = -1;
+
+    /**
+     * Spostamento di riga di ogni direzione: le prime quattro sono
+     * ortogonali (su, giù, sinistra, destra), le altre diagonali.
+     */
+    static final int[] DELTA_RIGA = {-1, 1, 0, 0, -1, -1, 1, 1};
+
+    /**
+     * Spostamento di colonna di ogni direzione.
+     */
+    static final int[] DELTA_COLONNA = {0, 0, -1, 1, -1, 1, -1, 1};
+
+    /**
+     * Cella obiettivo.
+     */
+    private final int obiettivo;
+
+    /**
+     * Funzione di costo con cui è stato calcolato il campo.
+     */
+    private final CostoMovimento costo;
+
+    /**
+     * Colonne della mappa (per passare da direzione a cella).
+     */
+    private final int colonne;
+
+    /**
+     * Costo per raggiungere l'obiettivo da ogni cella (-1 se irraggiungibile).
+     */
+    private final int[] costoVerso;
+
+    /**
+     * Direzione del primo passo da ogni cella (NESSUNA se non c'è).
+     */
+    private final byte[] direzione;
+
+    /**
+     * Versione del campo (cresce a ogni invalidazione).
+     */
+    private final int versione;
+
+    CampoDiFlusso(int obiettivo, CostoMovimento costo, int colonne, int[] costoVerso,
+            byte[] direzione, int versione) {
+        this.obiettivo = obiettivo;
+        this.costo = costo;
+        this.colonne = colonne;
+        this.costoVerso = costoVerso;
+        this.direzione = direzione;
+        this.versione = versione;
+    }
+
+    /**
+     * Restituisce la cella successiva verso l'obiettivo.
+     *
+     * @param cella cella corrente
+     * @return cella successiva, oppure -1 se l'obiettivo non è raggiungibile
+     *         (o la cella è l'obiettivo)
+     */
+    public int prossimaCella(int cella) {
+        int d = direzione[cella];
+        return d < 0 ? -1 : cella + DELTA_RIGA[d] * colonne + DELTA_COLONNA[d];
+    }
+
+    /**
+     * Spostamento di riga del primo passo (-1, 0 o 1).
+     *
+     * @param cella cella corrente
+     * @return componente verticale della direzione
+     */
+    public int getDirezioneRiga(int cella) {
+        int d = direzione[cella];
+        return d < 0 ? 0 : DELTA_RIGA[d];
+    }
+
+    /**
+     * Spostamento di colonna del primo passo (-1, 0 o 1).
+     *
+     * @param cella cella corrente
+     * @return componente orizzontale della direzione
+     */
+    public int getDirezioneColonna(int cella) {
+        int d = direzione[cella];
+        return d < 0 ? 0 : DELTA_COLONNA[d];
+    }
+
+    /* =========================== GETTER =========================== */
+
+    public int getObiettivo() {
+        return obiettivo;
+    }
+
+    public CostoMovimento getCostoMovimento() {
+        return costo;
+    }
+
+    public int getVersione() {
+        return versione;
+    }
+
+    /**
+     * Costo per raggiungere l'obiettivo da una cella.
+     *
+     * @param cella cella di partenza
+     * @return costo, oppure -1 se l'obiettivo non è raggiungibile
+     */
+    public int getCosto(int cella) {
+        return costoVerso[cella];
+    }
+
+    public boolean isRaggiungibile(int cella) {
+        return costoVerso[cella] >= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Campo di flusso verso la cella " + obiettivo + " (versione " + versione + ")";
+    }
+}
@@ -6,6 +6,11 @@ package battle_cioba;
  */
 public class Capitale extends Centro {
     
+    /**
+     * Stabilità sotto la quale la capitale è a rischio di ribellione.
+     */
+    public static final int SOGLIA_RIBELLIONE = 20;
+    
     /**
      * Livello di potere politico (da 1 a 10)
      */
@@ -51,6 +56,7 @@ public class Capitale extends Centro {
 
     public void setLivellopPolitico(int livellopPolitico) {
         this.livellopPolitico = Math.max(1, Math.min(10, livellopPolitico));
+        notificaModifica();
     }
 
     public Stato getStato() {
@@ -66,7 +72,11 @@ public class Capitale extends Centro {
     }
 
     public void setStabilitaPolitica(int stabilitaPolitica) {
-        this.stabilitaPolitica = Math.max(0, Math.min(100, stabilitaPolitica));
+        int nuova = Math.max(0, Math.min(100, stabilitaPolitica));
+        if (nuova != this.stabilitaPolitica) {
+            this.stabilitaPolitica = nuova;
+            notificaModifica();
+        }
     }
     
     /**
@@ -95,18 +105,31 @@ public class Capitale extends Centro {
         // Simulazione semplice: decisioni hanno effetti casuali sulla stabilità
         int effetto = (int) (Math.random() * 20) - 10; // Effetto tra -10 e +10
         
-        stabilitaPolitica = Math.max(0, Math.min(100, stabilitaPolitica + effetto));
-        
+        prendiDecisioneNazionale(decisione, effetto);
         return effetto;
     }
     
+    /**
+     * Applica una decisione politica il cui effetto è già stato calcolato
+     * (usato dal sistema Politica, che tira i dadi con il proprio generatore).
+     * 
+     * @param decisione Descrizione della decisione
+     * @param effetto Variazione della stabilità politica
+     * @return Variazione effettivamente applicata (dopo i limiti 0-100)
+     */
+    public int prendiDecisioneNazionale(String decisione, int effetto) {
+        int prima = stabilitaPolitica;
+        setStabilitaPolitica(stabilitaPolitica + effetto);
+        return stabilitaPolitica - prima;
+    }
+    
     /**
      * Verifica se la capitale è a rischio di ribellione.
      * 
      * @return true se la stabilità è sotto il 20%
      */
     public boolean aRischioDiRibellione() {
-        return stabilitaPolitica < 20;
+        return stabilitaPolitica < SOGLIA_RIBELLIONE;
     }
     
     @Override
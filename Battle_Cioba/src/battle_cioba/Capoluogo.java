@@ -52,6 +52,7 @@ public class Capoluogo extends Centro {
 
     public void setLivelloEconomico(int livelloEconomico) {
         this.livelloEconomico = Math.max(1, Math.min(10, livelloEconomico));
+        notificaModifica();
     }
 
     public int getLivelloCulturale() {
@@ -60,6 +61,7 @@ public class Capoluogo extends Centro {
 
     public void setLivelloCulturale(int livelloCulturale) {
         this.livelloCulturale = Math.max(1, Math.min(10, livelloCulturale));
+        notificaModifica();
     }
 
     public Regione getRegioneObj() {
@@ -109,6 +111,9 @@ public class Capoluogo extends Centro {
         // Applica l'incremento
         int vecchioLivello = livelloCulturale;
         livelloCulturale = Math.min(10, livelloCulturale + incremento);
+        if (livelloCulturale != vecchioLivello) {
+            notificaModifica();
+        }
         
         return livelloCulturale - vecchioLivello;
     }
@@ -0,0 +1,466 @@
+package battle_cioba;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Carta imprevisto: un evento che colpisce uno o più stati quando le sue
+ * condizioni sono vere. Le carte vengono lette da un file CSV e "compilate"
+ * una volta sola in oggetti Condizione ed Effetto, così quando una carta
+ * scatta non c'è nessun testo da interpretare.
+ * <p>
+ * Formato di una riga del file (le righe vuote o che iniziano con # sono ignorate):
+ * <pre>
+ * nome,ritardo,intervallo,durata,probabilita,bersaglio,condizioni,effetti,descrizione
+ * </pre>
+ * condizioni ed effetti sono elenchi di coppie chiave:valore separate da
+ * spazi (es. "tesoro_min:500 stabilita_max:60"), oppure "-" se vuoti.
+ */
+public class CartaImprevisto {
+
+    /**
+     * Numero di colonne di una riga del file.
+     */
+    private static final int NUM_COLONNE = 9;
+
+    /**
+     * A chi si applica una carta quando scatta.
+     */
+    public enum Bersaglio {
+        OGNI_STATO("Ogni stato"),
+        STATO_CASUALE("Stato casuale");
+
+        private final String nome;
+
+        Bersaglio(String nome) {
+            this.nome = nome;
+        }
+
+        public String getNome() {
+            return nome;
+        }
+    }
+
+    /**
+     * Condizione compilata su uno stato.
+     */
+    public interface Condizione {
+
+        boolean verifica(Stato stato, GestoreEventi eventi);
+    }
+
+    /**
+     * Effetto compilato su uno stato.
+     */
+    public interface Effetto {
+
+        void applica(Stato stato, GestoreEventi eventi);
+    }
+
+    /**
+     * Tipi di condizione riconosciuti nel file.
+     */
+    public enum TipoCondizione {
+        TESORO_MIN("tesoro_min"),
+        TESORO_MAX("tesoro_max"),
+        STABILITA_MIN("stabilita_min"),
+        STABILITA_MAX("stabilita_max"),
+        REGIONI_MIN("regioni_min"),
+        REGIONI_MAX("regioni_max"),
+        GUERRE_MIN("guerre_min"),
+        GIORNO_MIN("giorno_min");
+
+        private final String chiave;
+
+        TipoCondizione(String chiave) {
+            this.chiave = chiave;
+        }
+
+        public String getChiave() {
+            return chiave;
+        }
+
+        /**
+         * Crea la condizione con il valore indicato.
+         *
+         * @param v valore di soglia
+         * @return condizione compilata
+         */
+        public Condizione compila(int v) {
+            switch (this) {
+                case TESORO_MIN:
+                    return (s, e) -> e.getEconomia().getTesoro(s) >= v;
+                case TESORO_MAX:
+                    return (s, e) -> e.getEconomia().getTesoro(s) <= v;
+                case STABILITA_MIN:
+                    return (s, e) -> s.getCentroCapitale() != null && s.getCentroCapitale().getStabilitaPolitica() >= v;
+                case STABILITA_MAX:
+                    return (s, e) -> s.getCentroCapitale() != null && s.getCentroCapitale().getStabilitaPolitica() <= v;
+                case REGIONI_MIN:
+                    return (s, e) -> s.getRegioni().size() >= v;
+                case REGIONI_MAX:
+                    return (s, e) -> s.getRegioni().size() <= v;
+                case GUERRE_MIN:
+                    return (s, e) -> e.getDiplomazia() != null && e.getDiplomazia().getNumGuerre(s.getIndice()) >= v;
+                default:
+                    return (s, e) -> e.getGiorno() >= v;
+            }
+        }
+
+        static TipoCondizione perChiave(String chiave) {
+            for (TipoCondizione t : values()) {
+                if (t.chiave.equals(chiave)) {
+                    return t;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Tipi di effetto riconosciuti nel file.
+     */
+    public enum TipoEffetto {
+        /** Monete aggiunte (o tolte, fino a svuotare il tesoro). */
+        TESORO("tesoro"),
+        /** Variazione della stabilità politica della capitale. */
+        STABILITA("stabilita"),
+        /** Variazione del livello di difesa della capitale. */
+        DIFESA("difesa"),
+        /** Variazione percentuale dei civili di ogni territorio dello stato. */
+        POPOLAZIONE("popolazione"),
+        /** Rivoltosi aggiunti (o tolti) in ogni regione, in percentuale della sua popolazione. */
+        OPPOSIZIONE("opposizione"),
+        /** Variazione dell'opinione di tutti gli altri stati verso lo stato. */
+        OPINIONE("opinione");
+
+        private final String chiave;
+
+        TipoEffetto(String chiave) {
+            this.chiave = chiave;
+        }
+
+        public String getChiave() {
+            return chiave;
+        }
+
+        /**
+         * Crea l'effetto con il valore indicato.
+         *
+         * @param v intensità dell'effetto
+         * @return effetto compilato
+         */
+        public Effetto compila(int v) {
+            switch (this) {
+                case TESORO:
+                    return (s, e) -> {
+                        if (v >= 0) {
+                            e.getEconomia().accredita(s, v);
+                        } else {
+                            e.getEconomia().spendi(s, Math.min(-(long) v, e.getEconomia().getTesoro(s)));
+                        }
+                    };
+                case STABILITA:
+                    return (s, e) -> {
+                        Capitale c = s.getCentroCapitale();
+                        if (c != null) {
+                            c.setStabilitaPolitica(c.getStabilitaPolitica() + v);
+                        }
+                    };
+                case DIFESA:
+                    return (s, e) -> {
+                        Capitale c = s.getCentroCapitale();
+                        if (c != null) {
+                            c.setLivelloDifesa(c.getLivelloDifesa() + v);
+                        }
+                    };
+                case POPOLAZIONE:
+                    return (s, e) -> {
+                        for (Regione r : s.getRegioni()) {
+                            for (Territorio t : r.getTerritori()) {
+                                long civili = t.getNumCivili();
+                                long variazione = civili * v / 100;
+                                if (variazione != 0) {
+                                    t.setNumCivili(Math.max(0, civili + variazione));
+                                }
+                            }
+                        }
+                    };
+                case OPPOSIZIONE:
+                    return (s, e) -> {
+                        for (Regione r : s.getRegioni()) {
+                            long variazione = r.getAggregato().getPopolazione() * v / 100;
+                            long rivoltosi = Math.min(r.getAggregato().getPopolazione(), r.getRivoltosi() + variazione);
+                            r.setRivoltosi((int) Math.min(Integer.MAX_VALUE, Math.max(0, rivoltosi)));
+                        }
+                    };
+                default:
+                    return (s, e) -> {
+                        if (e.getDiplomazia() == null) {
+                            return;
+                        }
+                        for (Stato altro : e.getMondo().getStati()) {
+                            e.getDiplomazia().modificaOpinione(altro.getIndice(), s.getIndice(), v);
+                        }
+                    };
+            }
+        }
+
+        static TipoEffetto perChiave(String chiave) {
+            for (TipoEffetto t : values()) {
+                if (t.chiave.equals(chiave)) {
+                    return t;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Nome della carta (univoco nel mazzo).
+     */
+    private final String nome;
+
+    /**
+     * Testo mostrato quando la carta scatta.
+     */
+    private final String descrizione;
+
+    /**
+     * Giorni prima della prima estrazione.
+     */
+    private final int ritardo;
+
+    /**
+     * Giorni tra un'estrazione e la successiva (0 = una sola volta).
+     */
+    private final int intervallo;
+
+    /**
+     * Giorni di validità dalla prima estrazione (0 = senza scadenza).
+     */
+    private final int durata;
+
+    /**
+     * Probabilità in percentuale che la carta abbia effetto a ogni estrazione.
+     */
+    private final int probabilita;
+
+    /**
+     * Stati a cui si applica.
+     */
+    private final Bersaglio bersaglio;
+
+    /**
+     * Condizioni compilate (tutte devono essere vere).
+     */
+    private final Condizione[] condizioni;
+
+    /**
+     * Effetti compilati, applicati in ordine.
+     */
+    private final Effetto[] effetti;
+
+    /**
+     * Costruttore principale.
+     *
+     * @param nome nome della carta
+     * @param descrizione testo della carta
+     * @param ritardo giorni prima della prima estrazione
+     * @param intervallo giorni tra le estrazioni (0 = una sola volta)
+     * @param durata giorni di validità (0 = senza scadenza)
+     * @param probabilita probabilità in percentuale a ogni estrazione
+     * @param bersaglio stati a cui si applica
+     * @param condizioni condizioni compilate
+     * @param effetti effetti compilati
+     */
+    public CartaImprevisto(String nome, String descrizione, int ritardo, int intervallo, int durata,
+            int probabilita, Bersaglio bersaglio, Condizione[] condizioni, Effetto[] effetti) {
+        this.nome = nome;
+        this.descrizione = descrizione;
+        this.ritardo = Math.max(0, ritardo);
+        this.intervallo = Math.max(0, intervallo);
+        this.durata = Math.max(0, durata);
+        this.probabilita = Math.max(0, Math.min(100, probabilita));
+        this.bersaglio = bersaglio;
+        this.condizioni = condizioni.clone();
+        this.effetti = effetti.clone();
+    }
+
+    /**
+     * Verifica tutte le condizioni della carta su uno stato.
+     *
+     * @param stato stato candidato
+     * @param eventi gestore degli eventi (accesso ai sistemi)
+     * @return true se la carta può colpire lo stato
+     */
+    public boolean verifica(Stato stato, GestoreEventi eventi) {
+        for (Condizione c : condizioni) {
+            if (!c.verifica(stato, eventi)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applica tutti gli effetti della carta a uno stato.
+     *
+     * @param stato stato colpito
+     * @param eventi gestore degli eventi (accesso ai sistemi)
+     */
+    public void applica(Stato stato, GestoreEventi eventi) {
+        for (Effetto e : effetti) {
+            e.applica(stato, eventi);
+        }
+    }
+
+    /* =========================== CARICAMENTO =========================== */
+
+    /**
+     * Legge e compila le carte di un file CSV.
+     *
+     * @param percorsoFile percorso del file
+     * @return carte lette, nell'ordine del file
+     * @throws IOException se il file non è leggibile o una riga non è valida
+     */
+    public static List<CartaImprevisto> carica(String percorsoFile) throws IOException {
+        List<CartaImprevisto> carte = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(percorsoFile))) {
+            String riga;
+            int numero = 0;
+            while ((riga = br.readLine()) != null) {
+                numero++;
+                String pulita = riga.trim();
+                if (pulita.isEmpty() || pulita.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    carte.add(compila(pulita));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Riga " + numero + " di " + percorsoFile + ": " + e.getMessage());
+                }
+            }
+        }
+        return carte;
+    }
+
+    /**
+     * Compila una riga del file in una carta.
+     *
+     * @param riga riga del file
+     * @return carta compilata
+     * @throws IllegalArgumentException se la riga non è valida
+     */
+    public static CartaImprevisto compila(String riga) {
+        String[] colonne = riga.split(",", NUM_COLONNE);
+        if (colonne.length < NUM_COLONNE) {
+            throw new IllegalArgumentException("attese " + NUM_COLONNE + " colonne, trovate " + colonne.length);
+        }
+        String nome = colonne[0].trim();
+        if (nome.isEmpty()) {
+            throw new IllegalArgumentException("nome della carta mancante");
+        }
+        Bersaglio bersaglio;
+        try {
+            bersaglio = Bersaglio.valueOf(colonne[5].trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("bersaglio sconosciuto '" + colonne[5].trim() + "'");
+        }
+
+        List<Condizione> condizioni = new ArrayList<>();
+        for (String[] coppia : coppie(colonne[6])) {
+            TipoCondizione tipo = TipoCondizione.perChiave(coppia[0]);
+            if (tipo == null) {
+                throw new IllegalArgumentException("condizione sconosciuta '" + coppia[0] + "'");
+            }
+            condizioni.add(tipo.compila(intero(coppia[1], coppia[0])));
+        }
+        List<Effetto> effetti = new ArrayList<>();
+        for (String[] coppia : coppie(colonne[7])) {
+            TipoEffetto tipo = TipoEffetto.perChiave(coppia[0]);
+            if (tipo == null) {
+                throw new IllegalArgumentException("effetto sconosciuto '" + coppia[0] + "'");
+            }
+            effetti.add(tipo.compila(intero(coppia[1], coppia[0])));
+        }
+
+        return new CartaImprevisto(nome, colonne[8].trim(),
+                intero(colonne[1], "ritardo"), intero(colonne[2], "intervallo"), intero(colonne[3], "durata"),
+                intero(colonne[4], "probabilita"), bersaglio,
+                condizioni.toArray(new Condizione[0]), effetti.toArray(new Effetto[0]));
+    }
+
+    /**
+     * Divide un elenco "chiave:valore chiave:valore" (o "-") in coppie.
+     */
+    private static List<String[]> coppie(String elenco) {
+        List<String[]> coppie = new ArrayList<>();
+        String testo = elenco.trim();
+        if (testo.isEmpty() || testo.equals("-")) {
+            return coppie;
+        }
+        for (String voce : testo.split("\\s+")) {
+            int due = voce.indexOf(':');
+            if (due <= 0 || due == voce.length() - 1) {
+                throw new IllegalArgumentException("voce non valida '" + voce + "' (atteso chiave:valore)");
+            }
+            coppie.add(new String[]{voce.substring(0, due).toLowerCase(), voce.substring(due + 1)});
+        }
+        return coppie;
+    }
+
+    private static int intero(String testo, String campo) {
+        try {
+            return Integer.parseInt(testo.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("valore non numerico per " + campo + ": '" + testo.trim() + "'");
+        }
+    }
+
+    /* =========================== GETTER =========================== */
+
+    public String getNome() {
+        return nome;
+    }
+
+    public String getDescrizione() {
+        return descrizione;
+    }
+
+    public int getRitardo() {
+        return ritardo;
+    }
+
+    public int getIntervallo() {
+        return intervallo;
+    }
+
+    public int getDurata() {
+        return durata;
+    }
+
+    public int getProbabilita() {
+        return probabilita;
+    }
+
+    public Bersaglio getBersaglio() {
+        return bersaglio;
+    }
+
+    public int getNumCondizioni() {
+        return condizioni.length;
+    }
+
+    public int getNumEffetti() {
+        return effetti.length;
+    }
+
+    @Override
+    public String toString() {
+        return nome + " (" + bersaglio.getNome() + ", " + probabilita + "%)";
+    }
+}
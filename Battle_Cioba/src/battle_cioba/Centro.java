@@ -71,6 +71,11 @@ public abstract class Centro {
      */
     private List<String> risorseProdotte;
     
+    /**
+     * Osservatore notificato quando cambiano i dati del centro (impostato dal Mondo).
+     */
+    private OsservatoreMondo osservatore;
+    
     /**
      * Costruttore base per tutti i centri.
      * 
@@ -158,6 +163,7 @@ public abstract class Centro {
 
     public void setImportanzaStrategica(int importanzaStrategica) {
         this.importanzaStrategica = Math.max(1, Math.min(10, importanzaStrategica));
+        notificaModifica();
     }
 
     public int getLivelloDifesa() {
@@ -166,6 +172,7 @@ public abstract class Centro {
 
     public void setLivelloDifesa(int livelloDifesa) {
         this.livelloDifesa = Math.max(1, Math.min(10, livelloDifesa));
+        notificaModifica();
     }
 
     public long getPopolazione() {
@@ -174,6 +181,7 @@ public abstract class Centro {
 
     public void setPopolazione(long popolazione) {
         this.popolazione = popolazione;
+        notificaModifica();
     }
 
     public int getCoordinataX() {
@@ -207,6 +215,7 @@ public abstract class Centro {
 
     public void setStatoPadrone(String statoPadrone) {
         this.statoPadrone = statoPadrone;
+        notificaModifica();
     }
 
     public String getRegione() {
@@ -217,6 +226,24 @@ public abstract class Centro {
         this.regione = regione;
     }
     
+    OsservatoreMondo getOsservatore() {
+        return osservatore;
+    }
+
+    void setOsservatore(OsservatoreMondo osservatore) {
+        this.osservatore = osservatore;
+    }
+    
+    /**
+     * Notifica all'osservatore che un dato del centro è cambiato.
+     * Le sottoclassi lo chiamano nei setter dei valori che influenzano la simulazione.
+     */
+    protected void notificaModifica() {
+        if (osservatore != null) {
+            osservatore.centroModificato(this);
+        }
+    }
+    
     public List<String> getRisorseProdotte() {
         return Collections.unmodifiableList(risorseProdotte);
     }
@@ -0,0 +1,82 @@
+package battle_cioba;
+
+/**
+ * Classi di movimento standard, con i relativi costi per cella.
+ * Attraversare territori di un altro stato costa di più; per questo i
+ * percorsi vanno ricalcolati quando cambia la proprietà delle celle.
+ */
+public enum ClasseMovimento implements CostoMovimento {
+
+    /**
+     * Eserciti di terra: solo celle terrestri.
+     */
+    TERRESTRE {
+        @Override
+        public int costoCella(boolean acqua, int profondita, int proprietario, int statoUnita) {
+            return acqua ? IMPRATICABILE : COSTO_BASE + costoStraniero(proprietario, statoUnita);
+        }
+    },
+
+    /**
+     * Flotte: solo celle marine; i fondali bassi rallentano.
+     */
+    NAVALE {
+        @Override
+        public int costoCella(boolean acqua, int profondita, int proprietario, int statoUnita) {
+            if (!acqua) {
+                return IMPRATICABILE;
+            }
+            int costo = profondita < PROFONDITA_BASSA ? COSTO_BASE * 2
+                    : profondita < PROFONDITA_MEDIA ? COSTO_BASE + COSTO_BASE / 5 : COSTO_BASE;
+            return costo + costoStraniero(proprietario, statoUnita);
+        }
+    },
+
+    /**
+     * Truppe anfibie: ovunque, ma il mare costa come un imbarco.
+     */
+    ANFIBIO {
+        @Override
+        public int costoCella(boolean acqua, int profondita, int proprietario, int statoUnita) {
+            int costo = acqua ? COSTO_BASE * 3 : COSTO_BASE;
+            return costo + costoStraniero(proprietario, statoUnita);
+        }
+    },
+
+    /**
+     * Aviazione: ovunque allo stesso costo.
+     */
+    AEREO {
+        @Override
+        public int costoCella(boolean acqua, int profondita, int proprietario, int statoUnita) {
+            return COSTO_BASE;
+        }
+    };
+
+    /**
+     * Costo di una cella ordinaria.
+     */
+    public static final int COSTO_BASE = 10;
+
+    /**
+     * Sotto questa profondità (metri) il mare è considerato basso.
+     */
+    public static final int PROFONDITA_BASSA = 20;
+
+    /**
+     * Sotto questa profondità (metri) il mare è considerato medio.
+     */
+    public static final int PROFONDITA_MEDIA = 100;
+
+    @Override
+    public int costoMinimo() {
+        return COSTO_BASE;
+    }
+
+    /**
+     * Sovrapprezzo per le celle possedute da un altro stato.
+     */
+    private static int costoStraniero(int proprietario, int statoUnita) {
+        return proprietario >= 0 && proprietario != statoUnita ? COSTO_BASE / 2 : 0;
+    }
+}
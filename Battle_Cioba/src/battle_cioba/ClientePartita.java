@@ -0,0 +1,387 @@
+package battle_cioba;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Client di un ServerPartita: riceve istantanea e delta e tiene una copia
+ * del mondo da cui disegnare (proprietari, civili e centri delle celle,
+ * regioni, aggregati degli stati), senza simulare nulla.
+ * <p>
+ * Un thread legge i frame dal socket e li applica al modello; i metodi di
+ * lettura sono sincronizzati con l'applicazione, quindi chi disegna vede
+ * sempre un frame applicato per intero.
+ */
+public class ClientePartita implements Closeable {
+
+    /**
+     * Copia di una regione.
+     */
+    public static final class RegioneReplicata {
+
+        private final long id;
+        private String nome;
+        private int stato, consensi, rivoltosi;
+
+        private RegioneReplicata(long id) {
+            this.id = id;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getNome() {
+            return nome;
+        }
+
+        public int getStato() {
+            return stato;
+        }
+
+        public int getConsensi() {
+            return consensi;
+        }
+
+        public int getRivoltosi() {
+            return rivoltosi;
+        }
+    }
+
+    /**
+     * Connessione e thread di lettura.
+     */
+    private final Socket socket;
+    private final Thread thread;
+    private volatile boolean attivo = true;
+
+    /**
+     * Dimensioni della mappa e celle (indice = riga * colonne + colonna).
+     */
+    private int righe, colonne;
+    private int[] proprietario = new int[0];
+    private long[] civili = new long[0];
+    private byte[] centro = new byte[0];
+
+    /**
+     * Stati per indice.
+     */
+    private boolean[] esiste = new boolean[0];
+    private String[] nomi = new String[0];
+    private int[] territori = new int[0];
+    private long[] popolazione = new long[0];
+    private long[] tesoro = new long[0];
+
+    /**
+     * Regioni per id.
+     */
+    private final Map<Long, RegioneReplicata> regioni = new HashMap<>();
+
+    /**
+     * Giorno dell'ultimo frame applicato (-1 prima dell'istantanea).
+     */
+    private long giorno = -1;
+
+    /**
+     * Statistiche.
+     */
+    private long byteRicevuti, frameRicevuti, istantanee;
+
+    /**
+     * Errore che ha chiuso la connessione, se c'è.
+     */
+    private volatile IOException errore;
+
+    /**
+     * Si collega al server e inizia a ricevere.
+     *
+     * @param host indirizzo del server
+     * @param porta porta del server
+     * @throws IOException se la connessione fallisce
+     */
+    public ClientePartita(String host, int porta) throws IOException {
+        this.socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(host, porta));
+        this.thread = new Thread(this::ricevi, "Client partita");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void ricevi() {
+        try (DataInputStream ingresso = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16))) {
+            while (attivo) {
+                int lunghezza = ingresso.readInt();
+                byte[] dati = new byte[lunghezza];
+                ingresso.readFully(dati);
+                applica(dati);
+            }
+        } catch (EOFException e) {
+            // Il server ha chiuso
+        } catch (IOException e) {
+            if (attivo) {
+                errore = e;
+            }
+        } finally {
+            synchronized (this) {
+                attivo = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Applica un frame al modello.
+     */
+    private synchronized void applica(byte[] dati) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(dati));
+        byte tipo = in.readByte();
+        long g = RegistrazionePartita.leggiVarint(in);
+        if (tipo == ServerPartita.ISTANTANEA) {
+            righe = (int) RegistrazionePartita.leggiVarint(in);
+            colonne = (int) RegistrazionePartita.leggiVarint(in);
+            int n = righe * colonne;
+            proprietario = new int[n];
+            civili = new long[n];
+            centro = new byte[n];
+            Arrays.fill(esiste, false);
+            regioni.clear();
+            istantanee++;
+        } else if (tipo != ServerPartita.DELTA) {
+            throw new IOException("Frame sconosciuto " + tipo);
+        }
+        long numStati = RegistrazionePartita.leggiVarint(in);
+        for (long k = 0; k < numStati; k++) {
+            int s = (int) RegistrazionePartita.leggiVarint(in);
+            int flag = in.readByte();
+            assicuraStato(s);
+            if ((flag & ServerPartita.CON_NOME) != 0) {
+                nomi[s] = in.readUTF();
+            }
+            esiste[s] = (flag & ServerPartita.ESISTE) != 0;
+            territori[s] = (int) RegistrazionePartita.leggiVarint(in);
+            popolazione[s] = RegistrazionePartita.leggiVarint(in);
+            tesoro[s] = RegistrazionePartita.deZigZag(RegistrazionePartita.leggiVarint(in));
+        }
+        long numRegioni = RegistrazionePartita.leggiVarint(in);
+        for (long k = 0; k < numRegioni; k++) {
+            long id = RegistrazionePartita.leggiVarint(in);
+            int flag = in.readByte();
+            RegioneReplicata r = regioni.computeIfAbsent(id, RegioneReplicata::new);
+            if ((flag & ServerPartita.CON_NOME) != 0) {
+                r.nome = in.readUTF();
+            }
+            r.stato = (int) RegistrazionePartita.deZigZag(RegistrazionePartita.leggiVarint(in));
+            r.consensi = (int) RegistrazionePartita.deZigZag(RegistrazionePartita.leggiVarint(in));
+            r.rivoltosi = (int) RegistrazionePartita.deZigZag(RegistrazionePartita.leggiVarint(in));
+            if ((flag & ServerPartita.RIMOSSA) != 0) {
+                regioni.remove(id);
+            }
+        }
+        long numCelle = RegistrazionePartita.leggiVarint(in);
+        int c = -1;
+        for (long k = 0; k < numCelle; k++) {
+            c += (int) RegistrazionePartita.leggiVarint(in);
+            proprietario[c] = (int) RegistrazionePartita.deZigZag(RegistrazionePartita.leggiVarint(in));
+            civili[c] = RegistrazionePartita.leggiVarint(in);
+            centro[c] = (byte) RegistrazionePartita.deZigZag(RegistrazionePartita.leggiVarint(in));
+        }
+        giorno = g;
+        byteRicevuti += dati.length + Integer.BYTES;
+        frameRicevuti++;
+        notifyAll();
+    }
+
+    private void assicuraStato(int s) {
+        if (s >= esiste.length) {
+            int n = Math.max(s + 1, esiste.length * 2);
+            esiste = Arrays.copyOf(esiste, n);
+            nomi = Arrays.copyOf(nomi, n);
+            territori = Arrays.copyOf(territori, n);
+            popolazione = Arrays.copyOf(popolazione, n);
+            tesoro = Arrays.copyOf(tesoro, n);
+        }
+    }
+
+    /**
+     * Aspetta che il modello arrivi almeno al giorno indicato.
+     *
+     * @param giornoAtteso giorno da raggiungere
+     * @param timeoutMs attesa massima in millisecondi
+     * @return true se il giorno è stato raggiunto
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    public synchronized boolean attendiGiorno(long giornoAtteso, long timeoutMs) throws InterruptedException {
+        long scadenza = System.currentTimeMillis() + timeoutMs;
+        while (giorno < giornoAtteso && attivo) {
+            long resta = scadenza - System.currentTimeMillis();
+            if (resta <= 0) {
+                return false;
+            }
+            wait(resta);
+        }
+        return giorno >= giornoAtteso;
+    }
+
+    /**
+     * Confronta la copia con il mondo del server (stesso processo, per le
+     * prove in loopback). Il mondo va letto fermo, tra un giorno e l'altro.
+     *
+     * @param partita partita servita
+     * @return numero di celle, stati e regioni diversi
+     */
+    synchronized int contaDifferenze(Partita partita) {
+        Mondo mondo = partita.getMondo();
+        int diverse = 0;
+        synchronized (mondo) {
+            for (int c = 0; c < proprietario.length; c++) {
+                Territorio t = mondo.getTerritorio(c);
+                Centro ct = t != null ? t.getCentro() : null;
+                if (proprietario[c] != (t != null ? mondo.indiceStato(t.getStatoPadrone()) : -1)
+                        || civili[c] != (t != null ? t.getNumCivili() : 0)
+                        || centro[c] != (ct != null ? ct.getTipo().ordinal() : -1)) {
+                    diverse++;
+                }
+            }
+            int numRegioni = 0;
+            for (int s = 0; s < mondo.getCapacitaStati(); s++) {
+                Stato stato = mondo.getStatoPerIndice(s);
+                if (stato == null) {
+                    diverse += s < esiste.length && esiste[s] ? 1 : 0;
+                    continue;
+                }
+                if (s >= esiste.length || !esiste[s] || !stato.getNome().equals(nomi[s])
+                        || territori[s] != stato.getAggregato().getTerritoriTotali()
+                        || popolazione[s] != stato.getAggregato().getPopolazione()
+                        || tesoro[s] != partita.getEconomia().getTesoro(stato)) {
+                    diverse++;
+                }
+                for (Regione r : stato.getRegioni()) {
+                    RegioneReplicata copia = regioni.get(r.getId());
+                    numRegioni++;
+                    if (copia == null || copia.stato != s || copia.consensi != r.getConsensi()
+                            || copia.rivoltosi != r.getRivoltosi() || !r.getNome().equals(copia.nome)) {
+                        diverse++;
+                    }
+                }
+            }
+            diverse += Math.abs(numRegioni - regioni.size());
+        }
+        return diverse;
+    }
+
+    /* =========================== LETTURA DEL MODELLO =========================== */
+
+    public synchronized long getGiorno() {
+        return giorno;
+    }
+
+    public synchronized int getRighe() {
+        return righe;
+    }
+
+    public synchronized int getColonne() {
+        return colonne;
+    }
+
+    /**
+     * Proprietario di una cella.
+     *
+     * @param cella indice di cella
+     * @return indice dello stato, -1 se nessuno
+     */
+    public synchronized int getProprietario(int cella) {
+        return proprietario[cella];
+    }
+
+    public synchronized long getCivili(int cella) {
+        return civili[cella];
+    }
+
+    /**
+     * Centro di una cella.
+     *
+     * @param cella indice di cella
+     * @return tipo del centro, null se non c'è
+     */
+    public synchronized Centro.TipoCentro getTipoCentro(int cella) {
+        return centro[cella] >= 0 ? Centro.TipoCentro.values()[centro[cella]] : null;
+    }
+
+    /**
+     * Copia dei proprietari di tutte le celle, per disegnare la mappa in una volta.
+     *
+     * @param destinazione array da riempire (riallocato se non basta)
+     * @return proprietari per cella
+     */
+    public synchronized int[] copiaProprietari(int[] destinazione) {
+        if (destinazione == null || destinazione.length < proprietario.length) {
+            destinazione = new int[proprietario.length];
+        }
+        System.arraycopy(proprietario, 0, destinazione, 0, proprietario.length);
+        return destinazione;
+    }
+
+    public synchronized boolean isStatoEsistente(int stato) {
+        return stato >= 0 && stato < esiste.length && esiste[stato];
+    }
+
+    public synchronized String getNomeStato(int stato) {
+        return stato >= 0 && stato < nomi.length ? nomi[stato] : null;
+    }
+
+    public synchronized int getTerritori(int stato) {
+        return territori[stato];
+    }
+
+    public synchronized long getPopolazione(int stato) {
+        return popolazione[stato];
+    }
+
+    public synchronized long getTesoro(int stato) {
+        return tesoro[stato];
+    }
+
+    public synchronized int getNumRegioni() {
+        return regioni.size();
+    }
+
+    public synchronized RegioneReplicata getRegione(long id) {
+        return regioni.get(id);
+    }
+
+    public synchronized long getByteRicevuti() {
+        return byteRicevuti;
+    }
+
+    public synchronized long getFrameRicevuti() {
+        return frameRicevuti;
+    }
+
+    public synchronized long getIstantanee() {
+        return istantanee;
+    }
+
+    public boolean isCollegato() {
+        return attivo;
+    }
+
+    public IOException getErrore() {
+        return errore;
+    }
+
+    @Override
+    public void close() throws IOException {
+        attivo = false;
+        socket.close();
+    }
+}
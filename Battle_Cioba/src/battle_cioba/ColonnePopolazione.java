@@ -0,0 +1,72 @@
+package battle_cioba;
+
+/**
+ * Dati del modello di popolazione in forma colonnare: un array primitivo
+ * per grandezza, indicizzato per cella. I kernel scorrono gli array in
+ * sequenza, senza toccare gli oggetti Territorio.
+ */
+final class ColonnePopolazione {
+
+    /**
+     * Frazione delle perdite di guerra che resta attiva il giorno dopo.
+     */
+    static final float DECADIMENTO_PERDITE = 0.9f;
+
+    /**
+     * Numero di celle.
+     */
+    final int dimensione;
+
+    /**
+     * Civili di ogni cella.
+     */
+    final long[] civili;
+
+    /**
+     * Parte frazionaria della crescita non ancora diventata un abitante:
+     * senza di essa le celle piccole, che crescono meno di un abitante al
+     * giorno, resterebbero ferme per sempre.
+     */
+    final float[] resto;
+
+    /**
+     * Tasso di crescita giornaliero (0 per le celle d'acqua).
+     */
+    final float[] crescita;
+
+    /**
+     * Inverso della capacità della cella (0 = nessun limite).
+     */
+    final float[] inversoCapacita;
+
+    /**
+     * Frazione di civili persa ogni giorno per la guerra; si riduce di
+     * DECADIMENTO_PERDITE a ogni passo.
+     */
+    final float[] perdite;
+
+    ColonnePopolazione(int dimensione) {
+        this.dimensione = dimensione;
+        this.civili = new long[dimensione];
+        this.resto = new float[dimensione];
+        this.crescita = new float[dimensione];
+        this.inversoCapacita = new float[dimensione];
+        this.perdite = new float[dimensione];
+    }
+
+    /**
+     * Passo di una cella: crescita logistica, perdite di guerra e resto
+     * frazionario. È il riferimento di tutti i kernel, che devono eseguire
+     * le stesse operazioni nello stesso ordine per ottenere gli stessi valori.
+     */
+    void avanzaCella(int i) {
+        double n = civili[i];
+        double totale = n + n * crescita[i] * (1.0 - n * inversoCapacita[i])
+                - n * perdite[i] + resto[i];
+        totale = Math.max(0.0, totale);
+        long nuovo = (long) totale;
+        civili[i] = nuovo;
+        resto[i] = (float) (totale - nuovo);
+        perdite[i] = perdite[i] * DECADIMENTO_PERDITE;
+    }
+}
@@ -0,0 +1,109 @@
+package battle_cioba;
+
+/**
+ * Comando prodotto da un controllore dell'intelligenza artificiale.
+ * I controllori non toccano il mondo: restituiscono lotti di comandi che la
+ * fase IntelligenzaArtificiale applica in serie, verificando che siano
+ * ancora validi. I riferimenti sono celle e indici, non oggetti, così un
+ * comando resta leggibile anche se il mondo nel frattempo è cambiato.
+ */
+public class ComandoAI {
+
+    /**
+     * Tipi di comando.
+     */
+    public enum Tipo {
+        /** Una base attacca un centro nemico. */
+        ATTACCA_CON_BASE,
+        /** Un esercito riceve l'ordine di attaccare un centro nemico. */
+        ATTACCA_CON_ESERCITO,
+        /** Una base recluta un esercito. */
+        RECLUTA,
+        /** Il tesoro finanzia la difesa di un centro. */
+        INVESTI,
+        /** Lo stato acquista un territorio di nessuno adiacente ai suoi confini. */
+        ESPANDI,
+        /** Proposta di alleanza a un altro stato. */
+        PROPONI_ALLEANZA,
+        /** Dichiarazione di guerra a un altro stato. */
+        DICHIARA_GUERRA,
+        /** Pace firmata con uno stato in guerra. */
+        FIRMA_PACE,
+        /** Uscita dall'alleanza di cui lo stato fa parte. */
+        LASCIA_ALLEANZA
+    }
+
+    /**
+     * Tipo del comando.
+     */
+    private final Tipo tipo;
+
+    /**
+     * Indice dello stato che dà il comando.
+     */
+    private final int stato;
+
+    /**
+     * Cella di origine (base, centro da potenziare) oppure indice
+     * dell'esercito per ATTACCA_CON_ESERCITO (-1 se non serve).
+     */
+    private final int origine;
+
+    /**
+     * Cella obiettivo; per RECLUTA l'ordinale del TipoEsercito, per i
+     * comandi diplomatici l'indice dell'altro stato.
+     */
+    private final int obiettivo;
+
+    /**
+     * Quantità: truppe da reclutare, importo da spendere (INVESTI, ESPANDI),
+     * generazione dell'esercito (ATTACCA_CON_ESERCITO).
+     */
+    private final int quantita;
+
+    /**
+     * Utilità stimata dal controllore (serve solo per statistiche e debug).
+     */
+    private final int utilita;
+
+    public ComandoAI(Tipo tipo, int stato, int origine, int obiettivo, int quantita, int utilita) {
+        this.tipo = tipo;
+        this.stato = stato;
+        this.origine = origine;
+        this.obiettivo = obiettivo;
+        this.quantita = quantita;
+        this.utilita = utilita;
+    }
+
+    /* =========================== GETTER =========================== */
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    public int getStato() {
+        return stato;
+    }
+
+    public int getOrigine() {
+        return origine;
+    }
+
+    public int getObiettivo() {
+        return obiettivo;
+    }
+
+    public int getQuantita() {
+        return quantita;
+    }
+
+    public int getUtilita() {
+        return utilita;
+    }
+
+    @Override
+    public String toString() {
+        return tipo + " [stato " + stato + ", origine " + origine + ", obiettivo " + obiettivo
+                + ", quantità " + quantita + ", utilità " + utilita + "]";
+    }
+}
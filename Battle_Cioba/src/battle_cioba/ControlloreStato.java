@@ -0,0 +1,511 @@
+package battle_cioba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Controllore dell'intelligenza artificiale di uno stato.
+ * <p>
+ * Ogni giorno legge l'IstantaneaMondo (senza toccare il mondo), genera le
+ * mosse candidate (espandersi, attaccare, reclutare, investire, cercare
+ * alleati), tiene le più promettenti e cerca la combinazione migliore che
+ * rispetti le risorse disponibili: tesoro, una sola azione per base e per
+ * esercito, rendimento dimezzato per più attacchi allo stesso obiettivo.
+ * <p>
+ * La ricerca è ad approfondimento iterativo fino alla profondità del livello
+ * di difficoltà e si ferma alla scadenza: restituisce sempre il piano
+ * migliore trovato fino a quel momento.
+ * <p>
+ * Ai livelli strategici, quando l'istantanea porta un nuovo StatoSimulazione,
+ * il controllore spende metà del budget in una ricerca Monte Carlo sui turni
+ * successivi e favorisce gli attacchi vicini alla regione che ne risulta.
+ */
+public class ControlloreStato {
+
+    /**
+     * Spesa per alzare di un punto la difesa di un centro (moltiplicata per il livello raggiunto).
+     */
+    public static final int COSTO_DIFESA = 500;
+
+    /**
+     * Spesa per acquistare un territorio di nessuno.
+     */
+    public static final int COSTO_ESPANSIONE = 200;
+
+    /**
+     * Truppe minime in una base perché recluti un esercito.
+     */
+    public static final int TRUPPE_MINIME_RECLUTAMENTO = 1000;
+
+    /**
+     * Distanza massima (in celle) tra un esercito fermo e il suo obiettivo.
+     */
+    public static final int PORTATA_ESERCITI = 40;
+
+    /**
+     * Candidate tenute per ogni livello di profondità.
+     */
+    private static final int CANDIDATE_PER_LIVELLO = 8;
+
+    /**
+     * Ogni quanti nodi della ricerca si controlla il tempo.
+     */
+    private static final int CONTROLLO_TEMPO = 64;
+
+    /**
+     * Distanza (in celle) dal capoluogo dell'obiettivo strategico entro cui un attacco riceve il bonus.
+     */
+    private static final int RAGGIO_STRATEGICO = 12;
+
+    /**
+     * Utilità aggiunta agli attacchi verso l'obiettivo strategico.
+     */
+    private static final int BONUS_STRATEGICO = 8;
+
+    /**
+     * Utilità massima aggiunta a una cella su cui lo stato prevale per influenza.
+     */
+    private static final int BONUS_INFLUENZA = 6;
+
+    private static final int CAPITALE = Centro.TipoCentro.CAPITALE.ordinal();
+    private static final int CAPOLUOGO = Centro.TipoCentro.CAPOLUOGO.ordinal();
+
+    /**
+     * Indice dello stato controllato.
+     */
+    private final int stato;
+
+    /**
+     * Livello di difficoltà.
+     */
+    private volatile LivelloDifficolta livello;
+
+    /* ---------- candidate del giorno corrente ---------- */
+
+    /**
+     * Mosse candidate, ordinate per utilità decrescente.
+     */
+    private final List<Candidata> candidate;
+
+    /**
+     * Piano in costruzione e piano migliore (indici nelle candidate).
+     */
+    private int[] piano = new int[8], migliore = new int[8];
+    private int lunghezzaMigliore, valoreMigliore;
+
+    /**
+     * Scadenza della decisione corrente e contatore dei nodi.
+     */
+    private long scadenza;
+    private long nodi;
+    private boolean scaduto;
+
+    /**
+     * Statistiche dell'ultima decisione.
+     */
+    private volatile long ultimaDurataNs, ultimiNodi;
+    private volatile int ultimaProfondita;
+
+    /**
+     * Ricerca Monte Carlo (creata al primo uso, a un solo thread).
+     */
+    private RicercaMonteCarlo ricercaStrategica;
+
+    /**
+     * Stato di simulazione già analizzato e cella obiettivo che ne è risultata (-1 nessuna).
+     */
+    private StatoSimulazione simulazioneAnalizzata;
+    private volatile int obiettivoStrategico = -1;
+
+    /**
+     * Costruttore principale.
+     *
+     * @param stato indice dello stato controllato
+     * @param livello livello di difficoltà
+     */
+    public ControlloreStato(int stato, LivelloDifficolta livello) {
+        this.stato = stato;
+        this.livello = livello;
+        this.candidate = new ArrayList<>();
+    }
+
+    /* =========================== DECISIONE =========================== */
+
+    /**
+     * Decide i comandi del giorno. Non modifica il mondo né l'istantanea.
+     *
+     * @param ist fotografia del mondo
+     * @param scadenzaNs istante (System.nanoTime) entro cui rispondere
+     * @return comandi da applicare, in ordine
+     */
+    public List<ComandoAI> decidi(IstantaneaMondo ist, long scadenzaNs) {
+        long inizio = System.nanoTime();
+        this.scadenza = scadenzaNs;
+        this.nodi = 0;
+        this.scaduto = false;
+        candidate.clear();
+        List<ComandoAI> comandi = new ArrayList<>();
+        if (ist.isStatoEsistente(stato)) {
+            int profondita = livello.getProfondita();
+            aggiornaObiettivoStrategico(ist, inizio + (scadenzaNs - inizio) / 2);
+            generaCandidate(ist);
+            candidate.sort((a, b) -> Integer.compare(b.utilita, a.utilita));
+            int limite = CANDIDATE_PER_LIVELLO * profondita;
+            while (candidate.size() > limite) {
+                candidate.remove(candidate.size() - 1);
+            }
+            if (piano.length < profondita) {
+                piano = new int[profondita];
+                migliore = new int[profondita];
+            }
+            lunghezzaMigliore = 0;
+            valoreMigliore = 0;
+            int completata = 0;
+            for (int d = 1; d <= profondita && !scaduto; d++) {
+                cerca(0, 0, 0, d, ist.getTesoro(stato));
+                if (!scaduto) {
+                    completata = d;
+                }
+            }
+            ultimaProfondita = completata;
+            for (int i = 0; i < lunghezzaMigliore; i++) {
+                comandi.add(candidate.get(migliore[i]).comando);
+            }
+        }
+        ultimiNodi = nodi;
+        ultimaDurataNs = System.nanoTime() - inizio;
+        return comandi;
+    }
+
+    /**
+     * Ricerca in profondità sulle combinazioni di candidate (in ordine di
+     * indice, quindi senza ripetizioni) di lunghezza al massimo "profondita".
+     */
+    private void cerca(int da, int lunghezza, int valore, int profondita, long tesoro) {
+        if (valore > valoreMigliore) {
+            valoreMigliore = valore;
+            lunghezzaMigliore = lunghezza;
+            System.arraycopy(piano, 0, migliore, 0, lunghezza);
+        }
+        if (lunghezza == profondita) {
+            return;
+        }
+        for (int i = da; i < candidate.size(); i++) {
+            if (++nodi % CONTROLLO_TEMPO == 0
+                    && (System.nanoTime() > scadenza || Thread.currentThread().isInterrupted())) {
+                scaduto = true;
+            }
+            if (scaduto) {
+                return;
+            }
+            Candidata c = candidate.get(i);
+            if (c.costo > tesoro || !compatibile(c, lunghezza)) {
+                continue;
+            }
+            piano[lunghezza] = i;
+            cerca(i + 1, lunghezza + 1, valore + valoreNelPiano(c, lunghezza), profondita, tesoro - c.costo);
+        }
+    }
+
+    /**
+     * Una risorsa (base o esercito) può essere usata una sola volta per piano.
+     */
+    private boolean compatibile(Candidata c, int lunghezza) {
+        if (c.risorsa < 0) {
+            return true;
+        }
+        for (int j = 0; j < lunghezza; j++) {
+            if (candidate.get(piano[j]).risorsa == c.risorsa) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Utilità della candidata dato il resto del piano: gli attacchi ripetuti
+     * sullo stesso obiettivo rendono la metà ciascuno.
+     */
+    private int valoreNelPiano(Candidata c, int lunghezza) {
+        int valore = c.utilita;
+        if (c.bersaglio >= 0) {
+            for (int j = 0; j < lunghezza; j++) {
+                if (candidate.get(piano[j]).bersaglio == c.bersaglio) {
+                    valore /= 2;
+                }
+            }
+        }
+        return valore;
+    }
+
+    /**
+     * Rifà la ricerca Monte Carlo quando arriva uno stato di simulazione nuovo.
+     */
+    private void aggiornaObiettivoStrategico(IstantaneaMondo ist, long scadenzaRicerca) {
+        StatoSimulazione sim = ist.getSimulazione();
+        if (!livello.isStrategico()) {
+            obiettivoStrategico = -1;
+            return;
+        }
+        if (sim == null || sim == simulazioneAnalizzata || !sim.isInGioco(stato)) {
+            return;
+        }
+        if (ricercaStrategica == null) {
+            ricercaStrategica = new RicercaMonteCarlo(1, GeneratoreCasuale.deriva(stato, ist.getGiorno()));
+        }
+        int mossa = ricercaStrategica.cerca(sim, stato, scadenzaRicerca);
+        simulazioneAnalizzata = sim;
+        obiettivoStrategico = StatoSimulazione.isAttacco(mossa)
+                ? sim.getCellaRegione(StatoSimulazione.getDestinazione(mossa)) : -1;
+    }
+
+    /**
+     * Bonus di utilità per un bersaglio vicino all'obiettivo strategico.
+     */
+    private int bonusStrategico(IstantaneaMondo ist, int cella) {
+        int obiettivo = obiettivoStrategico;
+        return obiettivo >= 0 && ist.distanza(cella, obiettivo) <= RAGGIO_STRATEGICO ? BONUS_STRATEGICO : 0;
+    }
+
+    /**
+     * Bonus di utilità per una cella di frontiera su cui lo stato prevale già per influenza.
+     */
+    private static int bonusInfluenza(IstantaneaMondo ist, int f) {
+        float controllo = ist.getFrontieraControllo(f);
+        return controllo > 0 ? Math.min(BONUS_INFLUENZA, (int) (controllo / 2)) : 0;
+    }
+
+    /* =========================== CANDIDATE =========================== */
+
+    private void generaCandidate(IstantaneaMondo ist) {
+        int s = stato;
+        long tesoro = ist.getTesoro(s);
+        int inizioF = ist.getInizioFrontiera(s), fineF = ist.getInizioFrontiera(s + 1);
+        int inizioC = ist.getInizioCentri(s), fineC = ist.getInizioCentri(s + 1);
+        int nemiciConfinanti = 0;
+        int vicinoPiuForte = -1;
+
+        for (int f = inizioF; f < fineF; f++) {
+            int proprietario = ist.getFrontieraStato(f);
+            if (proprietario >= 0) {
+                if (ist.isAlleato(s, proprietario)) {
+                    continue;
+                }
+                nemiciConfinanti++;
+                if (vicinoPiuForte < 0 || ist.getPotenza(proprietario) > ist.getPotenza(vicinoPiuForte)) {
+                    vicinoPiuForte = proprietario;
+                }
+            } else if (!ist.isFrontieraAcqua(f) && tesoro >= COSTO_ESPANSIONE) {
+                // Le terre già sotto la propria influenza sono più facili da tenere
+                int utilita = 4 + ist.getFrontieraImportanza(f) + bonusInfluenza(ist, f);
+                aggiungi(new ComandoAI(ComandoAI.Tipo.ESPANDI, s, -1, ist.getFrontieraCella(f),
+                        COSTO_ESPANSIONE, 0), utilita, COSTO_ESPANSIONE, -1, ist.getFrontieraCella(f));
+            }
+        }
+
+        for (int c = inizioC; c < fineC; c++) {
+            int cella = ist.getCentroCella(c);
+            int truppe = ist.getCentroTruppe(c);
+            int tipoBase = ist.getCentroTipoBase(c);
+            if (tipoBase >= 0 && truppe > 0) {
+                // Attacchi dalla base contro i centri nemici nel suo raggio
+                int potenzaBase = BaseMilitare.calcolaPotenzaAttacco(truppe, ist.getCentroArmamento(c), 1.0);
+                for (int f = inizioF; f < fineF; f++) {
+                    if (ist.getFrontieraStato(f) < 0 || ist.getFrontieraTipoCentro(f) < 0
+                            || ist.isAlleato(s, ist.getFrontieraStato(f))
+                            || ist.distanza(cella, ist.getFrontieraCella(f)) > ist.getCentroRaggio(c)) {
+                        continue;
+                    }
+                    int utilita = utilitaAttacco(ist, f, potenzaBase);
+                    if (utilita > 0) {
+                        utilita += bonusStrategico(ist, ist.getFrontieraCella(f)) + bonusInfluenza(ist, f);
+                        aggiungi(new ComandoAI(ComandoAI.Tipo.ATTACCA_CON_BASE, s, cella,
+                                ist.getFrontieraCella(f), 0, utilita), utilita, 0, cella, ist.getFrontieraCella(f));
+                    }
+                }
+                if (truppe >= TRUPPE_MINIME_RECLUTAMENTO) {
+                    TipoEsercito tipo = tipoPerBase(BaseMilitare.TipoBase.values()[tipoBase]);
+                    int utilita = 6 + Math.min(20, nemiciConfinanti / 4);
+                    aggiungi(new ComandoAI(ComandoAI.Tipo.RECLUTA, s, cella, tipo.ordinal(), truppe / 3, utilita),
+                            utilita, 0, cella, -1);
+                }
+            }
+            int difesa = ist.getCentroDifesa(c);
+            int costo = COSTO_DIFESA * (difesa + 1);
+            if (difesa < 10 && costo <= tesoro) {
+                int utilita = ist.getCentroImportanza(c) * 2 + (10 - difesa)
+                        + (ist.getCentroTipo(c) == CAPITALE ? 10 : 0) + Math.min(10, nemiciConfinanti / 8);
+                aggiungi(new ComandoAI(ComandoAI.Tipo.INVESTI, s, cella, cella, costo, utilita),
+                        utilita, costo, cella, -1);
+            }
+        }
+
+        // Eserciti fermi: attaccano il centro nemico più conveniente alla loro portata
+        int inizioE = ist.getInizioEserciti(s), fineE = ist.getInizioEserciti(s + 1);
+        for (int e = inizioE; e < fineE; e++) {
+            int cella = ist.getEsercitoCella(e);
+            int potenzaEsercito = BaseMilitare.calcolaPotenzaAttacco(ist.getEsercitoForza(e),
+                    ist.getEsercitoArmamento(e), 1.0);
+            int migliore = -1, utilitaMigliore = 0;
+            for (int f = inizioF; f < fineF; f++) {
+                if (ist.getFrontieraStato(f) < 0 || ist.getFrontieraTipoCentro(f) < 0
+                        || ist.isAlleato(s, ist.getFrontieraStato(f))) {
+                    continue;
+                }
+                int distanza = ist.distanza(cella, ist.getFrontieraCella(f));
+                if (distanza > PORTATA_ESERCITI) {
+                    continue;
+                }
+                int utilita = utilitaAttacco(ist, f, potenzaEsercito);
+                if (utilita > 0) {
+                    utilita += bonusStrategico(ist, ist.getFrontieraCella(f)) + bonusInfluenza(ist, f)
+                            - distanza / 4;
+                }
+                if (utilita > utilitaMigliore) {
+                    utilitaMigliore = utilita;
+                    migliore = f;
+                }
+            }
+            if (migliore >= 0) {
+                int u = ist.getEsercitoIndice(e);
+                aggiungi(new ComandoAI(ComandoAI.Tipo.ATTACCA_CON_ESERCITO, s, u, ist.getFrontieraCella(migliore),
+                        ist.getEsercitoGenerazione(e), utilitaMigliore), utilitaMigliore, 0,
+                        -2 - u, ist.getFrontieraCella(migliore));
+            }
+        }
+
+        // Un vicino molto più forte spinge a cercare un'alleanza
+        if (vicinoPiuForte >= 0 && ist.getPotenza(vicinoPiuForte) * 2 > ist.getPotenza(s) * 3) {
+            int utilita = 5 + (int) Math.min(15, (ist.getPotenza(vicinoPiuForte) - ist.getPotenza(s)) / 50);
+            aggiungi(new ComandoAI(ComandoAI.Tipo.PROPONI_ALLEANZA, s, -1, vicinoPiuForte, 0, utilita),
+                    utilita, 0, -1, -1);
+        }
+    }
+
+    /**
+     * Utilità di un attacco contro il centro di una cella di frontiera,
+     * 0 se la potenza stimata non basta.
+     */
+    private static int utilitaAttacco(IstantaneaMondo ist, int f, int potenzaAttacco) {
+        int difesa = BaseMilitare.calcolaPotenzaAttacco(ist.getFrontieraTruppe(f), ist.getFrontieraArmamento(f), 1.0)
+                + ist.getFrontieraDifesa(f) * 5;
+        if (potenzaAttacco * 10 <= difesa * 11) {
+            return 0;
+        }
+        int tipo = ist.getFrontieraTipoCentro(f);
+        int utilita = ist.getFrontieraImportanza(f) * 10
+                + (tipo == CAPITALE ? 40 : tipo == CAPOLUOGO ? 15 : 0)
+                + Math.min(30, (potenzaAttacco - difesa) * 10 / Math.max(1, difesa));
+        return Math.max(1, utilita);
+    }
+
+    private static TipoEsercito tipoPerBase(BaseMilitare.TipoBase tipoBase) {
+        switch (tipoBase) {
+            case NAVALE:
+                return TipoEsercito.FLOTTA;
+            case AEREA:
+                return TipoEsercito.AVIAZIONE;
+            case INTEGRATA:
+            case TERRESTRE:
+            default:
+                return TipoEsercito.FANTERIA;
+        }
+    }
+
+    private void aggiungi(ComandoAI comando, int utilita, int costo, int risorsa, int bersaglio) {
+        candidate.add(new Candidata(comando, utilita, costo, risorsa, bersaglio));
+    }
+
+    /* =========================== GETTER / SETTER =========================== */
+
+    public int getStato() {
+        return stato;
+    }
+
+    public LivelloDifficolta getLivello() {
+        return livello;
+    }
+
+    public void setLivello(LivelloDifficolta livello) {
+        this.livello = livello;
+    }
+
+    public long getUltimaDurataNs() {
+        return ultimaDurataNs;
+    }
+
+    public long getUltimiNodi() {
+        return ultimiNodi;
+    }
+
+    /**
+     * Profondità completata nell'ultima decisione (0 se il tempo è finito
+     * prima di completare il primo livello).
+     *
+     * @return profondità raggiunta
+     */
+    public int getUltimaProfondita() {
+        return ultimaProfondita;
+    }
+
+    /**
+     * Cella del capoluogo della regione scelta dalla ricerca strategica.
+     *
+     * @return indice di cella, oppure -1 se non c'è un obiettivo
+     */
+    public int getObiettivoStrategico() {
+        return obiettivoStrategico;
+    }
+
+    /**
+     * Ricerca Monte Carlo del controllore (null se non è mai stata usata).
+     *
+     * @return ricerca strategica
+     */
+    public RicercaMonteCarlo getRicercaStrategica() {
+        return ricercaStrategica;
+    }
+
+    @Override
+    public String toString() {
+        return "Controllore dello stato " + stato + " (" + livello.getNome() + ")";
+    }
+
+    /**
+     * Mossa candidata con i dati che servono alla ricerca.
+     */
+    private static final class Candidata {
+
+        final ComandoAI comando;
+
+        /**
+         * Utilità stimata.
+         */
+        final int utilita;
+
+        /**
+         * Spesa dal tesoro.
+         */
+        final int costo;
+
+        /**
+         * Risorsa impegnata in esclusiva (cella della base, -2 - indice
+         * dell'esercito), -1 nessuna.
+         */
+        final int risorsa;
+
+        /**
+         * Cella obiettivo per il rendimento decrescente, -1 nessuna.
+         */
+        final int bersaglio;
+
+        Candidata(ComandoAI comando, int utilita, int costo, int risorsa, int bersaglio) {
+            this.comando = comando;
+            this.utilita = utilita;
+            this.costo = costo;
+            this.risorsa = risorsa;
+            this.bersaglio = bersaglio;
+        }
+    }
+}
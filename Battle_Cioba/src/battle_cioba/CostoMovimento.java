@@ -0,0 +1,33 @@
+package battle_cioba;
+
+/**
+ * Funzione di costo usata dalla ricerca dei percorsi per entrare in una cella.
+ * Le implementazioni standard sono le costanti di ClasseMovimento, ma se ne
+ * possono registrare altre (es. per unità speciali).
+ */
+public interface CostoMovimento {
+
+    /**
+     * Valore restituito per le celle in cui non si può entrare.
+     */
+    int IMPRATICABILE = -1;
+
+    /**
+     * Restituisce il costo per entrare in una cella.
+     *
+     * @param acqua true se la cella è marina
+     * @param profondita profondità media in metri (0 per le celle terrestri)
+     * @param proprietario indice dello stato che possiede la cella (-1 nessuno)
+     * @param statoUnita indice dello stato dell'unità che si muove (-1 nessuno)
+     * @return costo positivo, oppure IMPRATICABILE
+     */
+    int costoCella(boolean acqua, int profondita, int proprietario, int statoUnita);
+
+    /**
+     * Restituisce il costo minimo di una cella. Serve all'euristica di A*,
+     * che resta ammissibile solo se nessuna cella costa meno di questo valore.
+     *
+     * @return costo minimo positivo
+     */
+    int costoMinimo();
+}
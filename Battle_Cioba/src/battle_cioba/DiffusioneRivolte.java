@@ -0,0 +1,592 @@
+package battle_cioba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Diffusione delle rivolte tra regioni confinanti.
+ * Ogni giorno la quota di rivoltosi di ogni regione si avvicina alla media
+ * delle regioni vicine, pesata per la lunghezza del confine in comune; i
+ * confini con altri stati contano la metà e le guarnigioni (potenza
+ * militare della regione e, in parte, delle vicine) frenano il contagio.
+ * <p>
+ * È un passo di moltiplicazione matrice sparsa per vettore: le adiacenze
+ * sono in formato compresso per righe, le quote stanno in due array
+ * primitivi che si scambiano a ogni giorno, e le righe sono divise in
+ * blocchi elaborati in parallelo. Il costo è lineare in regioni più
+ * adiacenze. Quando un territorio cambia regione si aggiornano solo i
+ * confini delle sue quattro celle vicine; la mappa viene ripercorsa solo
+ * quando una regione nasce o sparisce.
+ * <p>
+ * Quando una regione supera la soglia di secessione si stacca dal proprio
+ * stato insieme alle regioni confinanti dello stesso stato abbastanza in
+ * rivolta, formando un nuovo stato in guerra con il vecchio.
+ */
+public class DiffusioneRivolte implements FaseSimulazione, OsservatoreMondo {
+
+    /**
+     * Frazione della differenza con i vicini assorbita ogni giorno.
+     */
+    public static final double VELOCITA = 0.05;
+
+    /**
+     * Potenza militare che dimezza il contagio verso una regione.
+     */
+    public static final double SCALA_GUARNIGIONE = 100.0;
+
+    /**
+     * Peso relativo dei confini con regioni di un altro stato.
+     */
+    public static final double PESO_CONFINE_ESTERO = 0.5;
+
+    /**
+     * Quota di rivoltosi oltre la quale una regione si stacca.
+     */
+    public static final double SOGLIA_SECESSIONE = 0.5;
+
+    /**
+     * Quota oltre la quale una regione confinante si unisce alla secessione.
+     */
+    public static final double SOGLIA_ADESIONE = 0.35;
+
+    /**
+     * Righe per blocco parallelo.
+     */
+    static final int RIGHE_PER_BLOCCO = 64;
+
+    /**
+     * Relazioni diplomatiche (il nuovo stato nasce in guerra; può essere null).
+     */
+    private final Diplomazia diplomazia;
+
+    /**
+     * Sistema politico (notifica delle secessioni; può essere null).
+     */
+    private final Politica politica;
+
+    /**
+     * Regioni per indice denso.
+     */
+    private Regione[] regioni = new Regione[0];
+
+    /**
+     * Indice denso di ogni regione.
+     */
+    private final Map<Regione, Integer> indiceRegione = new IdentityHashMap<>();
+
+    /**
+     * Indice denso della regione di ogni cella (-1 nessuna).
+     */
+    private int[] regioneCella = new int[0];
+
+    /**
+     * Adiacenze in formato compresso: i vicini di r sono
+     * vicini[inizioVicini[r] .. inizioVicini[r + 1]) con i pesi in confine.
+     */
+    private int[] inizioVicini = new int[1], vicini = new int[0];
+
+    /**
+     * Lunghezza del confine in comune (lati di cella) per ogni adiacenza.
+     * Un confine sparito resta con lunghezza 0 fino alla compattazione.
+     */
+    private int[] confine = new int[0];
+
+    /**
+     * Confini nati dopo l'ultima compattazione, per coppia (a &lt; b) di regioni:
+     * a &lt;&lt; 32 | b. Entrano nelle adiacenze all'inizio del giorno.
+     */
+    private final Map<Long, Integer> nuoviConfini = new HashMap<>();
+
+    /**
+     * Quote di rivoltosi: corrente (letta) e prossima (scritta), scambiate a ogni giorno.
+     */
+    private double[] quota = new double[0], prossima = new double[0];
+
+    /**
+     * Popolazione, potenza militare e indice dello stato di ogni regione, letti a inizio giorno.
+     */
+    private long[] popolazione = new long[0];
+    private double[] guarnigione = new double[0];
+    private int[] statoRegione = new int[0];
+
+    /**
+     * Regioni oltre la soglia di secessione alla fine del giorno precedente:
+     * la secessione scatta solo all'attraversamento della soglia.
+     */
+    private boolean[] oltreSoglia = new boolean[0];
+
+    /**
+     * Indica che le adiacenze vanno ricostruite (una regione è nata o sparita).
+     */
+    private boolean sporco = true;
+
+    /**
+     * Mondo di riferimento.
+     */
+    private Mondo mondo;
+
+    /**
+     * Statistiche: secessioni e ricostruzioni dall'inizio della partita,
+     * regioni cambiate e secessioni del giorno in corso.
+     */
+    private long secessioni, ricostruzioni, regioniCambiateGiorno, secessioniGiorno;
+
+    /**
+     * Crea il sistema senza diplomazia e senza notifiche.
+     */
+    public DiffusioneRivolte() {
+        this(null, null);
+    }
+
+    /**
+     * Costruttore principale.
+     *
+     * @param diplomazia relazioni diplomatiche (può essere null)
+     * @param politica sistema politico per le notifiche (può essere null)
+     */
+    public DiffusioneRivolte(Diplomazia diplomazia, Politica politica) {
+        this.diplomazia = diplomazia;
+        this.politica = politica;
+    }
+
+    /**
+     * Costruisce l'indice delle regioni e le adiacenze.
+     *
+     * @param mondo mondo di gioco
+     */
+    public void inizializza(Mondo mondo) {
+        this.mondo = mondo;
+        ricostruisci();
+    }
+
+    /* =========================== ADIACENZE =========================== */
+
+    /**
+     * Indicizza le regioni degli stati e conta i lati di cella in comune
+     * tra ogni coppia di regioni (4-vicinato). Percorre la mappa una volta.
+     */
+    private void ricostruisci() {
+        List<Regione> elenco = new ArrayList<>();
+        for (Stato stato : mondo.getStati()) {
+            elenco.addAll(stato.getRegioni());
+        }
+        int n = elenco.size();
+        regioni = elenco.toArray(new Regione[0]);
+        indiceRegione.clear();
+
+        int righe = mondo.getRighe(), colonne = mondo.getColonne();
+        regioneCella = new int[righe * colonne];
+        Arrays.fill(regioneCella, -1);
+        for (int r = 0; r < n; r++) {
+            indiceRegione.put(regioni[r], r);
+            for (Territorio t : regioni[r].getTerritori()) {
+                regioneCella[t.getIndiceCella()] = r;
+            }
+        }
+
+        // Ogni lato di confine produce una coppia per verso; i duplicati contano la lunghezza
+        long[] coppie = new long[64];
+        int numCoppie = 0;
+        for (int riga = 0; riga < righe; riga++) {
+            for (int col = 0; col < colonne; col++) {
+                int a = regioneCella[riga * colonne + col];
+                if (a < 0) {
+                    continue;
+                }
+                int destra = col + 1 < colonne ? regioneCella[riga * colonne + col + 1] : -1;
+                int sotto = riga + 1 < righe ? regioneCella[(riga + 1) * colonne + col] : -1;
+                for (int k = 0; k < 2; k++) {
+                    int b = k == 0 ? destra : sotto;
+                    if (b >= 0 && b != a) {
+                        if (numCoppie + 2 > coppie.length) {
+                            coppie = Arrays.copyOf(coppie, coppie.length * 2);
+                        }
+                        coppie[numCoppie++] = (long) a << 32 | b;
+                        coppie[numCoppie++] = (long) b << 32 | a;
+                    }
+                }
+            }
+        }
+        Arrays.sort(coppie, 0, numCoppie);
+        int[] inizio = new int[n + 1];
+        int[] v = new int[numCoppie];
+        int[] w = new int[numCoppie];
+        int numVicini = 0;
+        for (int i = 0; i < numCoppie; i++) {
+            if (i > 0 && coppie[i] == coppie[i - 1]) {
+                w[numVicini - 1]++;
+                continue;
+            }
+            inizio[(int) (coppie[i] >>> 32) + 1]++;
+            v[numVicini] = (int) coppie[i];
+            w[numVicini] = 1;
+            numVicini++;
+        }
+        for (int r = 0; r < n; r++) {
+            inizio[r + 1] += inizio[r];
+        }
+
+        inizioVicini = inizio;
+        vicini = Arrays.copyOf(v, numVicini);
+        confine = Arrays.copyOf(w, numVicini);
+        quota = new double[n];
+        prossima = new double[n];
+        popolazione = new long[n];
+        guarnigione = new double[n];
+        statoRegione = new int[n];
+        oltreSoglia = new boolean[n];
+        for (int r = 0; r < n; r++) {
+            long pop = regioni[r].getAggregato().getPopolazione();
+            oltreSoglia[r] = pop > 0 && regioni[r].getRivoltosi() >= SOGLIA_SECESSIONE * pop;
+        }
+        nuoviConfini.clear();
+        sporco = false;
+        ricostruzioni++;
+    }
+
+    /**
+     * Inserisce nelle adiacenze i confini nati dall'ultima compattazione e
+     * toglie quelli scesi a 0, fondendo riga per riga (le righe sono ordinate
+     * per vicino). Lineare in regioni più adiacenze.
+     */
+    private void compatta() {
+        int n = regioni.length;
+        long[] aggiunte = new long[nuoviConfini.size() * 2];
+        int k = 0;
+        for (Map.Entry<Long, Integer> e : nuoviConfini.entrySet()) {
+            if (e.getValue() > 0) {
+                long coppia = e.getKey();
+                aggiunte[k++] = coppia;
+                aggiunte[k++] = coppia << 32 | coppia >>> 32;
+            }
+        }
+        Arrays.sort(aggiunte, 0, k);
+        int[] inizio = new int[n + 1];
+        int[] v = new int[vicini.length + k];
+        int[] w = new int[vicini.length + k];
+        int m = 0, j = 0;
+        for (int r = 0; r < n; r++) {
+            int i = inizioVicini[r], fine = inizioVicini[r + 1];
+            while (i < fine || (j < k && (int) (aggiunte[j] >>> 32) == r)) {
+                if (j < k && (int) (aggiunte[j] >>> 32) == r && (i >= fine || (int) aggiunte[j] < vicini[i])) {
+                    v[m] = (int) aggiunte[j];
+                    w[m] = nuoviConfini.get(coppia(r, v[m]));
+                    j++;
+                } else {
+                    v[m] = vicini[i];
+                    w[m] = confine[i];
+                    i++;
+                }
+                if (w[m] > 0) {
+                    m++;
+                }
+            }
+            inizio[r + 1] = m;
+        }
+        inizioVicini = inizio;
+        vicini = Arrays.copyOf(v, m);
+        confine = Arrays.copyOf(w, m);
+        nuoviConfini.clear();
+    }
+
+    /**
+     * Aggiorna i confini delle quattro celle vicine al territorio spostato.
+     * Se il territorio ha creato una regione o ne ha svuotata una, le
+     * adiacenze vanno ricostruite.
+     */
+    @Override
+    public void territorioTrasferito(Territorio territorio, Stato vecchio, Stato nuovo) {
+        if (sporco || mondo == null) {
+            return;
+        }
+        int c = territorio.getIndiceCella();
+        Regione destinazione = territorio.getRegioneObj();
+        Integer indice = destinazione != null ? indiceRegione.get(destinazione) : null;
+        int prima = regioneCella[c];
+        if ((destinazione != null && indice == null)
+                || (prima >= 0 && regioni[prima].getTerritori().isEmpty())) {
+            sporco = true;
+            return;
+        }
+        int dopo = indice != null ? indice : -1;
+        if (dopo == prima) {
+            return;
+        }
+        int righe = mondo.getRighe(), colonne = mondo.getColonne();
+        int riga = c / colonne, col = c % colonne;
+        for (int d = 0; d < 4; d++) {
+            int nr = riga + (d == 0 ? -1 : d == 1 ? 1 : 0), nc = col + (d == 2 ? -1 : d == 3 ? 1 : 0);
+            if (nr < 0 || nr >= righe || nc < 0 || nc >= colonne) {
+                continue;
+            }
+            int vicina = regioneCella[nr * colonne + nc];
+            if (vicina < 0) {
+                continue;
+            }
+            if (prima >= 0 && vicina != prima) {
+                variaConfine(prima, vicina, -1);
+            }
+            if (dopo >= 0 && vicina != dopo) {
+                variaConfine(dopo, vicina, 1);
+            }
+        }
+        regioneCella[c] = dopo;
+    }
+
+    /**
+     * Varia la lunghezza del confine tra due regioni, nei due versi.
+     */
+    private void variaConfine(int a, int b, int delta) {
+        int i = Arrays.binarySearch(vicini, inizioVicini[a], inizioVicini[a + 1], b);
+        if (i >= 0) {
+            confine[i] += delta;
+            confine[Arrays.binarySearch(vicini, inizioVicini[b], inizioVicini[b + 1], a)] += delta;
+        } else {
+            nuoviConfini.merge(coppia(a, b), delta, (x, y) -> x + y == 0 ? null : x + y);
+        }
+    }
+
+    private static long coppia(int a, int b) {
+        return a < b ? (long) a << 32 | b : (long) b << 32 | a;
+    }
+
+    /* =========================== FASE DEL GIORNO =========================== */
+
+    @Override
+    public String getNome() {
+        return "Diffusione rivolte";
+    }
+
+    @Override
+    public void esegui(Mondo mondo, long giorno) {
+        this.mondo = mondo;
+        if (sporco) {
+            ricostruisci();
+        } else if (!nuoviConfini.isEmpty()) {
+            compatta();
+        }
+        int n = regioni.length;
+        regioniCambiateGiorno = 0;
+        secessioniGiorno = 0;
+
+        // Lettura: quote, popolazione e guarnigioni correnti (politica e carte le modificano)
+        for (int r = 0; r < n; r++) {
+            Regione regione = regioni[r];
+            Stato stato = regione.getStato();
+            AggregatoTerritoriale aggregato = regione.getAggregato();
+            long pop = aggregato.getPopolazione();
+            popolazione[r] = pop;
+            quota[r] = pop > 0 ? Math.min(1.0, (double) regione.getRivoltosi() / pop) : 0;
+            guarnigione[r] = aggregato.getPotenzaMilitare();
+            statoRegione[r] = stato != null ? stato.getIndice() : -1;
+        }
+
+        int blocchi = (n + RIGHE_PER_BLOCCO - 1) / RIGHE_PER_BLOCCO;
+        if (blocchi <= 1) {
+            passo(0, n);
+        } else {
+            IntStream.range(0, blocchi).parallel().forEach(b -> passo(
+                    b * RIGHE_PER_BLOCCO, Math.min(n, (b + 1) * RIGHE_PER_BLOCCO)));
+        }
+
+        // Scrittura: solo le regioni cambiate, poi le secessioni
+        List<Regione> inSecessione = null;
+        for (int r = 0; r < n; r++) {
+            long rivoltosi = Math.round(prossima[r] * popolazione[r]);
+            if (rivoltosi != regioni[r].getRivoltosi()) {
+                regioni[r].setRivoltosi((int) Math.min(Integer.MAX_VALUE, rivoltosi));
+                regioniCambiateGiorno++;
+            }
+            boolean oltre = prossima[r] >= SOGLIA_SECESSIONE;
+            if (oltre && !oltreSoglia[r]) {
+                if (inSecessione == null) {
+                    inSecessione = new ArrayList<>();
+                }
+                inSecessione.add(regioni[r]);
+            }
+            oltreSoglia[r] = oltre;
+        }
+        double[] t = quota;
+        quota = prossima;
+        prossima = t;
+
+        if (inSecessione != null) {
+            for (Regione regione : inSecessione) {
+                separa(regione);
+            }
+        }
+    }
+
+    /**
+     * Calcola le quote del giorno dopo per le righe [inizio, fine).
+     * Legge solo quota, popolazione, guarnigione e statoRegione; scrive solo prossima.
+     */
+    private void passo(int inizio, int fine) {
+        for (int r = inizio; r < fine; r++) {
+            double x = quota[r];
+            if (popolazione[r] <= 0) {
+                prossima[r] = x;
+                continue;
+            }
+            double pesoTotale = 0, somma = 0, guarnigioneVicina = 0;
+            for (int i = inizioVicini[r]; i < inizioVicini[r + 1]; i++) {
+                int j = vicini[i];
+                if (popolazione[j] <= 0) {
+                    continue;
+                }
+                double peso = statoRegione[j] == statoRegione[r] ? confine[i] : confine[i] * PESO_CONFINE_ESTERO;
+                pesoTotale += peso;
+                somma += peso * quota[j];
+                guarnigioneVicina += peso * guarnigione[j];
+            }
+            if (pesoTotale == 0) {
+                prossima[r] = x;
+                continue;
+            }
+            double media = somma / pesoTotale;
+            double d = VELOCITA * (media - x);
+            if (d > 0) {
+                // Le guarnigioni frenano solo il contagio in arrivo, non la calma
+                double g = guarnigione[r] + 0.5 * guarnigioneVicina / pesoTotale;
+                d /= 1.0 + g / SCALA_GUARNIGIONE;
+            }
+            prossima[r] = Math.max(0, Math.min(1.0, x + d));
+        }
+    }
+
+    /* =========================== SECESSIONE =========================== */
+
+    /**
+     * Stacca una regione, e le regioni confinanti dello stesso stato oltre la
+     * soglia di adesione, in un nuovo stato. La capitale non si stacca mai e
+     * uno stato non perde la sua ultima regione.
+     *
+     * @return true se la secessione è avvenuta
+     */
+    private boolean separa(Regione origine) {
+        Stato stato = origine.getStato();
+        if (stato == null || stato.getCapitale() == origine || stato.getRegioni().size() < 2) {
+            return false;
+        }
+        int r0 = posizione(origine);
+        if (r0 < 0) {
+            return false;
+        }
+
+        // Visita in ampiezza delle regioni dello stesso stato abbastanza in rivolta
+        List<Regione> gruppo = new ArrayList<>();
+        boolean[] visitata = new boolean[regioni.length];
+        int[] coda = new int[regioni.length];
+        int testa = 0, fondo = 0;
+        coda[fondo++] = r0;
+        visitata[r0] = true;
+        while (testa < fondo) {
+            int r = coda[testa++];
+            gruppo.add(regioni[r]);
+            for (int i = inizioVicini[r]; i < inizioVicini[r + 1]; i++) {
+                int j = vicini[i];
+                if (!visitata[j] && confine[i] > 0 && regioni[j].getStato() == stato && regioni[j] != stato.getCapitale()
+                        && quota[j] >= SOGLIA_ADESIONE) {
+                    visitata[j] = true;
+                    coda[fondo++] = j;
+                }
+            }
+        }
+        if (gruppo.size() >= stato.getRegioni().size()) {
+            return false;
+        }
+
+        Stato nuovo = mondo.creaStato(nomeRibelli(origine));
+        for (Regione regione : gruppo) {
+            mondo.trasferisciRegione(regione, nuovo);
+            // I rivoltosi hanno vinto: ora sono il governo
+            regione.setRivoltosi(0);
+            regione.setConsensi(Capitale.SOGLIA_RIBELLIONE + Politica.SOGLIA_CONSENSI);
+            int r = posizione(regione);
+            if (r >= 0) {
+                quota[r] = 0;
+                oltreSoglia[r] = false;
+            }
+        }
+        nominaCapitale(nuovo, origine);
+        if (diplomazia != null) {
+            diplomazia.dichiaraGuerra(nuovo.getIndice(), stato.getIndice());
+        }
+        secessioni++;
+        secessioniGiorno++;
+        if (politica != null) {
+            politica.notificaSecessione(stato, nuovo, gruppo);
+        }
+        return true;
+    }
+
+    private int posizione(Regione regione) {
+        Integer r = indiceRegione.get(regione);
+        return r != null ? r : -1;
+    }
+
+    /**
+     * Fa della regione la capitale del nuovo stato, sostituendo il centro del capoluogo con una Capitale.
+     */
+    private void nominaCapitale(Stato nuovo, Regione regione) {
+        nuovo.setCapitale(regione);
+        Territorio capoluogo = regione.getCapoluogo();
+        if (capoluogo == null) {
+            return;
+        }
+        Centro vecchio = capoluogo.getCentro();
+        long abitanti = vecchio != null ? vecchio.getPopolazione() : capoluogo.getNumCivili();
+        Capitale capitale = new Capitale(vecchio != null ? vecchio.getNome() : "Capitale_" + nuovo.getNome(),
+                8, 5, abitanti, capoluogo, nuovo.getNome(), regione.getNome(), 5, nuovo);
+        capoluogo.setCentro(capitale);
+    }
+
+    private String nomeRibelli(Regione regione) {
+        String base = "Ribelli di " + regione.getNome();
+        String nome = base;
+        for (int k = 2; mondo.getStatoPerNome(nome) != null; k++) {
+            nome = base + " " + k;
+        }
+        return nome;
+    }
+
+    @Override
+    public void riepiloga(Map<String, Long> indicatori) {
+        indicatori.put("regioni_contagiate", regioniCambiateGiorno);
+        indicatori.put("secessioni", secessioniGiorno);
+    }
+
+    /* =========================== STATISTICHE =========================== */
+
+    public int getNumRegioni() {
+        return regioni.length;
+    }
+
+    public int getNumAdiacenze() {
+        return vicini.length;
+    }
+
+    public long getSecessioni() {
+        return secessioni;
+    }
+
+    public long getRicostruzioni() {
+        return ricostruzioni;
+    }
+
+    /**
+     * Quota di rivoltosi di una regione all'ultimo giorno elaborato.
+     *
+     * @param regione regione da interrogare
+     * @return quota tra 0 e 1 (0 se la regione non è indicizzata)
+     */
+    public double getQuota(Regione regione) {
+        int r = posizione(regione);
+        return r >= 0 ? quota[r] : 0;
+    }
+}
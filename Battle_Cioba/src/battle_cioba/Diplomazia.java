@@ -0,0 +1,565 @@
+package battle_cioba;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Relazioni diplomatiche tra gli stati: guerra, pace, alleanza e opinione
+ * reciproca, indicizzate per indice denso di stato.
+ * <p>
+ * Non esiste un oggetto per coppia di stati:
+ * <ul>
+ * <li>l'opinione è una matrice triangolare di byte (un byte per coppia,
+ * simmetrica), in [-100, 100];</li>
+ * <li>le guerre sono una matrice di bit: la riga di uno stato è un bitset
+ * con un bit per ogni stato con cui è in guerra;</li>
+ * <li>le alleanze sono blocchi: ogni stato appartiene al più a un blocco e
+ * ogni blocco ha il bitset dei suoi membri. Due stati sono alleati se
+ * stanno nello stesso blocco; unire due blocchi sposta i membri del più
+ * piccolo nel più grande.</li>
+ * </ul>
+ * Così "X è in guerra con qualcuno alleato di Y?" è un AND tra la riga delle
+ * guerre di X e i membri del blocco di Y, una parola da 64 stati alla volta.
+ * Con 10.000 stati servono circa 50 MB per le opinioni e 12,5 MB per le guerre.
+ * <p>
+ * I metodi sono sincronizzati: i controllori dell'intelligenza artificiale
+ * interrogano le relazioni dai propri thread mentre la GUI può modificarle.
+ */
+public class Diplomazia {
+
+    /**
+     * Relazione tra due stati.
+     */
+    public enum Relazione {
+        PACE("Pace"),
+        GUERRA("Guerra"),
+        ALLEANZA("Alleanza");
+
+        private final String nome;
+
+        Relazione(String nome) {
+            this.nome = nome;
+        }
+
+        public String getNome() {
+            return nome;
+        }
+    }
+
+    /**
+     * Limiti dell'opinione.
+     */
+    public static final int OPINIONE_MINIMA = -100, OPINIONE_MASSIMA = 100;
+
+    /**
+     * Opinione minima perché uno stato accetti un'alleanza.
+     */
+    public static final int SOGLIA_ALLEANZA = -10;
+
+    /**
+     * Effetti sull'opinione degli eventi diplomatici.
+     */
+    public static final int EFFETTO_GUERRA = -50, EFFETTO_PACE = 10, EFFETTO_ALLEANZA = 20,
+            EFFETTO_RIFIUTO = -5;
+
+    /**
+     * Moltiplicatore (dispari) dei polinomi dell'impronta.
+     */
+    private static final long MOLTIPLICATORE_IMPRONTA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Lettura di otto opinioni come una parola (ordine fisso, per l'impronta).
+     */
+    private static final VarHandle OTTO_OPINIONI =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Numero di indici di stato gestiti.
+     */
+    private int capacita;
+
+    /**
+     * Parole da 64 bit per riga dei bitset.
+     */
+    private int parole;
+
+    /**
+     * Opinione per coppia (a < b), matrice triangolare superiore senza diagonale.
+     */
+    private byte[] opinione = new byte[0];
+
+    /**
+     * Riga delle guerre di ogni stato.
+     */
+    private long[][] guerre = new long[0][];
+
+    /**
+     * Blocco di ogni stato (-1 nessuno).
+     */
+    private int[] blocco = new int[0];
+
+    /**
+     * Membri di ogni blocco (null per gli identificativi liberi) e loro numero.
+     */
+    private long[][] membri = new long[0][];
+    private int[] numMembri = new int[0];
+
+    /**
+     * Identificativi di blocco liberi, da riusare.
+     */
+    private int[] blocchiLiberi = new int[0];
+    private int numBlocchiLiberi;
+
+    /**
+     * Numero di identificativi di blocco assegnati finora.
+     */
+    private int numBlocchi;
+
+    /**
+     * Statistiche.
+     */
+    private long guerreDichiarate, alleanzeFormate, proposteRifiutate;
+
+    /**
+     * Costruttore principale.
+     */
+    public Diplomazia() {
+    }
+
+    /**
+     * Azzera tutte le relazioni e prepara lo spazio per gli stati del mondo.
+     *
+     * @param mondo mondo di gioco
+     */
+    public synchronized void inizializza(Mondo mondo) {
+        capacita = 0;
+        parole = 0;
+        opinione = new byte[0];
+        guerre = new long[0][];
+        blocco = new int[0];
+        membri = new long[0][];
+        numMembri = new int[0];
+        numBlocchi = 0;
+        numBlocchiLiberi = 0;
+        assicuraCapacita(mondo.getCapacitaStati());
+    }
+
+    /* =========================== INTERROGAZIONI =========================== */
+
+    /**
+     * Relazione tra due stati.
+     *
+     * @param a indice del primo stato
+     * @param b indice del secondo stato
+     * @return relazione (PACE per gli indici sconosciuti)
+     */
+    public synchronized Relazione getRelazione(int a, int b) {
+        if (isInGuerra(a, b)) {
+            return Relazione.GUERRA;
+        }
+        return isAlleato(a, b) ? Relazione.ALLEANZA : Relazione.PACE;
+    }
+
+    public synchronized boolean isInGuerra(int a, int b) {
+        return valido(a) && valido(b) && (guerre[a][b >>> 6] & 1L << b) != 0;
+    }
+
+    public synchronized boolean isAlleato(int a, int b) {
+        return valido(a) && valido(b) && a != b && blocco[a] >= 0 && blocco[a] == blocco[b];
+    }
+
+    /**
+     * Indica se X è in guerra con Y o con un qualsiasi alleato di Y.
+     *
+     * @param x indice dello stato X
+     * @param y indice dello stato Y
+     * @return true se c'è almeno una guerra tra X e il blocco di Y
+     */
+    public synchronized boolean isInGuerraConAlleatiDi(int x, int y) {
+        if (!valido(x) || !valido(y)) {
+            return false;
+        }
+        int b = blocco[y];
+        if (b < 0) {
+            return (guerre[x][y >>> 6] & 1L << y) != 0;
+        }
+        long[] riga = guerre[x], blocchi = membri[b];
+        for (int w = 0; w < parole; w++) {
+            if ((riga[w] & blocchi[w]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Opinione reciproca di due stati.
+     *
+     * @param a indice del primo stato
+     * @param b indice del secondo stato
+     * @return opinione in [-100, 100] (0 per gli indici sconosciuti)
+     */
+    public synchronized int getOpinione(int a, int b) {
+        return valido(a) && valido(b) && a != b ? opinione[posizione(a, b)] : 0;
+    }
+
+    /**
+     * Numero di stati con cui uno stato è in guerra.
+     *
+     * @param a indice dello stato
+     * @return numero di guerre
+     */
+    public synchronized int getNumGuerre(int a) {
+        if (!valido(a)) {
+            return 0;
+        }
+        int n = 0;
+        for (long parola : guerre[a]) {
+            n += Long.bitCount(parola);
+        }
+        return n;
+    }
+
+    /**
+     * Blocco di alleanza di uno stato.
+     *
+     * @param a indice dello stato
+     * @return identificativo del blocco, -1 se lo stato non ha alleati
+     */
+    public synchronized int getBlocco(int a) {
+        return valido(a) ? blocco[a] : -1;
+    }
+
+    /**
+     * Numero di membri di un blocco.
+     *
+     * @param b identificativo del blocco
+     * @return numero di stati nel blocco (0 se il blocco non esiste)
+     */
+    public synchronized int getNumMembri(int b) {
+        return b >= 0 && b < numBlocchi ? numMembri[b] : 0;
+    }
+
+    /* =========================== AZIONI =========================== */
+
+    /**
+     * Modifica l'opinione reciproca di due stati, entro i limiti.
+     *
+     * @param a indice del primo stato
+     * @param b indice del secondo stato
+     * @param delta variazione
+     */
+    public synchronized void modificaOpinione(int a, int b, int delta) {
+        if (a < 0 || b < 0 || a == b) {
+            return;
+        }
+        assicuraCapacita(Math.max(a, b) + 1);
+        int p = posizione(a, b);
+        opinione[p] = (byte) Math.max(OPINIONE_MINIMA, Math.min(OPINIONE_MASSIMA, opinione[p] + delta));
+    }
+
+    /**
+     * Dichiara guerra. Non si può dichiarare guerra a un alleato: prima va
+     * lasciata l'alleanza.
+     *
+     * @param a indice dello stato che dichiara
+     * @param b indice dello stato attaccato
+     * @return true se la guerra è iniziata
+     */
+    public synchronized boolean dichiaraGuerra(int a, int b) {
+        if (a < 0 || b < 0 || a == b) {
+            return false;
+        }
+        assicuraCapacita(Math.max(a, b) + 1);
+        if (isAlleato(a, b) || isInGuerra(a, b)) {
+            return false;
+        }
+        guerre[a][b >>> 6] |= 1L << b;
+        guerre[b][a >>> 6] |= 1L << a;
+        modificaOpinione(a, b, EFFETTO_GUERRA);
+        guerreDichiarate++;
+        return true;
+    }
+
+    /**
+     * Firma la pace tra due stati in guerra.
+     *
+     * @param a indice del primo stato
+     * @param b indice del secondo stato
+     * @return true se i due stati erano in guerra
+     */
+    public synchronized boolean firmaPace(int a, int b) {
+        if (!isInGuerra(a, b)) {
+            return false;
+        }
+        guerre[a][b >>> 6] &= ~(1L << b);
+        guerre[b][a >>> 6] &= ~(1L << a);
+        modificaOpinione(a, b, EFFETTO_PACE);
+        return true;
+    }
+
+    /**
+     * Propone un'alleanza: viene accettata se l'opinione reciproca è
+     * sufficiente e se nessun membro dei due blocchi è in guerra con un
+     * membro dell'altro. Un rifiuto peggiora un poco l'opinione.
+     *
+     * @param a indice dello stato che propone
+     * @param b indice dello stato a cui si propone
+     * @return true se l'alleanza è stata formata
+     */
+    public synchronized boolean proponiAlleanza(int a, int b) {
+        if (a < 0 || b < 0 || a == b) {
+            return false;
+        }
+        assicuraCapacita(Math.max(a, b) + 1);
+        if (isAlleato(a, b)) {
+            return false;
+        }
+        if (getOpinione(a, b) < SOGLIA_ALLEANZA || blocchiInGuerra(a, b)) {
+            modificaOpinione(a, b, EFFETTO_RIFIUTO);
+            proposteRifiutate++;
+            return false;
+        }
+        unisci(a, b);
+        modificaOpinione(a, b, EFFETTO_ALLEANZA);
+        alleanzeFormate++;
+        return true;
+    }
+
+    /**
+     * Fa uscire uno stato dal suo blocco di alleanza.
+     *
+     * @param a indice dello stato
+     * @return true se lo stato era in un blocco
+     */
+    public synchronized boolean lasciaAlleanza(int a) {
+        if (!valido(a) || blocco[a] < 0) {
+            return false;
+        }
+        int b = blocco[a];
+        membri[b][a >>> 6] &= ~(1L << a);
+        blocco[a] = -1;
+        numMembri[b]--;
+        if (numMembri[b] == 1) {
+            // Un blocco di un solo stato non è un'alleanza
+            int ultimo = primoMembro(b);
+            blocco[ultimo] = -1;
+            membri[b][ultimo >>> 6] = 0;
+            numMembri[b] = 0;
+        }
+        if (numMembri[b] == 0) {
+            liberaBlocco(b);
+        }
+        return true;
+    }
+
+    /* =========================== GESTIONE INTERNA =========================== */
+
+    /**
+     * Indica se un membro del blocco di a (o a stesso) è in guerra con un membro del blocco di b.
+     */
+    private boolean blocchiInGuerra(int a, int b) {
+        int ba = blocco[a];
+        if (ba < 0) {
+            return isInGuerraConAlleatiDi(a, b);
+        }
+        long[] bitset = membri[ba];
+        for (int w = 0; w < parole; w++) {
+            long parola = bitset[w];
+            while (parola != 0) {
+                int m = (w << 6) + Long.numberOfTrailingZeros(parola);
+                parola &= parola - 1;
+                if (isInGuerraConAlleatiDi(m, b)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mette a e b nello stesso blocco, spostando i membri del blocco più piccolo.
+     */
+    private void unisci(int a, int b) {
+        int ba = blocco[a], bb = blocco[b];
+        if (ba < 0 && bb < 0) {
+            int nuovo = nuovoBlocco();
+            aggiungiMembro(nuovo, a);
+            aggiungiMembro(nuovo, b);
+            return;
+        }
+        if (ba < 0) {
+            aggiungiMembro(bb, a);
+            return;
+        }
+        if (bb < 0) {
+            aggiungiMembro(ba, b);
+            return;
+        }
+        int grande = numMembri[ba] >= numMembri[bb] ? ba : bb;
+        int piccolo = grande == ba ? bb : ba;
+        long[] daSpostare = membri[piccolo];
+        long[] destinazione = membri[grande];
+        for (int w = 0; w < parole; w++) {
+            long parola = daSpostare[w];
+            destinazione[w] |= parola;
+            while (parola != 0) {
+                blocco[(w << 6) + Long.numberOfTrailingZeros(parola)] = grande;
+                parola &= parola - 1;
+            }
+        }
+        numMembri[grande] += numMembri[piccolo];
+        Arrays.fill(daSpostare, 0L);
+        numMembri[piccolo] = 0;
+        liberaBlocco(piccolo);
+    }
+
+    private void aggiungiMembro(int b, int a) {
+        membri[b][a >>> 6] |= 1L << a;
+        blocco[a] = b;
+        numMembri[b]++;
+    }
+
+    private int primoMembro(int b) {
+        long[] bitset = membri[b];
+        for (int w = 0; w < parole; w++) {
+            if (bitset[w] != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(bitset[w]);
+            }
+        }
+        return -1;
+    }
+
+    private int nuovoBlocco() {
+        int b;
+        if (numBlocchiLiberi > 0) {
+            b = blocchiLiberi[--numBlocchiLiberi];
+        } else {
+            if (numBlocchi == membri.length) {
+                int c = Math.max(8, numBlocchi * 2);
+                membri = Arrays.copyOf(membri, c);
+                numMembri = Arrays.copyOf(numMembri, c);
+            }
+            b = numBlocchi++;
+        }
+        membri[b] = new long[parole];
+        numMembri[b] = 0;
+        return b;
+    }
+
+    private void liberaBlocco(int b) {
+        membri[b] = null;
+        if (numBlocchiLiberi == blocchiLiberi.length) {
+            blocchiLiberi = Arrays.copyOf(blocchiLiberi, Math.max(8, numBlocchiLiberi * 2));
+        }
+        blocchiLiberi[numBlocchiLiberi++] = b;
+    }
+
+    private boolean valido(int a) {
+        return a >= 0 && a < capacita;
+    }
+
+    /**
+     * Posizione della coppia (a, b) nella matrice triangolare.
+     */
+    private int posizione(int a, int b) {
+        int i = Math.min(a, b), j = Math.max(a, b);
+        return (int) ((long) i * (2L * capacita - i - 1) / 2 + (j - i - 1));
+    }
+
+    /**
+     * Allarga le strutture per almeno n stati (raddoppiando, per ammortizzare le copie).
+     */
+    private void assicuraCapacita(int n) {
+        if (n <= capacita) {
+            return;
+        }
+        int vecchia = capacita;
+        int nuova = Math.max(n, Math.min(Math.max(16, vecchia * 2), n + 1024));
+        int nuoveParole = (nuova + 63) >>> 6;
+
+        // Opinioni: la disposizione triangolare dipende dalla capacità, si ricopia riga per riga
+        byte[] nuovaOpinione = new byte[(int) ((long) nuova * (nuova - 1) / 2)];
+        for (int i = 0; i + 1 < vecchia; i++) {
+            int da = (int) ((long) i * (2L * vecchia - i - 1) / 2);
+            int a = (int) ((long) i * (2L * nuova - i - 1) / 2);
+            System.arraycopy(opinione, da, nuovaOpinione, a, vecchia - i - 1);
+        }
+        opinione = nuovaOpinione;
+
+        guerre = Arrays.copyOf(guerre, nuova);
+        for (int s = 0; s < nuova; s++) {
+            guerre[s] = guerre[s] == null ? new long[nuoveParole] : Arrays.copyOf(guerre[s], nuoveParole);
+        }
+        for (int b = 0; b < numBlocchi; b++) {
+            if (membri[b] != null) {
+                membri[b] = Arrays.copyOf(membri[b], nuoveParole);
+            }
+        }
+        blocco = Arrays.copyOf(blocco, nuova);
+        Arrays.fill(blocco, vecchia, nuova, -1);
+        capacita = nuova;
+        parole = nuoveParole;
+    }
+
+    /* =========================== IMPRONTA =========================== */
+
+    /**
+     * Mescola in un'impronta tutte le relazioni, leggendo direttamente gli
+     * array: righe delle guerre, blocco di ogni stato e opinioni (otto per
+     * parola). Le parole entrano in polinomi con moltiplicatore dispari, così
+     * ogni parola cambiata cambia il risultato; due polinomi indipendenti
+     * sulle opinioni dimezzano la catena di dipendenze. Costa una passata sui
+     * dati, senza un accesso per coppia.
+     *
+     * @param h impronta da cui partire
+     * @return impronta aggiornata
+     * @see Partita#calcolaImpronta()
+     */
+    public synchronized long impronta(long h) {
+        long righe = 0;
+        for (int s = 0; s < capacita; s++) {
+            for (long parola : guerre[s]) {
+                righe = righe * MOLTIPLICATORE_IMPRONTA + parola;
+            }
+            righe = righe * MOLTIPLICATORE_IMPRONTA + blocco[s];
+        }
+        long pari = 0, dispari = 0;
+        int i = 0;
+        for (; i + 2 * Long.BYTES <= opinione.length; i += 2 * Long.BYTES) {
+            pari = pari * MOLTIPLICATORE_IMPRONTA + (long) OTTO_OPINIONI.get(opinione, i);
+            dispari = dispari * MOLTIPLICATORE_IMPRONTA + (long) OTTO_OPINIONI.get(opinione, i + Long.BYTES);
+        }
+        for (; i < opinione.length; i++) {
+            pari = pari * MOLTIPLICATORE_IMPRONTA + opinione[i];
+        }
+        h = mescola(h, capacita);
+        h = mescola(h, righe);
+        h = mescola(h, pari);
+        return mescola(h, dispari);
+    }
+
+    private static long mescola(long h, long valore) {
+        return GeneratoreCasuale.mescola(h * 31 + valore);
+    }
+
+    /* =========================== STATISTICHE =========================== */
+
+    public synchronized int getCapacita() {
+        return capacita;
+    }
+
+    public synchronized long getGuerreDichiarate() {
+        return guerreDichiarate;
+    }
+
+    public synchronized long getAlleanzeFormate() {
+        return alleanzeFormate;
+    }
+
+    public synchronized long getProposteRifiutate() {
+        return proposteRifiutate;
+    }
+}
@@ -0,0 +1,360 @@
+package battle_cioba;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Esecuzione della simulazione senza interfaccia grafica, per le prove di
+ * durata e i tornei tra intelligenze artificiali su macchine senza display.
+ * Nessuna classe di AWT o Swing viene caricata: il modello non le usa e
+ * questa classe non tocca BattleCiobaGUI. I giorni li esegue il
+ * MotoreSimulazione della partita, senza attese o a velocità scalata, e le
+ * metriche vengono dai suoi riepiloghi.
+ * <p>
+ * Uso:
+ * <pre>
+ * java battle_cioba.Battle_Cioba --headless [opzioni]
+ *   --carica file       rigenera il mondo di una registrazione (semi, mappa e stati)
+ *   --mappa file        mappa da generare (predefinita mondoT.csv)
+ *   --stati n           stati da generare
+ *   --seme n            seme del mondo
+ *   --livello nome      livello dei controllori (tutti gli stati giocano da soli)
+ *   --giorni n          esce dopo n giorni (0 = mai)
+ *   --velocita g        giorni al secondo (0 = senza attese; gli altri valori
+ *                       restano nei limiti del moltiplicatore del motore)
+ *   --registra file     registra la partita
+ *   --http porta        comandi e metriche anche via HTTP su 127.0.0.1
+ * </pre>
+ * Comandi (una riga sullo standard input, oppure GET /comando?v=argomento):
+ * metriche, pausa, riprendi, velocita g, impronta, esci.
+ */
+public final class EsecuzioneHeadless implements OsservatoreSimulazione {
+
+    /**
+     * Partita in esecuzione.
+     */
+    private final Partita partita;
+
+    /**
+     * Motore della partita, che esegue i giorni sul suo thread.
+     */
+    private final MotoreSimulazione motore;
+
+    /**
+     * Indica che l'esecuzione è finita (comando esci o giorno finale).
+     */
+    private volatile boolean fermato;
+
+    /**
+     * Tempo totale per fase e giorni eseguiti, dai riepiloghi del motore
+     * (accesso sincronizzato su this).
+     */
+    private final Map<String, Long> tempiFasi = new LinkedHashMap<>();
+    private long giorniEseguiti, nanosGiorni;
+
+    /**
+     * Istanti di avvio della JVM, di partita pronta e della finestra per la velocità misurata.
+     */
+    private final long avvioMs, prontoMs;
+    private long inizioFinestra = System.nanoTime(), giorniFinestra;
+    private double velocitaMisurata;
+
+    private EsecuzioneHeadless(Partita partita, long giorniMassimi, double giorniAlSecondo) {
+        this.partita = partita;
+        this.motore = partita.getMotore();
+        this.avvioMs = ProcessHandle.current().info().startInstant().map(Instant::toEpochMilli)
+                .orElse(System.currentTimeMillis());
+        this.prontoMs = System.currentTimeMillis();
+        motore.setGiornoFinale(giorniMassimi);
+        impostaVelocita(giorniAlSecondo);
+        motore.aggiungiOsservatore(this);
+    }
+
+    /* =========================== GIORNI =========================== */
+
+    /**
+     * Accumula i tempi del giorno e chiude l'esecuzione al giorno finale o se una fase è fallita.
+     */
+    @Override
+    public void giornoCompletato(RiepilogoGiorno riepilogo) {
+        synchronized (this) {
+            giorniEseguiti++;
+            giorniFinestra++;
+            nanosGiorni += riepilogo.getDurataTotale();
+            for (int i = 0; i < riepilogo.getNumeroFasi(); i++) {
+                tempiFasi.merge(riepilogo.getNomiFasi().get(i), riepilogo.getDurataFase(i), Long::sum);
+            }
+        }
+        long finale = motore.getGiornoFinale();
+        if (finale > 0 && riepilogo.getGiorno() >= finale) {
+            ferma();
+        } else if (riepilogo.getIndicatore("fasi_fallite") > 0) {
+            // Il motore si è bloccato da solo: senza nessuno che lo riprenda si chiude
+            System.err.println("Esecuzione interrotta al giorno " + riepilogo.getGiorno());
+            ferma();
+        }
+    }
+
+    /**
+     * Giorni al secondo: 0 per eseguirli senza attese, altrimenti il
+     * moltiplicatore del motore (un giorno al secondo a 1x).
+     */
+    private void impostaVelocita(double giorniAlSecondo) {
+        if (giorniAlSecondo <= 0) {
+            motore.setSenzaAttese(true);
+        } else {
+            motore.setMoltiplicatore(giorniAlSecondo * MotoreSimulazione.DURATA_GIORNO_NS / 1e9);
+            motore.setSenzaAttese(false);
+        }
+    }
+
+    private double getGiorniAlSecondoRichiesti() {
+        return motore.isSenzaAttese() ? 0 : motore.getMoltiplicatore() * 1e9 / MotoreSimulazione.DURATA_GIORNO_NS;
+    }
+
+    /* =========================== COMANDI =========================== */
+
+    /**
+     * Esegue un comando testuale.
+     *
+     * @param comando nome del comando
+     * @param argomento argomento (può essere null)
+     * @return risposta da mostrare
+     */
+    String esegui(String comando, String argomento) {
+        switch (comando) {
+            case "":
+            case "metriche":
+                return metriche();
+            case "pausa":
+                motore.pausa();
+                return "in pausa al giorno " + motore.getGiorno() + "\n";
+            case "riprendi":
+                motore.riprendi();
+                return "ripresa\n";
+            case "velocita":
+                try {
+                    impostaVelocita(argomento == null || argomento.equals("max") ? 0 : Double.parseDouble(argomento));
+                    double gs = getGiorniAlSecondoRichiesti();
+                    return gs > 0 ? gs + " giorni/s\n" : "massima velocità\n";
+                } catch (NumberFormatException e) {
+                    return "velocità non valida: " + argomento + "\n";
+                }
+            case "impronta":
+                return String.format("giorno %d impronta %016x%n", motore.getGiorno(), partita.calcolaImpronta());
+            case "esci":
+                ferma();
+                return "uscita\n";
+            default:
+                return "comando sconosciuto: " + comando
+                        + " (metriche, pausa, riprendi, velocita g, impronta, esci)\n";
+        }
+    }
+
+    private void ferma() {
+        synchronized (this) {
+            fermato = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Attende la fine dell'esecuzione.
+     */
+    private synchronized void attendiFine() throws InterruptedException {
+        while (!fermato) {
+            wait();
+        }
+    }
+
+    /**
+     * Metriche come righe "nome valore": giorno, velocità, memoria
+     * residente del processo, tempi medi delle fasi e indicatori dell'ultimo giorno.
+     */
+    private String metriche() {
+        StringBuilder sb = new StringBuilder();
+        Runtime rt = Runtime.getRuntime();
+        synchronized (this) {
+            long ora = System.nanoTime();
+            if (ora - inizioFinestra >= 1_000_000_000L) {
+                velocitaMisurata = giorniFinestra * 1e9 / (ora - inizioFinestra);
+                inizioFinestra = ora;
+                giorniFinestra = 0;
+            }
+            riga(sb, "giorno", motore.getGiorno());
+            riga(sb, "giorni_eseguiti", giorniEseguiti);
+            riga(sb, "giorni_al_secondo", velocitaMisurata);
+            riga(sb, "giorni_al_secondo_richiesti", getGiorniAlSecondoRichiesti());
+            riga(sb, "giorni_scartati", motore.getGiorniScartati());
+            riga(sb, "in_pausa", motore.isInPausa() ? 1 : 0);
+            riga(sb, "rss_kb", leggiMemoria("VmRSS:"));
+            riga(sb, "rss_picco_kb", leggiMemoria("VmHWM:"));
+            riga(sb, "heap_usato_kb", (rt.totalMemory() - rt.freeMemory()) / 1024);
+            riga(sb, "thread", Thread.activeCount());
+            riga(sb, "avvio_ms", prontoMs - avvioMs);
+            riga(sb, "tempo_attivo_s", (System.currentTimeMillis() - prontoMs) / 1000);
+            riga(sb, "giorno_medio_us", nanosGiorni / 1000.0 / Math.max(1, giorniEseguiti));
+            for (Map.Entry<String, Long> fase : tempiFasi.entrySet()) {
+                riga(sb, "fase_" + nomeMetrica(fase.getKey()) + "_us",
+                        fase.getValue() / 1000.0 / Math.max(1, giorniEseguiti));
+            }
+        }
+        RiepilogoGiorno r = motore.getUltimoRiepilogo();
+        if (r != null) {
+            for (Map.Entry<String, Long> indicatore : r.getIndicatori().entrySet()) {
+                riga(sb, nomeMetrica(indicatore.getKey()), indicatore.getValue());
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void riga(StringBuilder sb, String nome, double valore) {
+        if (valore == Math.rint(valore) && Math.abs(valore) < 1e15) {
+            sb.append(nome).append(' ').append((long) valore).append('\n');
+        } else {
+            sb.append(nome).append(' ').append(String.format(Locale.ROOT, "%.1f", valore)).append('\n');
+        }
+    }
+
+    private static String nomeMetrica(String nome) {
+        return nome.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "_");
+    }
+
+    /**
+     * Legge un campo in kB da /proc/self/status (solo Linux).
+     *
+     * @return valore in kB, -1 se non disponibile
+     */
+    static long leggiMemoria(String campo) {
+        try {
+            for (String riga : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (riga.startsWith(campo)) {
+                    return Long.parseLong(riga.substring(campo.length()).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Non Linux o formato inatteso
+        }
+        return -1;
+    }
+
+    /* =========================== INTERFACCE LOCALI =========================== */
+
+    /**
+     * Legge i comandi dallo standard input finché c'è.
+     */
+    private void leggiComandi() {
+        Thread lettore = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+                String linea;
+                while (!fermato && (linea = in.readLine()) != null) {
+                    String[] parti = linea.trim().split("\\s+", 2);
+                    System.out.print(esegui(parti[0], parti.length > 1 ? parti[1] : null));
+                    System.out.flush();
+                }
+            } catch (IOException e) {
+                // Standard input chiuso: restano l'HTTP e il limite dei giorni
+            }
+        }, "Comandi-Headless");
+        lettore.setDaemon(true);
+        lettore.start();
+    }
+
+    /**
+     * Comandi e metriche via HTTP sull'interfaccia di loopback.
+     */
+    private HttpServer avviaHttp(int porta) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), 0);
+        http.createContext("/", this::rispondi);
+        http.start();
+        return http;
+    }
+
+    private void rispondi(HttpExchange scambio) throws IOException {
+        String comando = scambio.getRequestURI().getPath().substring(1);
+        String query = scambio.getRequestURI().getQuery();
+        String argomento = query != null && query.startsWith("v=") ? query.substring(2) : null;
+        String risposta = esegui(comando, argomento);
+        byte[] corpo = risposta.getBytes(StandardCharsets.UTF_8);
+        scambio.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        scambio.sendResponseHeaders(risposta.startsWith("comando sconosciuto") ? 404 : 200, corpo.length);
+        try (OutputStream uscita = scambio.getResponseBody()) {
+            uscita.write(corpo);
+        }
+    }
+
+    /* =========================== AVVIO =========================== */
+
+    /**
+     * Avvia l'esecuzione senza interfaccia.
+     *
+     * @param args opzioni (vedi la descrizione della classe)
+     * @throws Exception se la mappa, la registrazione o la porta non sono disponibili
+     */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        Map<String, String> opzioni = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                System.err.println("Opzione non valida: " + args[i]);
+                System.exit(2);
+            }
+            opzioni.put(args[i].substring(2), args[++i]);
+        }
+        RegistrazionePartita.Intestazione intestazione;
+        if (opzioni.containsKey("carica")) {
+            try (DataInputStream ingresso = RegistrazionePartita.apri(opzioni.get("carica"))) {
+                intestazione = RegistrazionePartita.leggiIntestazione(ingresso);
+            }
+        } else {
+            long seme = Long.parseLong(opzioni.getOrDefault("seme", String.valueOf(System.nanoTime())));
+            intestazione = new RegistrazionePartita.Intestazione(seme, GeneratoreCasuale.deriva(seme, 0),
+                    Integer.parseInt(opzioni.getOrDefault("stati", String.valueOf(RiproduzionePartita.STATI))),
+                    opzioni.getOrDefault("mappa", RiproduzionePartita.MAPPA));
+        }
+        Partita partita = RiproduzionePartita.creaPartita(intestazione);
+        partita.getIntelligenza().assegnaTutti(LivelloDifficolta.valueOf(
+                opzioni.getOrDefault("livello", RiproduzionePartita.LIVELLO.name())));
+        RegistrazionePartita registrazione = opzioni.containsKey("registra")
+                ? RegistrazionePartita.avvia(opzioni.get("registra"), partita, intestazione) : null;
+
+        EsecuzioneHeadless esecuzione = new EsecuzioneHeadless(partita,
+                Long.parseLong(opzioni.getOrDefault("giorni", "0")),
+                Double.parseDouble(opzioni.getOrDefault("velocita", "0")));
+        HttpServer http = opzioni.containsKey("http") ? esecuzione.avviaHttp(Integer.parseInt(opzioni.get("http"))) : null;
+        System.out.printf("Mondo %dx%d, %d stati, seme %d; pronto in %d ms%s%n", partita.getMondo().getRighe(),
+                partita.getMondo().getColonne(), partita.getMondo().getStati().size(), intestazione.semeMondo,
+                esecuzione.prontoMs - esecuzione.avvioMs,
+                http != null ? ", HTTP su " + http.getAddress() : "");
+        esecuzione.leggiComandi();
+        esecuzione.motore.avvia();
+        esecuzione.motore.riprendi();
+        esecuzione.attendiFine();
+        esecuzione.motore.ferma();
+
+        if (http != null) {
+            http.stop(0);
+        }
+        if (registrazione != null) {
+            registrazione.close();
+        }
+        System.out.print(esecuzione.metriche());
+        System.out.printf("impronta %016x%n", partita.calcolaImpronta());
+        // I thread dell'intelligenza artificiale non devono tenere in vita la JVM
+        System.exit(0);
+    }
+}
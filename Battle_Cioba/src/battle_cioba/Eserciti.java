@@ -0,0 +1,897 @@
+package battle_cioba;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Archivio di tutti gli eserciti del mondo.
+ * <p>
+ * Le unità non sono oggetti: ogni attributo (tipo, stato, cella, forza,
+ * morale, ordine, ...) vive in un array primitivo e l'unità è l'indice
+ * dello slot. Gli slot liberati vengono riusati tramite una lista libera,
+ * quindi reclutare e congedare non alloca e scorrere le unità ogni giorno
+ * legge memoria contigua.
+ * <p>
+ * Gli ordini di movimento e di attacco seguono un Percorso calcolato da
+ * RicercaPercorsi: le unità con lo stesso tragitto condividono la stessa
+ * istanza presa dalla cache. Le unità dirette verso un obiettivo comune
+ * seguono invece un CampoDiFlusso condiviso, quando è già pronto.
+ * <p>
+ * Ogni unità è collegata alla base che l'ha reclutata tramite una lista
+ * doppiamente collegata per base, così da elencare o staccare le unità
+ * di una base in O(1) per unità.
+ */
+public class Eserciti implements FaseSimulazione {
+
+    /**
+     * Ordini che un'unità può eseguire.
+     */
+    public enum Ordine {
+        FERMO,
+        MUOVI,
+        ATTACCA,
+        DIFENDI
+    }
+
+    /**
+     * Ordini indicizzati per ordinale.
+     */
+    private static final Ordine[] ORDINI = Ordine.values();
+
+    /**
+     * Morale massimo (e iniziale) di un'unità.
+     */
+    public static final int MORALE_MASSIMO = 100;
+
+    /**
+     * Morale recuperato ogni giorno da un'unità ferma o in difesa.
+     */
+    private static final int RECUPERO_MORALE = 2;
+
+    /**
+     * Morale perso per ogni battaglia persa.
+     */
+    private static final int MORALE_SCONFITTA = 10;
+
+    /**
+     * Morale guadagnato per ogni battaglia vinta.
+     */
+    private static final int MORALE_VITTORIA = 5;
+
+    /**
+     * Distanza (di Manhattan, in celle) oltre la quale gli ordini usano la
+     * ricerca gerarchica, se disponibile.
+     */
+    public static final int SOGLIA_GERARCHICA = 64;
+
+    /**
+     * Mondo di riferimento.
+     */
+    private Mondo mondo;
+
+    /**
+     * Sistema dei combattimenti a cui vengono dichiarati gli attacchi.
+     */
+    private final RisolutoreCombattimenti combattimenti;
+
+    /**
+     * Servizio di ricerca dei percorsi.
+     */
+    private final RicercaPercorsi percorsi;
+
+    /**
+     * Ricerca gerarchica per i viaggi lunghi (null per usare solo le celle).
+     */
+    private final RicercaGerarchica gerarchica;
+
+    /**
+     * Campi di flusso condivisi per gli obiettivi comuni (null se non usati).
+     */
+    private final CampiDiFlusso campi;
+
+    /**
+     * Giorno in cui è stato chiesto per la prima volta il campo verso un
+     * obiettivo (chiave: classe di movimento * celle + obiettivo), in ordine
+     * di accesso. Un campo si usa solo dal giorno dopo la prima richiesta.
+     */
+    private final LinkedHashMap<Long, Long> campiRichiesti;
+
+    /**
+     * Giorno dell'ultima esecuzione della fase.
+     */
+    private long giornoCorrente;
+
+    /**
+     * true per ogni cella marina (il terreno non cambia durante la partita).
+     */
+    private boolean[] acquaCella = new boolean[0];
+
+    /* ---------- attributi delle unità (uno slot per unità) ---------- */
+
+    /**
+     * Ordinale del TipoEsercito, -1 se lo slot è libero.
+     */
+    private byte[] tipo;
+
+    /**
+     * Indice denso dello stato proprietario.
+     */
+    private int[] stato;
+
+    /**
+     * Cella in cui si trova l'unità.
+     */
+    private int[] cella;
+
+    /**
+     * Truppe dell'unità.
+     */
+    private int[] forza;
+
+    /**
+     * Livello di armamento (1-10).
+     */
+    private byte[] armamento;
+
+    /**
+     * Morale (0-100): riduce la forza effettiva in battaglia.
+     */
+    private byte[] morale;
+
+    /**
+     * Ordinale dell'ordine corrente.
+     */
+    private byte[] ordine;
+
+    /**
+     * Cella obiettivo dell'ordine corrente (-1 nessuna).
+     */
+    private int[] destinazione;
+
+    /**
+     * Percorso seguito per l'ordine corrente (null se nessuno).
+     */
+    private Percorso[] percorso;
+
+    /**
+     * Posizione dell'unità lungo il percorso.
+     */
+    private int[] passoPercorso;
+
+    /**
+     * Piano gerarchico dell'ordine corrente (null se il percorso è diretto).
+     * Il campo percorso contiene allora il tratto in corso.
+     */
+    private PercorsoGerarchico[] piano;
+
+    /**
+     * Tratto del piano gerarchico in corso.
+     */
+    private int[] trattoPiano;
+
+    /**
+     * Piano prodotto dall'ultima chiamata a pianifica.
+     */
+    private PercorsoGerarchico pianoCalcolato;
+
+    /**
+     * Campo di flusso seguito per l'ordine corrente (null se l'unità segue
+     * un percorso).
+     */
+    private CampoDiFlusso[] campo;
+
+    /**
+     * Generazione dello slot, incrementata a ogni congedo
+     * (permette di riconoscere riferimenti a unità non più esistenti).
+     */
+    private int[] generazione;
+
+    /**
+     * Indice della base di reclutamento (-1 se la base non esiste più).
+     */
+    private int[] base;
+
+    /**
+     * Unità successiva della stessa base (-1 fine lista).
+     */
+    private int[] prossimaDellaBase;
+
+    /**
+     * Unità precedente della stessa base (-1 inizio lista).
+     */
+    private int[] precedenteDellaBase;
+
+    /**
+     * Prossimo slot libero (valido solo per gli slot liberi).
+     */
+    private int[] prossimoLibero;
+
+    /**
+     * Primo slot della lista libera (-1 se vuota).
+     */
+    private int primoLibero = -1;
+
+    /**
+     * Numero di slot mai usati (tutti gli slot oltre sono vergini).
+     */
+    private int numSlot;
+
+    /**
+     * Numero di unità attive.
+     */
+    private int numUnita;
+
+    /* ---------- registro delle basi ---------- */
+
+    /**
+     * Indice assegnato a ogni base che ha reclutato almeno un'unità.
+     */
+    private final Map<BaseMilitare, Integer> indiceBase;
+
+    /**
+     * Basi indicizzate.
+     */
+    private BaseMilitare[] basi;
+
+    /**
+     * Prima unità di ogni base (-1 nessuna).
+     */
+    private int[] primaUnitaBase;
+
+    /**
+     * Numero di basi indicizzate.
+     */
+    private int numBasi;
+
+    /**
+     * Unità che hanno dichiarato un attacco nell'ultimo giorno.
+     */
+    private int attacchiUltimoGiorno;
+
+    /**
+     * Costruttore principale.
+     *
+     * @param combattimenti sistema a cui dichiarare gli attacchi (può essere null)
+     * @param percorsi servizio di ricerca dei percorsi
+     */
+    public Eserciti(RisolutoreCombattimenti combattimenti, RicercaPercorsi percorsi) {
+        this(combattimenti, percorsi, null);
+    }
+
+    /**
+     * Costruttore con ricerca gerarchica per i viaggi lunghi.
+     *
+     * @param combattimenti sistema a cui dichiarare gli attacchi (può essere null)
+     * @param percorsi servizio di ricerca dei percorsi
+     * @param gerarchica ricerca gerarchica (null per usare solo le celle)
+     */
+    public Eserciti(RisolutoreCombattimenti combattimenti, RicercaPercorsi percorsi,
+            RicercaGerarchica gerarchica) {
+        this(combattimenti, percorsi, gerarchica, null);
+    }
+
+    /**
+     * Costruttore completo.
+     *
+     * @param combattimenti sistema a cui dichiarare gli attacchi (può essere null)
+     * @param percorsi servizio di ricerca dei percorsi
+     * @param gerarchica ricerca gerarchica (null per usare solo le celle)
+     * @param campi campi di flusso condivisi (null per usare solo i percorsi)
+     */
+    public Eserciti(RisolutoreCombattimenti combattimenti, RicercaPercorsi percorsi,
+            RicercaGerarchica gerarchica, CampiDiFlusso campi) {
+        this.combattimenti = combattimenti;
+        this.percorsi = percorsi;
+        this.gerarchica = gerarchica;
+        this.campi = campi;
+        this.campiRichiesti = new LinkedHashMap<>(CampiDiFlusso.CAPACITA * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> piuVecchia) {
+                return size() > CampiDiFlusso.CAPACITA;
+            }
+        };
+        this.indiceBase = new IdentityHashMap<>();
+        this.basi = new BaseMilitare[16];
+        this.primaUnitaBase = new int[16];
+        alloca(1024);
+    }
+
+    /**
+     * Collega l'archivio alla mappa del mondo. Le unità esistenti vengono mantenute.
+     *
+     * @param mondo mondo di gioco
+     */
+    public void inizializza(Mondo mondo) {
+        this.mondo = mondo;
+        acquaCella = new boolean[mondo.getRighe() * mondo.getColonne()];
+        for (int c = 0; c < acquaCella.length; c++) {
+            Territorio t = mondo.getTerritorio(c);
+            acquaCella[c] = t != null && t.isAcqua();
+        }
+        campiRichiesti.clear();
+    }
+
+    /* =========================== RECLUTAMENTO =========================== */
+
+    /**
+     * Recluta un'unità in una base, prelevando le truppe dalla base stessa.
+     *
+     * @param baseMilitare base che recluta
+     * @param tipoEsercito tipologia dell'unità
+     * @param truppe truppe da assegnare all'unità
+     * @return indice dell'unità, -1 se il reclutamento non è possibile
+     */
+    public int recluta(BaseMilitare baseMilitare, TipoEsercito tipoEsercito, int truppe) {
+        if (mondo == null || baseMilitare == null || tipoEsercito == null || truppe <= 0
+                || !tipoEsercito.reclutabileDa(baseMilitare.getTipoBase())
+                || baseMilitare.getNumeroTruppe() < truppe
+                || baseMilitare.getTerritorio() == null
+                || baseMilitare.getTerritorio().getIndiceCella() < 0) {
+            return -1;
+        }
+        int indiceStato = mondo.indiceStato(baseMilitare.getStatoPadrone());
+        if (indiceStato < 0) {
+            return -1;
+        }
+
+        int u = slotLibero();
+        tipo[u] = (byte) tipoEsercito.ordinal();
+        stato[u] = indiceStato;
+        cella[u] = baseMilitare.getTerritorio().getIndiceCella();
+        forza[u] = truppe;
+        armamento[u] = (byte) Math.min(10, baseMilitare.getLivelloArmamento() + tipoEsercito.getBonusArmamento());
+        morale[u] = (byte) MORALE_MASSIMO;
+        ordine[u] = (byte) Ordine.FERMO.ordinal();
+        destinazione[u] = -1;
+        percorso[u] = null;
+        piano[u] = null;
+        campo[u] = null;
+        collegaBase(u, registraBase(baseMilitare));
+        numUnita++;
+
+        baseMilitare.setNumeroTruppe(baseMilitare.getNumeroTruppe() - truppe);
+        return u;
+    }
+
+    /**
+     * Congeda un'unità e libera il suo slot. Se l'unità si trova nella cella
+     * della propria base, le truppe rientrano nella base.
+     *
+     * @param u indice dell'unità
+     * @return true se l'unità esisteva
+     */
+    public boolean congeda(int u) {
+        if (!isAttiva(u)) {
+            return false;
+        }
+        BaseMilitare b = getBase(u);
+        if (b != null && b.getTerritorio() != null && b.getTerritorio().getIndiceCella() == cella[u]
+                && mondo.indiceStato(b.getStatoPadrone()) == stato[u]) {
+            b.setNumeroTruppe(b.getNumeroTruppe() + forza[u]);
+        }
+        libera(u);
+        return true;
+    }
+
+    /**
+     * Assegna un ordine a un'unità. Se il campo di flusso verso l'obiettivo è
+     * stato chiesto in un giorno precedente e il suo tragitto costa all'unità
+     * quanto un percorso calcolato, l'unità lo segue; altrimenti si calcola un
+     * percorso (e al primo ordine il campo viene preparato in background per
+     * i giorni successivi). La scelta dipende solo dallo stato della partita,
+     * mai da quando finiscono i thread di lavoro, così registrazioni e
+     * lockstep restano riproducibili.
+     *
+     * @param u indice dell'unità
+     * @param nuovoOrdine ordine da eseguire
+     * @param cellaObiettivo cella obiettivo (ignorata per FERMO e DIFENDI)
+     * @return true se l'ordine è stato accettato (per MUOVI e ATTACCA serve un percorso)
+     */
+    public boolean ordina(int u, Ordine nuovoOrdine, int cellaObiettivo) {
+        if (!isAttiva(u) || nuovoOrdine == null) {
+            return false;
+        }
+        boolean serveObiettivo = nuovoOrdine == Ordine.MUOVI || nuovoOrdine == Ordine.ATTACCA;
+        Percorso nuovoPercorso = null;
+        CampoDiFlusso nuovoCampo = null;
+        if (serveObiettivo) {
+            if (cellaObiettivo < 0 || cellaObiettivo >= acquaCella.length) {
+                return false;
+            }
+            nuovoCampo = campoPronto(u, cellaObiettivo);
+            if (nuovoCampo == null) {
+                nuovoPercorso = pianifica(u, cellaObiettivo);
+                if (nuovoPercorso == null) {
+                    return false;
+                }
+            }
+        }
+        ordine[u] = (byte) nuovoOrdine.ordinal();
+        destinazione[u] = serveObiettivo ? cellaObiettivo : -1;
+        percorso[u] = nuovoPercorso;
+        passoPercorso[u] = 0;
+        piano[u] = nuovoPercorso != null ? pianoCalcolato : null;
+        trattoPiano[u] = 0;
+        campo[u] = nuovoCampo;
+        return true;
+    }
+
+    /**
+     * Restituisce il campo di flusso verso l'obiettivo se è stato chiesto in
+     * un giorno precedente (se serve ne attende il calcolo) e l'unità può
+     * seguirlo dalla sua cella senza attraversare celle che per il suo stato
+     * costano più del terreno.
+     */
+    private CampoDiFlusso campoPronto(int u, int cellaObiettivo) {
+        if (campi == null || campi.isDiagonali() != percorsi.isDiagonali()) {
+            return null;
+        }
+        ClasseMovimento classe = TipoEsercito.daOrdinale(tipo[u]).getClasseMovimento();
+        Long chiave = (long) classe.ordinal() * acquaCella.length + cellaObiettivo;
+        Long richiesto = campiRichiesti.get(chiave);
+        if (richiesto == null) {
+            campiRichiesti.put(chiave, giornoCorrente);
+            campi.richiedi(cellaObiettivo, classe);
+            return null;
+        }
+        if (richiesto >= giornoCorrente) {
+            return null;
+        }
+        CampoDiFlusso f;
+        try {
+            f = campi.attendi(cellaObiettivo, classe);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return f != null && f.isRaggiungibile(cella[u])
+                && percorsi.isSenzaSovrapprezzo(f, cella[u], stato[u]) ? f : null;
+    }
+
+    /**
+     * Calcola il percorso dalla cella dell'unità all'obiettivo. Oltre
+     * SOGLIA_GERARCHICA celle usa la ricerca gerarchica e restituisce solo il
+     * primo tratto; il piano completo resta in pianoCalcolato.
+     *
+     * @return percorso (o primo tratto) trovato, null se l'obiettivo non è raggiungibile
+     */
+    private Percorso pianifica(int u, int cellaObiettivo) {
+        ClasseMovimento classe = TipoEsercito.daOrdinale(tipo[u]).getClasseMovimento();
+        pianoCalcolato = null;
+        int colonne = mondo.getColonne();
+        int distanza = Math.abs(cella[u] / colonne - cellaObiettivo / colonne)
+                + Math.abs(cella[u] % colonne - cellaObiettivo % colonne);
+        if (gerarchica == null || distanza <= SOGLIA_GERARCHICA) {
+            return percorsi.trovaPercorso(cella[u], cellaObiettivo, classe, stato[u]);
+        }
+        PercorsoGerarchico pg = gerarchica.trovaPercorso(cella[u], cellaObiettivo, classe, stato[u]);
+        Percorso primo = pg != null ? pg.raffina(0) : null;
+        if (primo != null) {
+            pianoCalcolato = pg;
+        }
+        return primo;
+    }
+
+    /* =========================== FASE DI SIMULAZIONE =========================== */
+
+    @Override
+    public String getNome() {
+        return "Eserciti";
+    }
+
+    /**
+     * Fa avanzare tutte le unità di un giorno: movimento verso la destinazione,
+     * dichiarazione degli attacchi e recupero del morale. Non alloca memoria.
+     */
+    @Override
+    public void esegui(Mondo mondo, long giorno) {
+        giornoCorrente = giorno;
+        attacchiUltimoGiorno = 0;
+        int fermo = Ordine.FERMO.ordinal();
+        int muovi = Ordine.MUOVI.ordinal();
+        int attacca = Ordine.ATTACCA.ordinal();
+        for (int u = 0; u < numSlot; u++) {
+            if (tipo[u] < 0) {
+                continue;
+            }
+            int o = ordine[u];
+            if (o == muovi) {
+                TipoEsercito t = TipoEsercito.daOrdinale(tipo[u]);
+                if (campo[u] != null ? segui(u, t, false) : muovi(u, t, false)) {
+                    ordine[u] = (byte) fermo;
+                    destinazione[u] = -1;
+                    percorso[u] = null;
+                    piano[u] = null;
+                    campo[u] = null;
+                }
+            } else if (o == attacca) {
+                TipoEsercito t = TipoEsercito.daOrdinale(tipo[u]);
+                if (campo[u] != null ? segui(u, t, true) : muovi(u, t, true)) {
+                    dichiaraAttacco(u);
+                }
+            } else if (morale[u] < MORALE_MASSIMO) {
+                morale[u] = (byte) Math.min(MORALE_MASSIMO, morale[u] + RECUPERO_MORALE);
+            }
+        }
+    }
+
+    @Override
+    public void riepiloga(Map<String, Long> indicatori) {
+        indicatori.put("eserciti", (long) numUnita);
+        indicatori.put("attacchi_eserciti", (long) attacchiUltimoGiorno);
+    }
+
+    /**
+     * Fa avanzare l'unità lungo il suo percorso di al massimo "velocità" celle.
+     * Con un piano gerarchico, alla fine di ogni tratto viene raffinato il
+     * successivo. Se la cella successiva è diventata impraticabile (o un
+     * tratto non è più percorribile) il percorso viene ricalcolato dalla
+     * posizione corrente; se non ce n'è un altro, l'ordine decade.
+     *
+     * @param fermatiAccanto true per fermarsi sulla penultima cella (attacco)
+     * @return true se l'unità è arrivata (accanto all'obiettivo, nel caso dell'attacco)
+     */
+    private boolean muovi(int u, TipoEsercito t, boolean fermatiAccanto) {
+        Percorso p = percorso[u];
+        int ultimoPasso = ultimoPasso(u, p, fermatiAccanto);
+        int mosse = 0;
+        while (mosse < t.getVelocita()) {
+            if (passoPercorso[u] >= ultimoPasso) {
+                PercorsoGerarchico pg = piano[u];
+                if (pg == null || trattoPiano[u] + 1 >= pg.getNumTratti()) {
+                    break;
+                }
+                trattoPiano[u]++;
+                p = pg.raffina(trattoPiano[u]);
+                if (p == null) {
+                    p = ripianifica(u);
+                    if (p == null) {
+                        return false;
+                    }
+                }
+                percorso[u] = p;
+                passoPercorso[u] = 0;
+                ultimoPasso = ultimoPasso(u, p, fermatiAccanto);
+                continue;
+            }
+            int prossima = p.getCella(passoPercorso[u] + 1);
+            if (!t.puoEntrare(acquaCella[prossima])) {
+                if (!fermatiAccanto && prossima == destinazione[u]) {
+                    // Destinazione non praticabile: ci si ferma accanto
+                    return true;
+                }
+                p = ripianifica(u);
+                if (p == null) {
+                    return false;
+                }
+                ultimoPasso = ultimoPasso(u, p, fermatiAccanto);
+                continue;
+            }
+            passoPercorso[u]++;
+            cella[u] = prossima;
+            mosse++;
+        }
+        return passoPercorso[u] >= ultimoPasso
+                && (piano[u] == null || trattoPiano[u] + 1 >= piano[u].getNumTratti());
+    }
+
+    /**
+     * Fa avanzare l'unità di al massimo "velocità" celle lungo il suo campo
+     * di flusso. Se la cella successiva è impraticabile (il campo è di una
+     * versione superata) l'unità ripiega su un percorso calcolato.
+     *
+     * @param fermatiAccanto true per fermarsi accanto all'obiettivo (attacco)
+     * @return true se l'unità è arrivata (accanto all'obiettivo, nel caso dell'attacco)
+     */
+    private boolean segui(int u, TipoEsercito t, boolean fermatiAccanto) {
+        CampoDiFlusso f = campo[u];
+        for (int mosse = 0; mosse < t.getVelocita(); mosse++) {
+            int prossima = f.prossimaCella(cella[u]);
+            if (prossima < 0) {
+                return cella[u] == destinazione[u];
+            }
+            if (prossima == destinazione[u] && (fermatiAccanto || !t.puoEntrare(acquaCella[prossima]))) {
+                return true;
+            }
+            if (!t.puoEntrare(acquaCella[prossima])) {
+                ripianifica(u);
+                return false;
+            }
+            cella[u] = prossima;
+        }
+        return cella[u] == destinazione[u]
+                || (fermatiAccanto && f.prossimaCella(cella[u]) == destinazione[u]);
+    }
+
+    /**
+     * Ultimo passo da percorrere sul percorso corrente: sull'ultimo tratto
+     * dell'attacco ci si ferma accanto all'obiettivo.
+     */
+    private int ultimoPasso(int u, Percorso p, boolean fermatiAccanto) {
+        boolean ultimoTratto = piano[u] == null || trattoPiano[u] + 1 >= piano[u].getNumTratti();
+        return p.getLunghezza() - (fermatiAccanto && ultimoTratto ? 2 : 1);
+    }
+
+    /**
+     * Ricalcola il percorso dalla posizione corrente. Se non ce n'è uno l'ordine decade.
+     *
+     * @return nuovo percorso (o primo tratto), null se l'ordine è decaduto
+     */
+    private Percorso ripianifica(int u) {
+        Percorso p = pianifica(u, destinazione[u]);
+        campo[u] = null;
+        percorso[u] = p;
+        passoPercorso[u] = 0;
+        piano[u] = pianoCalcolato;
+        trattoPiano[u] = 0;
+        if (p == null) {
+            ordine[u] = (byte) Ordine.FERMO.ordinal();
+            destinazione[u] = -1;
+        }
+        return p;
+    }
+
+    /**
+     * Dichiara l'attacco contro il centro della cella obiettivo. Se la cella
+     * non ha più un centro nemico, l'unità si ferma.
+     */
+    private void dichiaraAttacco(int u) {
+        Territorio t = mondo.getTerritorio(destinazione[u]);
+        Centro centro = t != null ? t.getCentro() : null;
+        if (centro == null || combattimenti == null
+                || mondo.indiceStato(centro.getStatoPadrone()) == stato[u]) {
+            ordine[u] = (byte) Ordine.FERMO.ordinal();
+            destinazione[u] = -1;
+            percorso[u] = null;
+            piano[u] = null;
+            campo[u] = null;
+            return;
+        }
+        if (combattimenti.dichiaraAttacco(this, u, centro)) {
+            attacchiUltimoGiorno++;
+        }
+    }
+
+    /**
+     * Applica l'esito di una battaglia a un'unità (chiamato dal risolutore
+     * durante la fusione, sul thread della simulazione).
+     *
+     * @param u indice dell'unità
+     * @param perdite truppe perse
+     * @param vinta true se l'unità ha vinto
+     */
+    void applicaEsito(int u, int perdite, boolean vinta) {
+        forza[u] = Math.max(0, forza[u] - perdite);
+        int nuovoMorale = morale[u] + (vinta ? MORALE_VITTORIA : -MORALE_SCONFITTA);
+        morale[u] = (byte) Math.max(0, Math.min(MORALE_MASSIMO, nuovoMorale));
+        if (forza[u] == 0) {
+            libera(u);
+        }
+    }
+
+    /**
+     * Applica il logoramento di un'unità senza rifornimenti (chiamato dal
+     * sistema dei rifornimenti, sul thread della simulazione).
+     *
+     * @param u indice dell'unità
+     * @param perdite truppe perse
+     * @param moralePerso morale perso
+     */
+    void applicaLogoramento(int u, int perdite, int moralePerso) {
+        forza[u] = Math.max(0, forza[u] - perdite);
+        morale[u] = (byte) Math.max(0, morale[u] - moralePerso);
+        if (forza[u] == 0) {
+            libera(u);
+        }
+    }
+
+    /* =========================== INTERROGAZIONI =========================== */
+
+    public boolean isAttiva(int u) {
+        return u >= 0 && u < numSlot && tipo[u] >= 0;
+    }
+
+    public int getNumUnita() {
+        return numUnita;
+    }
+
+    /**
+     * Restituisce il limite superiore degli indici delle unità: per scorrere
+     * tutte le unità basta un ciclo da 0 a questo valore saltando gli slot non attivi.
+     */
+    public int getLimiteIndici() {
+        return numSlot;
+    }
+
+    public TipoEsercito getTipo(int u) {
+        return TipoEsercito.daOrdinale(tipo[u]);
+    }
+
+    public int getStato(int u) {
+        return stato[u];
+    }
+
+    public int getCella(int u) {
+        return cella[u];
+    }
+
+    public int getForza(int u) {
+        return forza[u];
+    }
+
+    /**
+     * Restituisce la forza pesata per il morale, usata in battaglia.
+     */
+    public int getForzaEffettiva(int u) {
+        return (int) ((long) forza[u] * morale[u] / MORALE_MASSIMO);
+    }
+
+    public int getArmamento(int u) {
+        return armamento[u];
+    }
+
+    public int getMorale(int u) {
+        return morale[u];
+    }
+
+    public Ordine getOrdine(int u) {
+        return ORDINI[ordine[u]];
+    }
+
+    public int getDestinazione(int u) {
+        return destinazione[u];
+    }
+
+    public int getGenerazione(int u) {
+        return generazione[u];
+    }
+
+    /**
+     * Restituisce la base che ha reclutato l'unità (null se non più registrata).
+     */
+    public BaseMilitare getBase(int u) {
+        return base[u] >= 0 ? basi[base[u]] : null;
+    }
+
+    /**
+     * Restituisce la prima unità reclutata da una base ancora attiva.
+     *
+     * @param baseMilitare base da interrogare
+     * @return indice dell'unità, -1 se nessuna
+     */
+    public int getPrimaUnita(BaseMilitare baseMilitare) {
+        Integer b = indiceBase.get(baseMilitare);
+        return b != null ? primaUnitaBase[b] : -1;
+    }
+
+    /**
+     * Restituisce l'unità successiva della stessa base.
+     *
+     * @param u indice dell'unità
+     * @return indice dell'unità successiva, -1 se era l'ultima
+     */
+    public int getProssimaUnita(int u) {
+        return prossimaDellaBase[u];
+    }
+
+    /* =========================== GESTIONE INTERNA =========================== */
+
+    private int slotLibero() {
+        if (primoLibero >= 0) {
+            int u = primoLibero;
+            primoLibero = prossimoLibero[u];
+            return u;
+        }
+        if (numSlot == tipo.length) {
+            alloca(tipo.length * 2);
+        }
+        return numSlot++;
+    }
+
+    private void libera(int u) {
+        scollegaBase(u);
+        tipo[u] = -1;
+        forza[u] = 0;
+        percorso[u] = null;
+        piano[u] = null;
+        campo[u] = null;
+        generazione[u]++;
+        prossimoLibero[u] = primoLibero;
+        primoLibero = u;
+        numUnita--;
+    }
+
+    private int registraBase(BaseMilitare b) {
+        Integer indice = indiceBase.get(b);
+        if (indice != null) {
+            return indice;
+        }
+        if (numBasi == basi.length) {
+            basi = Arrays.copyOf(basi, numBasi * 2);
+            primaUnitaBase = Arrays.copyOf(primaUnitaBase, numBasi * 2);
+        }
+        basi[numBasi] = b;
+        primaUnitaBase[numBasi] = -1;
+        indiceBase.put(b, numBasi);
+        return numBasi++;
+    }
+
+    private void collegaBase(int u, int b) {
+        base[u] = b;
+        precedenteDellaBase[u] = -1;
+        prossimaDellaBase[u] = primaUnitaBase[b];
+        if (primaUnitaBase[b] >= 0) {
+            precedenteDellaBase[primaUnitaBase[b]] = u;
+        }
+        primaUnitaBase[b] = u;
+    }
+
+    private void scollegaBase(int u) {
+        int b = base[u];
+        if (b < 0) {
+            return;
+        }
+        int prec = precedenteDellaBase[u], succ = prossimaDellaBase[u];
+        if (prec >= 0) {
+            prossimaDellaBase[prec] = succ;
+        } else {
+            primaUnitaBase[b] = succ;
+        }
+        if (succ >= 0) {
+            precedenteDellaBase[succ] = prec;
+        }
+        base[u] = -1;
+        prossimaDellaBase[u] = -1;
+        precedenteDellaBase[u] = -1;
+    }
+
+    /**
+     * Porta tutti gli array degli slot alla capacità indicata.
+     */
+    private void alloca(int capacita) {
+        int vecchia = tipo == null ? 0 : tipo.length;
+        if (vecchia == 0) {
+            tipo = new byte[capacita];
+            stato = new int[capacita];
+            cella = new int[capacita];
+            forza = new int[capacita];
+            armamento = new byte[capacita];
+            morale = new byte[capacita];
+            ordine = new byte[capacita];
+            destinazione = new int[capacita];
+            percorso = new Percorso[capacita];
+            passoPercorso = new int[capacita];
+            piano = new PercorsoGerarchico[capacita];
+            campo = new CampoDiFlusso[capacita];
+            trattoPiano = new int[capacita];
+            generazione = new int[capacita];
+            base = new int[capacita];
+            prossimaDellaBase = new int[capacita];
+            precedenteDellaBase = new int[capacita];
+            prossimoLibero = new int[capacita];
+        } else {
+            tipo = Arrays.copyOf(tipo, capacita);
+            stato = Arrays.copyOf(stato, capacita);
+            cella = Arrays.copyOf(cella, capacita);
+            forza = Arrays.copyOf(forza, capacita);
+            armamento = Arrays.copyOf(armamento, capacita);
+            morale = Arrays.copyOf(morale, capacita);
+            ordine = Arrays.copyOf(ordine, capacita);
+            destinazione = Arrays.copyOf(destinazione, capacita);
+            percorso = Arrays.copyOf(percorso, capacita);
+            passoPercorso = Arrays.copyOf(passoPercorso, capacita);
+            piano = Arrays.copyOf(piano, capacita);
+            campo = Arrays.copyOf(campo, capacita);
+            trattoPiano = Arrays.copyOf(trattoPiano, capacita);
+            generazione = Arrays.copyOf(generazione, capacita);
+            base = Arrays.copyOf(base, capacita);
+            prossimaDellaBase = Arrays.copyOf(prossimaDellaBase, capacita);
+            precedenteDellaBase = Arrays.copyOf(precedenteDellaBase, capacita);
+            prossimoLibero = Arrays.copyOf(prossimoLibero, capacita);
+        }
+        Arrays.fill(tipo, vecchia, capacita, (byte) -1);
+        Arrays.fill(base, vecchia, capacita, -1);
+    }
+}
@@ -0,0 +1,117 @@
+package battle_cioba;
+
+/**
+ * Carta imprevisto programmata per un giorno futuro. È anche il nodo della
+ * lista doppiamente collegata dello slot della RuotaTemporale in cui si
+ * trova, così inserirla e annullarla non richiede ricerche.
+ * Chi programma una carta tiene l'oggetto come riferimento per annullarla.
+ */
+public class EventoProgrammato {
+
+    /**
+     * Carta da giocare.
+     */
+    private final CartaImprevisto carta;
+
+    /**
+     * Stato bersaglio fisso (-1 = scelto dalla carta quando scatta).
+     */
+    private final int statoBersaglio;
+
+    /**
+     * Giorni tra una ripetizione e la successiva (0 = una sola volta).
+     */
+    private final int intervallo;
+
+    /**
+     * Ultimo giorno in cui la carta può scattare (Long.MAX_VALUE = nessuno).
+     */
+    private final long giornoScadenza;
+
+    /**
+     * Prossimo giorno in cui la carta scatta.
+     */
+    long giorno;
+
+    /**
+     * Collegamenti nello slot della ruota (null se la carta non è in ruota).
+     */
+    EventoProgrammato precedente, successivo;
+
+    /**
+     * Livello e slot della ruota in cui si trova la carta (-1 se fuori dalla ruota).
+     */
+    int livello = -1, slot = -1;
+
+    /**
+     * Volte in cui la carta è scattata.
+     */
+    private int volte;
+
+    /**
+     * Costruttore principale.
+     *
+     * @param carta carta da giocare
+     * @param statoBersaglio indice dello stato bersaglio (-1 = scelto dalla carta)
+     * @param giorno primo giorno in cui la carta scatta
+     * @param intervallo giorni tra le ripetizioni (0 = una sola volta)
+     * @param giornoScadenza ultimo giorno utile
+     */
+    EventoProgrammato(CartaImprevisto carta, int statoBersaglio, long giorno, int intervallo, long giornoScadenza) {
+        this.carta = carta;
+        this.statoBersaglio = statoBersaglio;
+        this.giorno = giorno;
+        this.intervallo = Math.max(0, intervallo);
+        this.giornoScadenza = giornoScadenza;
+    }
+
+    /**
+     * Calcola il giorno della ripetizione successiva.
+     *
+     * @return true se la carta va rimessa in ruota
+     */
+    boolean ripianifica() {
+        if (intervallo == 0 || giorno > giornoScadenza - intervallo) {
+            return false;
+        }
+        giorno += intervallo;
+        return true;
+    }
+
+    void registraScatto() {
+        volte++;
+    }
+
+    public CartaImprevisto getCarta() {
+        return carta;
+    }
+
+    public int getStatoBersaglio() {
+        return statoBersaglio;
+    }
+
+    public long getGiorno() {
+        return giorno;
+    }
+
+    public int getIntervallo() {
+        return intervallo;
+    }
+
+    public long getGiornoScadenza() {
+        return giornoScadenza;
+    }
+
+    public int getVolte() {
+        return volte;
+    }
+
+    /**
+     * Indica se la carta è ancora in attesa di scattare.
+     *
+     * @return true se la carta è nella ruota
+     */
+    public boolean isInAttesa() {
+        return livello >= 0;
+    }
+}
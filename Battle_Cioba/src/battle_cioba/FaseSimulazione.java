@@ -0,0 +1,36 @@
+package battle_cioba;
+
+import java.util.Map;
+
+/**
+ * Interfaccia che rappresenta una fase del giorno di simulazione
+ * (economia, popolazione, militare, ...).
+ * Le fasi vengono eseguite in ordine di registrazione dal MotoreSimulazione.
+ */
+public interface FaseSimulazione {
+
+    /**
+     * Nome della fase, usato nei riepiloghi e nelle misure dei tempi.
+     *
+     * @return nome della fase
+     */
+    String getNome();
+
+    /**
+     * Esegue la fase per il giorno indicato.
+     * Viene chiamato dal thread di simulazione con il lock del mondo acquisito.
+     *
+     * @param mondo mondo di gioco
+     * @param giorno giorno corrente (a partire da 1)
+     */
+    void esegui(Mondo mondo, long giorno);
+
+    /**
+     * Permette alla fase di aggiungere i propri indicatori al riepilogo del giorno.
+     *
+     * @param indicatori mappa nome → valore da popolare
+     */
+    default void riepiloga(Map<String, Long> indicatori) {
+        // Di default una fase non espone indicatori
+    }
+}
@@ -0,0 +1,100 @@
+package battle_cioba;
+
+/**
+ * Generatore di numeri casuali deterministico (SplitMix64).
+ * A differenza di Math.random() è riproducibile a partire dal seme,
+ * costa poche operazioni e non è condiviso tra thread: ogni sistema
+ * (o ogni battaglia) può avere il proprio flusso indipendente.
+ */
+public class GeneratoreCasuale {
+
+    /**
+     * Incremento di Weyl usato da SplitMix64.
+     */
+    private static final long INCREMENTO = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Stato interno del generatore.
+     */
+    private long stato;
+
+    /**
+     * Costruttore principale.
+     *
+     * @param seme seme iniziale
+     */
+    public GeneratoreCasuale(long seme) {
+        this.stato = seme;
+    }
+
+    /**
+     * Reimposta il seme senza creare un nuovo oggetto.
+     *
+     * @param seme nuovo seme
+     */
+    public void imposta(long seme) {
+        this.stato = seme;
+    }
+
+    /**
+     * Restituisce lo stato interno (per salvare e ripristinare il flusso).
+     *
+     * @return stato corrente
+     */
+    public long getStato() {
+        return stato;
+    }
+
+    /**
+     * Restituisce il prossimo valore a 64 bit.
+     *
+     * @return valore casuale
+     */
+    public long prossimoLong() {
+        stato += INCREMENTO;
+        return mescola(stato);
+    }
+
+    /**
+     * Restituisce un intero casuale in [0, limite).
+     *
+     * @param limite limite superiore escluso (deve essere positivo)
+     * @return valore casuale
+     */
+    public int prossimoInt(int limite) {
+        return (int) (((prossimoLong() >>> 33) * limite) >>> 31);
+    }
+
+    /**
+     * Restituisce un double casuale in [0, 1).
+     *
+     * @return valore casuale
+     */
+    public double prossimoDouble() {
+        return (prossimoLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Funzione di mescolamento di SplitMix64. Serve anche per derivare
+     * semi indipendenti (es. seme del mondo + giorno + indice della battaglia).
+     *
+     * @param z valore da mescolare
+     * @return valore mescolato
+     */
+    public static long mescola(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Deriva un seme indipendente da un seme base e da un indice.
+     *
+     * @param seme seme base
+     * @param indice indice del flusso derivato
+     * @return seme derivato
+     */
+    public static long deriva(long seme, long indice) {
+        return mescola(seme + (indice + 1) * INCREMENTO);
+    }
+}
@@ -0,0 +1,352 @@
+package battle_cioba;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Fase del giorno che gioca le carte imprevisto.
+ * Le carte programmate stanno in una RuotaTemporale: ogni giorno vengono
+ * toccate solo quelle che scadono quel giorno, qualunque sia il numero di
+ * carte in attesa. Una carta con intervallo viene rimessa in ruota dopo
+ * ogni estrazione, finché non raggiunge la propria scadenza.
+ */
+public class GestoreEventi implements FaseSimulazione {
+
+    /**
+     * Nome del file con le carte predefinite.
+     */
+    public static final String FILE_CARTE = "carteImprevisto.csv";
+
+    /**
+     * Numero di messaggi conservati nel registro delle carte giocate.
+     */
+    public static final int DIMENSIONE_REGISTRO = 50;
+
+    /**
+     * Sistema economico (tesoro degli stati).
+     */
+    private final RegistroEconomico economia;
+
+    /**
+     * Relazioni diplomatiche (può essere null).
+     */
+    private final Diplomazia diplomazia;
+
+    /**
+     * Flusso casuale per le probabilità e i bersagli casuali.
+     */
+    private final GeneratoreCasuale casuale;
+
+    /**
+     * Mazzo delle carte per nome, nell'ordine di caricamento.
+     */
+    private final Map<String, CartaImprevisto> mazzo = new LinkedHashMap<>();
+
+    /**
+     * Carte programmate.
+     */
+    private RuotaTemporale ruota = new RuotaTemporale(0);
+
+    /**
+     * Lista di lavoro per le carte che scadono nel giorno (riusata).
+     */
+    private final List<EventoProgrammato> scaduti = new ArrayList<>();
+
+    /**
+     * Lista di lavoro per gli stati candidati di una carta (riusata).
+     */
+    private final List<Stato> candidati = new ArrayList<>();
+
+    /**
+     * Ultime carte giocate, dalla più recente.
+     */
+    private final Deque<String> registro = new ArrayDeque<>();
+
+    /**
+     * Osservatori delle carte giocate (per la registrazione delle partite).
+     */
+    private final List<OsservatoreComandi> osservatori = new CopyOnWriteArrayList<>();
+
+    /**
+     * Mondo di riferimento.
+     */
+    private Mondo mondo;
+
+    /**
+     * Statistiche: estrazioni del giorno, stati colpiti nel giorno e in totale.
+     */
+    private long estrazioniGiorno, colpitiGiorno, estrazioniTotali, colpitiTotali;
+
+    /**
+     * Costruttore principale.
+     *
+     * @param economia sistema economico
+     * @param diplomazia relazioni diplomatiche (può essere null)
+     * @param seme seme del flusso casuale
+     */
+    public GestoreEventi(RegistroEconomico economia, Diplomazia diplomazia, long seme) {
+        this.economia = economia;
+        this.diplomazia = diplomazia;
+        this.casuale = new GeneratoreCasuale(seme);
+    }
+
+    public void aggiungiOsservatore(OsservatoreComandi osservatore) {
+        osservatori.add(osservatore);
+    }
+
+    public void rimuoviOsservatore(OsservatoreComandi osservatore) {
+        osservatori.remove(osservatore);
+    }
+
+    /* =========================== MAZZO =========================== */
+
+    /**
+     * Aggiunge una carta al mazzo (sostituisce quella con lo stesso nome).
+     *
+     * @param carta carta da aggiungere
+     */
+    public synchronized void aggiungiCarta(CartaImprevisto carta) {
+        mazzo.put(carta.getNome(), carta);
+    }
+
+    /**
+     * Legge le carte da un file e le aggiunge al mazzo.
+     *
+     * @param percorsoFile percorso del file CSV
+     * @return numero di carte lette
+     * @throws IOException se il file non è leggibile o contiene righe non valide
+     */
+    public synchronized int caricaCarte(String percorsoFile) throws IOException {
+        List<CartaImprevisto> carte = CartaImprevisto.carica(percorsoFile);
+        for (CartaImprevisto carta : carte) {
+            mazzo.put(carta.getNome(), carta);
+        }
+        return carte.size();
+    }
+
+    /**
+     * Cerca il file delle carte predefinite nella cartella di lavoro o nella
+     * cartella del progetto e lo carica. Gli errori vengono solo segnalati:
+     * una partita senza carte resta giocabile.
+     *
+     * @return numero di carte lette
+     */
+    public int caricaCartePredefinite() {
+        String baseDir = System.getProperty("user.dir");
+        File file = new File(baseDir + "/" + FILE_CARTE);
+        if (!file.exists()) {
+            file = new File(baseDir + "/Battle_Cioba/" + FILE_CARTE);
+        }
+        if (!file.exists()) {
+            System.err.println("File delle carte imprevisto non trovato: " + FILE_CARTE);
+            return 0;
+        }
+        try {
+            return caricaCarte(file.getPath());
+        } catch (IOException e) {
+            System.err.println("Errore nella lettura del file " + FILE_CARTE + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    public synchronized CartaImprevisto getCarta(String nome) {
+        return mazzo.get(nome);
+    }
+
+    public synchronized List<CartaImprevisto> getCarte() {
+        return new ArrayList<>(mazzo.values());
+    }
+
+    /* =========================== PROGRAMMAZIONE =========================== */
+
+    /**
+     * Svuota la ruota e programma tutte le carte del mazzo secondo il loro ritardo.
+     *
+     * @param mondo mondo di gioco
+     */
+    public synchronized void inizializza(Mondo mondo) {
+        this.mondo = mondo;
+        ruota = new RuotaTemporale(ruota.getGiornoCorrente());
+        for (CartaImprevisto carta : mazzo.values()) {
+            programma(carta, -1, carta.getRitardo(), carta.getIntervallo(), carta.getDurata());
+        }
+    }
+
+    /**
+     * Programma una carta con i tempi indicati nella carta stessa.
+     *
+     * @param carta carta da giocare
+     * @param ritardo giorni da oggi alla prima estrazione
+     * @return riferimento per annullare la carta
+     */
+    public synchronized EventoProgrammato programma(CartaImprevisto carta, int ritardo) {
+        return programma(carta, -1, ritardo, carta.getIntervallo(), carta.getDurata());
+    }
+
+    /**
+     * Programma una carta.
+     *
+     * @param carta carta da giocare
+     * @param statoBersaglio indice dello stato colpito (-1 = secondo il bersaglio della carta)
+     * @param ritardo giorni da oggi alla prima estrazione (almeno 1)
+     * @param intervallo giorni tra le estrazioni (0 = una sola volta)
+     * @param durata giorni di validità dalla prima estrazione (0 = senza scadenza)
+     * @return riferimento per annullare la carta
+     */
+    public synchronized EventoProgrammato programma(CartaImprevisto carta, int statoBersaglio,
+            int ritardo, int intervallo, int durata) {
+        long giorno = ruota.getGiornoCorrente() + Math.max(1, ritardo);
+        long scadenza = durata > 0 ? giorno + durata : Long.MAX_VALUE;
+        EventoProgrammato evento = new EventoProgrammato(carta, statoBersaglio, giorno, intervallo, scadenza);
+        ruota.inserisci(evento);
+        return evento;
+    }
+
+    /**
+     * Annulla una carta programmata (anche una ripetizione già in attesa).
+     *
+     * @param evento riferimento restituito da programma
+     * @return false se la carta non era in attesa
+     */
+    public synchronized boolean annulla(EventoProgrammato evento) {
+        return ruota.rimuovi(evento);
+    }
+
+    /* =========================== FASE DEL GIORNO =========================== */
+
+    @Override
+    public String getNome() {
+        return "Carte imprevisto";
+    }
+
+    @Override
+    public synchronized void esegui(Mondo mondo, long giorno) {
+        this.mondo = mondo;
+        estrazioniGiorno = 0;
+        colpitiGiorno = 0;
+        scaduti.clear();
+        ruota.avanza(giorno, scaduti);
+        for (EventoProgrammato evento : scaduti) {
+            gioca(evento, giorno);
+            if (evento.ripianifica()) {
+                ruota.inserisci(evento);
+            }
+        }
+        scaduti.clear();
+        estrazioniTotali += estrazioniGiorno;
+        colpitiTotali += colpitiGiorno;
+    }
+
+    /**
+     * Estrae una carta: tira la probabilità, sceglie gli stati e applica gli effetti.
+     */
+    private void gioca(EventoProgrammato evento, long giorno) {
+        CartaImprevisto carta = evento.getCarta();
+        evento.registraScatto();
+        estrazioniGiorno++;
+        if (casuale.prossimoInt(100) >= carta.getProbabilita()) {
+            return;
+        }
+
+        candidati.clear();
+        if (evento.getStatoBersaglio() >= 0) {
+            Stato s = mondo.getStatoPerIndice(evento.getStatoBersaglio());
+            if (s != null && carta.verifica(s, this)) {
+                candidati.add(s);
+            }
+        } else {
+            for (Stato s : mondo.getStati()) {
+                if (carta.verifica(s, this)) {
+                    candidati.add(s);
+                }
+            }
+            if (carta.getBersaglio() == CartaImprevisto.Bersaglio.STATO_CASUALE && candidati.size() > 1) {
+                Stato scelto = candidati.get(casuale.prossimoInt(candidati.size()));
+                candidati.clear();
+                candidati.add(scelto);
+            }
+        }
+
+        for (Stato s : candidati) {
+            carta.applica(s, this);
+            colpitiGiorno++;
+            for (OsservatoreComandi o : osservatori) {
+                o.cartaGiocata(carta, s);
+            }
+            annota("Giorno " + giorno + " - " + carta.getNome() + " colpisce " + s.getNome()
+                    + ": " + carta.getDescrizione());
+        }
+    }
+
+    private void annota(String messaggio) {
+        registro.addFirst(messaggio);
+        if (registro.size() > DIMENSIONE_REGISTRO) {
+            registro.removeLast();
+        }
+    }
+
+    @Override
+    public synchronized void riepiloga(Map<String, Long> indicatori) {
+        indicatori.put("carte_estratte", estrazioniGiorno);
+        indicatori.put("stati_colpiti_da_carte", colpitiGiorno);
+        indicatori.put("carte_in_attesa", (long) ruota.getNumEventi());
+    }
+
+    /* =========================== ACCESSO PER CONDIZIONI ED EFFETTI =========================== */
+
+    public Mondo getMondo() {
+        return mondo;
+    }
+
+    public RegistroEconomico getEconomia() {
+        return economia;
+    }
+
+    public Diplomazia getDiplomazia() {
+        return diplomazia;
+    }
+
+    /**
+     * Giorno di simulazione raggiunto dalla ruota.
+     *
+     * @return giorno corrente
+     */
+    public long getGiorno() {
+        return ruota.getGiornoCorrente();
+    }
+
+    /* =========================== STATISTICHE =========================== */
+
+    public synchronized int getNumInAttesa() {
+        return ruota.getNumEventi();
+    }
+
+    public synchronized long getEstrazioniTotali() {
+        return estrazioniTotali;
+    }
+
+    public synchronized long getColpitiTotali() {
+        return colpitiTotali;
+    }
+
+    public synchronized long getRidistribuiti() {
+        return ruota.getRidistribuiti();
+    }
+
+    /**
+     * Ultime carte giocate, dalla più recente.
+     *
+     * @return copia del registro
+     */
+    public synchronized List<String> getRegistro() {
+        return Collections.unmodifiableList(new ArrayList<>(registro));
+    }
+}
@@ -0,0 +1,89 @@
+package battle_cioba;
+
+import java.util.Arrays;
+
+/**
+ * Coda di priorità minima su array primitivo.
+ * Ogni elemento è un valore int con una priorità int, impacchettati in un
+ * solo long (priorità nei 32 bit alti), quindi inserire ed estrarre non
+ * crea oggetti. Non supporta la modifica della priorità: chi la usa inserisce
+ * di nuovo l'elemento e scarta le copie obsolete quando le estrae.
+ */
+class HeapBinario {
+
+    /**
+     * Elementi dell'heap (priorità << 32 | valore).
+     */
+    private long[] elementi;
+
+    /**
+     * Numero di elementi presenti.
+     */
+    private int dimensione;
+
+    HeapBinario(int capacitaIniziale) {
+        this.elementi = new long[Math.max(16, capacitaIniziale)];
+    }
+
+    boolean isVuoto() {
+        return dimensione == 0;
+    }
+
+    int getDimensione() {
+        return dimensione;
+    }
+
+    void svuota() {
+        dimensione = 0;
+    }
+
+    /**
+     * Inserisce un valore con la priorità indicata (priorità non negativa).
+     */
+    void inserisci(int valore, int priorita) {
+        if (dimensione == elementi.length) {
+            elementi = Arrays.copyOf(elementi, dimensione * 2);
+        }
+        long elemento = ((long) priorita << 32) | (valore & 0xFFFFFFFFL);
+        int i = dimensione++;
+        while (i > 0) {
+            int padre = (i - 1) >>> 1;
+            if (elementi[padre] <= elemento) {
+                break;
+            }
+            elementi[i] = elementi[padre];
+            i = padre;
+        }
+        elementi[i] = elemento;
+    }
+
+    /**
+     * Restituisce la priorità dell'elemento minimo senza estrarlo.
+     */
+    int prioritaMinima() {
+        return (int) (elementi[0] >>> 32);
+    }
+
+    /**
+     * Estrae l'elemento con priorità minima e ne restituisce il valore.
+     */
+    int estrai() {
+        long minimo = elementi[0];
+        long ultimo = elementi[--dimensione];
+        int i = 0;
+        int meta = dimensione >>> 1;
+        while (i < meta) {
+            int figlio = 2 * i + 1;
+            if (figlio + 1 < dimensione && elementi[figlio + 1] < elementi[figlio]) {
+                figlio++;
+            }
+            if (ultimo <= elementi[figlio]) {
+                break;
+            }
+            elementi[i] = elementi[figlio];
+            i = figlio;
+        }
+        elementi[i] = ultimo;
+        return (int) minimo;
+    }
+}
@@ -0,0 +1,210 @@
+package battle_cioba;
+
+import java.util.Arrays;
+
+/**
+ * Indice dei territori di confine di ogni Stato.
+ * Una cella è di confine se almeno una delle 4 celle adiacenti appartiene
+ * a un altro Stato. Quando una cella cambia proprietario vengono ricalcolate
+ * solo lei e le sue vicine, quindi l'aggiornamento costa O(1).
+ * Le celle di confine di ogni Stato sono tenute in un array con rimozione
+ * per scambio, così da poterle scorrere senza visitare tutta la mappa.
+ */
+public class IndiceConfini implements OsservatoreMondo {
+
+    /**
+     * Spostamenti di riga verso le 4 celle adiacenti.
+     */
+    private static final int[] DR = {-1, 1, 0, 0};
+
+    /**
+     * Spostamenti di colonna verso le 4 celle adiacenti.
+     */
+    private static final int[] DC = {0, 0, -1, 1};
+
+    /**
+     * Mondo di riferimento.
+     */
+    private Mondo mondo;
+
+    /**
+     * Dimensioni della mappa indicizzata.
+     */
+    private int righe, colonne;
+
+    /**
+     * Indice dello Stato proprietario di ogni cella (-1 nessuno).
+     */
+    private int[] statoCella = new int[0];
+
+    /**
+     * Indice dello Stato nella cui lista di confine si trova la cella (-1 nessuno).
+     */
+    private int[] statoLista = new int[0];
+
+    /**
+     * Posizione della cella nella lista di confine del suo Stato.
+     */
+    private int[] posizioneLista = new int[0];
+
+    /**
+     * Celle di confine di ogni Stato (indice denso dello Stato).
+     */
+    private int[][] celleConfine = new int[0][];
+
+    /**
+     * Numero di celle di confine di ogni Stato.
+     */
+    private int[] numConfine = new int[0];
+
+    IndiceConfini() {
+    }
+
+    /**
+     * Ricostruisce l'indice percorrendo la mappa una sola volta.
+     *
+     * @param mondo mondo da indicizzare
+     */
+    void ricostruisci(Mondo mondo) {
+        this.mondo = mondo;
+        this.righe = mondo.getRighe();
+        this.colonne = mondo.getColonne();
+        int numCelle = righe * colonne;
+        statoCella = new int[numCelle];
+        statoLista = new int[numCelle];
+        posizioneLista = new int[numCelle];
+        Arrays.fill(statoLista, -1);
+        celleConfine = new int[mondo.getCapacitaStati()][];
+        numConfine = new int[mondo.getCapacitaStati()];
+
+        for (int cella = 0; cella < numCelle; cella++) {
+            Territorio t = mondo.getTerritorio(cella);
+            statoCella[cella] = t == null ? -1 : mondo.indiceStato(t.getStatoPadrone());
+        }
+        for (int cella = 0; cella < numCelle; cella++) {
+            aggiornaCella(cella);
+        }
+    }
+
+    @Override
+    public void territorioModificato(Territorio territorio) {
+        int cella = territorio.getIndiceCella();
+        if (mondo == null || cella < 0 || cella >= statoCella.length) {
+            return;
+        }
+        int nuovo = mondo.indiceStato(territorio.getStatoPadrone());
+        if (nuovo == statoCella[cella]) {
+            return;
+        }
+        statoCella[cella] = nuovo;
+        aggiornaCella(cella);
+        int r = cella / colonne, c = cella % colonne;
+        for (int d = 0; d < 4; d++) {
+            int nr = r + DR[d], nc = c + DC[d];
+            if (nr >= 0 && nr < righe && nc >= 0 && nc < colonne) {
+                aggiornaCella(nr * colonne + nc);
+            }
+        }
+    }
+
+    /* =========================== INTERROGAZIONI =========================== */
+
+    /**
+     * Indica se una cella è di confine.
+     *
+     * @param cella indice piatto della cella
+     * @return true se confina con un altro Stato
+     */
+    public boolean isConfine(int cella) {
+        return cella >= 0 && cella < statoLista.length && statoLista[cella] >= 0;
+    }
+
+    /**
+     * Restituisce l'indice dello Stato proprietario di una cella.
+     *
+     * @param cella indice piatto della cella
+     * @return indice denso dello Stato, -1 se nessuno
+     */
+    public int getStatoCella(int cella) {
+        return cella >= 0 && cella < statoCella.length ? statoCella[cella] : -1;
+    }
+
+    /**
+     * Restituisce il numero di celle di confine di uno Stato.
+     *
+     * @param stato stato da interrogare
+     * @return numero di celle di confine
+     */
+    public int getNumCelleConfine(Stato stato) {
+        int s = stato.getIndice();
+        return s >= 0 && s < numConfine.length ? numConfine[s] : 0;
+    }
+
+    /**
+     * Restituisce la i-esima cella di confine di uno Stato.
+     * L'ordine non è stabile tra un aggiornamento e l'altro.
+     *
+     * @param stato stato da interrogare
+     * @param i posizione, tra 0 e getNumCelleConfine(stato) - 1
+     * @return indice piatto della cella
+     */
+    public int getCellaConfine(Stato stato, int i) {
+        return celleConfine[stato.getIndice()][i];
+    }
+
+    /* =========================== GESTIONE INTERNA =========================== */
+
+    /**
+     * Ricalcola se una cella è di confine e sposta la cella nella lista giusta.
+     */
+    private void aggiornaCella(int cella) {
+        int proprietario = statoCella[cella];
+        boolean confine = false;
+        if (proprietario >= 0) {
+            int r = cella / colonne, c = cella % colonne;
+            for (int d = 0; d < 4 && !confine; d++) {
+                int nr = r + DR[d], nc = c + DC[d];
+                if (nr >= 0 && nr < righe && nc >= 0 && nc < colonne) {
+                    int vicino = statoCella[nr * colonne + nc];
+                    confine = vicino >= 0 && vicino != proprietario;
+                }
+            }
+        }
+
+        int desiderato = confine ? proprietario : -1;
+        int attuale = statoLista[cella];
+        if (attuale == desiderato) {
+            return;
+        }
+        if (attuale >= 0) {
+            togliDaLista(attuale, cella);
+        }
+        if (desiderato >= 0) {
+            aggiungiALista(desiderato, cella);
+        }
+    }
+
+    private void aggiungiALista(int stato, int cella) {
+        if (stato >= celleConfine.length) {
+            int nuovaCapacita = Math.max(stato + 1, celleConfine.length * 2);
+            celleConfine = Arrays.copyOf(celleConfine, nuovaCapacita);
+            numConfine = Arrays.copyOf(numConfine, nuovaCapacita);
+        }
+        if (celleConfine[stato] == null) {
+            celleConfine[stato] = new int[16];
+        } else if (numConfine[stato] == celleConfine[stato].length) {
+            celleConfine[stato] = Arrays.copyOf(celleConfine[stato], numConfine[stato] * 2);
+        }
+        posizioneLista[cella] = numConfine[stato];
+        celleConfine[stato][numConfine[stato]++] = cella;
+        statoLista[cella] = stato;
+    }
+
+    private void togliDaLista(int stato, int cella) {
+        int posizione = posizioneLista[cella];
+        int ultima = celleConfine[stato][--numConfine[stato]];
+        celleConfine[stato][posizione] = ultima;
+        posizioneLista[ultima] = posizione;
+        statoLista[cella] = -1;
+    }
+}
@@ -0,0 +1,645 @@
+package battle_cioba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Fase di simulazione che fa giocare gli stati controllati dall'intelligenza
+ * artificiale.
+ * <p>
+ * A ogni giorno la fase fotografa il mondo in un'IstantaneaMondo, poi fa
+ * decidere tutti i ControlloreStato in parallelo, ognuno su un thread
+ * virtuale e con la propria scadenza (il budget del suo livello di
+ * difficoltà, contato da quando il controllore parte davvero). I controllori
+ * leggono solo l'istantanea e restituiscono lotti di ComandoAI, che la fase
+ * applica in serie, nell'ordine degli indici di stato, verificando che siano
+ * ancora validi.
+ * <p>
+ * La fase ha un limite rigido: con P processori i controllori girano a
+ * ondate di P, quindi il limite è il numero di ondate per il budget più alto
+ * (più una tolleranza). Un controllore in ritardo oltre il limite viene
+ * interrotto e il suo lotto scartato. Con abbastanza processori il tempo
+ * della fase è circa quello del controllore più lento, non la somma di tutti.
+ */
+public class IntelligenzaArtificiale implements FaseSimulazione, OsservatoreMondo {
+
+    /**
+     * Tempo concesso oltre la scadenza prima di scartare un controllore (in nanosecondi).
+     */
+    public static final long TOLLERANZA_NS = 2_000_000L;
+
+    /**
+     * Processori disponibili (i thread virtuali girano al più su tanti thread portanti).
+     */
+    private static final int PROCESSORI = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Mondo di riferimento.
+     */
+    private Mondo mondo;
+
+    /**
+     * Sistemi su cui vengono applicati i comandi (possono essere null).
+     */
+    private final RegistroEconomico economia;
+    private final Eserciti eserciti;
+    private final RisolutoreCombattimenti combattimenti;
+
+    /**
+     * Mappa d'influenza letta dall'istantanea (può essere null).
+     */
+    private final MappaInfluenza influenza;
+
+    /**
+     * Nebbia di guerra applicata all'istantanea (può essere null).
+     */
+    private final Visibilita visibilita;
+
+    /**
+     * Controllore di ogni stato (per indice denso), null se lo stato gioca da solo.
+     */
+    private ControlloreStato[] controllori = new ControlloreStato[16];
+
+    /**
+     * Tutti i centri del mondo, in ordine di inserimento (per l'istantanea).
+     */
+    private final Set<Centro> centri;
+
+    /**
+     * Fotografia del giorno corrente.
+     */
+    private IstantaneaMondo istantanea;
+
+    /**
+     * Stato compatto per i controllori strategici e giorno in cui è stato catturato.
+     */
+    private StatoSimulazione simulazione;
+    private long giornoSimulazione;
+
+    /**
+     * Esecutore dei controllori: un thread virtuale per decisione.
+     */
+    private final ExecutorService esecutore;
+
+    /**
+     * Relazioni diplomatiche (può essere null).
+     */
+    private final Diplomazia diplomazia;
+
+    /**
+     * Osservatori dei comandi valutati (per la registrazione delle partite).
+     */
+    private final List<OsservatoreComandi> osservatori = new CopyOnWriteArrayList<>();
+
+    /**
+     * In riproduzione i controllori non decidono: il giorno applica i comandi registrati.
+     */
+    private boolean inRiproduzione;
+    private List<ComandoAI> daRiprodurre = new ArrayList<>();
+
+    /**
+     * In lockstep i controllori locali decidono ma non applicano: i loro
+     * comandi vanno al destinatario, e il giorno applica solo il lotto
+     * concordato con gli altri partecipanti (passato con riproduci).
+     */
+    private Consumer<List<ComandoAI>> destinatarioLockstep;
+
+    /**
+     * Comandi del giocatore (GUI) in attesa del prossimo giorno: passano
+     * dalla fase come quelli dei controllori, così vengono registrati e
+     * inviati in lockstep.
+     */
+    private List<ComandoAI> comandiGiocatore = new ArrayList<>();
+
+    /**
+     * Le prime decisioni pagano caricamento delle classi e compilazione JIT:
+     * finché non ne è stato raccolto un giro completo la fase aspetta tutti i
+     * controllori invece di scartare quelli oltre il limite.
+     */
+    private boolean primeDecisioni = true;
+
+    /**
+     * Statistiche dell'ultimo giorno.
+     */
+    private int comandiApplicati, comandiRifiutati, controlloriInRitardo, controlloriInErrore, controlloriAttivi;
+    private long durataUltimoGiornoNs, sommaDecisioniNs;
+
+    /**
+     * Costruttore principale.
+     *
+     * @param economia registro economico (per tesoro e investimenti)
+     * @param eserciti archivio degli eserciti (per reclutamento e attacchi)
+     * @param combattimenti sistema dei combattimenti (per gli attacchi delle basi)
+     */
+    public IntelligenzaArtificiale(RegistroEconomico economia, Eserciti eserciti,
+            RisolutoreCombattimenti combattimenti) {
+        this(economia, eserciti, combattimenti, null, null);
+    }
+
+    /**
+     * Costruttore con mappa d'influenza e diplomazia. I controllori preferiscono
+     * le celle su cui lo stato prevale già e non attaccano gli alleati; un
+     * attacco a uno stato in pace è una dichiarazione di guerra.
+     *
+     * @param economia registro economico (per tesoro e investimenti)
+     * @param eserciti archivio degli eserciti (per reclutamento e attacchi)
+     * @param combattimenti sistema dei combattimenti (per gli attacchi delle basi)
+     * @param influenza mappa d'influenza (può essere null)
+     * @param diplomazia relazioni diplomatiche (può essere null)
+     */
+    public IntelligenzaArtificiale(RegistroEconomico economia, Eserciti eserciti,
+            RisolutoreCombattimenti combattimenti, MappaInfluenza influenza, Diplomazia diplomazia) {
+        this(economia, eserciti, combattimenti, influenza, diplomazia, null);
+    }
+
+    /**
+     * Costruttore con nebbia di guerra: l'istantanea nasconde ai controllori
+     * le guarnigioni delle celle che il loro stato non vede.
+     *
+     * @param economia registro economico (per tesoro e investimenti)
+     * @param eserciti archivio degli eserciti (per reclutamento e attacchi)
+     * @param combattimenti sistema dei combattimenti (per gli attacchi delle basi)
+     * @param influenza mappa d'influenza (può essere null)
+     * @param diplomazia relazioni diplomatiche (può essere null)
+     * @param visibilita nebbia di guerra (può essere null)
+     */
+    public IntelligenzaArtificiale(RegistroEconomico economia, Eserciti eserciti,
+            RisolutoreCombattimenti combattimenti, MappaInfluenza influenza, Diplomazia diplomazia,
+            Visibilita visibilita) {
+        this.economia = economia;
+        this.visibilita = visibilita;
+        this.influenza = influenza;
+        this.diplomazia = diplomazia;
+        this.eserciti = eserciti;
+        this.combattimenti = combattimenti;
+        this.centri = new LinkedHashSet<>();
+        this.istantanea = new IstantaneaMondo();
+        this.esecutore = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * Raccoglie i centri del mondo. Da qui in poi l'elenco si aggiorna tramite le notifiche.
+     *
+     * @param mondo mondo di gioco
+     */
+    public synchronized void inizializza(Mondo mondo) {
+        this.mondo = mondo;
+        centri.clear();
+        for (int c = 0; c < mondo.getRighe() * mondo.getColonne(); c++) {
+            Territorio t = mondo.getTerritorio(c);
+            if (t != null && t.getCentro() != null) {
+                centri.add(t.getCentro());
+            }
+        }
+    }
+
+    /* =========================== CONTROLLORI =========================== */
+
+    /**
+     * Affida uno stato all'intelligenza artificiale (o ne cambia il livello).
+     *
+     * @param stato stato da controllare
+     * @param livello livello di difficoltà
+     */
+    public synchronized void assegna(Stato stato, LivelloDifficolta livello) {
+        int s = stato.getIndice();
+        if (s < 0) {
+            return;
+        }
+        if (s >= controllori.length) {
+            controllori = Arrays.copyOf(controllori, Math.max(s + 1, controllori.length * 2));
+        }
+        if (controllori[s] == null) {
+            controllori[s] = new ControlloreStato(s, livello);
+        } else {
+            controllori[s].setLivello(livello);
+        }
+    }
+
+    /**
+     * Affida all'intelligenza artificiale tutti gli stati del mondo.
+     *
+     * @param livello livello di difficoltà
+     */
+    public synchronized void assegnaTutti(LivelloDifficolta livello) {
+        for (Stato s : mondo.getStati()) {
+            assegna(s, livello);
+        }
+    }
+
+    /**
+     * Restituisce uno stato al controllo del giocatore.
+     *
+     * @param stato stato da liberare
+     */
+    public synchronized void rimuovi(Stato stato) {
+        int s = stato.getIndice();
+        if (s >= 0 && s < controllori.length) {
+            controllori[s] = null;
+        }
+    }
+
+    /**
+     * Restituisce il controllore di uno stato.
+     *
+     * @param stato stato da interrogare
+     * @return controllore, oppure null se lo stato non è controllato
+     */
+    public synchronized ControlloreStato getControllore(Stato stato) {
+        int s = stato.getIndice();
+        return s >= 0 && s < controllori.length ? controllori[s] : null;
+    }
+
+    public void aggiungiOsservatore(OsservatoreComandi osservatore) {
+        osservatori.add(osservatore);
+    }
+
+    public void rimuoviOsservatore(OsservatoreComandi osservatore) {
+        osservatori.remove(osservatore);
+    }
+
+    /**
+     * Passa alla riproduzione di una partita registrata: da qui in poi i
+     * controllori non decidono più e il prossimo giorno applica, in ordine,
+     * esattamente questi comandi.
+     *
+     * @param comandi comandi registrati per il prossimo giorno
+     */
+    public synchronized void riproduci(List<ComandoAI> comandi) {
+        inRiproduzione = true;
+        daRiprodurre = new ArrayList<>(comandi);
+    }
+
+    /**
+     * Passa al lockstep: ogni giorno applica il lotto passato con riproduci,
+     * poi fa decidere i controllori assegnati e consegna i loro comandi al
+     * destinatario invece di applicarli (una lista, anche vuota, al giorno).
+     *
+     * @param destinatario riceve i comandi decisi in ogni giorno
+     */
+    public synchronized void avviaLockstep(Consumer<List<ComandoAI>> destinatario) {
+        inRiproduzione = true;
+        destinatarioLockstep = destinatario;
+    }
+
+    /**
+     * Mette in coda un comando del giocatore, applicato al prossimo giorno
+     * prima di quelli dei controllori. In riproduzione viene ignorato: il
+     * giorno applica solo i comandi registrati.
+     *
+     * @param comando comando da applicare
+     */
+    public synchronized void proponi(ComandoAI comando) {
+        comandiGiocatore.add(comando);
+    }
+
+    /* =========================== FASE DI SIMULAZIONE =========================== */
+
+    @Override
+    public String getNome() {
+        return "Intelligenza artificiale";
+    }
+
+    @Override
+    public void esegui(Mondo mondo, long giorno) {
+        long inizio = System.nanoTime();
+        ControlloreStato[] attivi;
+        synchronized (this) {
+            attivi = controllori.clone();
+        }
+        comandiApplicati = 0;
+        comandiRifiutati = 0;
+        controlloriInRitardo = 0;
+        controlloriInErrore = 0;
+        controlloriAttivi = 0;
+        sommaDecisioniNs = 0;
+
+        List<ComandoAI> registrati = null;
+        List<ComandoAI> proposti;
+        Consumer<List<ComandoAI>> destinatario;
+        synchronized (this) {
+            if (inRiproduzione) {
+                registrati = daRiprodurre;
+                daRiprodurre = new ArrayList<>();
+            }
+            destinatario = destinatarioLockstep;
+            proposti = comandiGiocatore;
+            comandiGiocatore = new ArrayList<>();
+        }
+        if (registrati != null) {
+            for (ComandoAI comando : registrati) {
+                valuta(comando);
+            }
+            if (destinatario == null) {
+                durataUltimoGiornoNs = System.nanoTime() - inizio;
+                return;
+            }
+        }
+        List<ComandoAI> decisi = new ArrayList<>();
+        Consumer<ComandoAI> uscita = destinatario != null ? decisi::add : this::valuta;
+        for (ComandoAI comando : proposti) {
+            uscita.accept(comando);
+        }
+        decidi(mondo, giorno, attivi, uscita);
+        if (destinatario != null) {
+            destinatario.accept(decisi);
+        }
+        durataUltimoGiornoNs = System.nanoTime() - inizio;
+    }
+
+    /**
+     * Fa decidere i controllori attivi e passa i comandi raccolti, in ordine
+     * di stato, a chi li applica o li inoltra.
+     */
+    private void decidi(Mondo mondo, long giorno, ControlloreStato[] attivi, Consumer<ComandoAI> uscita) {
+
+        boolean presenti = false, strategici = false;
+        for (ControlloreStato c : attivi) {
+            if (c != null && mondo.getStatoPerIndice(c.getStato()) != null) {
+                presenti = true;
+                strategici |= c.getLivello().isStrategico();
+            }
+        }
+        if (!presenti) {
+            return;
+        }
+        if (!strategici) {
+            simulazione = null;
+        } else if (simulazione == null || giorno - giornoSimulazione >= StatoSimulazione.GIORNI_PER_TURNO) {
+            // Un nuovo stato compatto a ogni turno strategico
+            simulazione = StatoSimulazione.cattura(mondo, economia);
+            giornoSimulazione = giorno;
+        }
+        synchronized (this) {
+            istantanea.cattura(mondo, giorno, economia, eserciti, centri, influenza, diplomazia, visibilita);
+            istantanea.setSimulazione(simulazione);
+        }
+        IstantaneaMondo ist = istantanea;
+
+        // Limite della fase: ondate di controllori per il budget più alto
+        long budgetMassimo = 0;
+        for (int s = 0; s < attivi.length; s++) {
+            if (attivi[s] != null && ist.isStatoEsistente(s)) {
+                controlloriAttivi++;
+                budgetMassimo = Math.max(budgetMassimo, attivi[s].getLivello().getBudgetNs());
+            }
+        }
+        long ondate = (controlloriAttivi + PROCESSORI - 1) / PROCESSORI;
+        long limite = System.nanoTime() + ondate * budgetMassimo;
+
+        // Decisioni in parallelo, ognuna con la propria scadenza
+        List<Future<List<ComandoAI>>> decisioni = new ArrayList<>(attivi.length);
+        for (int s = 0; s < attivi.length; s++) {
+            ControlloreStato c = attivi[s];
+            if (c == null || !ist.isStatoEsistente(s)) {
+                decisioni.add(null);
+                continue;
+            }
+            long budget = c.getLivello().getBudgetNs();
+            decisioni.add(esecutore.submit(() -> c.decidi(ist, Math.min(System.nanoTime() + budget, limite))));
+        }
+
+        // Raccolta e applicazione in serie, in ordine di stato
+        for (int s = 0; s < attivi.length; s++) {
+            if (decisioni.get(s) == null) {
+                continue;
+            }
+            List<ComandoAI> lotto = raccogli(decisioni.get(s), primeDecisioni ? -1 : limite);
+            if (lotto == null) {
+                continue;
+            }
+            sommaDecisioniNs += attivi[s].getUltimaDurataNs();
+            for (ComandoAI comando : lotto) {
+                uscita.accept(comando);
+            }
+        }
+        primeDecisioni = false;
+        if (controlloriInRitardo > 0) {
+            // Un controllore interrotto potrebbe leggere ancora l'istantanea:
+            // il giorno dopo se ne usa una nuova
+            istantanea = new IstantaneaMondo();
+        }
+    }
+
+    /**
+     * Applica un comando, aggiorna le statistiche e avvisa gli osservatori.
+     */
+    private void valuta(ComandoAI comando) {
+        boolean applicato = applica(comando);
+        if (applicato) {
+            comandiApplicati++;
+        } else {
+            comandiRifiutati++;
+        }
+        for (OsservatoreComandi o : osservatori) {
+            o.comandoEseguito(comando, applicato);
+        }
+    }
+
+    /**
+     * Attende un lotto fino al limite della fase più la tolleranza e conta
+     * i controllori in ritardo o falliti.
+     *
+     * @param limite limite della fase, negativo per attendere senza limite
+     * @return comandi decisi, oppure null se il controllore è in ritardo o fallito
+     */
+    private List<ComandoAI> raccogli(Future<List<ComandoAI>> decisione, long limite) {
+        try {
+            if (limite < 0) {
+                return decisione.get();
+            }
+            long attesa = limite + TOLLERANZA_NS - System.nanoTime();
+            return decisione.get(Math.max(0, attesa), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            decisione.cancel(true);
+            controlloriInRitardo++;
+            return null;
+        } catch (InterruptedException e) {
+            decisione.cancel(true);
+            Thread.currentThread().interrupt();
+            controlloriInRitardo++;
+            return null;
+        } catch (ExecutionException e) {
+            controlloriInErrore++;
+            return null;
+        }
+    }
+
+    @Override
+    public void riepiloga(Map<String, Long> indicatori) {
+        indicatori.put("comandi_ai", (long) comandiApplicati);
+        indicatori.put("comandi_ai_rifiutati", (long) comandiRifiutati);
+        indicatori.put("controllori_in_ritardo", (long) controlloriInRitardo);
+        indicatori.put("controllori_in_errore", (long) controlloriInErrore);
+    }
+
+    /* =========================== APPLICAZIONE =========================== */
+
+    /**
+     * Applica un comando al mondo, se è ancora valido.
+     *
+     * @param comando comando da applicare
+     * @return true se il comando ha avuto effetto
+     */
+    boolean applica(ComandoAI comando) {
+        Stato stato = mondo.getStatoPerIndice(comando.getStato());
+        if (stato == null) {
+            return false;
+        }
+        switch (comando.getTipo()) {
+            case ATTACCA_CON_BASE: {
+                BaseMilitare base = basePropria(comando.getOrigine(), comando.getStato());
+                Centro obiettivo = centro(comando.getObiettivo());
+                return base != null && obiettivo != null && combattimenti != null
+                        && entraInGuerra(comando.getStato(), mondo.indiceStato(obiettivo.getStatoPadrone()))
+                        && combattimenti.dichiaraAttacco(base, obiettivo);
+            }
+            case ATTACCA_CON_ESERCITO: {
+                int u = comando.getOrigine();
+                return eserciti != null && eserciti.isAttiva(u)
+                        && eserciti.getGenerazione(u) == comando.getQuantita()
+                        && eserciti.getStato(u) == comando.getStato()
+                        && entraInGuerra(comando.getStato(), statoCella(comando.getObiettivo()))
+                        && eserciti.ordina(u, Eserciti.Ordine.ATTACCA, comando.getObiettivo());
+            }
+            case RECLUTA: {
+                BaseMilitare base = basePropria(comando.getOrigine(), comando.getStato());
+                return base != null && eserciti != null
+                        && eserciti.recluta(base, TipoEsercito.daOrdinale(comando.getObiettivo()),
+                                Math.min(comando.getQuantita(), base.getNumeroTruppe())) >= 0;
+            }
+            case INVESTI: {
+                Centro c = centro(comando.getOrigine());
+                if (c == null || mondo.indiceStato(c.getStatoPadrone()) != comando.getStato()
+                        || c.getLivelloDifesa() >= 10 || economia == null
+                        || !economia.spendi(stato, comando.getQuantita())) {
+                    return false;
+                }
+                c.setLivelloDifesa(c.getLivelloDifesa() + 1);
+                return true;
+            }
+            case ESPANDI: {
+                Territorio t = mondo.getTerritorio(comando.getObiettivo());
+                if (t == null || t.isAcqua() || t.getStatoPadrone() != null
+                        || economia == null || !economia.spendi(stato, comando.getQuantita())) {
+                    return false;
+                }
+                try {
+                    return mondo.trasferisciTerritorio(t, stato);
+                } catch (IllegalArgumentException e) {
+                    economia.accredita(stato, comando.getQuantita());
+                    return false;
+                }
+            }
+            case PROPONI_ALLEANZA:
+                return diplomazia != null && mondo.getStatoPerIndice(comando.getObiettivo()) != null
+                        && diplomazia.proponiAlleanza(comando.getStato(), comando.getObiettivo());
+            case DICHIARA_GUERRA:
+                return diplomazia != null && mondo.getStatoPerIndice(comando.getObiettivo()) != null
+                        && diplomazia.dichiaraGuerra(comando.getStato(), comando.getObiettivo());
+            case FIRMA_PACE:
+                return diplomazia != null && mondo.getStatoPerIndice(comando.getObiettivo()) != null
+                        && diplomazia.firmaPace(comando.getStato(), comando.getObiettivo());
+            case LASCIA_ALLEANZA:
+                return diplomazia != null && diplomazia.lasciaAlleanza(comando.getStato());
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Verifica che lo stato possa attaccare il bersaglio: mai un alleato; con
+     * uno stato in pace l'attacco è una dichiarazione di guerra.
+     */
+    private boolean entraInGuerra(int stato, int bersaglio) {
+        if (diplomazia == null || bersaglio < 0 || bersaglio == stato) {
+            return true;
+        }
+        if (diplomazia.isAlleato(stato, bersaglio)) {
+            return false;
+        }
+        return diplomazia.isInGuerra(stato, bersaglio) || diplomazia.dichiaraGuerra(stato, bersaglio);
+    }
+
+    private int statoCella(int cella) {
+        Territorio t = cella >= 0 ? mondo.getTerritorio(cella) : null;
+        return t != null ? mondo.indiceStato(t.getStatoPadrone()) : -1;
+    }
+
+    private Centro centro(int cella) {
+        Territorio t = cella >= 0 ? mondo.getTerritorio(cella) : null;
+        return t != null ? t.getCentro() : null;
+    }
+
+    private BaseMilitare basePropria(int cella, int s) {
+        Centro c = centro(cella);
+        return c instanceof BaseMilitare && mondo.indiceStato(c.getStatoPadrone()) == s ? (BaseMilitare) c : null;
+    }
+
+    /* =========================== NOTIFICHE =========================== */
+
+    @Override
+    public synchronized void centroImpostato(Territorio territorio, Centro vecchio, Centro nuovo) {
+        if (vecchio != null) {
+            centri.remove(vecchio);
+        }
+        if (nuovo != null) {
+            centri.add(nuovo);
+        }
+    }
+
+    /* =========================== STATISTICHE =========================== */
+
+    public int getComandiApplicati() {
+        return comandiApplicati;
+    }
+
+    public int getComandiRifiutati() {
+        return comandiRifiutati;
+    }
+
+    public int getControlloriInRitardo() {
+        return controlloriInRitardo;
+    }
+
+    public int getControlloriInErrore() {
+        return controlloriInErrore;
+    }
+
+    public int getControlloriAttivi() {
+        return controlloriAttivi;
+    }
+
+    /**
+     * Durata reale dell'ultima fase (fotografia, decisioni e applicazione).
+     *
+     * @return durata in nanosecondi
+     */
+    public long getDurataUltimoGiornoNs() {
+        return durataUltimoGiornoNs;
+    }
+
+    /**
+     * Somma dei tempi di decisione di tutti i controllori nell'ultimo giorno:
+     * confrontata con getDurataUltimoGiornoNs mostra quanto lavoro è stato
+     * svolto in parallelo.
+     *
+     * @return somma in nanosecondi
+     */
+    public long getSommaDecisioniNs() {
+        return sommaDecisioniNs;
+    }
+}
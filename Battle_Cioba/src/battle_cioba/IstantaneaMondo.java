@@ -0,0 +1,638 @@
+package battle_cioba;
+
+import java.util.Arrays;
+
+/**
+ * Fotografia in sola lettura del mondo, preparata all'inizio di ogni giorno
+ * per i controllori dell'intelligenza artificiale.
+ * <p>
+ * Contiene solo quello che serve a decidere e costa in proporzione ai
+ * confini, ai centri e agli eserciti, non alla dimensione della mappa:
+ * <ul>
+ * <li>dati aggregati di ogni stato (tesoro, reddito, potenza, ...);</li>
+ * <li>la frontiera di ogni stato: le celle esterne adiacenti ai suoi
+ * confini, con proprietario, centro e controllo d'influenza;</li>
+ * <li>i centri di ogni stato;</li>
+ * <li>gli eserciti fermi (o in difesa) di ogni stato;</li>
+ * <li>le celle che ogni stato vede (Visibilita), copiate solo per gli stati
+ * la cui vista è cambiata.</li>
+ * </ul>
+ * Truppe e armamento delle basi sulle celle di frontiera che uno stato non
+ * vede restano a zero: i controllori decidono solo con quello che vedono.
+ * Le liste sono array paralleli raggruppati per stato: gli elementi dello
+ * stato s stanno tra getInizioX(s) (incluso) e getInizioX(s + 1) (escluso).
+ * Gli array vengono riusati da un giorno all'altro; i controllori li leggono
+ * in parallelo ma non li modificano mai.
+ */
+public class IstantaneaMondo {
+
+    /**
+     * Giorno della fotografia.
+     */
+    private long giorno;
+
+    /**
+     * Colonne della mappa (per le distanze tra celle).
+     */
+    private int colonne;
+
+    /**
+     * Numero di indici di stato (capacità, anche per gli stati rimossi).
+     */
+    private int numStati;
+
+    /**
+     * Stato compatto per la ricerca strategica (null se nessun controllore lo usa).
+     * È condiviso in sola lettura: chi lo usa ne fa una copia.
+     */
+    private StatoSimulazione simulazione;
+
+    /**
+     * Relazioni diplomatiche, interrogate direttamente dai controllori (null se assenti).
+     */
+    private Diplomazia diplomazia;
+
+    /* ---------- dati per stato ---------- */
+
+    private boolean[] esiste = new boolean[0];
+    private long[] tesoro = new long[0];
+    private long[] reddito = new long[0];
+    private long[] potenza = new long[0];
+    private long[] popolazione = new long[0];
+    private int[] territori = new int[0];
+    private int[] cellaCapitale = new int[0];
+
+    /* ---------- frontiera: celle esterne adiacenti ai confini ---------- */
+
+    private int[] inizioFrontiera = new int[1];
+    private int[] frontieraCella = new int[64];
+    private int[] frontieraStato = new int[64];
+    private boolean[] frontieraAcqua = new boolean[64];
+    private byte[] frontieraTipoCentro = new byte[64];
+    private int[] frontieraDifesa = new int[64];
+    private int[] frontieraImportanza = new int[64];
+    private int[] frontieraTruppe = new int[64];
+    private int[] frontieraArmamento = new int[64];
+    private float[] frontieraControllo = new float[64];
+
+    /* ---------- centri di ogni stato ---------- */
+
+    private int[] inizioCentri = new int[1];
+    private int[] centroCella = new int[64];
+    private byte[] centroTipo = new byte[64];
+    private byte[] centroTipoBase = new byte[64];
+    private int[] centroDifesa = new int[64];
+    private int[] centroImportanza = new int[64];
+    private int[] centroTruppe = new int[64];
+    private int[] centroArmamento = new int[64];
+    private int[] centroRaggio = new int[64];
+
+    /* ---------- eserciti fermi di ogni stato ---------- */
+
+    private int[] inizioEserciti = new int[1];
+    private int[] esercitoIndice = new int[64];
+    private int[] esercitoGenerazione = new int[64];
+    private int[] esercitoCella = new int[64];
+    private int[] esercitoForza = new int[64];
+    private int[] esercitoArmamento = new int[64];
+
+    /* ---------- nebbia di guerra ---------- */
+
+    /**
+     * Copia dei bit di Visibilita per stato e versione copiata (null se la
+     * partita non ha nebbia di guerra: tutto è visibile).
+     */
+    private long[][] visibile;
+    private int[] versioneVisibile = new int[0];
+
+    /**
+     * Timbro per non ripetere la stessa cella esterna nella frontiera di uno stato.
+     */
+    private int[] timbroCella = new int[0];
+    private int timbro;
+
+    /**
+     * Contatori usati per raggruppare per stato.
+     */
+    private int[] conteggio = new int[0];
+
+    /* =========================== CATTURA =========================== */
+
+    /**
+     * Fotografa il mondo. Va chiamato con il lock del mondo acquisito.
+     *
+     * @param mondo mondo di gioco
+     * @param giorno giorno corrente
+     * @param economia registro economico (può essere null)
+     * @param eserciti archivio degli eserciti (può essere null)
+     * @param centri tutti i centri del mondo
+     * @param influenza mappa d'influenza (può essere null)
+     * @param diplomazia relazioni diplomatiche (può essere null)
+     * @param visibilita nebbia di guerra (può essere null)
+     */
+    void cattura(Mondo mondo, long giorno, RegistroEconomico economia, Eserciti eserciti,
+            Iterable<Centro> centri, MappaInfluenza influenza, Diplomazia diplomazia,
+            Visibilita visibilita) {
+        this.giorno = giorno;
+        this.diplomazia = diplomazia;
+        this.colonne = mondo.getColonne();
+        this.numStati = mondo.getCapacitaStati();
+        int numCelle = mondo.getRighe() * colonne;
+        if (esiste.length < numStati) {
+            int n = numStati;
+            esiste = new boolean[n];
+            tesoro = new long[n];
+            reddito = new long[n];
+            potenza = new long[n];
+            popolazione = new long[n];
+            territori = new int[n];
+            cellaCapitale = new int[n];
+            conteggio = new int[n + 1];
+        }
+        if (inizioFrontiera.length < numStati + 1) {
+            inizioFrontiera = new int[numStati + 1];
+            inizioCentri = new int[numStati + 1];
+            inizioEserciti = new int[numStati + 1];
+        }
+        if (timbroCella.length < numCelle) {
+            timbroCella = new int[numCelle];
+            timbro = 0;
+        }
+        Arrays.fill(esiste, false);
+        catturaStati(mondo, economia);
+        catturaVisibilita(visibilita);
+        catturaFrontiere(mondo, influenza);
+        catturaCentri(mondo, centri);
+        catturaEserciti(mondo, eserciti);
+    }
+
+    private void catturaStati(Mondo mondo, RegistroEconomico economia) {
+        for (Stato s : mondo.getStati()) {
+            int i = s.getIndice();
+            if (i < 0 || i >= numStati) {
+                continue;
+            }
+            esiste[i] = true;
+            tesoro[i] = economia != null ? economia.getTesoro(s) : 0;
+            reddito[i] = economia != null ? economia.getRedditoGiornaliero(s) : 0;
+            AggregatoTerritoriale a = s.getAggregato();
+            potenza[i] = a.getPotenzaMilitare();
+            popolazione[i] = a.getPopolazione();
+            territori[i] = a.getTerritoriTotali();
+            cellaCapitale[i] = -1;
+            Regione capitale = s.getCapitale();
+            if (capitale != null && capitale.getCapoluogo() != null) {
+                cellaCapitale[i] = capitale.getCapoluogo().getIndiceCella();
+            }
+        }
+    }
+
+    /**
+     * Copia i bit degli stati la cui vista è cambiata dall'ultima cattura.
+     */
+    private void catturaVisibilita(Visibilita visibilita) {
+        if (visibilita == null) {
+            visibile = null;
+            return;
+        }
+        int parole = visibilita.getNumParole();
+        if (visibile == null || visibile.length < numStati
+                || (visibile.length > 0 && visibile[0].length != parole)) {
+            visibile = new long[numStati][parole];
+            versioneVisibile = new int[numStati];
+            for (int s = 0; s < numStati; s++) {
+                visibilita.copiaBit(s, visibile[s]);
+                versioneVisibile[s] = visibilita.getVersione(s);
+            }
+            return;
+        }
+        for (int s = 0; s < numStati; s++) {
+            int v = visibilita.getVersione(s);
+            if (v != versioneVisibile[s]) {
+                visibilita.copiaBit(s, visibile[s]);
+                versioneVisibile[s] = v;
+            }
+        }
+    }
+
+    private void catturaFrontiere(Mondo mondo, MappaInfluenza influenza) {
+        IndiceConfini confini = mondo.getConfini();
+        int righe = mondo.getRighe();
+        int n = 0;
+        for (int s = 0; s < numStati; s++) {
+            inizioFrontiera[s] = n;
+            Stato stato = esiste[s] ? mondo.getStatoPerIndice(s) : null;
+            if (stato == null) {
+                continue;
+            }
+            if (++timbro == Integer.MAX_VALUE) {
+                Arrays.fill(timbroCella, 0);
+                timbro = 1;
+            }
+            int numConfine = confini.getNumCelleConfine(stato);
+            for (int i = 0; i < numConfine; i++) {
+                int c = confini.getCellaConfine(stato, i);
+                int r = c / colonne, col = c % colonne;
+                for (int d = 0; d < 4; d++) {
+                    int nr = r + (d == 0 ? -1 : d == 1 ? 1 : 0);
+                    int nc = col + (d == 2 ? -1 : d == 3 ? 1 : 0);
+                    if (nr < 0 || nr >= righe || nc < 0 || nc >= colonne) {
+                        continue;
+                    }
+                    int v = nr * colonne + nc;
+                    if (timbroCella[v] == timbro || confini.getStatoCella(v) == s) {
+                        continue;
+                    }
+                    timbroCella[v] = timbro;
+                    n = aggiungiFrontiera(n, v, confini.getStatoCella(v), mondo.getTerritorio(v));
+                    frontieraControllo[n - 1] = influenza != null ? influenza.getControllo(s, v) : 0f;
+                    if (!isVisibile(s, v)) {
+                        frontieraTruppe[n - 1] = 0;
+                        frontieraArmamento[n - 1] = 0;
+                    }
+                }
+            }
+        }
+        inizioFrontiera[numStati] = n;
+    }
+
+    private int aggiungiFrontiera(int n, int cella, int proprietario, Territorio t) {
+        if (n == frontieraCella.length) {
+            int capacita = n * 2;
+            frontieraCella = Arrays.copyOf(frontieraCella, capacita);
+            frontieraStato = Arrays.copyOf(frontieraStato, capacita);
+            frontieraAcqua = Arrays.copyOf(frontieraAcqua, capacita);
+            frontieraTipoCentro = Arrays.copyOf(frontieraTipoCentro, capacita);
+            frontieraDifesa = Arrays.copyOf(frontieraDifesa, capacita);
+            frontieraImportanza = Arrays.copyOf(frontieraImportanza, capacita);
+            frontieraTruppe = Arrays.copyOf(frontieraTruppe, capacita);
+            frontieraArmamento = Arrays.copyOf(frontieraArmamento, capacita);
+            frontieraControllo = Arrays.copyOf(frontieraControllo, capacita);
+        }
+        Centro c = t != null ? t.getCentro() : null;
+        frontieraCella[n] = cella;
+        frontieraStato[n] = proprietario;
+        frontieraAcqua[n] = t != null && t.isAcqua();
+        frontieraTipoCentro[n] = c != null ? (byte) c.getTipo().ordinal() : -1;
+        frontieraDifesa[n] = c != null ? c.getLivelloDifesa() : 0;
+        frontieraImportanza[n] = c != null ? c.getImportanzaStrategica() : 0;
+        if (c instanceof BaseMilitare) {
+            frontieraTruppe[n] = ((BaseMilitare) c).getNumeroTruppe();
+            frontieraArmamento[n] = ((BaseMilitare) c).getLivelloArmamento();
+        } else {
+            frontieraTruppe[n] = 0;
+            frontieraArmamento[n] = 0;
+        }
+        return n + 1;
+    }
+
+    /**
+     * Raggruppa i centri per stato con un ordinamento per conteggio.
+     */
+    private void catturaCentri(Mondo mondo, Iterable<Centro> centri) {
+        Arrays.fill(conteggio, 0);
+        int totale = 0;
+        for (Centro c : centri) {
+            int s = statoCentro(mondo, c);
+            if (s >= 0) {
+                conteggio[s]++;
+                totale++;
+            }
+        }
+        prefissi(inizioCentri);
+        if (centroCella.length < totale) {
+            int capacita = Math.max(totale, centroCella.length * 2);
+            centroCella = new int[capacita];
+            centroTipo = new byte[capacita];
+            centroTipoBase = new byte[capacita];
+            centroDifesa = new int[capacita];
+            centroImportanza = new int[capacita];
+            centroTruppe = new int[capacita];
+            centroArmamento = new int[capacita];
+            centroRaggio = new int[capacita];
+        }
+        for (Centro c : centri) {
+            int s = statoCentro(mondo, c);
+            if (s < 0) {
+                continue;
+            }
+            int i = conteggio[s]++;
+            centroCella[i] = c.getTerritorio().getIndiceCella();
+            centroTipo[i] = (byte) c.getTipo().ordinal();
+            centroDifesa[i] = c.getLivelloDifesa();
+            centroImportanza[i] = c.getImportanzaStrategica();
+            centroRaggio[i] = c.raggioInfluenza();
+            if (c instanceof BaseMilitare) {
+                BaseMilitare b = (BaseMilitare) c;
+                centroTipoBase[i] = (byte) b.getTipoBase().ordinal();
+                centroTruppe[i] = b.getNumeroTruppe();
+                centroArmamento[i] = b.getLivelloArmamento();
+            } else {
+                centroTipoBase[i] = -1;
+                centroTruppe[i] = 0;
+                centroArmamento[i] = 0;
+            }
+        }
+    }
+
+    private int statoCentro(Mondo mondo, Centro c) {
+        if (c.getTerritorio() == null || c.getTerritorio().getIndiceCella() < 0) {
+            return -1;
+        }
+        int s = mondo.indiceStato(c.getStatoPadrone());
+        return s >= 0 && s < numStati && esiste[s] ? s : -1;
+    }
+
+    /**
+     * Raggruppa per stato gli eserciti fermi o in difesa.
+     */
+    private void catturaEserciti(Mondo mondo, Eserciti eserciti) {
+        Arrays.fill(conteggio, 0);
+        int limite = eserciti != null ? eserciti.getLimiteIndici() : 0;
+        int totale = 0;
+        for (int u = 0; u < limite; u++) {
+            if (disponibile(eserciti, u)) {
+                conteggio[eserciti.getStato(u)]++;
+                totale++;
+            }
+        }
+        prefissi(inizioEserciti);
+        if (esercitoIndice.length < totale) {
+            int capacita = Math.max(totale, esercitoIndice.length * 2);
+            esercitoIndice = new int[capacita];
+            esercitoGenerazione = new int[capacita];
+            esercitoCella = new int[capacita];
+            esercitoForza = new int[capacita];
+            esercitoArmamento = new int[capacita];
+        }
+        for (int u = 0; u < limite; u++) {
+            if (!disponibile(eserciti, u)) {
+                continue;
+            }
+            int i = conteggio[eserciti.getStato(u)]++;
+            esercitoIndice[i] = u;
+            esercitoGenerazione[i] = eserciti.getGenerazione(u);
+            esercitoCella[i] = eserciti.getCella(u);
+            esercitoForza[i] = eserciti.getForzaEffettiva(u);
+            esercitoArmamento[i] = eserciti.getArmamento(u);
+        }
+    }
+
+    private boolean disponibile(Eserciti eserciti, int u) {
+        if (!eserciti.isAttiva(u)) {
+            return false;
+        }
+        int s = eserciti.getStato(u);
+        Eserciti.Ordine o = eserciti.getOrdine(u);
+        return s >= 0 && s < numStati && esiste[s]
+                && (o == Eserciti.Ordine.FERMO || o == Eserciti.Ordine.DIFENDI);
+    }
+
+    /**
+     * Trasforma i conteggi per stato in indici di inizio; i conteggi diventano
+     * le posizioni di scrittura.
+     */
+    private void prefissi(int[] inizio) {
+        int somma = 0;
+        for (int s = 0; s < numStati; s++) {
+            inizio[s] = somma;
+            int c = conteggio[s];
+            conteggio[s] = somma;
+            somma += c;
+        }
+        inizio[numStati] = somma;
+    }
+
+    /**
+     * Allega lo stato compatto per la ricerca strategica.
+     *
+     * @param simulazione stato di simulazione (può essere null)
+     */
+    void setSimulazione(StatoSimulazione simulazione) {
+        this.simulazione = simulazione;
+    }
+
+    /* =========================== GETTER =========================== */
+
+    public long getGiorno() {
+        return giorno;
+    }
+
+    public StatoSimulazione getSimulazione() {
+        return simulazione;
+    }
+
+    /**
+     * Indica se due stati sono alleati.
+     *
+     * @param a indice del primo stato
+     * @param b indice del secondo stato
+     * @return true se stanno nello stesso blocco di alleanza
+     */
+    public boolean isAlleato(int a, int b) {
+        return diplomazia != null && diplomazia.isAlleato(a, b);
+    }
+
+    /**
+     * Indica se due stati sono in guerra.
+     *
+     * @param a indice del primo stato
+     * @param b indice del secondo stato
+     * @return true se c'è una guerra dichiarata
+     */
+    public boolean isInGuerra(int a, int b) {
+        return diplomazia != null && diplomazia.isInGuerra(a, b);
+    }
+
+    /**
+     * Indica se una cella era visibile a uno stato al momento della fotografia.
+     *
+     * @param s indice dello stato
+     * @param cella indice di cella
+     * @return true se visibile (sempre, se la partita non ha nebbia di guerra)
+     */
+    public boolean isVisibile(int s, int cella) {
+        if (visibile == null) {
+            return true;
+        }
+        return s >= 0 && s < visibile.length && (visibile[s][cella >>> 6] & 1L << cella) != 0;
+    }
+
+    public int getColonne() {
+        return colonne;
+    }
+
+    public int getNumStati() {
+        return numStati;
+    }
+
+    /**
+     * Distanza di Manhattan tra due celle.
+     *
+     * @param a prima cella
+     * @param b seconda cella
+     * @return distanza in celle
+     */
+    public int distanza(int a, int b) {
+        return Math.abs(a / colonne - b / colonne) + Math.abs(a % colonne - b % colonne);
+    }
+
+    public boolean isStatoEsistente(int s) {
+        return s >= 0 && s < numStati && esiste[s];
+    }
+
+    public long getTesoro(int s) {
+        return tesoro[s];
+    }
+
+    public long getReddito(int s) {
+        return reddito[s];
+    }
+
+    public long getPotenza(int s) {
+        return potenza[s];
+    }
+
+    public long getPopolazione(int s) {
+        return popolazione[s];
+    }
+
+    public int getTerritori(int s) {
+        return territori[s];
+    }
+
+    public int getCellaCapitale(int s) {
+        return cellaCapitale[s];
+    }
+
+    /* ---------- frontiera ---------- */
+
+    public int getInizioFrontiera(int s) {
+        return inizioFrontiera[s];
+    }
+
+    public int getFrontieraCella(int i) {
+        return frontieraCella[i];
+    }
+
+    /**
+     * Proprietario della cella di frontiera (-1 se è di nessuno).
+     *
+     * @param i indice nella frontiera
+     * @return indice dello stato
+     */
+    public int getFrontieraStato(int i) {
+        return frontieraStato[i];
+    }
+
+    public boolean isFrontieraAcqua(int i) {
+        return frontieraAcqua[i];
+    }
+
+    /**
+     * Tipo del centro sulla cella di frontiera (ordinale di Centro.TipoCentro, -1 nessuno).
+     *
+     * @param i indice nella frontiera
+     * @return ordinale del tipo
+     */
+    public int getFrontieraTipoCentro(int i) {
+        return frontieraTipoCentro[i];
+    }
+
+    public int getFrontieraDifesa(int i) {
+        return frontieraDifesa[i];
+    }
+
+    public int getFrontieraImportanza(int i) {
+        return frontieraImportanza[i];
+    }
+
+    /**
+     * Controllo d'influenza dello stato della frontiera sulla cella
+     * (MappaInfluenza.getControllo): positivo se vi prevale già.
+     *
+     * @param i indice nella frontiera
+     * @return differenza di influenza (0 senza mappa d'influenza)
+     */
+    public float getFrontieraControllo(int i) {
+        return frontieraControllo[i];
+    }
+
+    public int getFrontieraTruppe(int i) {
+        return frontieraTruppe[i];
+    }
+
+    public int getFrontieraArmamento(int i) {
+        return frontieraArmamento[i];
+    }
+
+    /* ---------- centri ---------- */
+
+    public int getInizioCentri(int s) {
+        return inizioCentri[s];
+    }
+
+    public int getCentroCella(int i) {
+        return centroCella[i];
+    }
+
+    public int getCentroTipo(int i) {
+        return centroTipo[i];
+    }
+
+    /**
+     * Tipo della base (ordinale di BaseMilitare.TipoBase, -1 se il centro non è una base).
+     *
+     * @param i indice del centro
+     * @return ordinale del tipo di base
+     */
+    public int getCentroTipoBase(int i) {
+        return centroTipoBase[i];
+    }
+
+    public int getCentroDifesa(int i) {
+        return centroDifesa[i];
+    }
+
+    public int getCentroImportanza(int i) {
+        return centroImportanza[i];
+    }
+
+    public int getCentroTruppe(int i) {
+        return centroTruppe[i];
+    }
+
+    public int getCentroArmamento(int i) {
+        return centroArmamento[i];
+    }
+
+    public int getCentroRaggio(int i) {
+        return centroRaggio[i];
+    }
+
+    /* ---------- eserciti ---------- */
+
+    public int getInizioEserciti(int s) {
+        return inizioEserciti[s];
+    }
+
+    public int getEsercitoIndice(int i) {
+        return esercitoIndice[i];
+    }
+
+    public int getEsercitoGenerazione(int i) {
+        return esercitoGenerazione[i];
+    }
+
+    public int getEsercitoCella(int i) {
+        return esercitoCella[i];
+    }
+
+    public int getEsercitoForza(int i) {
+        return esercitoForza[i];
+    }
+
+    public int getEsercitoArmamento(int i) {
+        return esercitoArmamento[i];
+    }
+}
@@ -0,0 +1,81 @@
+package battle_cioba;
+
+import java.util.stream.IntStream;
+
+/**
+ * Kernel che fa avanzare di un giorno un intervallo di celle del modello
+ * di popolazione. Tutte le implementazioni producono gli stessi valori.
+ */
+interface KernelPopolazione {
+
+    /**
+     * Celle per blocco nelle esecuzioni parallele.
+     */
+    int CELLE_PER_BLOCCO = 1 << 14;
+
+    /**
+     * Implementazione scalare, sempre disponibile.
+     */
+    KernelPopolazione SCALARE = new KernelPopolazione() {
+        @Override
+        public void avanza(ColonnePopolazione colonne, int da, int a) {
+            for (int i = da; i < a; i++) {
+                colonne.avanzaCella(i);
+            }
+        }
+
+        @Override
+        public String getNome() {
+            return "scalare";
+        }
+    };
+
+    /**
+     * Fa avanzare le celle [da, a).
+     *
+     * @param colonne dati del modello
+     * @param da prima cella (inclusa)
+     * @param a ultima cella (esclusa)
+     */
+    void avanza(ColonnePopolazione colonne, int da, int a);
+
+    String getNome();
+
+    /**
+     * Fa avanzare tutte le celle, dividendole in blocchi elaborati in
+     * parallelo quando sono più di uno. I blocchi non si sovrappongono.
+     *
+     * @param colonne dati del modello
+     * @param parallelo true per usare più thread
+     */
+    default void avanzaTutte(ColonnePopolazione colonne, boolean parallelo) {
+        int n = colonne.dimensione;
+        int blocchi = (n + CELLE_PER_BLOCCO - 1) / CELLE_PER_BLOCCO;
+        if (!parallelo || blocchi <= 1) {
+            avanza(colonne, 0, n);
+            return;
+        }
+        IntStream.range(0, blocchi).parallel().forEach(b -> avanza(colonne,
+                b * CELLE_PER_BLOCCO, Math.min(n, (b + 1) * CELLE_PER_BLOCCO)));
+    }
+
+    /**
+     * Kernel vettoriale se il modulo jdk.incubator.vector è caricato
+     * (opzione --add-modules) e la macchina ha registri di almeno 128 bit,
+     * altrimenti quello scalare. La classe vettoriale è caricata per nome,
+     * così senza il modulo non viene mai collegata.
+     *
+     * @return miglior kernel disponibile
+     */
+    static KernelPopolazione migliore() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return SCALARE;
+        }
+        try {
+            Class<?> classe = Class.forName("battle_cioba.KernelPopolazioneVettoriale");
+            return (KernelPopolazione) classe.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return SCALARE;
+        }
+    }
+}
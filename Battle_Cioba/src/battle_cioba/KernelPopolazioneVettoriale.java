@@ -0,0 +1,85 @@
+package battle_cioba;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernel della popolazione con la Vector API (jdk.incubator.vector).
+ * Lavora su tante celle quante sono le corsie double del registro
+ * preferito: civili e capacità vengono convertiti da long, i tassi float
+ * vengono letti con una forma di metà larghezza e allargati, così che
+ * tutte le corsie eseguano in double le stesse operazioni della versione
+ * scalare. Le celle finali che non riempiono un registro passano per
+ * ColonnePopolazione.avanzaCella.
+ * <p>
+ * Viene caricata solo da KernelPopolazione.migliore, quando il modulo è
+ * presente.
+ */
+final class KernelPopolazioneVettoriale implements KernelPopolazione {
+
+    private static final VectorSpecies<Double> DOUBLE = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONG = VectorSpecies.of(long.class, DOUBLE.vectorShape());
+
+    /**
+     * Float con lo stesso numero di corsie dei double (metà dei bit).
+     */
+    private static final VectorSpecies<Float> FLOAT = DOUBLE.vectorBitSize() >= 128
+            ? VectorSpecies.of(float.class, VectorShape.forBitSize(DOUBLE.vectorBitSize() / 2))
+            : null;
+
+    /**
+     * @throws UnsupportedOperationException se i registri sono troppo stretti
+     */
+    KernelPopolazioneVettoriale() {
+        if (FLOAT == null || FLOAT.length() != DOUBLE.length()) {
+            throw new UnsupportedOperationException("Registri vettoriali non sufficienti");
+        }
+    }
+
+    @Override
+    public void avanza(ColonnePopolazione colonne, int da, int a) {
+        long[] civili = colonne.civili;
+        float[] resto = colonne.resto;
+        float[] crescita = colonne.crescita;
+        float[] inversoCapacita = colonne.inversoCapacita;
+        float[] perdite = colonne.perdite;
+
+        int corsie = DOUBLE.length();
+        int i = da;
+        for (; i + corsie <= a; i += corsie) {
+            DoubleVector n = (DoubleVector) LongVector.fromArray(LONG, civili, i)
+                    .convert(VectorOperators.L2D, 0);
+            DoubleVector r = allarga(crescita, i);
+            DoubleVector k = allarga(inversoCapacita, i);
+            FloatVector pf = FloatVector.fromArray(FLOAT, perdite, i);
+            DoubleVector p = (DoubleVector) pf.convertShape(VectorOperators.F2D, DOUBLE, 0);
+
+            DoubleVector totale = n.add(n.mul(r).mul(DoubleVector.broadcast(DOUBLE, 1.0).sub(n.mul(k))))
+                    .sub(n.mul(p))
+                    .add(allarga(resto, i))
+                    .max(0.0);
+            LongVector nuovo = (LongVector) totale.convert(VectorOperators.D2L, 0);
+            nuovo.intoArray(civili, i);
+            DoubleVector frazione = totale.sub((DoubleVector) nuovo.convert(VectorOperators.L2D, 0));
+            ((FloatVector) frazione.convertShape(VectorOperators.D2F, FLOAT, 0)).intoArray(resto, i);
+            pf.mul(ColonnePopolazione.DECADIMENTO_PERDITE).intoArray(perdite, i);
+        }
+        for (; i < a; i++) {
+            colonne.avanzaCella(i);
+        }
+    }
+
+    private static DoubleVector allarga(float[] valori, int i) {
+        return (DoubleVector) FloatVector.fromArray(FLOAT, valori, i)
+                .convertShape(VectorOperators.F2D, DOUBLE, 0);
+    }
+
+    @Override
+    public String getNome() {
+        return "vettoriale (" + DOUBLE.length() + " corsie)";
+    }
+}
@@ -0,0 +1,59 @@
+package battle_cioba;
+
+/**
+ * Livelli di difficoltà dell'intelligenza artificiale. Ogni livello fissa il
+ * tempo che un controllore può usare a ogni giorno di simulazione e la
+ * profondità massima della ricerca tra le mosse candidate. Il livello più
+ * alto affianca alla scelta giornaliera una ricerca Monte Carlo sui turni
+ * strategici successivi.
+ */
+public enum LivelloDifficolta {
+    FACILE("Facile", 1_000_000L, 1, false),
+    NORMALE("Normale", 4_000_000L, 2, false),
+    DIFFICILE("Difficile", 10_000_000L, 3, false),
+    ESPERTO("Esperto", 25_000_000L, 4, true);
+
+    private final String nome;
+    private final long budgetNs;
+    private final int profondita;
+    private final boolean strategico;
+
+    LivelloDifficolta(String nome, long budgetNs, int profondita, boolean strategico) {
+        this.nome = nome;
+        this.budgetNs = budgetNs;
+        this.profondita = profondita;
+        this.strategico = strategico;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    /**
+     * Tempo massimo per giorno di un controllore (in nanosecondi).
+     *
+     * @return budget di tempo
+     */
+    public long getBudgetNs() {
+        return budgetNs;
+    }
+
+    /**
+     * Numero massimo di mosse combinate in un piano.
+     *
+     * @return profondità della ricerca
+     */
+    public int getProfondita() {
+        return profondita;
+    }
+
+    /**
+     * Indica se il controllore usa anche la ricerca Monte Carlo per
+     * scegliere la regione su cui concentrare gli attacchi.
+     *
+     * @return true per i livelli con previsione a lungo termine
+     */
+    public boolean isStrategico() {
+        return strategico;
+    }
+}
@@ -0,0 +1,657 @@
+package battle_cioba;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Partita in lockstep: ogni partecipante simula lo stesso mondo, generato
+ * dagli stessi semi, e sulla rete passano solo gli ordini. Al posto dello
+ * stato (ServerPartita) si scambiano pochi byte al giorno qualunque sia la
+ * dimensione del mondo.
+ * <p>
+ * Il seme decide tutto tranne gli ordini dei controllori, che dipendono dal
+ * tempo concesso, e le scelte politiche dei giocatori: sono questi gli
+ * ingressi da scambiare. Ogni partecipante fa decidere solo i propri stati
+ * (lo stato s appartiene al partecipante s % partecipanti); i comandi decisi
+ * nel giorno g vengono eseguiti da tutti al giorno g + ritardo, nello stesso
+ * ordine (per partecipante). Il ritardo assorbe i tempi di rete: un giorno
+ * parte solo quando sono arrivati i lotti di tutti, e finché arrivano entro
+ * il ritardo nessuno aspetta.
+ * <p>
+ * Ogni PERIODO_IMPRONTA giorni il lotto porta anche l'impronta del mondo
+ * (Partita.calcolaImpronta) di ritardo giorni prima. Tutti la confrontano
+ * allo stesso giorno, quindi in caso di divergenza ogni partecipante scrive
+ * la propria diagnostica (ingressi recenti e stato del mondo) nello stesso
+ * punto della partita e i file si possono confrontare riga per riga.
+ * <p>
+ * La rete è a stella: chi ospita accetta gli altri e inoltra a tutti i lotti
+ * che riceve. Formato (interi varint, quelli con segno a zig-zag):
+ * <pre>
+ * frame:     lunghezza (int), tipo (byte), campi
+ * BENVENUTO: partecipante, partecipanti, ritardo, seme del mondo (long),
+ *            seme della partita (long), stati, mappa (UTF)
+ * LOTTO:     partecipante, giorno, numero di comandi, comando...,
+ *            numero di scelte, (stato, scelta)..., giorno dell'impronta + 1 (0 = nessuna), [impronta (long)]
+ * </pre>
+ * I comandi sono codificati come nelle registrazioni (RegistrazionePartita).
+ */
+public class LockstepPartita implements Closeable {
+
+    /**
+     * Giorni tra la decisione di un ordine e la sua esecuzione.
+     */
+    public static final int RITARDO_PREDEFINITO = 2;
+
+    /**
+     * Giorni tra due confronti dell'impronta.
+     */
+    public static final int PERIODO_IMPRONTA = 10;
+
+    /**
+     * Giorni di ingressi tenuti per la diagnostica.
+     */
+    public static final int GIORNI_DIAGNOSTICA = 30;
+
+    /**
+     * Attesa massima dei lotti degli altri partecipanti.
+     */
+    public static final long ATTESA_MASSIMA_MS = 30_000;
+
+    /**
+     * Tipi di frame.
+     */
+    static final byte BENVENUTO = 1, LOTTO = 2;
+
+    /**
+     * Ingressi di un partecipante per un giorno.
+     */
+    static final class Lotto {
+
+        final int partecipante;
+        final long giorno;
+        final List<ComandoAI> comandi;
+
+        /**
+         * Scelte politiche: indice dello stato e scelta.
+         */
+        final List<int[]> scelte;
+
+        /**
+         * Impronta del mondo alla fine di giornoImpronta (-1 se il lotto non la porta).
+         */
+        long giornoImpronta = -1, impronta;
+
+        Lotto(int partecipante, long giorno, List<ComandoAI> comandi, List<int[]> scelte) {
+            this.partecipante = partecipante;
+            this.giorno = giorno;
+            this.comandi = comandi;
+            this.scelte = scelte;
+        }
+    }
+
+    /**
+     * Connessione con un altro partecipante (o con chi ospita). Si crea
+     * prima della partita, durante l'accordo iniziale; la lettura parte
+     * quando la partita esiste.
+     */
+    private static final class Collegamento {
+
+        final Socket socket;
+        final DataInputStream ingresso;
+        final DataOutputStream uscita;
+        private LockstepPartita partita;
+
+        Collegamento(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            this.ingresso = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.uscita = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        synchronized void invia(byte[] frame) throws IOException {
+            uscita.write(frame);
+            uscita.flush();
+            synchronized (partita) {
+                partita.byteInviati += frame.length;
+            }
+        }
+
+        byte[] leggi() throws IOException {
+            byte[] dati = new byte[ingresso.readInt()];
+            ingresso.readFully(dati);
+            return dati;
+        }
+
+        void avvia(LockstepPartita partita) {
+            this.partita = partita;
+            Thread t = new Thread(this::ricevi, "Lockstep " + socket.getRemoteSocketAddress());
+            t.setDaemon(true);
+            t.start();
+        }
+
+        private void ricevi() {
+            try {
+                while (true) {
+                    byte[] dati = leggi();
+                    partita.ricevuto(this, dati);
+                }
+            } catch (EOFException e) {
+                partita.interrompi(new IOException("Un partecipante si è scollegato"));
+            } catch (IOException e) {
+                partita.interrompi(e);
+            }
+        }
+    }
+
+    /**
+     * Partita simulata da questo partecipante.
+     */
+    private final Partita partita;
+
+    /**
+     * Indice di questo partecipante, numero di partecipanti e ritardo degli ordini.
+     */
+    private final int partecipante, partecipanti, ritardo;
+
+    /**
+     * Chi ospita inoltra i lotti ricevuti agli altri.
+     */
+    private final boolean ospite;
+    private final List<Collegamento> collegamenti;
+
+    /**
+     * Lotti per giorno, un posto per partecipante (accesso sincronizzato su this).
+     */
+    private final TreeMap<Long, Lotto[]> lotti = new TreeMap<>();
+
+    /**
+     * Scelte politiche locali in attesa del prossimo lotto.
+     */
+    private final List<int[]> scelteLocali = new ArrayList<>();
+
+    /**
+     * Comandi decisi dai controllori locali nel giorno in corso.
+     */
+    private List<ComandoAI> decisi = List.of();
+
+    /**
+     * Errore di rete che ferma la partita.
+     */
+    private IOException errore;
+
+    /**
+     * Giorno dell'impronta divergente (-1 finché le impronte coincidono).
+     */
+    private long giornoDivergenza = -1;
+
+    /**
+     * Statistiche.
+     */
+    private long byteInviati, byteRicevuti, nanosAttesa, giorni, confronti;
+
+    private LockstepPartita(Partita partita, int partecipante, int partecipanti, int ritardo, boolean ospite,
+            List<Collegamento> collegamenti, LivelloDifficolta livello) throws IOException {
+        this.partita = partita;
+        this.partecipante = partecipante;
+        this.partecipanti = partecipanti;
+        this.ritardo = ritardo;
+        this.ospite = ospite;
+        this.collegamenti = collegamenti;
+        Mondo mondo = partita.getMondo();
+        if (livello != null) {
+            for (Stato stato : mondo.getStati()) {
+                if (isLocale(stato)) {
+                    partita.getIntelligenza().assegna(stato, livello);
+                }
+            }
+        }
+        partita.getIntelligenza().avviaLockstep(comandi -> decisi = comandi);
+        for (Collegamento c : collegamenti) {
+            c.avvia(this);
+        }
+        // I primi giorni non hanno ordini: nessuno ha ancora deciso nulla
+        long giorno = partita.getMotore().getGiorno();
+        for (int g = 1; g <= ritardo; g++) {
+            pubblica(new Lotto(partecipante, giorno + g, List.of(), List.of()));
+        }
+    }
+
+    /**
+     * Ospita una partita: aspetta gli altri partecipanti, manda a ognuno
+     * semi e parametri e genera il mondo.
+     *
+     * @param intestazione semi, mappa e numero di stati
+     * @param porta porta su cui accettare gli altri partecipanti
+     * @param partecipanti partecipanti totali, compreso chi ospita
+     * @param ritardo giorni tra decisione ed esecuzione degli ordini
+     * @param livello livello dei controllori degli stati locali (null = nessuno)
+     * @return partita pronta, con tutti collegati
+     * @throws IOException se la rete o la mappa non sono disponibili
+     */
+    public static LockstepPartita ospita(RegistrazionePartita.Intestazione intestazione, int porta,
+            int partecipanti, int ritardo, LivelloDifficolta livello) throws IOException {
+        if (ritardo < 1) {
+            throw new IllegalArgumentException("Il ritardo deve essere almeno di un giorno");
+        }
+        List<Collegamento> collegamenti = new ArrayList<>();
+        try (ServerSocket ascolto = new ServerSocket()) {
+            ascolto.bind(new InetSocketAddress(porta));
+            for (int p = 1; p < partecipanti; p++) {
+                Collegamento c = new Collegamento(ascolto.accept());
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                DataOutputStream d = new DataOutputStream(buffer);
+                d.writeInt(0);
+                d.writeByte(BENVENUTO);
+                RegistrazionePartita.scriviVarint(d, p);
+                RegistrazionePartita.scriviVarint(d, partecipanti);
+                RegistrazionePartita.scriviVarint(d, ritardo);
+                d.writeLong(intestazione.semeMondo);
+                d.writeLong(intestazione.semePartita);
+                RegistrazionePartita.scriviVarint(d, intestazione.numStati);
+                d.writeUTF(intestazione.mappa);
+                c.uscita.write(scriviLunghezza(buffer.toByteArray()));
+                c.uscita.flush();
+                collegamenti.add(c);
+            }
+        }
+        Partita partita = RiproduzionePartita.creaPartita(intestazione);
+        return new LockstepPartita(partita, 0, partecipanti, ritardo, true, collegamenti, livello);
+    }
+
+    /**
+     * Si unisce a una partita ospitata: riceve semi e parametri e genera lo stesso mondo.
+     *
+     * @param host indirizzo di chi ospita
+     * @param porta porta di chi ospita
+     * @param livello livello dei controllori degli stati locali (null = nessuno)
+     * @return partita pronta
+     * @throws IOException se la rete o la mappa non sono disponibili
+     */
+    public static LockstepPartita unisciti(String host, int porta, LivelloDifficolta livello) throws IOException {
+        Collegamento c = new Collegamento(new Socket(host, porta));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(c.leggi()));
+        if (in.readByte() != BENVENUTO) {
+            throw new IOException("Risposta inattesa da " + host);
+        }
+        int partecipante = (int) RegistrazionePartita.leggiVarint(in);
+        int partecipanti = (int) RegistrazionePartita.leggiVarint(in);
+        int ritardo = (int) RegistrazionePartita.leggiVarint(in);
+        long semeMondo = in.readLong();
+        long semePartita = in.readLong();
+        int numStati = (int) RegistrazionePartita.leggiVarint(in);
+        String mappa = in.readUTF();
+        Partita partita = RiproduzionePartita.creaPartita(
+                new RegistrazionePartita.Intestazione(semeMondo, semePartita, numStati, mappa));
+        return new LockstepPartita(partita, partecipante, partecipanti, ritardo, false, List.of(c), livello);
+    }
+
+    /* =========================== GIORNI =========================== */
+
+    /**
+     * Gioca dei giorni in lockstep con gli altri partecipanti.
+     *
+     * @param numero giorni da giocare
+     * @return true se le impronte sono sempre coincise
+     * @throws IOException se un partecipante si scollega o non risponde
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    public boolean esegui(long numero) throws IOException, InterruptedException {
+        for (long i = 0; i < numero && giornoDivergenza < 0; i++) {
+            eseguiGiorno();
+        }
+        return giornoDivergenza < 0;
+    }
+
+    private void eseguiGiorno() throws IOException, InterruptedException {
+        long giorno = partita.getMotore().getGiorno() + 1;
+        Lotto[] tutti = attendi(giorno);
+        if (!confrontaImpronte(tutti)) {
+            scriviDiagnostica(tutti);
+            return;
+        }
+        List<ComandoAI> comandi = new ArrayList<>();
+        Mondo mondo = partita.getMondo();
+        for (Lotto lotto : tutti) {
+            for (int[] scelta : lotto.scelte) {
+                Stato stato = mondo.getStatoPerIndice(scelta[0]);
+                if (stato != null) {
+                    partita.getPolitica().proponi(stato, SceltaPolitica.daOrdinale(scelta[1]));
+                }
+            }
+            comandi.addAll(lotto.comandi);
+        }
+        partita.getIntelligenza().riproduci(comandi);
+        decisi = List.of();
+        partita.getMotore().eseguiGiorno();
+
+        List<int[]> scelte;
+        synchronized (this) {
+            scelte = new ArrayList<>(scelteLocali);
+            scelteLocali.clear();
+            giorni++;
+            lotti.headMap(giorno - GIORNI_DIAGNOSTICA).clear();
+        }
+        Lotto mio = new Lotto(partecipante, giorno + ritardo, decisi, scelte);
+        if (giorno % PERIODO_IMPRONTA == 0) {
+            mio.giornoImpronta = giorno;
+            mio.impronta = partita.calcolaImpronta();
+        }
+        pubblica(mio);
+    }
+
+    /**
+     * Aspetta i lotti di tutti i partecipanti per un giorno.
+     */
+    private synchronized Lotto[] attendi(long giorno) throws IOException, InterruptedException {
+        long inizio = System.nanoTime();
+        long scadenza = System.currentTimeMillis() + ATTESA_MASSIMA_MS;
+        while (true) {
+            if (errore != null) {
+                throw errore;
+            }
+            Lotto[] tutti = lotti.get(giorno);
+            int mancante = -1;
+            for (int p = 0; p < partecipanti && mancante < 0; p++) {
+                if (tutti == null || tutti[p] == null) {
+                    mancante = p;
+                }
+            }
+            if (mancante < 0) {
+                nanosAttesa += System.nanoTime() - inizio;
+                return tutti;
+            }
+            long resta = scadenza - System.currentTimeMillis();
+            if (resta <= 0) {
+                throw new IOException("Il partecipante " + mancante + " non ha mandato gli ordini del giorno " + giorno);
+            }
+            wait(resta);
+        }
+    }
+
+    /**
+     * Le impronte portate dai lotti di un giorno devono coincidere.
+     */
+    private boolean confrontaImpronte(Lotto[] tutti) {
+        if (tutti[0].giornoImpronta < 0) {
+            return true;
+        }
+        synchronized (this) {
+            confronti++;
+        }
+        for (Lotto lotto : tutti) {
+            if (lotto.giornoImpronta != tutti[0].giornoImpronta || lotto.impronta != tutti[0].impronta) {
+                giornoDivergenza = tutti[0].giornoImpronta;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scrive impronte, ingressi recenti e stato del mondo in
+     * "divergenza_p&lt;partecipante&gt;_g&lt;giorno&gt;.txt". Tutti i partecipanti
+     * la scrivono alla fine dello stesso giorno.
+     */
+    private void scriviDiagnostica(Lotto[] tutti) throws IOException {
+        String file = "divergenza_p" + partecipante + "_g" + giornoDivergenza + ".txt";
+        try (PrintWriter uscita = new PrintWriter(new FileWriter(file))) {
+            uscita.println("partecipante " + partecipante + " di " + partecipanti + ", ritardo " + ritardo);
+            for (Lotto lotto : tutti) {
+                uscita.printf("impronta del giorno %d dal partecipante %d: %016x%n",
+                        lotto.giornoImpronta, lotto.partecipante, lotto.impronta);
+            }
+            synchronized (this) {
+                for (Map.Entry<Long, Lotto[]> voce : lotti.headMap(tutti[0].giorno).entrySet()) {
+                    for (Lotto lotto : voce.getValue()) {
+                        if (lotto == null) {
+                            continue;
+                        }
+                        for (ComandoAI comando : lotto.comandi) {
+                            // Senza utilità: la conosce solo chi ha deciso il comando
+                            uscita.println("ingresso giorno " + voce.getKey() + " partecipante " + lotto.partecipante
+                                    + " " + comando.getTipo() + " stato " + comando.getStato()
+                                    + " origine " + comando.getOrigine() + " obiettivo " + comando.getObiettivo()
+                                    + " quantita " + comando.getQuantita());
+                        }
+                        for (int[] scelta : lotto.scelte) {
+                            uscita.println("ingresso giorno " + voce.getKey() + " partecipante " + lotto.partecipante
+                                    + " scelta " + SceltaPolitica.daOrdinale(scelta[1]) + " stato " + scelta[0]);
+                        }
+                    }
+                }
+            }
+            partita.scriviDiagnostica(uscita);
+        }
+        System.err.println("DIVERGENZA al giorno " + giornoDivergenza + ": diagnostica in " + file);
+    }
+
+    /* =========================== INGRESSI =========================== */
+
+    /**
+     * Propone una scelta politica per uno stato di questo partecipante:
+     * verrà applicata da tutti tra ritardo giorni.
+     *
+     * @param stato stato locale
+     * @param scelta scelta politica
+     */
+    public synchronized void proponi(Stato stato, SceltaPolitica scelta) {
+        if (!isLocale(stato)) {
+            throw new IllegalArgumentException(stato.getNome() + " non appartiene al partecipante " + partecipante);
+        }
+        scelteLocali.add(new int[]{stato.getIndice(), scelta.ordinal()});
+    }
+
+    /**
+     * Uno stato è di questo partecipante se il suo indice modulo i partecipanti è il suo indice.
+     *
+     * @param stato stato da controllare
+     * @return true se lo decide questo partecipante
+     */
+    public boolean isLocale(Stato stato) {
+        return stato.getIndice() >= 0 && stato.getIndice() % partecipanti == partecipante;
+    }
+
+    /* =========================== RETE =========================== */
+
+    /**
+     * Registra il proprio lotto e lo manda agli altri.
+     */
+    private void pubblica(Lotto lotto) throws IOException {
+        registra(lotto);
+        byte[] frame = codifica(lotto);
+        for (Collegamento c : collegamenti) {
+            c.invia(frame);
+        }
+    }
+
+    /**
+     * Un lotto è arrivato da un collegamento: chi ospita lo inoltra agli altri.
+     */
+    private void ricevuto(Collegamento da, byte[] dati) throws IOException {
+        synchronized (this) {
+            byteRicevuti += dati.length + Integer.BYTES;
+        }
+        Lotto lotto = decodifica(dati);
+        if (ospite) {
+            byte[] frame = new byte[dati.length + Integer.BYTES];
+            System.arraycopy(dati, 0, frame, Integer.BYTES, dati.length);
+            scriviLunghezza(frame);
+            for (Collegamento c : collegamenti) {
+                if (c != da) {
+                    c.invia(frame);
+                }
+            }
+        }
+        registra(lotto);
+    }
+
+    private synchronized void registra(Lotto lotto) throws IOException {
+        if (lotto.partecipante < 0 || lotto.partecipante >= partecipanti) {
+            throw new IOException("Lotto da un partecipante sconosciuto: " + lotto.partecipante);
+        }
+        lotti.computeIfAbsent(lotto.giorno, g -> new Lotto[partecipanti])[lotto.partecipante] = lotto;
+        notifyAll();
+    }
+
+    private synchronized void interrompi(IOException e) {
+        if (errore == null) {
+            errore = e;
+        }
+        notifyAll();
+    }
+
+    static byte[] codifica(Lotto lotto) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+        DataOutputStream d = new DataOutputStream(buffer);
+        d.writeInt(0);
+        d.writeByte(LOTTO);
+        RegistrazionePartita.scriviVarint(d, lotto.partecipante);
+        RegistrazionePartita.scriviVarint(d, lotto.giorno);
+        RegistrazionePartita.scriviVarint(d, lotto.comandi.size());
+        for (ComandoAI comando : lotto.comandi) {
+            RegistrazionePartita.scriviComando(d, comando);
+        }
+        RegistrazionePartita.scriviVarint(d, lotto.scelte.size());
+        for (int[] scelta : lotto.scelte) {
+            RegistrazionePartita.scriviVarint(d, scelta[0]);
+            RegistrazionePartita.scriviVarint(d, scelta[1]);
+        }
+        RegistrazionePartita.scriviVarint(d, lotto.giornoImpronta + 1);
+        if (lotto.giornoImpronta >= 0) {
+            d.writeLong(lotto.impronta);
+        }
+        return scriviLunghezza(buffer.toByteArray());
+    }
+
+    static Lotto decodifica(byte[] dati) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(dati));
+        byte tipo = in.readByte();
+        if (tipo != LOTTO) {
+            throw new IOException("Frame sconosciuto " + tipo);
+        }
+        int partecipante = (int) RegistrazionePartita.leggiVarint(in);
+        long giorno = RegistrazionePartita.leggiVarint(in);
+        int numComandi = (int) RegistrazionePartita.leggiVarint(in);
+        List<ComandoAI> comandi = new ArrayList<>(numComandi);
+        for (int i = 0; i < numComandi; i++) {
+            comandi.add(RegistrazionePartita.leggiComando(in));
+        }
+        int numScelte = (int) RegistrazionePartita.leggiVarint(in);
+        List<int[]> scelte = new ArrayList<>(numScelte);
+        for (int i = 0; i < numScelte; i++) {
+            scelte.add(new int[]{(int) RegistrazionePartita.leggiVarint(in), (int) RegistrazionePartita.leggiVarint(in)});
+        }
+        Lotto lotto = new Lotto(partecipante, giorno, comandi, scelte);
+        lotto.giornoImpronta = RegistrazionePartita.leggiVarint(in) - 1;
+        if (lotto.giornoImpronta >= 0) {
+            lotto.impronta = in.readLong();
+        }
+        return lotto;
+    }
+
+    /**
+     * Scrive la lunghezza del frame nei primi quattro byte, lasciati liberi.
+     */
+    private static byte[] scriviLunghezza(byte[] frame) {
+        ByteBuffer.wrap(frame).putInt(0, frame.length - Integer.BYTES);
+        return frame;
+    }
+
+    /* =========================== STATISTICHE =========================== */
+
+    public Partita getPartita() {
+        return partita;
+    }
+
+    public int getPartecipante() {
+        return partecipante;
+    }
+
+    public long getGiornoDivergenza() {
+        return giornoDivergenza;
+    }
+
+    /**
+     * Giorni giocati, banda e attese.
+     *
+     * @return descrizione su una riga
+     */
+    public synchronized String descrivi() {
+        double n = Math.max(1, giorni);
+        return String.format("partecipante %d: %d giorni, inviati %d byte (%.1f byte/giorno), ricevuti %d byte "
+                        + "(%.1f byte/giorno), attesa dei lotti %.1f µs/giorno, %d confronti di impronta",
+                partecipante, giorni, byteInviati, byteInviati / n, byteRicevuti, byteRicevuti / n,
+                nanosAttesa / 1000.0 / n, confronti);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Collegamento c : collegamenti) {
+            c.socket.close();
+        }
+    }
+
+    /**
+     * Uso:
+     * <pre>
+     * java battle_cioba.LockstepPartita ospita porta partecipanti giorni [seme] [ritardo] [livello]
+     * java battle_cioba.LockstepPartita unisciti host porta giorni [livello]
+     * </pre>
+     * Tutti gli stati sono affidati ai controllori dei rispettivi
+     * partecipanti; alla fine si riportano banda, attese e impronta finale.
+     *
+     * @param args argomenti della riga di comando
+     * @throws Exception se la rete o la mappa non sono disponibili
+     */
+    public static void main(String[] args) throws Exception {
+        LockstepPartita lockstep;
+        long giorni;
+        if (args.length >= 4 && args[0].equals("ospita")) {
+            long seme = args.length > 4 ? Long.parseLong(args[4]) : System.nanoTime();
+            int ritardo = args.length > 5 ? Integer.parseInt(args[5]) : RITARDO_PREDEFINITO;
+            LivelloDifficolta livello = args.length > 6 ? LivelloDifficolta.valueOf(args[6]) : RiproduzionePartita.LIVELLO;
+            giorni = Long.parseLong(args[3]);
+            lockstep = ospita(new RegistrazionePartita.Intestazione(seme, GeneratoreCasuale.deriva(seme, 0),
+                    RiproduzionePartita.STATI, RiproduzionePartita.MAPPA), Integer.parseInt(args[1]),
+                    Integer.parseInt(args[2]), ritardo, livello);
+        } else if (args.length >= 4 && args[0].equals("unisciti")) {
+            LivelloDifficolta livello = args.length > 4 ? LivelloDifficolta.valueOf(args[4]) : RiproduzionePartita.LIVELLO;
+            giorni = Long.parseLong(args[3]);
+            lockstep = unisciti(args[1], Integer.parseInt(args[2]), livello);
+        } else {
+            System.err.println("Uso: LockstepPartita ospita <porta> <partecipanti> <giorni> [seme] [ritardo] [livello]");
+            System.err.println("     LockstepPartita unisciti <host> <porta> <giorni> [livello]");
+            System.exit(2);
+            return;
+        }
+        boolean coerente;
+        try (lockstep) {
+            long inizio = System.nanoTime();
+            coerente = lockstep.esegui(giorni);
+            double secondi = (System.nanoTime() - inizio) / 1e9;
+            System.out.printf("%d giorni in %.3f s (%.1f giorni/s)%n", lockstep.giorni, secondi,
+                    lockstep.giorni / secondi);
+            System.out.println(lockstep.descrivi());
+            System.out.printf("Impronta finale: %016x%n", lockstep.partita.calcolaImpronta());
+        }
+        // I thread dell'intelligenza artificiale non devono tenere in vita la JVM
+        System.exit(coerente ? 0 : 1);
+    }
+}
@@ -0,0 +1,433 @@
+package battle_cioba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Mappa d'influenza degli stati, costruita dai raggi di influenza dei centri.
+ * <p>
+ * Ogni centro proietta attorno a sé un peso (importanza strategica,
+ * rafforzata dal livello di difesa) che cala linearmente con la distanza
+ * fino a zero oltre raggioInfluenza(). Per ogni stato una griglia di float
+ * contiene la somma delle proiezioni dei suoi centri.
+ * <p>
+ * Quando un centro cambia (stato padrone, raggio, peso) si toglie la sua
+ * vecchia impronta e si aggiunge la nuova: il costo è proporzionale all'area
+ * del raggio, non alla mappa. Il ricalcolo completo divide la mappa in
+ * tessere e le calcola in parallelo: ogni tessera scrive solo le proprie
+ * celle e somma i centri sempre nello stesso ordine, quindi il risultato non
+ * dipende dal numero di thread.
+ * <p>
+ * Le interrogazioni servono all'intelligenza artificiale (controllo e
+ * contesa delle celle), alla tensione ai confini tra due stati e alla
+ * sovrapposizione disegnata dalla GUI.
+ */
+public class MappaInfluenza implements OsservatoreMondo {
+
+    /**
+     * Lato (in celle) delle tessere del ricalcolo parallelo.
+     */
+    public static final int LATO_TESSERA = 32;
+
+    /**
+     * Sotto questa soglia l'influenza è considerata nulla (assorbe i residui
+     * delle somme e sottrazioni in virgola mobile).
+     */
+    public static final float SOGLIA = 1e-3f;
+
+    /**
+     * Mondo di riferimento.
+     */
+    private Mondo mondo;
+
+    /**
+     * Dimensioni della mappa.
+     */
+    private int righe, colonne;
+
+    /**
+     * Influenza di ogni stato (per indice denso) su ogni cella.
+     */
+    private float[][] influenza = new float[0][];
+
+    /**
+     * Impronta applicata da ogni centro, per poterla togliere esattamente.
+     */
+    private final Map<Centro, Impronta> impronte;
+
+    /**
+     * Nuclei di attenuazione già calcolati, per raggio.
+     */
+    private float[][] nuclei = new float[16][];
+
+    /**
+     * Cresce a ogni modifica: la GUI lo usa per sapere se ridisegnare.
+     */
+    private volatile long versione;
+
+    /**
+     * Statistiche.
+     */
+    private long aggiornamentiIncrementali, celleAggiornate, ricalcoliCompleti;
+
+    /**
+     * Costruttore principale.
+     */
+    public MappaInfluenza() {
+        this.impronte = new IdentityHashMap<>();
+    }
+
+    /**
+     * Legge tutti i centri e ricalcola la mappa da zero.
+     *
+     * @param mondo mondo di gioco (già indicizzato)
+     */
+    public synchronized void inizializza(Mondo mondo) {
+        this.mondo = mondo;
+        this.righe = mondo.getRighe();
+        this.colonne = mondo.getColonne();
+        impronte.clear();
+        for (int c = 0; c < righe * colonne; c++) {
+            Territorio t = mondo.getTerritorio(c);
+            if (t != null && t.getCentro() != null) {
+                Impronta i = improntaDi(t.getCentro());
+                if (i != null) {
+                    impronte.put(t.getCentro(), i);
+                }
+            }
+        }
+        ricalcola();
+    }
+
+    /**
+     * Ricalcola tutte le griglie dalle impronte correnti, in parallelo per tessere.
+     */
+    public synchronized void ricalcola() {
+        int numStati = mondo.getCapacitaStati();
+        int numCelle = righe * colonne;
+        if (influenza.length < numStati || (numStati > 0 && influenza[0].length != numCelle)) {
+            influenza = new float[numStati][numCelle];
+        } else {
+            for (float[] griglia : influenza) {
+                Arrays.fill(griglia, 0f);
+            }
+        }
+        // Ordine fisso dei centri: ogni cella somma sempre nello stesso ordine
+        List<Impronta> elenco = new ArrayList<>(impronte.values());
+        elenco.sort((a, b) -> a.cella != b.cella ? Integer.compare(a.cella, b.cella) : Integer.compare(a.stato, b.stato));
+        for (Impronta i : elenco) {
+            nucleo(i.raggio);
+        }
+        int tessereRiga = (colonne + LATO_TESSERA - 1) / LATO_TESSERA;
+        int tessere = tessereRiga * ((righe + LATO_TESSERA - 1) / LATO_TESSERA);
+        IntStream.range(0, tessere).parallel().forEach(k -> {
+            int r0 = k / tessereRiga * LATO_TESSERA, c0 = k % tessereRiga * LATO_TESSERA;
+            int r1 = Math.min(righe, r0 + LATO_TESSERA), c1 = Math.min(colonne, c0 + LATO_TESSERA);
+            for (Impronta i : elenco) {
+                applica(i, 1f, r0, r1, c0, c1);
+            }
+        });
+        ricalcoliCompleti++;
+        versione++;
+    }
+
+    /* =========================== AGGIORNAMENTO INCREMENTALE =========================== */
+
+    /**
+     * Ricalcola l'impronta di un centro se è cambiata.
+     */
+    private void aggiorna(Centro centro, boolean rimosso) {
+        if (mondo == null) {
+            return;
+        }
+        Impronta vecchia = impronte.get(centro);
+        Impronta nuova = rimosso ? null : improntaDi(centro);
+        if (nuova != null && nuova.equals(vecchia)) {
+            return;
+        }
+        if (vecchia != null) {
+            celleAggiornate += applica(vecchia, -1f, 0, righe, 0, colonne);
+            impronte.remove(centro);
+        }
+        if (nuova != null) {
+            if (nuova.stato >= influenza.length) {
+                influenza = Arrays.copyOf(influenza, mondo.getCapacitaStati());
+                for (int s = 0; s < influenza.length; s++) {
+                    if (influenza[s] == null) {
+                        influenza[s] = new float[righe * colonne];
+                    }
+                }
+            }
+            celleAggiornate += applica(nuova, 1f, 0, righe, 0, colonne);
+            impronte.put(centro, nuova);
+        }
+        aggiornamentiIncrementali++;
+        versione++;
+    }
+
+    /**
+     * Somma (segno 1) o toglie (segno -1) un'impronta, limitata a un rettangolo.
+     *
+     * @return numero di celle toccate
+     */
+    private int applica(Impronta i, float segno, int rMin, int rMax, int cMin, int cMax) {
+        float[] griglia = influenza[i.stato];
+        float[] nucleo = nucleo(i.raggio);
+        int lato = 2 * i.raggio + 1;
+        int rc = i.cella / colonne, cc = i.cella % colonne;
+        int r0 = Math.max(rMin, rc - i.raggio), r1 = Math.min(rMax, rc + i.raggio + 1);
+        int c0 = Math.max(cMin, cc - i.raggio), c1 = Math.min(cMax, cc + i.raggio + 1);
+        float peso = segno * i.peso;
+        for (int r = r0; r < r1; r++) {
+            int base = (r - rc + i.raggio) * lato - cc + i.raggio;
+            int riga = r * colonne;
+            for (int c = c0; c < c1; c++) {
+                griglia[riga + c] += peso * nucleo[base + c];
+            }
+        }
+        return Math.max(0, r1 - r0) * Math.max(0, c1 - c0);
+    }
+
+    /**
+     * Attenuazione lineare con la distanza euclidea su un quadrato di lato 2r+1.
+     */
+    private float[] nucleo(int raggio) {
+        if (raggio >= nuclei.length) {
+            nuclei = Arrays.copyOf(nuclei, raggio + 1);
+        }
+        float[] n = nuclei[raggio];
+        if (n == null) {
+            int lato = 2 * raggio + 1;
+            n = new float[lato * lato];
+            for (int dr = -raggio; dr <= raggio; dr++) {
+                for (int dc = -raggio; dc <= raggio; dc++) {
+                    double d = Math.sqrt(dr * dr + dc * dc);
+                    n[(dr + raggio) * lato + dc + raggio] = (float) Math.max(0, 1 - d / (raggio + 1));
+                }
+            }
+            nuclei[raggio] = n;
+        }
+        return n;
+    }
+
+    /**
+     * Impronta corrente di un centro, oppure null se il centro non proietta influenza.
+     */
+    private Impronta improntaDi(Centro c) {
+        Territorio t = c.getTerritorio();
+        if (t == null || t.getCentro() != c) {
+            return null;
+        }
+        int stato = mondo.indiceStato(c.getStatoPadrone());
+        int raggio = c.raggioInfluenza();
+        if (stato < 0 || raggio < 0) {
+            return null;
+        }
+        float peso = c.getImportanzaStrategica() * (1f + c.getLivelloDifesa() / 10f);
+        return new Impronta(t.getIndiceCella(), Math.min(raggio, Math.max(righe, colonne)), stato, peso);
+    }
+
+    /* =========================== NOTIFICHE =========================== */
+
+    @Override
+    public synchronized void centroImpostato(Territorio territorio, Centro vecchio, Centro nuovo) {
+        if (vecchio != null) {
+            aggiorna(vecchio, true);
+        }
+        if (nuovo != null) {
+            aggiorna(nuovo, false);
+        }
+    }
+
+    @Override
+    public synchronized void centroModificato(Centro centro) {
+        aggiorna(centro, false);
+    }
+
+    /* =========================== INTERROGAZIONI =========================== */
+
+    /**
+     * Influenza di uno stato su una cella.
+     *
+     * @param stato indice dello stato
+     * @param cella indice della cella
+     * @return influenza (0 se lo stato non ne ha)
+     */
+    public synchronized float getInfluenza(int stato, int cella) {
+        if (stato < 0 || stato >= influenza.length) {
+            return 0f;
+        }
+        float v = influenza[stato][cella];
+        return v > SOGLIA ? v : 0f;
+    }
+
+    /**
+     * Stato con l'influenza più alta su una cella.
+     *
+     * @param cella indice della cella
+     * @return indice dello stato, oppure -1 se nessuno ha influenza
+     */
+    public synchronized int getDominante(int cella) {
+        int migliore = -1;
+        float massimo = SOGLIA;
+        for (int s = 0; s < influenza.length; s++) {
+            if (influenza[s][cella] > massimo) {
+                massimo = influenza[s][cella];
+                migliore = s;
+            }
+        }
+        return migliore;
+    }
+
+    /**
+     * Controllo di uno stato su una cella: la sua influenza meno la più alta
+     * tra gli altri stati. Positivo dove prevale, negativo dove è dominato.
+     *
+     * @param stato indice dello stato
+     * @param cella indice della cella
+     * @return differenza di influenza
+     */
+    public synchronized float getControllo(int stato, int cella) {
+        float propria = 0f, altri = 0f;
+        for (int s = 0; s < influenza.length; s++) {
+            float v = influenza[s][cella];
+            if (s == stato) {
+                propria = v;
+            } else if (v > altri) {
+                altri = v;
+            }
+        }
+        return Math.abs(propria - altri) > SOGLIA ? propria - altri : 0f;
+    }
+
+    /**
+     * Contesa di una cella: la seconda influenza più alta, cioè quanto il
+     * secondo stato più presente insidia il primo.
+     *
+     * @param cella indice della cella
+     * @return contesa (0 se al più uno stato ha influenza)
+     */
+    public synchronized float getContesa(int cella) {
+        float primo = 0f, secondo = 0f;
+        for (float[] griglia : influenza) {
+            float v = griglia[cella];
+            if (v > primo) {
+                secondo = primo;
+                primo = v;
+            } else if (v > secondo) {
+                secondo = v;
+            }
+        }
+        return secondo > SOGLIA ? secondo : 0f;
+    }
+
+    /**
+     * Tensione tra due stati: somma su tutte le celle della minore delle due
+     * influenze, cioè quanto le loro sfere di influenza si sovrappongono.
+     *
+     * @param a indice del primo stato
+     * @param b indice del secondo stato
+     * @return tensione (0 se non si sovrappongono)
+     */
+    public synchronized double getTensione(int a, int b) {
+        if (a < 0 || b < 0 || a >= influenza.length || b >= influenza.length || a == b) {
+            return 0;
+        }
+        float[] ga = influenza[a], gb = influenza[b];
+        double somma = 0;
+        for (int c = 0; c < ga.length; c++) {
+            float v = Math.min(ga[c], gb[c]);
+            if (v > SOGLIA) {
+                somma += v;
+            }
+        }
+        return somma;
+    }
+
+    /**
+     * Copia in blocco stato dominante e sua influenza per ogni cella (per la
+     * sovrapposizione della GUI, che così non interroga una cella alla volta).
+     *
+     * @param dominante destinazione degli indici di stato (-1 nessuno)
+     * @param intensita destinazione dell'influenza dello stato dominante
+     * @return versione della mappa copiata
+     */
+    public synchronized long copiaDominanti(int[] dominante, float[] intensita) {
+        int numCelle = Math.min(righe * colonne, Math.min(dominante.length, intensita.length));
+        Arrays.fill(dominante, 0, numCelle, -1);
+        Arrays.fill(intensita, 0, numCelle, 0f);
+        for (int s = 0; s < influenza.length; s++) {
+            float[] griglia = influenza[s];
+            for (int c = 0; c < numCelle; c++) {
+                if (griglia[c] > SOGLIA && griglia[c] > intensita[c]) {
+                    intensita[c] = griglia[c];
+                    dominante[c] = s;
+                }
+            }
+        }
+        return versione;
+    }
+
+    /* =========================== STATISTICHE =========================== */
+
+    public long getVersione() {
+        return versione;
+    }
+
+    public synchronized int getNumCentri() {
+        return impronte.size();
+    }
+
+    public long getAggiornamentiIncrementali() {
+        return aggiornamentiIncrementali;
+    }
+
+    /**
+     * Celle toccate dagli aggiornamenti incrementali (per confrontarle con la mappa intera).
+     *
+     * @return numero di celle aggiornate
+     */
+    public long getCelleAggiornate() {
+        return celleAggiornate;
+    }
+
+    public long getRicalcoliCompleti() {
+        return ricalcoliCompleti;
+    }
+
+    /**
+     * Contributo di un centro: cella, raggio, stato e peso al momento dell'applicazione.
+     */
+    private static final class Impronta {
+
+        final int cella;
+        final int raggio;
+        final int stato;
+        final float peso;
+
+        Impronta(int cella, int raggio, int stato, float peso) {
+            this.cella = cella;
+            this.raggio = raggio;
+            this.stato = stato;
+            this.peso = peso;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Impronta)) {
+                return false;
+            }
+            Impronta i = (Impronta) o;
+            return cella == i.cella && raggio == i.raggio && stato == i.stato && peso == i.peso;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((cella * 31 + raggio) * 31 + stato) * 31 + Float.floatToIntBits(peso);
+        }
+    }
+}
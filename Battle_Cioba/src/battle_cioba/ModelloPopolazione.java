@@ -0,0 +1,294 @@
+package battle_cioba;
+
+import java.util.Map;
+
+/**
+ * Evoluzione giornaliera dei civili di ogni territorio.
+ * Ogni cella cresce in modo logistico verso la propria capacità, con un
+ * tasso che dipende dalla fertilità del terreno; le battaglie perse e le
+ * conquiste aggiungono una perdita giornaliera che si attenua nei giorni
+ * successivi.
+ * <p>
+ * I dati stanno in colonne primitive (ColonnePopolazione) aggiornate da un
+ * kernel: vettoriale se la Vector API è disponibile, altrimenti scalare,
+ * a blocchi paralleli in entrambi i casi. I territori vengono aggiornati
+ * solo quando i loro civili si sono spostati di almeno l'1% dall'ultimo
+ * valore pubblicato, per non inondare gli osservatori di notifiche per
+ * variazioni di pochi abitanti.
+ */
+public class ModelloPopolazione implements FaseSimulazione, OsservatoreMondo {
+
+    /**
+     * Crescita annua di una cella con fertilità 100 lontana dalla capacità.
+     */
+    public static final double TASSO_ANNUO_MASSIMO = 0.03;
+
+    /**
+     * Capacità di una cella sterile.
+     */
+    public static final long CAPACITA_BASE = 4000;
+
+    /**
+     * Capacità aggiunta da ogni punto di fertilità.
+     */
+    public static final long CAPACITA_PER_FERTILITA = 200;
+
+    /**
+     * Moltiplicatore della capacità per le celle con capoluogo o capitale.
+     */
+    public static final int MOLTIPLICATORE_CITTA = 10;
+
+    /**
+     * Perdita giornaliera aggiunta quando il centro della cella perde una battaglia.
+     */
+    public static final float PERDITA_BATTAGLIA = 0.01f;
+
+    /**
+     * Perdita giornaliera aggiunta quando la cella cambia stato.
+     */
+    public static final float PERDITA_CONQUISTA = 0.02f;
+
+    /**
+     * Limite della perdita giornaliera accumulata.
+     */
+    public static final float PERDITA_MASSIMA = 0.1f;
+
+    /**
+     * Variazione relativa oltre la quale i civili vengono pubblicati sul territorio.
+     */
+    public static final int SOGLIA_PUBBLICAZIONE_PERCENTO = 1;
+
+    /**
+     * Kernel di calcolo.
+     */
+    private final KernelPopolazione kernel;
+
+    /**
+     * Dati per cella.
+     */
+    private ColonnePopolazione colonne = new ColonnePopolazione(0);
+
+    /**
+     * Ultimo valore scritto su ogni territorio: una notifica con un valore
+     * diverso indica una modifica esterna (carte, generazione) da adottare.
+     */
+    private long[] pubblicati = new long[0];
+
+    /**
+     * Livello di difesa del centro di ogni cella, per riconoscere le battaglie perse.
+     */
+    private int[] difesa = new int[0];
+
+    /**
+     * Mondo di riferimento.
+     */
+    private Mondo mondo;
+
+    /**
+     * Esegue il kernel su più thread.
+     */
+    private volatile boolean parallelo = true;
+
+    /**
+     * Statistiche dell'ultimo giorno.
+     */
+    private long civiliTotali, pubblicazioniGiorno, nanosUltimoPasso;
+
+    /**
+     * Crea il modello con il miglior kernel disponibile.
+     */
+    public ModelloPopolazione() {
+        this(KernelPopolazione.migliore());
+    }
+
+    /**
+     * Costruttore principale.
+     *
+     * @param kernel kernel di calcolo
+     */
+    ModelloPopolazione(KernelPopolazione kernel) {
+        this.kernel = kernel;
+    }
+
+    /**
+     * Legge civili, fertilità e centri di tutte le celle.
+     *
+     * @param mondo mondo di gioco
+     */
+    public void inizializza(Mondo mondo) {
+        this.mondo = mondo;
+        int n = mondo.getRighe() * mondo.getColonne();
+        colonne = new ColonnePopolazione(n);
+        pubblicati = new long[n];
+        difesa = new int[n];
+        for (int c = 0; c < n; c++) {
+            Territorio t = mondo.getTerritorio(c);
+            if (t == null) {
+                continue;
+            }
+            colonne.civili[c] = t.getNumCivili();
+            pubblicati[c] = t.getNumCivili();
+            aggiornaParametri(t, c);
+            difesa[c] = t.getCentro() != null ? t.getCentro().getLivelloDifesa() : 0;
+        }
+    }
+
+    /**
+     * Calcola tasso di crescita e capacità di una cella.
+     */
+    private void aggiornaParametri(Territorio t, int c) {
+        if (!(t instanceof TerritorioTerrestre)) {
+            colonne.crescita[c] = 0f;
+            colonne.inversoCapacita[c] = 0f;
+            return;
+        }
+        int fertilita = ((TerritorioTerrestre) t).getFertilitaTerreno();
+        long capacita = CAPACITA_BASE + CAPACITA_PER_FERTILITA * fertilita;
+        Centro centro = t.getCentro();
+        if (centro instanceof Capoluogo || centro instanceof Capitale) {
+            capacita *= MOLTIPLICATORE_CITTA;
+        }
+        colonne.crescita[c] = (float) (TASSO_ANNUO_MASSIMO * fertilita / 100.0 / 365.0);
+        colonne.inversoCapacita[c] = 1f / capacita;
+    }
+
+    /**
+     * Aggiunge una perdita di guerra a una cella.
+     *
+     * @param territorio territorio colpito
+     * @param perdita frazione di civili persa il primo giorno
+     */
+    public void aggiungiPerdite(Territorio territorio, float perdita) {
+        int c = cella(territorio);
+        if (c >= 0) {
+            colonne.perdite[c] = Math.min(PERDITA_MASSIMA, colonne.perdite[c] + perdita);
+        }
+    }
+
+    private int cella(Territorio t) {
+        if (t == null) {
+            return -1;
+        }
+        int c = t.getIndiceCella();
+        return c >= 0 && c < colonne.dimensione ? c : -1;
+    }
+
+    public void setParallelo(boolean parallelo) {
+        this.parallelo = parallelo;
+    }
+
+    public String getNomeKernel() {
+        return kernel.getNome();
+    }
+
+    /* =========================== FASE DEL GIORNO =========================== */
+
+    @Override
+    public String getNome() {
+        return "Popolazione";
+    }
+
+    @Override
+    public void esegui(Mondo mondo, long giorno) {
+        if (this.mondo != mondo || colonne.dimensione != mondo.getRighe() * mondo.getColonne()) {
+            inizializza(mondo);
+        }
+        long inizio = System.nanoTime();
+        kernel.avanzaTutte(colonne, parallelo);
+        nanosUltimoPasso = System.nanoTime() - inizio;
+
+        long[] civili = colonne.civili;
+        long totale = 0;
+        long pubblicazioni = 0;
+        for (int c = 0; c < colonne.dimensione; c++) {
+            long valore = civili[c];
+            totale += valore;
+            long precedente = pubblicati[c];
+            long soglia = Math.max(1, precedente * SOGLIA_PUBBLICAZIONE_PERCENTO / 100);
+            if (Math.abs(valore - precedente) < soglia) {
+                continue;
+            }
+            Territorio t = mondo.getTerritorio(c);
+            if (t != null) {
+                pubblicati[c] = valore;
+                t.setNumCivili(valore);
+                pubblicazioni++;
+            }
+        }
+        civiliTotali = totale;
+        pubblicazioniGiorno = pubblicazioni;
+    }
+
+    @Override
+    public void riepiloga(Map<String, Long> indicatori) {
+        indicatori.put("civili", civiliTotali);
+        indicatori.put("territori_ripopolati", pubblicazioniGiorno);
+    }
+
+    /* =========================== OSSERVATORE =========================== */
+
+    @Override
+    public void territorioModificato(Territorio territorio) {
+        int c = cella(territorio);
+        if (c < 0) {
+            return;
+        }
+        long valore = territorio.getNumCivili();
+        if (valore != pubblicati[c]) {
+            colonne.civili[c] = valore;
+            colonne.resto[c] = 0f;
+            pubblicati[c] = valore;
+        }
+        aggiornaParametri(territorio, c);
+    }
+
+    @Override
+    public void centroImpostato(Territorio territorio, Centro vecchio, Centro nuovo) {
+        int c = cella(territorio);
+        if (c >= 0) {
+            aggiornaParametri(territorio, c);
+            difesa[c] = nuovo != null ? nuovo.getLivelloDifesa() : 0;
+        }
+    }
+
+    @Override
+    public void centroModificato(Centro centro) {
+        Territorio t = centro.getTerritorio();
+        int c = cella(t);
+        if (c < 0 || t.getCentro() != centro) {
+            return;
+        }
+        int livello = centro.getLivelloDifesa();
+        if (livello < difesa[c]) {
+            aggiungiPerdite(t, PERDITA_BATTAGLIA);
+        }
+        difesa[c] = livello;
+    }
+
+    @Override
+    public void territorioTrasferito(Territorio territorio, Stato vecchio, Stato nuovo) {
+        if (vecchio != null && nuovo != null) {
+            aggiungiPerdite(territorio, PERDITA_CONQUISTA);
+        }
+    }
+
+    /* =========================== STATISTICHE =========================== */
+
+    public long getCiviliTotali() {
+        return civiliTotali;
+    }
+
+    public long getNanosUltimoPasso() {
+        return nanosUltimoPasso;
+    }
+
+    /**
+     * Civili calcolati per una cella (anche se non ancora pubblicati sul territorio).
+     *
+     * @param cella indice di cella
+     * @return civili correnti
+     */
+    public long getCivili(int cella) {
+        return cella >= 0 && cella < colonne.dimensione ? colonne.civili[cella] : 0;
+    }
+}
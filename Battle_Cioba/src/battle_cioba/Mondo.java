@@ -1,17 +1,20 @@
 package battle_cioba;
 
-import java.awt.Point;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Classe che rappresenta il Mondo di gioco, contenente più Stati.
@@ -33,12 +36,90 @@ public class Mondo {
      */
     private Territorio[][] mappaTerritori;
 
+    /**
+     * Stati indicizzati per indice denso (gli slot degli stati rimossi restano null).
+     */
+    private final List<Stato> statiPerIndice;
+
+    /**
+     * Stati indicizzati per nome, per risolvere rapidamente statoPadrone.
+     */
+    private final Map<String, Stato> statiPerNome;
+
+    /**
+     * Osservatori delle modifiche a territori e centri.
+     */
+    private final List<OsservatoreMondo> osservatori;
+
+    /**
+     * Smistatore che inoltra le notifiche di territori e centri a tutti gli osservatori.
+     */
+    private final OsservatoreMondo smistatore;
+
+    /**
+     * Radice della gerarchia di aggregazione (somme di tutti gli stati).
+     */
+    private final AggregatoTerritoriale aggregato;
+
+    /**
+     * Sistema che propaga i contributi dei territori lungo la gerarchia.
+     */
+    private final AggregazioneMondo aggregazione;
+
+    /**
+     * Indice delle celle di confine di ogni stato.
+     */
+    private final IndiceConfini confini;
+
+    /**
+     * Destinazione dei messaggi della generazione (null = System.out).
+     */
+    private PrintStream messaggi;
+
     /**
      * Costruttore base per il mondo.
      */
     public Mondo() {
+        this(new Random());
+    }
+
+    /**
+     * Crea un mondo la cui generazione (regioni, stati, civili) dipende solo
+     * dal seme: stesso seme e stessa mappa, stesso mondo.
+     *
+     * @param seme seme della generazione
+     */
+    public Mondo(long seme) {
+        this(new Random(seme));
+    }
+
+    private Mondo(Random random) {
         this.stati = new LinkedList<>();
-        this.random = new Random();
+        this.random = random;
+        this.statiPerIndice = new ArrayList<>();
+        this.statiPerNome = new HashMap<>();
+        this.osservatori = new CopyOnWriteArrayList<>();
+        this.smistatore = new Smistatore();
+        this.aggregato = new AggregatoTerritoriale();
+        this.aggregazione = new AggregazioneMondo(aggregato);
+        this.confini = new IndiceConfini();
+        this.osservatori.add(aggregazione);
+        this.osservatori.add(confini);
+    }
+
+    /**
+     * Imposta dove scrivere i messaggi della generazione di mappa, stati e
+     * regioni. Chi rigenera un mondo senza console (riproduzioni, server)
+     * passa un flusso vuoto invece di sostituire System.out per tutto il processo.
+     *
+     * @param messaggi destinazione dei messaggi (null per System.out)
+     */
+    public void setMessaggi(PrintStream messaggi) {
+        this.messaggi = messaggi;
+    }
+
+    private PrintStream messaggi() {
+        return messaggi != null ? messaggi : System.out;
     }
 
     /**
@@ -57,6 +138,9 @@ public class Mondo {
      */
     public void aggiungiStato(Stato stato) {
         stati.add(stato);
+        registraIndiceStato(stato);
+        stato.getAggregato().setPadre(aggregato);
+        smistatore.statoAggiunto(stato);
     }
 
     /**
@@ -66,7 +150,347 @@ public class Mondo {
      * @return true se lo stato è stato rimosso, false altrimenti
      */
     public boolean rimuoviStato(Stato stato) {
-        return stati.remove(stato);
+        boolean rimosso = stati.remove(stato);
+        if (rimosso && stato.getIndice() >= 0) {
+            statiPerIndice.set(stato.getIndice(), null);
+            statiPerNome.remove(stato.getNome(), stato);
+        }
+        if (rimosso) {
+            stato.getAggregato().setPadre(null);
+            smistatore.statoRimosso(stato);
+        }
+        return rimosso;
+    }
+
+    /**
+     * Assegna allo stato un indice denso, se non ne ha già uno.
+     *
+     * @param stato stato da registrare
+     */
+    private void registraIndiceStato(Stato stato) {
+        if (stato.getIndice() < 0 || stato.getIndice() >= statiPerIndice.size()
+                || statiPerIndice.get(stato.getIndice()) != stato) {
+            stato.setIndice(statiPerIndice.size());
+            statiPerIndice.add(stato);
+        }
+        statiPerNome.put(stato.getNome(), stato);
+    }
+
+    /**
+     * Restituisce il numero di indici di stato assegnati finora.
+     * Gli array indicizzati per stato devono avere almeno questa dimensione.
+     *
+     * @return capacità degli indici di stato
+     */
+    public int getCapacitaStati() {
+        return statiPerIndice.size();
+    }
+
+    /**
+     * Restituisce lo stato associato a un indice denso.
+     *
+     * @param indice indice dello stato
+     * @return lo stato, o null se l'indice non è valido o lo stato è stato rimosso
+     */
+    public Stato getStatoPerIndice(int indice) {
+        if (indice < 0 || indice >= statiPerIndice.size()) {
+            return null;
+        }
+        return statiPerIndice.get(indice);
+    }
+
+    /**
+     * Cerca uno stato per nome in tempo costante.
+     *
+     * @param nome nome dello stato
+     * @return lo stato, o null se non trovato
+     */
+    public Stato getStatoPerNome(String nome) {
+        return nome != null ? statiPerNome.get(nome) : null;
+    }
+
+    /**
+     * Restituisce l'indice denso dello stato con il nome indicato.
+     *
+     * @param nome nome dello stato (può essere null)
+     * @return indice dello stato, -1 se non trovato
+     */
+    public int indiceStato(String nome) {
+        Stato stato = getStatoPerNome(nome);
+        return stato != null ? stato.getIndice() : -1;
+    }
+
+    /* =========================== OSSERVATORI =========================== */
+
+    /**
+     * Registra un osservatore delle modifiche a territori e centri.
+     *
+     * @param osservatore osservatore da registrare
+     */
+    public void aggiungiOsservatore(OsservatoreMondo osservatore) {
+        if (osservatore != null && !osservatori.contains(osservatore)) {
+            osservatori.add(osservatore);
+        }
+    }
+
+    /**
+     * Rimuove un osservatore registrato.
+     *
+     * @param osservatore osservatore da rimuovere
+     */
+    public void rimuoviOsservatore(OsservatoreMondo osservatore) {
+        osservatori.remove(osservatore);
+    }
+
+    /**
+     * Collega tutti i territori e i centri della mappa al sistema di notifiche
+     * e registra gli indici degli stati. Va chiamato dopo la generazione del mondo,
+     * prima di inizializzare i sistemi di simulazione.
+     */
+    public void indicizza() {
+        for (Stato stato : stati) {
+            registraIndiceStato(stato);
+        }
+        if (mappaTerritori == null) {
+            return;
+        }
+        for (Territorio[] riga : mappaTerritori) {
+            for (Territorio t : riga) {
+                if (t == null) continue;
+                t.setOsservatore(smistatore);
+                if (t.getCentro() != null) {
+                    t.getCentro().setOsservatore(smistatore);
+                }
+            }
+        }
+        aggregazione.ricostruisci(this);
+        confini.ricostruisci(this);
+    }
+
+    /**
+     * Restituisce l'indice delle celle di confine degli stati.
+     *
+     * @return indice dei confini
+     */
+    public IndiceConfini getConfini() {
+        return confini;
+    }
+
+    /**
+     * Restituisce le somme in cache di tutti gli stati del mondo (lettura O(1)).
+     *
+     * @return nodo radice della gerarchia di aggregazione
+     */
+    public AggregatoTerritoriale getAggregato() {
+        return aggregato;
+    }
+
+    /**
+     * Inoltra le notifiche di territori e centri a tutti gli osservatori registrati.
+     * I nuovi centri assegnati a un territorio vengono collegati automaticamente.
+     */
+    private class Smistatore implements OsservatoreMondo {
+
+        @Override
+        public void territorioModificato(Territorio territorio) {
+            for (OsservatoreMondo o : osservatori) {
+                o.territorioModificato(territorio);
+            }
+        }
+
+        @Override
+        public void centroImpostato(Territorio territorio, Centro vecchio, Centro nuovo) {
+            if (nuovo != null) {
+                nuovo.setOsservatore(this);
+            }
+            for (OsservatoreMondo o : osservatori) {
+                o.centroImpostato(territorio, vecchio, nuovo);
+            }
+        }
+
+        @Override
+        public void centroModificato(Centro centro) {
+            for (OsservatoreMondo o : osservatori) {
+                o.centroModificato(centro);
+            }
+        }
+
+        @Override
+        public void territorioTrasferito(Territorio territorio, Stato vecchio, Stato nuovo) {
+            for (OsservatoreMondo o : osservatori) {
+                o.territorioTrasferito(territorio, vecchio, nuovo);
+            }
+        }
+
+        @Override
+        public void regioneTrasferita(Regione regione, Stato vecchio, Stato nuovo) {
+            for (OsservatoreMondo o : osservatori) {
+                o.regioneTrasferita(regione, vecchio, nuovo);
+            }
+        }
+
+        @Override
+        public void statoAggiunto(Stato stato) {
+            for (OsservatoreMondo o : osservatori) {
+                o.statoAggiunto(stato);
+            }
+        }
+
+        @Override
+        public void statoRimosso(Stato stato) {
+            for (OsservatoreMondo o : osservatori) {
+                o.statoRimosso(stato);
+            }
+        }
+    }
+
+    /* =========================== TRASFERIMENTI =========================== */
+
+    /**
+     * Trasferisce un territorio a un altro stato (conquista o cessione).
+     * Il territorio entra in una regione del nuovo stato adiacente a lui;
+     * se non ce ne sono, nella regione capitale o in una regione di
+     * territori occupati creata al momento.
+     *
+     * @param territorio territorio da trasferire
+     * @param nuovoStato stato che lo acquisisce
+     * @return true se il territorio ha cambiato stato
+     * @throws IllegalArgumentException se il territorio o lo stato non fanno parte del mondo
+     */
+    public synchronized boolean trasferisciTerritorio(Territorio territorio, Stato nuovoStato) {
+        verificaTrasferimento(territorio, nuovoStato);
+        if (territorio.getRegioneObj() != null && territorio.getRegioneObj().getStato() == nuovoStato) {
+            return false;
+        }
+        return trasferisciTerritorio(territorio, scegliRegioneDestinazione(territorio, nuovoStato));
+    }
+
+    /**
+     * Trasferisce un territorio in una regione precisa (anche di un altro stato).
+     * Aggiorna regioni, proprietà del territorio e del suo centro, flag di capitale,
+     * aggregati e confini, poi notifica gli osservatori. Ogni passo costa O(1):
+     * nessuna lista viene scandita.
+     *
+     * @param territorio territorio da trasferire
+     * @param destinazione regione di destinazione (deve appartenere a uno stato)
+     * @return true se il territorio è stato spostato
+     * @throws IllegalArgumentException se territorio o destinazione non sono validi
+     */
+    public synchronized boolean trasferisciTerritorio(Territorio territorio, Regione destinazione) {
+        if (destinazione == null) {
+            throw new IllegalArgumentException("Regione di destinazione mancante");
+        }
+        Stato nuovoStato = destinazione.getStato();
+        // Tutte le verifiche prima di modificare qualsiasi cosa
+        verificaTrasferimento(territorio, nuovoStato);
+        Regione vecchiaRegione = territorio.getRegioneObj();
+        if (vecchiaRegione == destinazione) {
+            return false;
+        }
+        Stato vecchioStato = vecchiaRegione != null && vecchiaRegione.getStato() != null
+                ? vecchiaRegione.getStato()
+                : getStatoPerNome(territorio.getStatoPadrone());
+
+        // Il territorio capitale conquistato perde il suo ruolo
+        if (territorio.isCapitale() && vecchioStato != nuovoStato) {
+            territorio.setCapitale(false);
+        }
+        if (vecchiaRegione != null) {
+            vecchiaRegione.removeTerritorio(territorio);
+            // Una regione rimasta vuota non ha più motivo di esistere
+            if (vecchiaRegione.getTerritori().isEmpty() && vecchiaRegione.getStato() != null) {
+                vecchiaRegione.getStato().removeRegione(vecchiaRegione);
+            }
+        }
+        destinazione.addTerritorio(territorio);
+        territorio.setStatoPadrone(nuovoStato.getNome());
+        Centro centro = territorio.getCentro();
+        if (centro != null) {
+            centro.setRegione(destinazione.getNome());
+            centro.setStatoPadrone(nuovoStato.getNome());
+        }
+
+        smistatore.territorioTrasferito(territorio, vecchioStato, nuovoStato);
+        return true;
+    }
+
+    /**
+     * Trasferisce un'intera regione a un altro stato. Gli aggregati della regione
+     * vengono spostati in blocco; la proprietà dei singoli territori (che è
+     * memorizzata per nome) viene aggiornata una volta per territorio.
+     *
+     * @param regione regione da trasferire
+     * @param nuovoStato stato che la acquisisce
+     * @return true se la regione ha cambiato stato
+     * @throws IllegalArgumentException se la regione o lo stato non sono validi
+     */
+    public synchronized boolean trasferisciRegione(Regione regione, Stato nuovoStato) {
+        if (regione == null) {
+            throw new IllegalArgumentException("Regione mancante");
+        }
+        if (nuovoStato == null || getStatoPerIndice(nuovoStato.getIndice()) != nuovoStato) {
+            throw new IllegalArgumentException("Lo stato di destinazione non fa parte del mondo");
+        }
+        Stato vecchioStato = regione.getStato();
+        if (vecchioStato == nuovoStato) {
+            return false;
+        }
+
+        if (vecchioStato != null) {
+            // La regione capitale ceduta non è più sede di governo
+            if (vecchioStato.getCapitale() == regione && regione.getCapoluogo() != null) {
+                regione.getCapoluogo().setCapitale(false);
+            }
+            vecchioStato.removeRegione(regione);
+        }
+        nuovoStato.addRegione(regione);
+        for (Territorio t : regione.getTerritori()) {
+            t.setStatoPadrone(nuovoStato.getNome());
+            if (t.getCentro() != null) {
+                t.getCentro().setStatoPadrone(nuovoStato.getNome());
+            }
+        }
+
+        smistatore.regioneTrasferita(regione, vecchioStato, nuovoStato);
+        return true;
+    }
+
+    /**
+     * Controlla che territorio e stato di destinazione appartengano al mondo.
+     */
+    private void verificaTrasferimento(Territorio territorio, Stato nuovoStato) {
+        if (territorio == null || getTerritorio(territorio.getIndiceCella()) != territorio) {
+            throw new IllegalArgumentException("Il territorio non fa parte della mappa");
+        }
+        if (nuovoStato == null || getStatoPerIndice(nuovoStato.getIndice()) != nuovoStato) {
+            throw new IllegalArgumentException("Lo stato di destinazione non fa parte del mondo");
+        }
+    }
+
+    /**
+     * Sceglie la regione del nuovo stato in cui inserire un territorio conquistato:
+     * la prima regione adiacente del nuovo stato, altrimenti la capitale,
+     * altrimenti una nuova regione di territori occupati.
+     */
+    private Regione scegliRegioneDestinazione(Territorio territorio, Stato nuovoStato) {
+        int cella = territorio.getIndiceCella();
+        int riga = cella / getColonne(), colonna = cella % getColonne();
+        int[][] direzioni = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+        for (int[] dir : direzioni) {
+            int ni = riga + dir[0], nj = colonna + dir[1];
+            if (isValid(ni, nj) && mappaTerritori[ni][nj] != null) {
+                Regione vicina = mappaTerritori[ni][nj].getRegioneObj();
+                if (vicina != null && vicina.getStato() == nuovoStato) {
+                    return vicina;
+                }
+            }
+        }
+        if (nuovoStato.getCapitale() != null && nuovoStato.getCapitale().getStato() == nuovoStato) {
+            return nuovoStato.getCapitale();
+        }
+        Regione occupati = new Regione("Territori_occupati_di_" + nuovoStato.getNome(), null);
+        nuovoStato.addRegione(occupati);
+        return occupati;
     }
 
     /**
@@ -80,20 +504,13 @@ public class Mondo {
             System.out.println("Popolazione totale: " + stato.getPopolazione());
             System.out.println("Numero di regioni: " + stato.getRegioni().size());
 
-            int territoriTotali = 0;
-            int territoriMarini = 0;
-            for (Regione regione : stato.getRegioni()) {
-                territoriTotali += regione.getTerritori().size();
-                for (Territorio territorio : regione.getTerritori()) {
-                    if (territorio.isAcqua()) {
-                        territoriMarini++;
-                    }
-                }
-            }
-
-            System.out.println("Territori totali: " + territoriTotali);
-            System.out.println("Territori terrestri: " + (territoriTotali - territoriMarini));
-            System.out.println("Territori marini: " + territoriMarini);
+            // Le somme sono mantenute dalla gerarchia di aggregazione (lettura O(1))
+            AggregatoTerritoriale somme = stato.getAggregato();
+            System.out.println("Territori totali: " + somme.getTerritoriTotali());
+            System.out.println("Territori terrestri: " + somme.getTerritoriTerrestri());
+            System.out.println("Territori marini: " + somme.getTerritoriMarini());
+            System.out.println("Basi militari: " + somme.getBasiMilitari());
+            System.out.println("Valore strategico: " + somme.getValoreStrategico());
             System.out.println("Potenza militare: " + stato.getPotenza());
             System.out.println("Capitale: " + (stato.getCapitale() != null ? stato.getCapitale().getNome() : "Nessuna"));
         }
@@ -154,10 +571,11 @@ public class Mondo {
 
                 // Creazione di un territorio appropriato usando il metodo nuovoTerritorio
                 mappaTerritori[i][j] = nuovoTerritorio(isAcqua, i, j);
+                mappaTerritori[i][j].setIndiceCella(i * colonneMatrice + j);
             }
         }
 
-        System.out.println("Generata mappa di territori " + righeMatrice + "x" + colonneMatrice);
+        messaggi().println("Generata mappa di territori " + righeMatrice + "x" + colonneMatrice);
         return mappaTerritori;
     }
 
@@ -170,7 +588,7 @@ public class Mondo {
     public Stato creaStato(String nome) {
         // Creiamo un nuovo stato (per ora senza regioni)
         Stato nuovoStato = new Stato(nome, null, 100, 0, null);
-        stati.add(nuovoStato);
+        aggiungiStato(nuovoStato);
         return nuovoStato;
     }
 
@@ -184,7 +602,7 @@ public class Mondo {
     public Stato creaStato(String nome, Presidente presidente) {
         // Creiamo un nuovo stato con il presidente
         Stato nuovoStato = new Stato(nome, presidente, 100, 0, null);
-        stati.add(nuovoStato);
+        aggiungiStato(nuovoStato);
         return nuovoStato;
     }
 
@@ -216,14 +634,14 @@ public class Mondo {
     public int generaStati(int numStati, List<String> nomiStati, List<String> nomiPresidenti, 
                           List<String> cognomiPresidenti, List<String> nomiCapitali, List<String> nomiCapoluoghi) {
         if (mappaTerritori == null) {
-            System.out.println("Errore: la mappa dei territori non è stata generata.");
+            messaggi().println("Errore: la mappa dei territori non è stata generata.");
             return 0;
         }
         
         // Debug: stampa le liste di nomi ricevuti
-        System.out.println("DEBUG - generaStati ricevuti " + nomiCapoluoghi.size() + " elementi per capoluoghi:");
+        messaggi().println("DEBUG - generaStati ricevuti " + nomiCapoluoghi.size() + " elementi per capoluoghi:");
         for (int i = 0; i < nomiCapoluoghi.size(); i++) {
-            System.out.println(" - Capoluogo " + i + ": '" + nomiCapoluoghi.get(i) + "'");
+            messaggi().println(" - Capoluogo " + i + ": '" + nomiCapoluoghi.get(i) + "'");
         }
 
         // Conteggio totale dei territori terrestri disponibili
@@ -245,10 +663,10 @@ public class Mondo {
         boolean[][] visited = new boolean[mappaTerritori.length][mappaTerritori[0].length];
         
         // Lista di punti di partenza potenziali per gli stati (territori terrestri)
-        List<Point> puntidiPartenza = trovaTerreniDisponibili();
+        List<Posizione> puntidiPartenza = trovaTerreniDisponibili();
         
         if (puntidiPartenza.isEmpty()) {
-            System.out.println("Errore: non ci sono territori terrestri disponibili.");
+            messaggi().println("Errore: non ci sono territori terrestri disponibili.");
             return 0;
         }
         
@@ -256,7 +674,7 @@ public class Mondo {
         int statiDaCreare = Math.min(numStati, puntidiPartenza.size() / 3); // Considera che ogni stato potrebbe richiedere più tentativi
         int statiCreati = 0;
         
-        System.out.println("Generazione di " + statiDaCreare + " stati con una dimensione media di " + 
+        messaggi().println("Generazione di " + statiDaCreare + " stati con una dimensione media di " + 
                           dimensioneMediaStato + " territori ciascuno (totale territori terrestri: " + 
                           totaleTerritoriTerrestri + ")");
         
@@ -313,14 +731,14 @@ public class Mondo {
                 } while (indiciProvati.contains(indexPunto) && indiciProvati.size() < puntidiPartenza.size());
                 
                 if (puntidiPartenza.isEmpty()) {
-                    System.out.println("Terminati i punti di partenza disponibili");
+                    messaggi().println("Terminati i punti di partenza disponibili");
                     break;
                 }
                 
                 indiciProvati.add(indexPunto);
-                Point puntoIniziale = puntidiPartenza.get(indexPunto);
+                Posizione puntoIniziale = puntidiPartenza.get(indexPunto);
                 
-                System.out.println("Tentativo " + tentativi + " per lo stato " + nomeStato + " dal punto " + puntoIniziale.x + "," + puntoIniziale.y);
+                messaggi().println("Tentativo " + tentativi + " per lo stato " + nomeStato + " dal punto " + puntoIniziale.x + "," + puntoIniziale.y);
                 
                 // Genera il nucleo iniziale dello stato con la dimensione calcolata
                 success = generaNucleoStatoMigliorato(nuovoStato, puntoIniziale, visited, dimensioneTarget, nomeCapitale, nomeCapoluogo);
@@ -328,9 +746,9 @@ public class Mondo {
                 if (success) {
                     // Rimuove il punto usato con successo
                     puntidiPartenza.remove(indexPunto);
-                    System.out.println("Stato " + nomeStato + " creato con successo al tentativo " + tentativi);
+                    messaggi().println("Stato " + nomeStato + " creato con successo al tentativo " + tentativi);
                 } else {
-                    System.out.println("Tentativo " + tentativi + " fallito per lo stato " + nomeStato);
+                    messaggi().println("Tentativo " + tentativi + " fallito per lo stato " + nomeStato);
                 }
             }
             
@@ -338,11 +756,11 @@ public class Mondo {
                 statiCreati++;
             } else {
                 rimuoviStato(nuovoStato);
-                System.out.println("Impossibile creare lo stato " + nomeStato + " dopo " + tentativi + " tentativi.");
+                messaggi().println("Impossibile creare lo stato " + nomeStato + " dopo " + tentativi + " tentativi.");
             }
         }
         
-        System.out.println("GENERAZIONE STATI COMPLETATA: Creati " + statiCreati + " stati su " + statiDaCreare + " richiesti");
+        messaggi().println("GENERAZIONE STATI COMPLETATA: Creati " + statiCreati + " stati su " + statiDaCreare + " richiesti");
         return statiCreati;
     }
     
@@ -351,14 +769,14 @@ public class Mondo {
      *
      * @return lista di punti corrispondenti a territori terrestri
      */
-    private List<Point> trovaTerreniDisponibili() {
-        List<Point> punti = new ArrayList<>();
+    private List<Posizione> trovaTerreniDisponibili() {
+        List<Posizione> punti = new ArrayList<>();
         
         for (int i = 0; i < mappaTerritori.length; i++) {
             for (int j = 0; j < mappaTerritori[0].length; j++) {
                 Territorio t = mappaTerritori[i][j];
                 if (t != null && !t.isAcqua() && t.getStatoPadrone() == null) {
-                    punti.add(new Point(i, j));
+                    punti.add(new Posizione(i, j));
                 }
             }
         }
@@ -383,9 +801,9 @@ public class Mondo {
         }
         
         // Alternativa 2: trova le coordinate di ciascun territorio e calcola il centro
-        List<Point> punti = new ArrayList<>();
+        List<Posizione> punti = new ArrayList<>();
         for (Territorio t : territori) {
-            Point p = trovaCoordinateTerritorio(t);
+            Posizione p = trovaCoordinateTerritorio(t);
             if (p != null) {
                 punti.add(p);
             }
@@ -397,8 +815,8 @@ public class Mondo {
         }
         
         // Calcola il centro geometrico
-        Point centro = new Point(0, 0);
-        for (Point p : punti) {
+        Posizione centro = new Posizione(0, 0);
+        for (Posizione p : punti) {
             centro.x += p.x;
             centro.y += p.y;
         }
@@ -412,7 +830,7 @@ public class Mondo {
         for (int i = 0; i < territori.size(); i++) {
             if (i >= punti.size()) continue; // Salta se ci sono più territori che punti
             
-            Point p = punti.get(i);
+            Posizione p = punti.get(i);
             double distanza = Math.sqrt(Math.pow(p.x - centro.x, 2) + Math.pow(p.y - centro.y, 2));
             
             if (distanza < distanzaMinima) {
@@ -430,8 +848,8 @@ public class Mondo {
      * @param punti lista di punti di partenza
      * @param visited matrice di territori già visitati
      */
-    private void aggiornaTerreniDisponibili(List<Point> punti, boolean[][] visited) {
-        punti.removeIf(p -> visited[(int)p.getX()][(int)p.getY()]);
+    private void aggiornaTerreniDisponibili(List<Posizione> punti, boolean[][] visited) {
+        punti.removeIf(p -> visited[p.x][p.y]);
     }
 
     /**
@@ -447,21 +865,21 @@ public class Mondo {
         
         // Verifica che la regione capitale esista
         if (stato.getCapitale() == null) {
-            System.out.println("Lo stato non ha una regione capitale.");
+            messaggi().println("Lo stato non ha una regione capitale.");
             return 0;
         }
         
         // Ottieni capoluogo della regione capitale
         Territorio capoluogoCapitale = stato.getCapitale().getCapoluogo();
         if (capoluogoCapitale == null) {
-            System.out.println("La regione capitale non ha un capoluogo.");
+            messaggi().println("La regione capitale non ha un capoluogo.");
             return 0;
         }
         
         // Trova coordinate del capoluogo
-        Point coordCapitale = trovaCoordinateTerritorio(capoluogoCapitale);
+        Posizione coordCapitale = trovaCoordinateTerritorio(capoluogoCapitale);
         if (coordCapitale == null) {
-            System.out.println("Impossibile trovare le coordinate del capoluogo della capitale.");
+            messaggi().println("Impossibile trovare le coordinate del capoluogo della capitale.");
             return 0;
         }
         
@@ -471,7 +889,7 @@ public class Mondo {
         // Marca tutti i territori dello stato come visitati
         for (Regione regione : stato.getRegioni()) {
             for (Territorio t : regione.getTerritori()) {
-                Point p = trovaCoordinateTerritorio(t);
+                Posizione p = trovaCoordinateTerritorio(t);
                 if (p != null) {
                     visited[p.x][p.y] = true;
                 }
@@ -488,13 +906,13 @@ public class Mondo {
         // In base al numero di territori, calcoliamo quante regioni aggiuntive creare
         int numRegioniDaCreare = 1 + numTerritori / 50; // Una regione ogni 50 territori circa
         
-        System.out.println("Creazione di " + numRegioniDaCreare + " regioni aggiuntive per lo stato " + 
+        messaggi().println("Creazione di " + numRegioniDaCreare + " regioni aggiuntive per lo stato " + 
                            stato.getNome() + " con " + numTerritori + " territori");
         
         // Trova territori di frontiera della regione capitale
-        List<Point> frontiera = new ArrayList<>();
+        List<Posizione> frontiera = new ArrayList<>();
         for (Territorio t : stato.getCapitale().getTerritori()) {
-            Point p = trovaCoordinateTerritorio(t);
+            Posizione p = trovaCoordinateTerritorio(t);
             if (p == null) continue;
             
             // Controlla i vicini in tutte le 4 direzioni
@@ -506,14 +924,14 @@ public class Mondo {
                 if (isValid(ni, nj) && !visited[ni][nj]) {
                     Territorio vicino = mappaTerritori[ni][nj];
                     if (vicino != null && vicino.getStatoPadrone() == null) {
-                        frontiera.add(new Point(ni, nj));
+                        frontiera.add(new Posizione(ni, nj));
                     }
                 }
             }
         }
         
         if (frontiera.isEmpty()) {
-            System.out.println("Non ci sono territori di frontiera disponibili per nuove regioni.");
+            messaggi().println("Non ci sono territori di frontiera disponibili per nuove regioni.");
             return 1; // Rimane solo la regione capitale
         }
         
@@ -523,7 +941,7 @@ public class Mondo {
         for (int i = 0; i < numRegioniDaCreare && !frontiera.isEmpty(); i++) {
             // Scegli un punto di frontiera casuale
             int index = random.nextInt(frontiera.size());
-            Point puntoRegione = frontiera.get(index);
+            Posizione puntoRegione = frontiera.get(index);
             frontiera.remove(index);
             
             if (visited[puntoRegione.x][puntoRegione.y]) continue;
@@ -557,7 +975,7 @@ public class Mondo {
                 
                 // Aggiorna la frontiera
                 for (Territorio t : territoriRegione) {
-                    Point p = trovaCoordinateTerritorio(t);
+                    Posizione p = trovaCoordinateTerritorio(t);
                     if (p == null) continue;
                     
                     // Controlla i vicini in tutte le 4 direzioni
@@ -569,13 +987,13 @@ public class Mondo {
                         if (isValid(ni, nj) && !visited[ni][nj]) {
                             Territorio vicino = mappaTerritori[ni][nj];
                             if (vicino != null && vicino.getStatoPadrone() == null) {
-                                frontiera.add(new Point(ni, nj));
+                                frontiera.add(new Posizione(ni, nj));
                             }
                         }
                     }
                 }
                 
-                System.out.println("Creata regione '" + nuovaRegione.getNome() + "' con " + 
+                messaggi().println("Creata regione '" + nuovaRegione.getNome() + "' con " + 
                                   territoriRegione.size() + " territori");
             }
         }
@@ -595,8 +1013,8 @@ public class Mondo {
      */
     private List<Territorio> floodFillRegionMigliorato(int startRow, int startCol, int maxSize, boolean[][] visited) {
         List<Territorio> region = new ArrayList<>();
-        LinkedList<Point> queue = new LinkedList<>();
-        queue.add(new Point(startRow, startCol));
+        LinkedList<Posizione> queue = new LinkedList<>();
+        queue.add(new Posizione(startRow, startCol));
         
         // Teniamo traccia dei territori marini attraversati
         int contatoreMare = 0;
@@ -604,7 +1022,7 @@ public class Mondo {
         int maxTerritoriMarini = Math.max(3, maxSize / 4);
         
         // Lista di priorità per i territori terrestri
-        PriorityQueue<Point> tierreTerrestri = new PriorityQueue<>((p1, p2) -> {
+        PriorityQueue<Posizione> tierreTerrestri = new PriorityQueue<>((p1, p2) -> {
             int countViciniVisitati1 = contaViciniVisitati(p1.x, p1.y, visited);
             int countViciniVisitati2 = contaViciniVisitati(p2.x, p2.y, visited);
             // Priorità ai territori con più vicini già visitati (per favorire la contiguità)
@@ -619,7 +1037,7 @@ public class Mondo {
         
         // Primo passaggio: espansione principale
         while ((!queue.isEmpty() || !tierreTerrestri.isEmpty()) && region.size() < maxSize) {
-            Point p;
+            Posizione p;
             
             // Preferisci espandere prima su tierra che su mare
             if (!tierreTerrestri.isEmpty() && region.size() > 0) {
@@ -666,7 +1084,7 @@ public class Mondo {
                 if (isValid(ni, nj) && !visited[ni][nj]) {
                     Territorio vicino = mappaTerritori[ni][nj];
                     if (vicino != null && vicino.getStatoPadrone() == null) {
-                        Point nuovoPunto = new Point(ni, nj);
+                        Posizione nuovoPunto = new Posizione(ni, nj);
                         
                         // Dividi in base al tipo di territorio
                         if (!vicino.isAcqua()) {
@@ -684,14 +1102,14 @@ public class Mondo {
             // Lo facciamo solo se abbiamo una regione molto piccola e abbiamo bisogno di espanderci
             if (!t.isAcqua() && region.size() < maxSize/3 && region.size() % 15 == 0) {
                 // Cerchiamo territori terrestri non connessi che potrebbero essere raggiunti attraverso il mare
-                List<Point> puntiTerraNonConnessi = trovaPuntiTerraNonConnessi(visited, tempVisited, maxTerritoriMarini - contatoreMare);
+                List<Posizione> puntiTerraNonConnessi = trovaPuntiTerraNonConnessi(visited, tempVisited, maxTerritoriMarini - contatoreMare);
                 
                 // Limitiamo a un solo punto non connesso per volta per mantenere la contiguità
                 if (!puntiTerraNonConnessi.isEmpty()) {
-                    Point puntoTerra = puntiTerraNonConnessi.get(0);
+                    Posizione puntoTerra = puntiTerraNonConnessi.get(0);
                     if (!visited[puntoTerra.x][puntoTerra.y]) {
                         tierreTerrestri.add(puntoTerra);
-                        System.out.println("Aggiunto punto terra non connesso: " + puntoTerra.x + "," + puntoTerra.y);
+                        messaggi().println("Aggiunto punto terra non connesso: " + puntoTerra.x + "," + puntoTerra.y);
                     }
                 }
             }
@@ -734,7 +1152,7 @@ public class Mondo {
                             visited[i][j] = true;
                             region.add(t);
                             if (t.isAcqua()) contatoreMare++;
-                            System.out.println("Riempito buco in posizione: " + i + "," + j);
+                            messaggi().println("Riempito buco in posizione: " + i + "," + j);
                         }
                     }
                 }
@@ -743,7 +1161,7 @@ public class Mondo {
             // Se abbiamo ancora spazio, cerchiamo di riempire ulteriori buchi
             if (region.size() < maxSize) {
                 // Priorità per i territori terrestri circondati parzialmente
-                PriorityQueue<Point> buchiQueue = new PriorityQueue<>((p1, p2) -> {
+                PriorityQueue<Posizione> buchiQueue = new PriorityQueue<>((p1, p2) -> {
                     boolean t1Terra = !mappaTerritori[p1.x][p1.y].isAcqua();
                     boolean t2Terra = !mappaTerritori[p2.x][p2.y].isAcqua();
                     if (t1Terra != t2Terra) {
@@ -767,7 +1185,7 @@ public class Mondo {
                                 if (isValid(ni, nj) && !visited[ni][nj] && !potenzialiBuchi[ni][nj]) {
                                     Territorio vicino = mappaTerritori[ni][nj];
                                     if (vicino != null && vicino.getStatoPadrone() == null) {
-                                        buchiQueue.add(new Point(ni, nj));
+                                        buchiQueue.add(new Posizione(ni, nj));
                                     }
                                 }
                             }
@@ -777,7 +1195,7 @@ public class Mondo {
                 
                 // Riempi i buchi rimanenti finché c'è spazio
                 while (!buchiQueue.isEmpty() && region.size() < maxSize) {
-                    Point p = buchiQueue.poll();
+                    Posizione p = buchiQueue.poll();
                     int i = p.x;
                     int j = p.y;
                     
@@ -802,7 +1220,7 @@ public class Mondo {
                         if (isValid(ni, nj) && !visited[ni][nj]) {
                             Territorio vicino = mappaTerritori[ni][nj];
                             if (vicino != null && vicino.getStatoPadrone() == null) {
-                                buchiQueue.add(new Point(ni, nj));
+                                buchiQueue.add(new Posizione(ni, nj));
                             }
                         }
                     }
@@ -854,7 +1272,7 @@ public class Mondo {
         List<Territorio> toRemove = new ArrayList<>();
         
         for (Territorio territorio : region) {
-            Point coords = trovaCoordinateTerritorio(territorio);
+            Posizione coords = trovaCoordinateTerritorio(territorio);
             if (coords == null) continue;
             
             int viciniNellaRegione = contaViciniVisitati(coords.x, coords.y, visited);
@@ -868,7 +1286,7 @@ public class Mondo {
         
         // Rimuovi i territori isolati dalla regione
         if (!toRemove.isEmpty()) {
-            System.out.println("Rimossi " + toRemove.size() + " territori isolati per migliorare la contiguità");
+            messaggi().println("Rimossi " + toRemove.size() + " territori isolati per migliorare la contiguità");
             region.removeAll(toRemove);
         }
     }
@@ -882,8 +1300,8 @@ public class Mondo {
      * @param maxMareDisponibile quanti territori marini possiamo ancora attraversare
      * @return lista di punti terrestri non connessi raggiungibili attraverso il mare
      */
-    private List<Point> trovaPuntiTerraNonConnessi(boolean[][] visited, boolean[][] tempVisited, int maxMareDisponibile) {
-        List<Point> puntiCandidati = new ArrayList<>();
+    private List<Posizione> trovaPuntiTerraNonConnessi(boolean[][] visited, boolean[][] tempVisited, int maxMareDisponibile) {
+        List<Posizione> puntiCandidati = new ArrayList<>();
         
         // Fattore di distanza massima per saltare attraverso il mare (proporzionale a maxMareDisponibile)
         int distanzaMax = Math.min(10, maxMareDisponibile);
@@ -895,7 +1313,7 @@ public class Mondo {
                     !mappaTerritori[i][j].isAcqua() && mappaTerritori[i][j].getStatoPadrone() == null) {
                     
                     // Trova il territorio visitato più vicino
-                    Point puntoVicino = trovaPuntoVisitatoPiuVicino(i, j, tempVisited, distanzaMax);
+                    Posizione puntoVicino = trovaPuntoVisitatoPiuVicino(i, j, tempVisited, distanzaMax);
                     
                     if (puntoVicino != null) {
                         // Calcola la distanza tra i punti
@@ -903,7 +1321,7 @@ public class Mondo {
                         
                         // Se la distanza è accettabile, aggiungi il punto come candidato
                         if (distanza <= distanzaMax) {
-                            puntiCandidati.add(new Point(i, j));
+                            puntiCandidati.add(new Posizione(i, j));
                         }
                     }
                 }
@@ -930,8 +1348,8 @@ public class Mondo {
      * @param maxDistanza distanza massima da considerare
      * @return il punto visitato più vicino entro la distanza massima, o null se non trovato
      */
-    private Point trovaPuntoVisitatoPiuVicino(int row, int col, boolean[][] tempVisited, int maxDistanza) {
-        Point puntoVicino = null;
+    private Posizione trovaPuntoVisitatoPiuVicino(int row, int col, boolean[][] tempVisited, int maxDistanza) {
+        Posizione puntoVicino = null;
         int distanzaMinima = Integer.MAX_VALUE;
         
         // Cerca in un'area limitata attorno al punto dato
@@ -948,7 +1366,7 @@ public class Mondo {
                     
                     if (distanza < distanzaMinima && distanza > 0) {
                         distanzaMinima = distanza;
-                        puntoVicino = new Point(i, j);
+                        puntoVicino = new Posizione(i, j);
                     }
                 }
             }
@@ -977,17 +1395,50 @@ public class Mondo {
         return mappaTerritori;
     }
 
+    /**
+     * Restituisce il numero di righe della mappa (0 se non generata).
+     */
+    public int getRighe() {
+        return mappaTerritori == null ? 0 : mappaTerritori.length;
+    }
+
+    /**
+     * Restituisce il numero di colonne della mappa (0 se non generata).
+     */
+    public int getColonne() {
+        return mappaTerritori == null || mappaTerritori.length == 0 ? 0 : mappaTerritori[0].length;
+    }
+
+    /**
+     * Restituisce il territorio di una cella dato il suo indice piatto.
+     *
+     * @param cella indice piatto (riga * colonne + colonna)
+     * @return territorio della cella, o null se fuori mappa
+     */
+    public Territorio getTerritorio(int cella) {
+        int colonne = getColonne();
+        if (colonne == 0 || cella < 0 || cella >= mappaTerritori.length * colonne) {
+            return null;
+        }
+        return mappaTerritori[cella / colonne][cella % colonne];
+    }
+
     /**
      * Trova le coordinate di un territorio nella mappa.
      *
      * @param territorio territorio da localizzare
      * @return punto contenente le coordinate, o null se non trovato
      */
-    private Point trovaCoordinateTerritorio(Territorio territorio) {
+    private Posizione trovaCoordinateTerritorio(Territorio territorio) {
+        // Percorso rapido: la cella è nota dalla generazione della mappa
+        int cella = territorio.getIndiceCella();
+        if (cella >= 0 && getTerritorio(cella) == territorio) {
+            return new Posizione(cella / getColonne(), cella % getColonne());
+        }
         for (int i = 0; i < mappaTerritori.length; i++) {
             for (int j = 0; j < mappaTerritori[0].length; j++) {
                 if (mappaTerritori[i][j] == territorio) {
-                    return new Point(i, j);
+                    return new Posizione(i, j);
                 }
             }
         }
@@ -1014,7 +1465,7 @@ public class Mondo {
         
         // Se non ci sono territori terrestri, restituisci null
         if (territoriTerrestri.isEmpty()) {
-            System.out.println("ATTENZIONE: Non sono disponibili territori terrestri per il capoluogo");
+            messaggi().println("ATTENZIONE: Non sono disponibili territori terrestri per il capoluogo");
             return null;
         }
         
@@ -1039,14 +1490,14 @@ public class Mondo {
      * @param nomeCapoluogoCustom nome personalizzato per i capoluoghi (se fornito)
      * @return true se lo stato è stato generato con successo, false altrimenti
      */
-    private boolean generaNucleoStatoMigliorato(Stato stato, Point puntoIniziale, boolean[][] visited, 
+    private boolean generaNucleoStatoMigliorato(Stato stato, Posizione puntoIniziale, boolean[][] visited, 
                                              int dimensioneTarget, String nomeCapitaleCustom, String nomeCapoluogoCustom) {
         // Lista dei nomi di capoluoghi disponibili per questo stato
         // Dividiamo la stringa del capoluogo che potrebbe contenere più nomi separati da ";"
         List<String> nomiCapoluoghiDisponibili = new ArrayList<>();
         
         // Debug: stampa i nomi dei capoluoghi ricevuti
-        System.out.println("DEBUG - Nomi capoluoghi ricevuti per lo stato " + stato.getNome() + ": " + nomeCapoluogoCustom);
+        messaggi().println("DEBUG - Nomi capoluoghi ricevuti per lo stato " + stato.getNome() + ": " + nomeCapoluogoCustom);
         
         if (nomeCapoluogoCustom != null && !nomeCapoluogoCustom.isEmpty()) {
             // Se il nome contiene ";" lo dividiamo in più nomi
@@ -1061,7 +1512,7 @@ public class Mondo {
         }
         
         // Debug: stampa i nomi dei capoluoghi disponibili dopo il parsing
-        System.out.println("DEBUG - Nomi capoluoghi disponibili dopo parsing: " + nomiCapoluoghiDisponibili);
+        messaggi().println("DEBUG - Nomi capoluoghi disponibili dopo parsing: " + nomiCapoluoghiDisponibili);
         
         // Numero di regioni da creare per lo stato (da 3 a 6 per stati più realistici)
         int numRegioni = 3 + random.nextInt(4);
@@ -1072,9 +1523,9 @@ public class Mondo {
         }
         
         // DEBUG: stampa tutti i nomi disponibili
-        System.out.println("DEBUG - Lista completa nomi capoluoghi per " + stato.getNome() + ":");
+        messaggi().println("DEBUG - Lista completa nomi capoluoghi per " + stato.getNome() + ":");
         for (int i = 0; i < nomiCapoluoghiDisponibili.size(); i++) {
-            System.out.println("  " + i + ": " + nomiCapoluoghiDisponibili.get(i));
+            messaggi().println("  " + i + ": " + nomiCapoluoghiDisponibili.get(i));
         }
         
         // Dimensione totale approssimativa dello stato (territori totali)
@@ -1092,7 +1543,7 @@ public class Mondo {
             return false;
         }
         
-        System.out.println("Generazione stato '" + stato.getNome() + "' con " + numRegioni + 
+        messaggi().println("Generazione stato '" + stato.getNome() + "' con " + numRegioni + 
                            " regioni e dimensione target di " + dimensioneStato + " territori");
         
         // Genera la regione capitale
@@ -1102,7 +1553,7 @@ public class Mondo {
         List<Territorio> territoriCapitale = floodFillRegionMigliorato(startRow, startCol, dimensioneCapitale, visited);
         
         if (territoriCapitale.isEmpty()) {
-            System.out.println("Impossibile creare la regione capitale per lo stato " + stato.getNome());
+            messaggi().println("Impossibile creare la regione capitale per lo stato " + stato.getNome());
             return false;
         }
         
@@ -1111,7 +1562,7 @@ public class Mondo {
         
         // Verifica che sia stato trovato un capoluogo terrestre
         if (territorioCapitale == null) {
-            System.out.println("Impossibile trovare un territorio terrestre per la capitale dello stato " + stato.getNome());
+            messaggi().println("Impossibile trovare un territorio terrestre per la capitale dello stato " + stato.getNome());
             return false;
         }
         
@@ -1164,14 +1615,14 @@ public class Mondo {
         stato.addRegione(regioneCapitale);
         stato.setCapitale(regioneCapitale);
         
-        System.out.println("Creata regione capitale '" + regioneCapitale.getNome() + 
+        messaggi().println("Creata regione capitale '" + regioneCapitale.getNome() + 
                            "' con " + territoriCapitale.size() + " territori e Capitale '" + 
                            nomeCapitale + "' posizionata");
         
         // Trova territori adiacenti per le altre regioni
-        List<Point> frontiera = new ArrayList<>();
+        List<Posizione> frontiera = new ArrayList<>();
         for (Territorio t : territoriCapitale) {
-            Point p = trovaCoordinateTerritorio(t);
+            Posizione p = trovaCoordinateTerritorio(t);
             if (p == null) continue;
             
             // Controlla i vicini in tutte le 4 direzioni
@@ -1183,7 +1634,7 @@ public class Mondo {
                 if (isValid(ni, nj) && !visited[ni][nj]) {
                     Territorio vicino = mappaTerritori[ni][nj];
                     if (vicino != null && vicino.getStatoPadrone() == null) {
-                        frontiera.add(new Point(ni, nj));
+                        frontiera.add(new Posizione(ni, nj));
                     }
                 }
             }
@@ -1203,7 +1654,7 @@ public class Mondo {
             
             // Sceglie un punto di frontiera per la nuova regione
             int index = random.nextInt(frontiera.size());
-            Point puntoRegione = frontiera.get(index);
+            Posizione puntoRegione = frontiera.get(index);
             frontiera.remove(index);
             
             // Evita di visitare territori già visitati
@@ -1260,16 +1711,16 @@ public class Mondo {
                     // Se non ne abbiamo trovato uno, ne generiamo uno nuovo
                     if (indiceNome == -1) {
                         nomeCapoluogo = "Capoluogo_" + nuovaRegione.getNome();
-                        System.out.println("DEBUG - Nessun nome disponibile, generato: " + nomeCapoluogo);
+                        messaggi().println("DEBUG - Nessun nome disponibile, generato: " + nomeCapoluogo);
                     } else {
                         nomeCapoluogo = nomiCapoluoghiDisponibili.get(indiceNome);
-                        System.out.println("DEBUG - Utilizzato nome all'indice " + indiceNome + ": " + nomeCapoluogo);
+                        messaggi().println("DEBUG - Utilizzato nome all'indice " + indiceNome + ": " + nomeCapoluogo);
                     }
                     
                     // Assicuriamoci che il nome non sia un numero
                     if (nomeCapoluogo.matches("\\d+")) {
                         nomeCapoluogo = "Città_" + nomeCapoluogo;
-                        System.out.println("DEBUG - Il nome era solo un numero, modificato in: " + nomeCapoluogo);
+                        messaggi().println("DEBUG - Il nome era solo un numero, modificato in: " + nomeCapoluogo);
                     }
                     
                     Capoluogo capoluogoOggetto = new Capoluogo(
@@ -1288,19 +1739,19 @@ public class Mondo {
                     // Il capoluogo ha più civili
                     capoluogoRegione.setNumCivili(20000 + random.nextInt(80000));
                     
-                    System.out.println("Creato capoluogo '" + nomeCapoluogo + "' per la regione " + 
+                    messaggi().println("Creato capoluogo '" + nomeCapoluogo + "' per la regione " + 
                                       nuovaRegione.getNome());
                 }
                 
                 stato.addRegione(nuovaRegione);
                 regioniCreate++;
                 
-                System.out.println("Creata regione '" + nuovaRegione.getNome() + 
+                messaggi().println("Creata regione '" + nuovaRegione.getNome() + 
                                    "' con " + territoriRegione.size() + " territori e Capoluogo posizionato");
                 
                 // Aggiorna la frontiera
                 for (Territorio t : territoriRegione) {
-                    Point p = trovaCoordinateTerritorio(t);
+                    Posizione p = trovaCoordinateTerritorio(t);
                     if (p == null) continue;
                     
                     // Controlla i vicini in tutte le 4 direzioni
@@ -1312,7 +1763,7 @@ public class Mondo {
                         if (isValid(ni, nj) && !visited[ni][nj]) {
                             Territorio vicino = mappaTerritori[ni][nj];
                             if (vicino != null && vicino.getStatoPadrone() == null) {
-                                frontiera.add(new Point(ni, nj));
+                                frontiera.add(new Posizione(ni, nj));
                             }
                         }
                     }
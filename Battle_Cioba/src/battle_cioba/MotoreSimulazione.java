@@ -0,0 +1,427 @@
+package battle_cioba;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Motore di simulazione a passo fisso.
+ * Un thread dedicato fa avanzare il Mondo di un giorno alla volta eseguendo
+ * in ordine le fasi registrate (economia, popolazione, militare, ...).
+ * Il tempo può essere accelerato, rallentato o messo in pausa; se i giorni
+ * restano indietro rispetto al tempo reale il recupero è limitato per
+ * evitare la spirale in cui ogni ciclo accumula ancora più ritardo.
+ * Senza interfaccia i giorni possono anche susseguirsi senza attese, fino a
+ * un giorno finale oltre il quale il tempo si blocca da solo.
+ * Se una fase fallisce il giorno si interrompe e il tempo si blocca: il
+ * riepilogo lo segnala con l'indicatore "fasi_fallite".
+ */
+public class MotoreSimulazione {
+
+    /**
+     * Durata reale di un giorno di gioco con moltiplicatore 1x (in nanosecondi).
+     */
+    public static final long DURATA_GIORNO_NS = 1_000_000_000L;
+
+    /**
+     * Numero massimo di giorni eseguiti in un solo ciclo per recuperare il ritardo.
+     * Il tempo eccedente viene scartato.
+     */
+    public static final int MAX_GIORNI_RECUPERO = 5;
+
+    /**
+     * Moltiplicatore minimo del tempo.
+     */
+    public static final double MOLTIPLICATORE_MIN = 0.25;
+
+    /**
+     * Moltiplicatore massimo del tempo.
+     */
+    public static final double MOLTIPLICATORE_MAX = 64.0;
+
+    /**
+     * Attesa massima del thread tra due controlli (in nanosecondi).
+     */
+    private static final long ATTESA_MASSIMA_NS = 50_000_000L;
+
+    /**
+     * Mondo simulato. Viene usato anche come lock per le modifiche.
+     */
+    private final Mondo mondo;
+
+    /**
+     * Fasi eseguite ogni giorno, in ordine di registrazione.
+     */
+    private final List<FaseSimulazione> fasi;
+
+    /**
+     * Osservatori che ricevono i riepiloghi dei giorni.
+     */
+    private final List<OsservatoreSimulazione> osservatori;
+
+    /**
+     * Thread di simulazione (null se il motore è fermo).
+     */
+    private volatile Thread thread;
+
+    /**
+     * Indica se il thread deve continuare a girare.
+     */
+    private volatile boolean attivo;
+
+    /**
+     * Indica se il tempo è bloccato.
+     */
+    private volatile boolean inPausa = true;
+
+    /**
+     * Moltiplicatore del tempo (1.0 = velocità normale).
+     */
+    private volatile double moltiplicatore = 1.0;
+
+    /**
+     * Indica se i giorni vanno eseguiti uno dopo l'altro, senza attese.
+     */
+    private volatile boolean senzaAttese;
+
+    /**
+     * Giorno raggiunto il quale il tempo si blocca (0 = nessun limite).
+     */
+    private volatile long giornoFinale;
+
+    /**
+     * Giorno corrente (numero di giorni già simulati).
+     */
+    private volatile long giorno;
+
+    /**
+     * Giorni non eseguiti perché eccedevano il limite di recupero.
+     */
+    private volatile long giorniScartati;
+
+    /**
+     * Ultimo riepilogo prodotto.
+     */
+    private volatile RiepilogoGiorno ultimoRiepilogo;
+
+    /**
+     * Descrizione dell'ultima fase fallita (null se nessuna è fallita dall'ultima ripresa).
+     */
+    private volatile String erroreFase;
+
+    /**
+     * Costruttore principale.
+     *
+     * @param mondo mondo da simulare
+     */
+    public MotoreSimulazione(Mondo mondo) {
+        this.mondo = mondo;
+        this.fasi = new CopyOnWriteArrayList<>();
+        this.osservatori = new CopyOnWriteArrayList<>();
+    }
+
+    /* =========================== GETTER / SETTER =========================== */
+
+    public Mondo getMondo() {
+        return mondo;
+    }
+
+    public long getGiorno() {
+        return giorno;
+    }
+
+    public long getGiorniScartati() {
+        return giorniScartati;
+    }
+
+    public boolean isInPausa() {
+        return inPausa;
+    }
+
+    public boolean isAttivo() {
+        return attivo;
+    }
+
+    public double getMoltiplicatore() {
+        return moltiplicatore;
+    }
+
+    /**
+     * Imposta il moltiplicatore del tempo, limitato tra MIN e MAX.
+     *
+     * @param moltiplicatore nuovo moltiplicatore
+     */
+    public void setMoltiplicatore(double moltiplicatore) {
+        this.moltiplicatore = Math.max(MOLTIPLICATORE_MIN, Math.min(MOLTIPLICATORE_MAX, moltiplicatore));
+        sveglia();
+    }
+
+    public boolean isSenzaAttese() {
+        return senzaAttese;
+    }
+
+    /**
+     * Esegue i giorni uno dopo l'altro alla massima velocità (il
+     * moltiplicatore viene ignorato) oppure torna al tempo scalato.
+     *
+     * @param senzaAttese true per non attendere tra un giorno e l'altro
+     */
+    public void setSenzaAttese(boolean senzaAttese) {
+        this.senzaAttese = senzaAttese;
+        sveglia();
+    }
+
+    public long getGiornoFinale() {
+        return giornoFinale;
+    }
+
+    /**
+     * Imposta il giorno raggiunto il quale il thread mette il tempo in pausa.
+     *
+     * @param giornoFinale ultimo giorno da eseguire (0 = nessun limite)
+     */
+    public void setGiornoFinale(long giornoFinale) {
+        this.giornoFinale = Math.max(0, giornoFinale);
+        sveglia();
+    }
+
+    public RiepilogoGiorno getUltimoRiepilogo() {
+        return ultimoRiepilogo;
+    }
+
+    public String getErroreFase() {
+        return erroreFase;
+    }
+
+    /**
+     * Restituisce le fasi registrate (in sola lettura).
+     */
+    public List<FaseSimulazione> getFasi() {
+        return Collections.unmodifiableList(fasi);
+    }
+
+    /* =========================== REGISTRAZIONE =========================== */
+
+    /**
+     * Registra una fase da eseguire ogni giorno, in coda alle altre.
+     *
+     * @param fase fase da registrare
+     */
+    public void registraFase(FaseSimulazione fase) {
+        if (fase != null && !fasi.contains(fase)) {
+            fasi.add(fase);
+        }
+    }
+
+    /**
+     * Rimuove una fase registrata.
+     *
+     * @param fase fase da rimuovere
+     * @return true se la fase è stata rimossa
+     */
+    public boolean rimuoviFase(FaseSimulazione fase) {
+        return fasi.remove(fase);
+    }
+
+    public void aggiungiOsservatore(OsservatoreSimulazione osservatore) {
+        if (osservatore != null) {
+            osservatori.add(osservatore);
+        }
+    }
+
+    public void rimuoviOsservatore(OsservatoreSimulazione osservatore) {
+        osservatori.remove(osservatore);
+    }
+
+    /* =========================== CONTROLLO DEL TEMPO =========================== */
+
+    /**
+     * Avvia il thread di simulazione (il tempo parte in pausa).
+     */
+    public synchronized void avvia() {
+        if (thread != null) {
+            return;
+        }
+        attivo = true;
+        thread = new Thread(this::cicloSimulazione, "Simulazione-Mondo");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Ferma il thread di simulazione e attende la sua terminazione.
+     */
+    public synchronized void ferma() {
+        Thread t = thread;
+        if (t == null) {
+            return;
+        }
+        attivo = false;
+        LockSupport.unpark(t);
+        try {
+            t.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * Blocca il tempo.
+     */
+    public void pausa() {
+        inPausa = true;
+    }
+
+    /**
+     * Fa ripartire il tempo (anche dopo una fase fallita, il cui errore viene dimenticato).
+     */
+    public void riprendi() {
+        erroreFase = null;
+        inPausa = false;
+        sveglia();
+    }
+
+    /**
+     * Raddoppia la velocità del tempo.
+     */
+    public void velocizza() {
+        setMoltiplicatore(moltiplicatore * 2);
+    }
+
+    /**
+     * Dimezza la velocità del tempo.
+     */
+    public void rallenta() {
+        setMoltiplicatore(moltiplicatore / 2);
+    }
+
+    private void sveglia() {
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /* =========================== ESECUZIONE =========================== */
+
+    /**
+     * Ciclo principale del thread di simulazione.
+     * Accumula il tempo reale (scalato dal moltiplicatore) ed esegue un giorno
+     * ogni DURATA_GIORNO_NS accumulati, al massimo MAX_GIORNI_RECUPERO per ciclo.
+     * Senza attese esegue un giorno per ciclo; al giorno finale si mette in pausa.
+     */
+    private void cicloSimulazione() {
+        long precedente = System.nanoTime();
+        double accumulatore = 0;
+
+        while (attivo) {
+            long ora = System.nanoTime();
+            long trascorso = ora - precedente;
+            precedente = ora;
+
+            if (finaleRaggiunto()) {
+                inPausa = true;
+            }
+            if (inPausa) {
+                accumulatore = 0;
+                LockSupport.parkNanos(this, ATTESA_MASSIMA_NS);
+                continue;
+            }
+
+            if (senzaAttese) {
+                accumulatore = 0;
+                eseguiGiorno();
+                continue;
+            }
+
+            accumulatore += trascorso * moltiplicatore;
+
+            int eseguiti = 0;
+            while (attivo && !inPausa && !finaleRaggiunto()
+                    && accumulatore >= DURATA_GIORNO_NS && eseguiti < MAX_GIORNI_RECUPERO) {
+                eseguiGiorno();
+                accumulatore -= DURATA_GIORNO_NS;
+                eseguiti++;
+            }
+
+            // Recupero limitato: il ritardo oltre il limite viene scartato
+            if (accumulatore >= DURATA_GIORNO_NS) {
+                long scartati = (long) (accumulatore / DURATA_GIORNO_NS);
+                giorniScartati += scartati;
+                accumulatore -= scartati * (double) DURATA_GIORNO_NS;
+            }
+
+            // Attende fino al prossimo giorno previsto
+            long attesa = (long) ((DURATA_GIORNO_NS - accumulatore) / moltiplicatore);
+            if (attesa > 0) {
+                LockSupport.parkNanos(this, Math.min(attesa, ATTESA_MASSIMA_NS));
+            }
+        }
+    }
+
+    private boolean finaleRaggiunto() {
+        long finale = giornoFinale;
+        return finale > 0 && giorno >= finale;
+    }
+
+    /**
+     * Esegue immediatamente un giorno di simulazione sul thread chiamante.
+     * Usato dal ciclo interno e dalle esecuzioni senza interfaccia.
+     *
+     * @return riepilogo del giorno eseguito
+     */
+    public RiepilogoGiorno eseguiGiorno() {
+        List<FaseSimulazione> fasiGiorno = new ArrayList<>(fasi);
+        List<String> nomi = new ArrayList<>(fasiGiorno.size());
+        long[] durate = new long[fasiGiorno.size()];
+        Map<String, Long> indicatori = new LinkedHashMap<>();
+        long giornoCorrente;
+
+        long fasiFallite = 0;
+        for (FaseSimulazione fase : fasiGiorno) {
+            nomi.add(fase.getNome());
+        }
+
+        synchronized (mondo) {
+            giornoCorrente = giorno + 1;
+            for (int i = 0; i < fasiGiorno.size(); i++) {
+                FaseSimulazione fase = fasiGiorno.get(i);
+                long inizio = System.nanoTime();
+                try {
+                    fase.esegui(mondo, giornoCorrente);
+                } catch (RuntimeException e) {
+                    // Le fasi successive lavorerebbero su un mondo a metà: il giorno
+                    // si chiude qui e il tempo si blocca finché qualcuno non riprende
+                    erroreFase = "fase '" + fase.getNome() + "' al giorno " + giornoCorrente + ": " + e;
+                    System.err.println("Errore nella " + erroreFase);
+                    e.printStackTrace();
+                    inPausa = true;
+                    fasiFallite++;
+                    durate[i] = System.nanoTime() - inizio;
+                    break;
+                }
+                durate[i] = System.nanoTime() - inizio;
+            }
+            for (FaseSimulazione fase : fasiGiorno) {
+                fase.riepiloga(indicatori);
+            }
+            indicatori.put("stati", (long) mondo.getStati().size());
+            indicatori.put("fasi_fallite", fasiFallite);
+            giorno = giornoCorrente;
+        }
+
+        RiepilogoGiorno riepilogo = new RiepilogoGiorno(giornoCorrente,
+                Collections.unmodifiableList(nomi), durate, moltiplicatore, giorniScartati, indicatori);
+        ultimoRiepilogo = riepilogo;
+
+        for (OsservatoreSimulazione osservatore : osservatori) {
+            osservatore.giornoCompletato(riepilogo);
+        }
+        return riepilogo;
+    }
+}
@@ -0,0 +1,30 @@
+package battle_cioba;
+
+/**
+ * Osservatore dei fatti che decidono il corso di una partita oltre al seme:
+ * i comandi dell'intelligenza artificiale e le carte imprevisto che colpiscono
+ * uno stato. Le notifiche arrivano sul thread di simulazione, durante la fase
+ * che le produce.
+ */
+public interface OsservatoreComandi {
+
+    /**
+     * Un comando dell'intelligenza artificiale è stato valutato.
+     *
+     * @param comando comando
+     * @param applicato true se ha avuto effetto
+     */
+    default void comandoEseguito(ComandoAI comando, boolean applicato) {
+        // Di default i comandi non interessano
+    }
+
+    /**
+     * Una carta imprevisto ha colpito uno stato.
+     *
+     * @param carta carta estratta
+     * @param stato stato colpito
+     */
+    default void cartaGiocata(CartaImprevisto carta, Stato stato) {
+        // Di default le carte non interessano
+    }
+}
@@ -0,0 +1,75 @@
+package battle_cioba;
+
+/**
+ * Riceve le notifiche delle modifiche ai territori e ai centri del Mondo.
+ * I sistemi di simulazione lo usano per aggiornare i propri dati in modo
+ * incrementale invece di ripercorrere Stato → Regione → Territorio ogni giorno.
+ * Le notifiche arrivano sul thread che modifica il mondo, con il lock del
+ * mondo acquisito.
+ */
+public interface OsservatoreMondo {
+
+    /**
+     * Un dato di un territorio è cambiato (civili, risorse, stato padrone, ...).
+     *
+     * @param territorio territorio modificato
+     */
+    default void territorioModificato(Territorio territorio) {
+    }
+
+    /**
+     * Il centro principale di un territorio è stato sostituito.
+     *
+     * @param territorio territorio interessato
+     * @param vecchio centro precedente (può essere null)
+     * @param nuovo nuovo centro (può essere null)
+     */
+    default void centroImpostato(Territorio territorio, Centro vecchio, Centro nuovo) {
+    }
+
+    /**
+     * Un dato di un centro è cambiato (popolazione, livelli, stato padrone, ...).
+     *
+     * @param centro centro modificato
+     */
+    default void centroModificato(Centro centro) {
+    }
+
+    /**
+     * Un territorio è passato da uno Stato a un altro (conquista o cessione).
+     * Arriva dopo che proprietà, regioni e aggregati sono stati aggiornati.
+     *
+     * @param territorio territorio trasferito
+     * @param vecchio stato precedente (può essere null)
+     * @param nuovo nuovo stato proprietario
+     */
+    default void territorioTrasferito(Territorio territorio, Stato vecchio, Stato nuovo) {
+    }
+
+    /**
+     * Un'intera regione è passata da uno Stato a un altro.
+     * Arriva dopo che proprietà, regioni e aggregati sono stati aggiornati.
+     *
+     * @param regione regione trasferita
+     * @param vecchio stato precedente (può essere null)
+     * @param nuovo nuovo stato proprietario
+     */
+    default void regioneTrasferita(Regione regione, Stato vecchio, Stato nuovo) {
+    }
+
+    /**
+     * Uno stato è entrato nel mondo (ha già il suo indice).
+     *
+     * @param stato stato aggiunto
+     */
+    default void statoAggiunto(Stato stato) {
+    }
+
+    /**
+     * Uno stato è uscito dal mondo; il suo indice non viene riusato.
+     *
+     * @param stato stato rimosso
+     */
+    default void statoRimosso(Stato stato) {
+    }
+}
@@ -0,0 +1,45 @@
+package battle_cioba;
+
+import java.util.List;
+
+/**
+ * Riceve gli eventi del sistema Politica.
+ * I metodi vengono invocati sul thread che ha modificato la stabilità
+ * (di solito quello di simulazione): chi aggiorna componenti Swing deve
+ * spostare il lavoro sull'Event Dispatch Thread.
+ */
+public interface OsservatorePolitica {
+
+    /**
+     * Chiamato quando la stabilità di una capitale attraversa la soglia
+     * di ribellione, in un senso o nell'altro.
+     *
+     * @param stato stato della capitale
+     * @param capitale capitale interessata
+     * @param aRischio true se la capitale è appena entrata a rischio di ribellione
+     */
+    void rischioRibellioneCambiato(Stato stato, Capitale capitale, boolean aRischio);
+
+    /**
+     * Chiamato quando una scelta politica in coda viene applicata o scartata.
+     *
+     * @param stato stato che ha preso la decisione
+     * @param scelta scelta politica
+     * @param effetto variazione della stabilità applicata
+     * @param applicata false se la scelta è stata scartata (tesoro insufficiente, stato sparito)
+     */
+    default void sceltaApplicata(Stato stato, SceltaPolitica scelta, int effetto, boolean applicata) {
+        // Di default l'esito delle scelte non interessa
+    }
+
+    /**
+     * Chiamato quando alcune regioni in rivolta si staccano e formano un nuovo stato.
+     *
+     * @param originale stato che perde le regioni
+     * @param nuovo stato nato dalla secessione
+     * @param regioni regioni passate al nuovo stato
+     */
+    default void secessione(Stato originale, Stato nuovo, List<Regione> regioni) {
+        // Di default le secessioni non interessano
+    }
+}
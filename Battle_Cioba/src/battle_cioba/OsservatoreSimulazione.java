@@ -0,0 +1,16 @@
+package battle_cioba;
+
+/**
+ * Riceve i riepiloghi dei giorni completati dal MotoreSimulazione.
+ * Il metodo viene invocato sul thread di simulazione: chi aggiorna
+ * componenti Swing deve spostare il lavoro sull'Event Dispatch Thread.
+ */
+public interface OsservatoreSimulazione {
+
+    /**
+     * Chiamato al termine di ogni giorno di simulazione.
+     *
+     * @param riepilogo riepilogo immutabile del giorno
+     */
+    void giornoCompletato(RiepilogoGiorno riepilogo);
+}
@@ -0,0 +1,404 @@
+package battle_cioba;
+
+import java.io.PrintWriter;
+
+/**
+ * Raccoglie il Mondo, il motore di simulazione e i sistemi di gioco
+ * registrati come fasi del giorno. È il punto unico in cui i sistemi
+ * vengono collegati tra loro, così che GUI ed esecuzioni senza interfaccia
+ * usino la stessa configurazione.
+ */
+public class Partita {
+
+    /**
+     * Mondo di gioco.
+     */
+    private final Mondo mondo;
+
+    /**
+     * Motore che fa avanzare i giorni.
+     */
+    private final MotoreSimulazione motore;
+
+    /**
+     * Seme da cui derivano i flussi casuali dei sistemi.
+     */
+    private final long seme;
+
+    /**
+     * Servizio di ricerca dei percorsi.
+     */
+    private final RicercaPercorsi percorsi;
+
+    /**
+     * Ricerca gerarchica per i viaggi lunghi.
+     */
+    private final RicercaGerarchica gerarchica;
+
+    /**
+     * Campi di flusso condivisi per gli obiettivi comuni.
+     */
+    private final CampiDiFlusso campi;
+
+    /**
+     * Archivio e movimento degli eserciti.
+     */
+    private final Eserciti eserciti;
+
+    /**
+     * Linee di rifornimento e logoramento delle unità isolate.
+     */
+    private final Rifornimenti rifornimenti;
+
+    /**
+     * Nebbia di guerra: celle viste da ogni stato.
+     */
+    private final Visibilita visibilita;
+
+    /**
+     * Sistema dei combattimenti.
+     */
+    private final RisolutoreCombattimenti combattimenti;
+
+    /**
+     * Crescita e perdite dei civili di ogni territorio.
+     */
+    private final ModelloPopolazione popolazione;
+
+    /**
+     * Sistema economico.
+     */
+    private final RegistroEconomico economia;
+
+    /**
+     * Rotte del commercio marittimo tra i porti.
+     */
+    private final RotteCommerciali commercio;
+
+    /**
+     * Mappa d'influenza dei centri.
+     */
+    private final MappaInfluenza influenza;
+
+    /**
+     * Relazioni diplomatiche tra gli stati.
+     */
+    private final Diplomazia diplomazia;
+
+    /**
+     * Controllori degli stati governati dall'intelligenza artificiale.
+     */
+    private final IntelligenzaArtificiale intelligenza;
+
+    /**
+     * Scelte politiche, consenso delle regioni e rischio di ribellione.
+     */
+    private final Politica politica;
+
+    /**
+     * Diffusione delle rivolte tra regioni confinanti e secessioni.
+     */
+    private final DiffusioneRivolte rivolte;
+
+    /**
+     * Carte imprevisto programmate sul calendario della partita.
+     */
+    private final GestoreEventi eventi;
+
+    /**
+     * Flusso delle modifiche del mondo per GUI, statistiche e altri lettori.
+     */
+    private final BusEventiMondo eventiMondo;
+
+    /**
+     * Crea una partita con un seme casuale.
+     *
+     * @param mondo mondo di gioco
+     */
+    public Partita(Mondo mondo) {
+        this(mondo, System.nanoTime());
+    }
+
+    /**
+     * Costruttore principale. Registra i sistemi come fasi del motore,
+     * nell'ordine in cui devono essere eseguiti ogni giorno.
+     *
+     * @param mondo mondo di gioco
+     * @param seme seme dei flussi casuali (stesso seme, stessi esiti)
+     */
+    public Partita(Mondo mondo, long seme) {
+        this.mondo = mondo;
+        this.seme = seme;
+        this.motore = new MotoreSimulazione(mondo);
+        this.eventiMondo = new BusEventiMondo();
+        mondo.aggiungiOsservatore(eventiMondo);
+
+        this.combattimenti = new RisolutoreCombattimenti(GeneratoreCasuale.deriva(seme, 1));
+        this.percorsi = new RicercaPercorsi();
+        mondo.aggiungiOsservatore(percorsi);
+        this.gerarchica = new RicercaGerarchica(percorsi);
+        mondo.aggiungiOsservatore(gerarchica);
+        this.campi = new CampiDiFlusso();
+        mondo.aggiungiOsservatore(campi);
+        this.eserciti = new Eserciti(combattimenti, percorsi, gerarchica, campi);
+        this.economia = new RegistroEconomico();
+        mondo.aggiungiOsservatore(economia);
+
+        this.influenza = new MappaInfluenza();
+        mondo.aggiungiOsservatore(influenza);
+        this.diplomazia = new Diplomazia();
+        this.visibilita = new Visibilita(eserciti);
+        mondo.aggiungiOsservatore(visibilita);
+
+        // Le decisioni dell'intelligenza artificiale precedono movimenti e battaglie
+        this.intelligenza = new IntelligenzaArtificiale(economia, eserciti, combattimenti, influenza, diplomazia,
+                visibilita);
+        mondo.aggiungiOsservatore(intelligenza);
+        motore.registraFase(intelligenza);
+        motore.registraFase(eserciti);
+        this.rifornimenti = new Rifornimenti(eserciti, diplomazia);
+        mondo.aggiungiOsservatore(rifornimenti);
+        motore.registraFase(rifornimenti);
+        motore.registraFase(combattimenti);
+        // La vista segue le unità rimaste dopo movimenti e battaglie
+        motore.registraFase(visibilita);
+
+        // La popolazione si aggiorna dopo le battaglie e prima del calcolo dei redditi
+        this.popolazione = new ModelloPopolazione();
+        mondo.aggiungiOsservatore(popolazione);
+        motore.registraFase(popolazione);
+        this.commercio = new RotteCommerciali(economia, diplomazia, eserciti);
+        mondo.aggiungiOsservatore(commercio);
+        motore.registraFase(commercio);
+        motore.registraFase(economia);
+
+        this.politica = new Politica(economia, GeneratoreCasuale.deriva(seme, 3));
+        mondo.aggiungiOsservatore(politica);
+        motore.registraFase(politica);
+        this.rivolte = new DiffusioneRivolte(diplomazia, politica);
+        mondo.aggiungiOsservatore(rivolte);
+        motore.registraFase(rivolte);
+
+        // Le carte imprevisto chiudono il giorno, dopo che l'economia ha accreditato i redditi
+        this.eventi = new GestoreEventi(economia, diplomazia, GeneratoreCasuale.deriva(seme, 2));
+        eventi.caricaCartePredefinite();
+        motore.registraFase(eventi);
+    }
+
+    /**
+     * Prepara i sistemi dopo la generazione (o la modifica manuale) del mondo.
+     * Percorre il mondo una sola volta; da qui in poi i sistemi si aggiornano
+     * in modo incrementale tramite le notifiche.
+     */
+    public void inizializzaSistemi() {
+        synchronized (mondo) {
+            mondo.indicizza();
+            eventiMondo.inizializza(mondo);
+            percorsi.inizializza(mondo);
+            gerarchica.inizializza(mondo);
+            campi.inizializza(mondo);
+            eserciti.inizializza(mondo);
+            popolazione.inizializza(mondo);
+            economia.inizializza(mondo);
+            influenza.inizializza(mondo);
+            diplomazia.inizializza(mondo);
+            commercio.inizializza(mondo);
+            rifornimenti.inizializza(mondo);
+            visibilita.inizializza(mondo);
+            intelligenza.inizializza(mondo);
+            politica.inizializza(mondo);
+            rivolte.inizializza(mondo);
+            eventi.inizializza(mondo);
+        }
+    }
+
+    /**
+     * Impronta dello stato della partita: proprietari, civili e centri di
+     * ogni cella, tesoro e stabilità degli stati, eserciti, relazioni
+     * diplomatiche e opinioni. Due partite con lo stesso seme e gli stessi
+     * comandi hanno la stessa impronta a ogni giorno; la prima impronta
+     * diversa indica il giorno in cui due esecuzioni hanno iniziato a divergere.
+     *
+     * @return impronta a 64 bit
+     */
+    public long calcolaImpronta() {
+        synchronized (mondo) {
+            long h = mescola(0, mondo.getRighe() * (long) mondo.getColonne());
+            int numCelle = mondo.getRighe() * mondo.getColonne();
+            for (int c = 0; c < numCelle; c++) {
+                Territorio t = mondo.getTerritorio(c);
+                if (t == null) {
+                    continue;
+                }
+                h = mescola(h, mondo.indiceStato(t.getStatoPadrone()));
+                h = mescola(h, t.getNumCivili());
+                Centro centro = t.getCentro();
+                if (centro != null) {
+                    h = mescola(h, centro.getTipo().ordinal());
+                    h = mescola(h, centro.getLivelloDifesa());
+                    if (centro instanceof BaseMilitare) {
+                        h = mescola(h, ((BaseMilitare) centro).getNumeroTruppe());
+                    }
+                }
+            }
+            int numStati = mondo.getCapacitaStati();
+            for (int s = 0; s < numStati; s++) {
+                Stato stato = mondo.getStatoPerIndice(s);
+                if (stato == null) {
+                    continue;
+                }
+                h = mescola(h, s);
+                h = mescola(h, economia.getTesoro(stato));
+                h = mescola(h, stato.getOpposizione());
+                Capitale capitale = stato.getCentroCapitale();
+                h = mescola(h, capitale != null ? capitale.getStabilitaPolitica() : -1);
+            }
+            h = diplomazia.impronta(h);
+            int limite = eserciti.getLimiteIndici();
+            for (int u = 0; u < limite; u++) {
+                if (eserciti.isAttiva(u)) {
+                    h = mescola(h, u);
+                    h = mescola(h, eserciti.getStato(u));
+                    h = mescola(h, eserciti.getCella(u));
+                    h = mescola(h, eserciti.getForza(u));
+                    h = mescola(h, eserciti.getMorale(u));
+                }
+            }
+            return h;
+        }
+    }
+
+    /**
+     * Scrive in chiaro gli stessi dati dell'impronta, una riga per cella,
+     * stato ed esercito e nello stesso ordine: confrontando riga per riga i
+     * file di due esecuzioni divergenti si trova cosa è diverso.
+     *
+     * @param uscita destinazione del testo
+     */
+    public void scriviDiagnostica(PrintWriter uscita) {
+        synchronized (mondo) {
+            uscita.println("giorno " + motore.getGiorno() + " impronta " + Long.toHexString(calcolaImpronta()));
+            int numCelle = mondo.getRighe() * mondo.getColonne();
+            for (int c = 0; c < numCelle; c++) {
+                Territorio t = mondo.getTerritorio(c);
+                if (t == null) {
+                    continue;
+                }
+                Centro centro = t.getCentro();
+                uscita.println("cella " + c + " stato " + mondo.indiceStato(t.getStatoPadrone())
+                        + " civili " + t.getNumCivili()
+                        + (centro != null ? " centro " + centro.getTipo() + " difesa " + centro.getLivelloDifesa() : "")
+                        + (centro instanceof BaseMilitare ? " truppe " + ((BaseMilitare) centro).getNumeroTruppe() : ""));
+            }
+            int numStati = mondo.getCapacitaStati();
+            for (int s = 0; s < numStati; s++) {
+                Stato stato = mondo.getStatoPerIndice(s);
+                if (stato == null) {
+                    continue;
+                }
+                Capitale capitale = stato.getCentroCapitale();
+                StringBuilder riga = new StringBuilder("stato " + s + " " + stato.getNome()
+                        + " tesoro " + economia.getTesoro(stato) + " opposizione " + stato.getOpposizione()
+                        + " stabilita " + (capitale != null ? capitale.getStabilitaPolitica() : -1) + " relazioni");
+                for (int altro = s + 1; altro < numStati; altro++) {
+                    if (mondo.getStatoPerIndice(altro) != null) {
+                        riga.append(' ').append(altro).append('=').append(diplomazia.getRelazione(s, altro))
+                                .append('/').append(diplomazia.getOpinione(s, altro));
+                    }
+                }
+                uscita.println(riga);
+            }
+            int limite = eserciti.getLimiteIndici();
+            for (int u = 0; u < limite; u++) {
+                if (eserciti.isAttiva(u)) {
+                    uscita.println("esercito " + u + " stato " + eserciti.getStato(u) + " cella " + eserciti.getCella(u)
+                            + " forza " + eserciti.getForza(u) + " morale " + eserciti.getMorale(u));
+                }
+            }
+        }
+    }
+
+    private static long mescola(long h, long valore) {
+        return GeneratoreCasuale.mescola(h * 31 + valore);
+    }
+
+    public Mondo getMondo() {
+        return mondo;
+    }
+
+    public MotoreSimulazione getMotore() {
+        return motore;
+    }
+
+    public long getSeme() {
+        return seme;
+    }
+
+    public RicercaPercorsi getPercorsi() {
+        return percorsi;
+    }
+
+    public RicercaGerarchica getGerarchica() {
+        return gerarchica;
+    }
+
+    public CampiDiFlusso getCampi() {
+        return campi;
+    }
+
+    public Eserciti getEserciti() {
+        return eserciti;
+    }
+
+    public Rifornimenti getRifornimenti() {
+        return rifornimenti;
+    }
+
+    public Visibilita getVisibilita() {
+        return visibilita;
+    }
+
+    public RisolutoreCombattimenti getCombattimenti() {
+        return combattimenti;
+    }
+
+    public ModelloPopolazione getPopolazione() {
+        return popolazione;
+    }
+
+    public RegistroEconomico getEconomia() {
+        return economia;
+    }
+
+    public RotteCommerciali getCommercio() {
+        return commercio;
+    }
+
+    public MappaInfluenza getInfluenza() {
+        return influenza;
+    }
+
+    public Diplomazia getDiplomazia() {
+        return diplomazia;
+    }
+
+    public IntelligenzaArtificiale getIntelligenza() {
+        return intelligenza;
+    }
+
+    public Politica getPolitica() {
+        return politica;
+    }
+
+    public DiffusioneRivolte getRivolte() {
+        return rivolte;
+    }
+
+    public GestoreEventi getEventi() {
+        return eventi;
+    }
+
+    public BusEventiMondo getEventiMondo() {
+        return eventiMondo;
+    }
+}
@@ -0,0 +1,62 @@
+package battle_cioba;
+
+/**
+ * Percorso calcolato dalla ricerca dei percorsi: sequenza di celle
+ * (indici piatti) dalla partenza all'arrivo, entrambe incluse.
+ * È immutabile, quindi la stessa istanza può essere condivisa dalla cache
+ * e da tutte le unità che seguono lo stesso tragitto.
+ */
+public class Percorso {
+
+    /**
+     * Celle del percorso, dalla partenza all'arrivo.
+     */
+    private final int[] celle;
+
+    /**
+     * Costo totale del percorso (partenza esclusa).
+     */
+    private final int costo;
+
+    /**
+     * Timbro della mappa al momento del calcolo.
+     */
+    private final long timbro;
+
+    Percorso(int[] celle, int costo, long timbro) {
+        this.celle = celle;
+        this.costo = costo;
+        this.timbro = timbro;
+    }
+
+    /* =========================== GETTER =========================== */
+
+    public int getLunghezza() {
+        return celle.length;
+    }
+
+    public int getCella(int i) {
+        return celle[i];
+    }
+
+    public int getPartenza() {
+        return celle[0];
+    }
+
+    public int getArrivo() {
+        return celle[celle.length - 1];
+    }
+
+    public int getCosto() {
+        return costo;
+    }
+
+    long getTimbro() {
+        return timbro;
+    }
+
+    @Override
+    public String toString() {
+        return "Percorso: " + celle.length + " celle | Costo: " + costo;
+    }
+}
@@ -0,0 +1,70 @@
+package battle_cioba;
+
+/**
+ * Piano di viaggio prodotto dalla ricerca gerarchica: una sequenza di tappe
+ * (celle di ingresso tra cluster) dalla partenza all'arrivo. I tratti tra
+ * due tappe vengono trasformati in celle solo quando servono, uno alla volta,
+ * con la ricerca sulle celle (e la sua cache).
+ */
+public class PercorsoGerarchico {
+
+    /**
+     * Tappe del piano, partenza e arrivo inclusi.
+     */
+    private final int[] tappe;
+
+    /**
+     * Funzione di costo usata per raffinare i tratti.
+     */
+    private final CostoMovimento costo;
+
+    /**
+     * Stato dell'unità che segue il piano.
+     */
+    private final int statoUnita;
+
+    /**
+     * Ricerca sulle celle usata per raffinare i tratti.
+     */
+    private final RicercaPercorsi ricerca;
+
+    PercorsoGerarchico(int[] tappe, CostoMovimento costo, int statoUnita, RicercaPercorsi ricerca) {
+        this.tappe = tappe;
+        this.costo = costo;
+        this.statoUnita = statoUnita;
+        this.ricerca = ricerca;
+    }
+
+    /* =========================== GETTER =========================== */
+
+    public int getNumTratti() {
+        return tappe.length - 1;
+    }
+
+    public int getTappa(int i) {
+        return tappe[i];
+    }
+
+    public int getPartenza() {
+        return tappe[0];
+    }
+
+    public int getArrivo() {
+        return tappe[tappe.length - 1];
+    }
+
+    /**
+     * Calcola le celle di un tratto del piano.
+     *
+     * @param tratto indice del tratto, tra 0 e getNumTratti() - 1
+     * @return percorso sulle celle, oppure null se il tratto non è più percorribile
+     */
+    public Percorso raffina(int tratto) {
+        return ricerca.trovaPercorso(tappe[tratto], tappe[tratto + 1], costo, statoUnita);
+    }
+
+    @Override
+    public String toString() {
+        return "Percorso gerarchico: " + getNumTratti() + " tratti";
+    }
+}
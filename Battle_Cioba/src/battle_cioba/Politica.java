@@ -0,0 +1,402 @@
+package battle_cioba;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Sistema delle scelte politiche.
+ * Le scelte dei governi (giocatore, GUI, carte) vengono messe in coda e
+ * valutate tutte insieme una volta al giorno: ogni scelta passa da
+ * Capitale.prendiDecisioneNazionale con un effetto tirato dal generatore
+ * della partita. Poi, in un solo passaggio su stati e regioni, la stabilità
+ * della capitale trascina il consenso delle regioni, il consenso decide la
+ * crescita dei rivoltosi e i rivoltosi risalgono la gerarchia di
+ * aggregazione fino all'opposizione dello Stato.
+ * <p>
+ * Il rischio di ribellione non viene controllato a ogni giorno: il sistema
+ * osserva le modifiche dei centri e avvisa i propri osservatori solo
+ * quando la stabilità di una capitale attraversa la soglia.
+ */
+public class Politica implements FaseSimulazione, OsservatoreMondo {
+
+    /**
+     * Frazione della distanza dal consenso obiettivo recuperata ogni giorno (1/n).
+     */
+    public static final int VELOCITA_CONSENSI = 8;
+
+    /**
+     * Consenso sotto il quale i rivoltosi di una regione crescono.
+     */
+    public static final int SOGLIA_CONSENSI = 40;
+
+    /**
+     * Consenso in meno delle regioni lontane dalla capitale.
+     */
+    public static final int PENALITA_PERIFERIA = 10;
+
+    /**
+     * Ogni quanti giorni l'opposizione pesa sulla stabilità della capitale.
+     */
+    public static final int INTERVALLO_PRESSIONE = 10;
+
+    /**
+     * Stabilità verso cui un governo senza opposizione torna lentamente.
+     */
+    public static final int STABILITA_NATURALE = 50;
+
+    /**
+     * Sistema economico (costo delle scelte).
+     */
+    private final RegistroEconomico economia;
+
+    /**
+     * Flusso casuale degli effetti delle scelte.
+     */
+    private final GeneratoreCasuale casuale;
+
+    /**
+     * Osservatori degli eventi politici.
+     */
+    private final List<OsservatorePolitica> osservatori = new CopyOnWriteArrayList<>();
+
+    /**
+     * Coda delle scelte in attesa: indice dello stato e ordinale della scelta.
+     */
+    private int[] codaStati = new int[16], codaScelte = new int[16];
+
+    /**
+     * Scelte in coda.
+     */
+    private int numInCoda;
+
+    /**
+     * Copia di lavoro della coda per il passaggio del giorno.
+     */
+    private int[] lavoroStati = new int[16], lavoroScelte = new int[16];
+
+    /**
+     * Consenso da aggiungere alle regioni di ogni stato nel giorno.
+     */
+    private int[] deltaConsensi = new int[0];
+
+    /**
+     * Variazione percentuale dei rivoltosi di ogni stato nel giorno.
+     */
+    private int[] variazioneRivoltosi = new int[0];
+
+    /**
+     * Ultimo valore noto di aRischioDiRibellione per ogni stato.
+     */
+    private boolean[] aRischio = new boolean[0];
+
+    /**
+     * Stati attualmente a rischio di ribellione.
+     */
+    private int numARischio;
+
+    /**
+     * Mondo di riferimento.
+     */
+    private Mondo mondo;
+
+    /**
+     * Statistiche: scelte applicate e scartate nel giorno e in totale, soglie attraversate.
+     */
+    private long applicateGiorno, scartateGiorno, applicateTotali, scartateTotali, ingressiARischio;
+
+    /**
+     * Costruttore principale.
+     *
+     * @param economia sistema economico
+     * @param seme seme del flusso casuale
+     */
+    public Politica(RegistroEconomico economia, long seme) {
+        this.economia = economia;
+        this.casuale = new GeneratoreCasuale(seme);
+    }
+
+    /**
+     * Legge la situazione iniziale: imposta il consenso delle regioni mai
+     * valutate e memorizza quali capitali sono già a rischio, senza
+     * generare eventi.
+     *
+     * @param mondo mondo di gioco
+     */
+    public synchronized void inizializza(Mondo mondo) {
+        this.mondo = mondo;
+        aRischio = new boolean[mondo.getCapacitaStati()];
+        deltaConsensi = new int[aRischio.length];
+        variazioneRivoltosi = new int[aRischio.length];
+        numARischio = 0;
+        for (Stato stato : mondo.getStati()) {
+            Capitale capitale = stato.getCentroCapitale();
+            if (capitale != null && capitale.aRischioDiRibellione()) {
+                aRischio[stato.getIndice()] = true;
+                numARischio++;
+            }
+            int stabilita = capitale != null ? capitale.getStabilitaPolitica() : 0;
+            for (Regione regione : stato.getRegioni()) {
+                if (regione.getConsensi() == 0 && regione.getRivoltosi() == 0) {
+                    regione.setConsensi(consensoObiettivo(stato, regione, stabilita));
+                }
+            }
+        }
+    }
+
+    public void aggiungiOsservatore(OsservatorePolitica osservatore) {
+        osservatori.add(osservatore);
+    }
+
+    public void rimuoviOsservatore(OsservatorePolitica osservatore) {
+        osservatori.remove(osservatore);
+    }
+
+    /**
+     * Mette in coda una scelta politica, valutata al prossimo giorno.
+     * Può essere chiamato da qualunque thread.
+     *
+     * @param stato stato che decide
+     * @param scelta scelta politica
+     */
+    public synchronized void proponi(Stato stato, SceltaPolitica scelta) {
+        if (stato.getIndice() < 0) {
+            return;
+        }
+        if (numInCoda == codaStati.length) {
+            codaStati = Arrays.copyOf(codaStati, numInCoda * 2);
+            codaScelte = Arrays.copyOf(codaScelte, numInCoda * 2);
+        }
+        codaStati[numInCoda] = stato.getIndice();
+        codaScelte[numInCoda] = scelta.ordinal();
+        numInCoda++;
+    }
+
+    public synchronized int getNumInCoda() {
+        return numInCoda;
+    }
+
+    /* =========================== FASE DEL GIORNO =========================== */
+
+    @Override
+    public String getNome() {
+        return "Politica";
+    }
+
+    @Override
+    public void esegui(Mondo mondo, long giorno) {
+        this.mondo = mondo;
+        int n;
+        synchronized (this) {
+            // La coda viene scambiata: le proposte arrivate durante il passaggio vanno al giorno dopo
+            int[] s = lavoroStati, c = lavoroScelte;
+            lavoroStati = codaStati;
+            lavoroScelte = codaScelte;
+            codaStati = s.length >= lavoroStati.length ? s : new int[lavoroStati.length];
+            codaScelte = c.length >= lavoroScelte.length ? c : new int[lavoroScelte.length];
+            n = numInCoda;
+            numInCoda = 0;
+            assicuraCapacita(mondo.getCapacitaStati());
+        }
+        applicateGiorno = 0;
+        scartateGiorno = 0;
+
+        for (int i = 0; i < n; i++) {
+            applicaScelta(lavoroStati[i], SceltaPolitica.daOrdinale(lavoroScelte[i]));
+        }
+
+        boolean pressione = giorno % INTERVALLO_PRESSIONE == 0;
+        for (Stato stato : mondo.getStati()) {
+            propaga(stato, pressione);
+        }
+        applicateTotali += applicateGiorno;
+        scartateTotali += scartateGiorno;
+    }
+
+    /**
+     * Paga la scelta, ne tira l'effetto e accumula le conseguenze per le regioni.
+     */
+    private void applicaScelta(int s, SceltaPolitica scelta) {
+        Stato stato = mondo.getStatoPerIndice(s);
+        Capitale capitale = stato != null ? stato.getCentroCapitale() : null;
+        boolean pagata = capitale != null && (scelta.getCosto() <= 0 || economia.spendi(stato, scelta.getCosto()));
+        if (!pagata) {
+            scartateGiorno++;
+            if (stato != null) {
+                for (OsservatorePolitica o : osservatori) {
+                    o.sceltaApplicata(stato, scelta, 0, false);
+                }
+            }
+            return;
+        }
+        if (scelta.getCosto() < 0) {
+            economia.accredita(stato, -scelta.getCosto());
+        }
+        int effetto = scelta.getEffettoStabilita();
+        if (scelta.getIncertezza() > 0) {
+            effetto += casuale.prossimoInt(2 * scelta.getIncertezza() + 1) - scelta.getIncertezza();
+        }
+        // La soglia di ribellione viene controllata dalla notifica di modifica della capitale
+        int applicato = capitale.prendiDecisioneNazionale(scelta.getNome(), effetto);
+        deltaConsensi[s] += scelta.getEffettoConsensi();
+        variazioneRivoltosi[s] += scelta.getVariazioneRivoltosi();
+        applicateGiorno++;
+        for (OsservatorePolitica o : osservatori) {
+            o.sceltaApplicata(stato, scelta, applicato, true);
+        }
+    }
+
+    /**
+     * Stabilità → consenso delle regioni → rivoltosi → opposizione (tramite l'aggregato).
+     */
+    private void propaga(Stato stato, boolean pressione) {
+        int s = stato.getIndice();
+        Capitale capitale = stato.getCentroCapitale();
+        int stabilita = capitale != null ? capitale.getStabilitaPolitica() : 0;
+        int delta = deltaConsensi[s];
+        int variazione = variazioneRivoltosi[s];
+        deltaConsensi[s] = 0;
+        variazioneRivoltosi[s] = 0;
+
+        for (Regione regione : stato.getRegioni()) {
+            int consensi = regione.getConsensi();
+            int distanza = consensoObiettivo(stato, regione, stabilita) - consensi;
+            int passo = distanza / VELOCITA_CONSENSI;
+            if (passo == 0) {
+                passo = Integer.signum(distanza);
+            }
+            consensi = Math.max(0, Math.min(100, consensi + passo + delta));
+            if (consensi != regione.getConsensi()) {
+                regione.setConsensi(consensi);
+            }
+
+            long popolazione = regione.getAggregato().getPopolazione();
+            long rivoltosi = regione.getRivoltosi();
+            if (consensi < SOGLIA_CONSENSI) {
+                // Con consenso nullo l'1% della popolazione si unisce ai rivoltosi ogni giorno
+                rivoltosi += popolazione * (SOGLIA_CONSENSI - consensi) / (SOGLIA_CONSENSI * 100L);
+            } else if (rivoltosi > 0) {
+                rivoltosi -= Math.max(1, rivoltosi * (consensi - SOGLIA_CONSENSI) / 300);
+            }
+            rivoltosi += rivoltosi * variazione / 100;
+            rivoltosi = Math.max(0, Math.min(popolazione, rivoltosi));
+            if (rivoltosi != regione.getRivoltosi()) {
+                regione.setRivoltosi((int) Math.min(Integer.MAX_VALUE, rivoltosi));
+            }
+        }
+
+        if (pressione && capitale != null) {
+            int opposizione = stato.getOpposizione();
+            if (opposizione >= 10) {
+                capitale.setStabilitaPolitica(stabilita - opposizione / 10);
+            } else if (opposizione < 5 && stabilita != STABILITA_NATURALE) {
+                capitale.setStabilitaPolitica(stabilita + Integer.signum(STABILITA_NATURALE - stabilita));
+            }
+        }
+    }
+
+    /**
+     * Consenso verso cui tende una regione: la stabilità della capitale,
+     * ridotta nelle regioni diverse da quella della capitale.
+     */
+    private static int consensoObiettivo(Stato stato, Regione regione, int stabilita) {
+        int obiettivo = regione == stato.getCapitale() ? stabilita : stabilita - PENALITA_PERIFERIA;
+        return Math.max(0, Math.min(100, obiettivo));
+    }
+
+    @Override
+    public synchronized void riepiloga(Map<String, Long> indicatori) {
+        indicatori.put("scelte_politiche", applicateGiorno);
+        indicatori.put("stati_a_rischio_ribellione", (long) numARischio);
+        if (mondo != null) {
+            indicatori.put("rivoltosi", mondo.getAggregato().getRivoltosi());
+        }
+    }
+
+    /* =========================== SOGLIA DI RIBELLIONE =========================== */
+
+    @Override
+    public void centroModificato(Centro centro) {
+        if (centro instanceof Capitale) {
+            controllaSoglia((Capitale) centro);
+        }
+    }
+
+    @Override
+    public void centroImpostato(Territorio territorio, Centro vecchio, Centro nuovo) {
+        if (nuovo instanceof Capitale) {
+            controllaSoglia((Capitale) nuovo);
+        }
+    }
+
+    /**
+     * Confronta il rischio di ribellione con l'ultimo valore noto e avvisa
+     * gli osservatori solo se è cambiato.
+     */
+    private void controllaSoglia(Capitale capitale) {
+        Stato stato = capitale.getStato();
+        if (stato == null || stato.getIndice() < 0) {
+            return;
+        }
+        int s = stato.getIndice();
+        boolean ora = capitale.aRischioDiRibellione();
+        synchronized (this) {
+            assicuraCapacita(s + 1);
+            if (aRischio[s] == ora) {
+                return;
+            }
+            aRischio[s] = ora;
+            if (ora) {
+                numARischio++;
+                ingressiARischio++;
+            } else {
+                numARischio--;
+            }
+        }
+        for (OsservatorePolitica o : osservatori) {
+            o.rischioRibellioneCambiato(stato, capitale, ora);
+        }
+    }
+
+    /**
+     * Avvisa gli osservatori di una secessione (usato da DiffusioneRivolte).
+     */
+    void notificaSecessione(Stato originale, Stato nuovo, List<Regione> regioni) {
+        for (OsservatorePolitica o : osservatori) {
+            o.secessione(originale, nuovo, regioni);
+        }
+    }
+
+    private void assicuraCapacita(int capacita) {
+        if (capacita > aRischio.length) {
+            int c = Math.max(capacita, aRischio.length * 2);
+            aRischio = Arrays.copyOf(aRischio, c);
+            deltaConsensi = Arrays.copyOf(deltaConsensi, c);
+            variazioneRivoltosi = Arrays.copyOf(variazioneRivoltosi, c);
+        }
+    }
+
+    /* =========================== STATISTICHE =========================== */
+
+    public synchronized boolean isARischio(Stato stato) {
+        int s = stato.getIndice();
+        return s >= 0 && s < aRischio.length && aRischio[s];
+    }
+
+    public synchronized int getNumARischio() {
+        return numARischio;
+    }
+
+    public synchronized long getIngressiARischio() {
+        return ingressiARischio;
+    }
+
+    public long getApplicateTotali() {
+        return applicateTotali;
+    }
+
+    public long getScartateTotali() {
+        return scartateTotali;
+    }
+}
@@ -0,0 +1,38 @@
+package battle_cioba;
+
+/**
+ * Coordinate di una cella della mappa (x = riga, y = colonna).
+ * Prende il posto di java.awt.Point nel modello: il mondo si deve poter
+ * generare e simulare senza caricare le classi grafiche.
+ */
+public final class Posizione {
+
+    /**
+     * Riga e colonna della cella.
+     */
+    public int x, y;
+
+    public Posizione(int x, int y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Posizione)) {
+            return false;
+        }
+        Posizione p = (Posizione) o;
+        return x == p.x && y == p.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * x + y;
+    }
+
+    @Override
+    public String toString() {
+        return x + "," + y;
+    }
+}
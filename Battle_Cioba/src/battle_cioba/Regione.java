@@ -1,13 +1,14 @@
 package battle_cioba;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
 /**
  * Classe che rappresenta una Regione, contenente uno o più Territori.
  */
-public class Regione {
+public final class Regione {
 
     /**
      * Contatore statico per ID univoci di Regione.
@@ -31,19 +32,37 @@ public class Regione {
 
     /**
      * Lista dei territori appartenenti a questa regione.
+     * Ogni territorio ricorda la propria posizione, così la rimozione
+     * avviene in O(1) scambiandolo con l'ultimo elemento.
      */
     private final List<Territorio> territori;
 
     /**
-     * Indice di "consensi" associato alla regione (metrica arbitraria).
+     * Posizione della regione nella lista delle regioni del suo Stato (-1 se nessuno).
+     */
+    private int posizioneInStato = -1;
+
+    /**
+     * Consenso verso il governo nella regione (da 0 a 100).
      */
     private int consensi;
 
     /**
-     * Indice di "rivoltosi" associato alla regione (metrica arbitraria).
+     * Numero di abitanti della regione in rivolta. Le variazioni vengono
+     * propagate all'aggregato, da cui deriva l'opposizione dello Stato.
      */
     private int rivoltosi;
 
+    /**
+     * Stato a cui appartiene la regione (impostato dallo Stato).
+     */
+    private Stato stato;
+
+    /**
+     * Somme in cache dei territori della regione.
+     */
+    private final AggregatoTerritoriale aggregato;
+
     /**
      * Costruttore base.
      *
@@ -54,9 +73,11 @@ public class Regione {
         this.id = ++globalIdCounter;
         this.nome = nome;
         this.capoluogo = capoluogo;
-        this.territori = new LinkedList<>();
+        this.territori = new ArrayList<>();
+        this.aggregato = new AggregatoTerritoriale();
         if (capoluogo != null) {
-            this.territori.add(capoluogo);
+            inserisci(capoluogo);
+            capoluogo.notificaModifica();
         }
     }
 
@@ -93,6 +114,29 @@ public class Regione {
         }
     }
 
+    public Stato getStato() {
+        return stato;
+    }
+
+    void setStato(Stato stato) {
+        this.stato = stato;
+    }
+
+    int getPosizioneInStato() {
+        return posizioneInStato;
+    }
+
+    void setPosizioneInStato(int posizioneInStato) {
+        this.posizioneInStato = posizioneInStato;
+    }
+
+    /**
+     * Restituisce le somme in cache dei territori della regione (lettura O(1)).
+     */
+    public AggregatoTerritoriale getAggregato() {
+        return aggregato;
+    }
+
     public int getConsensi() {
         return consensi;
     }
@@ -106,32 +150,48 @@ public class Regione {
     }
 
     public void setRivoltosi(int rivoltosi) {
-        this.rivoltosi = rivoltosi;
+        int nuovi = Math.max(0, rivoltosi);
+        aggregato.applicaDeltaRivoltosi(nuovi - this.rivoltosi);
+        this.rivoltosi = nuovi;
     }
 
     /**
      * Ritorna la lista di territori della regione (in sola lettura).
      */
     public List<Territorio> getTerritori() {
-        return territori;
+        return Collections.unmodifiableList(territori);
     }
 
     /* =========================== METODI DI GESTIONE =========================== */
 
     /**
-     * Aggiunge un territorio alla regione.
+     * Aggiunge un territorio alla regione. Se il territorio apparteneva
+     * a un'altra regione, viene prima rimosso da quella.
      *
      * @param territorio territorio da aggiungere
      */
     public void addTerritorio(Territorio territorio) {
-        if (territorio != null && !territori.contains(territorio)) {
-            territori.add(territorio);
+        if (territorio != null && territorio.getRegioneObj() != this) {
+            if (territorio.getRegioneObj() != null) {
+                territorio.getRegioneObj().removeTerritorio(territorio);
+            }
+            inserisci(territorio);
             
             // Imposta la regione di appartenenza
             territorio.setRegione(this.getNome());
+            territorio.notificaModifica();
         }
     }
 
+    /**
+     * Accoda il territorio alla lista e ne registra la posizione.
+     */
+    private void inserisci(Territorio territorio) {
+        territorio.setRegioneObj(this);
+        territorio.setPosizioneInRegione(territori.size());
+        territori.add(territorio);
+    }
+
     /**
      * Rimuove un territorio dalla regione.
      *
@@ -139,12 +199,22 @@ public class Regione {
      * @return true se il territorio è stato rimosso, false altrimenti
      */
     public boolean removeTerritorio(Territorio territorio) {
-        if (territorio == null) return false;
+        if (territorio == null || territorio.getRegioneObj() != this) return false;
         // Se rimuovo il capoluogo, setto capoluogo a null
         if (Objects.equals(capoluogo, territorio)) {
             capoluogo = null;
         }
-        return territori.remove(territorio);
+        // Rimozione O(1): l'ultimo territorio prende il posto di quello rimosso
+        int posizione = territorio.getPosizioneInRegione();
+        Territorio ultimo = territori.remove(territori.size() - 1);
+        if (ultimo != territorio) {
+            territori.set(posizione, ultimo);
+            ultimo.setPosizioneInRegione(posizione);
+        }
+        territorio.setPosizioneInRegione(-1);
+        territorio.setRegioneObj(null);
+        territorio.notificaModifica();
+        return true;
     }
 
     /**
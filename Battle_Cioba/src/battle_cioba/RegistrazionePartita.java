@@ -0,0 +1,366 @@
+package battle_cioba;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registrazione di una partita su file: i semi e la sequenza di quello che
+ * il seme non decide (ordini dell'intelligenza artificiale, che dipendono
+ * dal tempo concesso ai controllori, e scelte politiche dei giocatori),
+ * più le carte giocate e un'impronta del mondo alla fine di ogni giorno,
+ * per accorgersi subito di una riproduzione che diverge.
+ * <p>
+ * Formato (dopo l'intestazione tutti gli interi sono varint, quelli con
+ * segno codificati a zig-zag):
+ * <pre>
+ * intestazione: "BCRP" (int), versione (byte), seme del mondo (long),
+ *               seme della partita (long), stati generati (int), mappa (UTF)
+ * giorno:       giorno, numero di record, record..., impronta (long)
+ * record:       tipo (byte) seguito dai campi
+ *   COMANDO_AI  tipo del comando, stato, origine, obiettivo, quantità
+ *   SCELTA      stato, scelta politica
+ *   CARTA       nome della carta (UTF), stato colpito
+ * </pre>
+ * Il file si scrive solo in coda, un giorno alla volta, e viene svuotato su
+ * disco alla fine di ogni giorno: se la partita si interrompe resta valido
+ * fino all'ultimo giorno completo.
+ */
+public class RegistrazionePartita implements OsservatoreSimulazione, OsservatorePolitica,
+        OsservatoreComandi, Closeable {
+
+    /**
+     * Numero magico all'inizio del file ("BCRP").
+     */
+    public static final int MAGICO = 0x42435250;
+
+    /**
+     * Versione del formato.
+     */
+    public static final byte VERSIONE = 1;
+
+    /**
+     * Tipi di record.
+     */
+    static final byte COMANDO_AI = 1, SCELTA = 2, CARTA = 3;
+
+    /**
+     * Dati dell'intestazione: bastano a rigenerare il mondo e la partita.
+     */
+    public static final class Intestazione {
+
+        public final long semeMondo;
+        public final long semePartita;
+        public final int numStati;
+        public final String mappa;
+
+        public Intestazione(long semeMondo, long semePartita, int numStati, String mappa) {
+            this.semeMondo = semeMondo;
+            this.semePartita = semePartita;
+            this.numStati = numStati;
+            this.mappa = mappa;
+        }
+    }
+
+    /**
+     * Un giorno letto dal file.
+     */
+    public static final class Giorno {
+
+        public long giorno;
+        public long impronta;
+        public final List<ComandoAI> comandi = new ArrayList<>();
+
+        /**
+         * Scelte politiche: indice dello stato e scelta, nell'ordine in cui sono state applicate.
+         */
+        public final List<int[]> scelte = new ArrayList<>();
+
+        /**
+         * Carte giocate, come "nome@stato".
+         */
+        public final List<String> carte = new ArrayList<>();
+    }
+
+    /**
+     * Partita registrata.
+     */
+    private final Partita partita;
+
+    /**
+     * File di uscita.
+     */
+    private final DataOutputStream uscita;
+
+    /**
+     * Record del giorno in corso, scritti nel file alla fine del giorno.
+     */
+    private final ByteArrayOutputStream bufferGiorno = new ByteArrayOutputStream(256);
+    private final DataOutputStream giorno = new DataOutputStream(bufferGiorno);
+    private int recordGiorno;
+
+    /**
+     * Primo errore di scrittura (da lì in poi la registrazione si ferma).
+     */
+    private volatile IOException errore;
+
+    /**
+     * Statistiche.
+     */
+    private long giorniScritti, byteScritti;
+
+    /**
+     * Crea il file, scrive l'intestazione e registra la partita presso
+     * motore, intelligenza artificiale, politica e carte imprevisto.
+     *
+     * @param percorso file da creare (sovrascritto se esiste)
+     * @param partita partita da registrare, appena inizializzata
+     * @param intestazione semi e parametri con cui è stato generato il mondo
+     * @return registrazione in corso, da chiudere a fine partita
+     * @throws IOException se il file non si può scrivere
+     */
+    public static RegistrazionePartita avvia(String percorso, Partita partita, Intestazione intestazione)
+            throws IOException {
+        RegistrazionePartita registrazione = new RegistrazionePartita(percorso, partita, intestazione);
+        // Solo a oggetto completo: da qui le notifiche possono arrivare dal thread di simulazione
+        partita.getMotore().aggiungiOsservatore(registrazione);
+        partita.getIntelligenza().aggiungiOsservatore(registrazione);
+        partita.getPolitica().aggiungiOsservatore(registrazione);
+        partita.getEventi().aggiungiOsservatore(registrazione);
+        return registrazione;
+    }
+
+    /**
+     * Crea il file e scrive l'intestazione.
+     */
+    private RegistrazionePartita(String percorso, Partita partita, Intestazione intestazione) throws IOException {
+        this.partita = partita;
+        this.uscita = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(percorso)));
+        uscita.writeInt(MAGICO);
+        uscita.writeByte(VERSIONE);
+        uscita.writeLong(intestazione.semeMondo);
+        uscita.writeLong(intestazione.semePartita);
+        uscita.writeInt(intestazione.numStati);
+        uscita.writeUTF(intestazione.mappa);
+        uscita.flush();
+        byteScritti = uscita.size();
+    }
+
+    /* =========================== OSSERVATORI =========================== */
+
+    @Override
+    public void comandoEseguito(ComandoAI comando, boolean applicato) {
+        try {
+            giorno.writeByte(COMANDO_AI);
+            scriviComando(giorno, comando);
+            recordGiorno++;
+        } catch (IOException e) {
+            errore = e;
+        }
+    }
+
+    @Override
+    public void sceltaApplicata(Stato stato, SceltaPolitica scelta, int effetto, boolean applicata) {
+        // Anche le scelte non pagate vanno riproposte: rifiutarle consuma il giorno allo stesso modo
+        try {
+            giorno.writeByte(SCELTA);
+            scriviVarint(giorno, stato.getIndice());
+            scriviVarint(giorno, scelta.ordinal());
+            recordGiorno++;
+        } catch (IOException e) {
+            errore = e;
+        }
+    }
+
+    @Override
+    public void cartaGiocata(CartaImprevisto carta, Stato stato) {
+        try {
+            giorno.writeByte(CARTA);
+            giorno.writeUTF(carta.getNome());
+            scriviVarint(giorno, stato.getIndice());
+            recordGiorno++;
+        } catch (IOException e) {
+            errore = e;
+        }
+    }
+
+    @Override
+    public void rischioRibellioneCambiato(Stato stato, Capitale capitale, boolean aRischio) {
+        // Conseguenza del seme e dei comandi: non serve registrarla
+    }
+
+    @Override
+    public void giornoCompletato(RiepilogoGiorno riepilogo) {
+        if (errore != null) {
+            return;
+        }
+        try {
+            int prima = uscita.size();
+            scriviVarint(uscita, riepilogo.getGiorno());
+            scriviVarint(uscita, recordGiorno);
+            bufferGiorno.writeTo(uscita);
+            uscita.writeLong(partita.calcolaImpronta());
+            uscita.flush();
+            byteScritti += uscita.size() - prima;
+            giorniScritti++;
+        } catch (IOException e) {
+            errore = e;
+            System.err.println("Registrazione interrotta al giorno " + riepilogo.getGiorno() + ": " + e.getMessage());
+        }
+        bufferGiorno.reset();
+        recordGiorno = 0;
+    }
+
+    /**
+     * Smette di osservare la partita e chiude il file.
+     *
+     * @throws IOException se la chiusura fallisce
+     */
+    @Override
+    public void close() throws IOException {
+        partita.getMotore().rimuoviOsservatore(this);
+        partita.getIntelligenza().rimuoviOsservatore(this);
+        partita.getPolitica().rimuoviOsservatore(this);
+        partita.getEventi().rimuoviOsservatore(this);
+        uscita.close();
+        if (errore != null) {
+            throw errore;
+        }
+    }
+
+    public long getGiorniScritti() {
+        return giorniScritti;
+    }
+
+    public long getByteScritti() {
+        return byteScritti;
+    }
+
+    /* =========================== LETTURA =========================== */
+
+    /**
+     * Apre un file registrato.
+     *
+     * @param percorso file da leggere
+     * @return flusso posizionato all'inizio
+     * @throws IOException se il file non si può aprire
+     */
+    public static DataInputStream apri(String percorso) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(percorso)));
+    }
+
+    /**
+     * Legge l'intestazione.
+     *
+     * @param ingresso flusso all'inizio del file
+     * @return intestazione
+     * @throws IOException se il file non è una registrazione di questa versione
+     */
+    public static Intestazione leggiIntestazione(DataInput ingresso) throws IOException {
+        if (ingresso.readInt() != MAGICO) {
+            throw new IOException("Il file non è una registrazione di Battle Cioba");
+        }
+        byte versione = ingresso.readByte();
+        if (versione != VERSIONE) {
+            throw new IOException("Versione di registrazione non supportata: " + versione);
+        }
+        return new Intestazione(ingresso.readLong(), ingresso.readLong(), ingresso.readInt(), ingresso.readUTF());
+    }
+
+    /**
+     * Legge il prossimo giorno.
+     *
+     * @param ingresso flusso dopo l'intestazione o dopo un giorno
+     * @return giorno letto, oppure null alla fine del file (o di un giorno troncato)
+     * @throws IOException se il file contiene un record sconosciuto
+     */
+    public static Giorno leggiGiorno(DataInput ingresso) throws IOException {
+        Giorno g = new Giorno();
+        try {
+            g.giorno = leggiVarint(ingresso);
+            long numRecord = leggiVarint(ingresso);
+            for (long i = 0; i < numRecord; i++) {
+                byte tipo = ingresso.readByte();
+                switch (tipo) {
+                    case COMANDO_AI:
+                        g.comandi.add(leggiComando(ingresso));
+                        break;
+                    case SCELTA:
+                        g.scelte.add(new int[]{(int) leggiVarint(ingresso), (int) leggiVarint(ingresso)});
+                        break;
+                    case CARTA:
+                        g.carte.add(ingresso.readUTF() + "@" + leggiVarint(ingresso));
+                        break;
+                    default:
+                        throw new IOException("Record sconosciuto " + tipo + " al giorno " + g.giorno);
+                }
+            }
+            g.impronta = ingresso.readLong();
+        } catch (EOFException e) {
+            return null;
+        }
+        return g;
+    }
+
+    /* =========================== CODIFICA =========================== */
+
+    /**
+     * Scrive un comando dell'intelligenza artificiale (senza priorità, che
+     * serve solo a chi decide).
+     */
+    static void scriviComando(DataOutput uscita, ComandoAI comando) throws IOException {
+        scriviVarint(uscita, comando.getTipo().ordinal());
+        scriviVarint(uscita, comando.getStato());
+        scriviVarint(uscita, zigZag(comando.getOrigine()));
+        scriviVarint(uscita, zigZag(comando.getObiettivo()));
+        scriviVarint(uscita, zigZag(comando.getQuantita()));
+    }
+
+    static ComandoAI leggiComando(DataInput ingresso) throws IOException {
+        ComandoAI.Tipo tipo = ComandoAI.Tipo.values()[(int) leggiVarint(ingresso)];
+        int stato = (int) leggiVarint(ingresso);
+        int origine = (int) deZigZag(leggiVarint(ingresso));
+        int obiettivo = (int) deZigZag(leggiVarint(ingresso));
+        int quantita = (int) deZigZag(leggiVarint(ingresso));
+        return new ComandoAI(tipo, stato, origine, obiettivo, quantita, 0);
+    }
+
+    static void scriviVarint(DataOutput uscita, long valore) throws IOException {
+        while ((valore & ~0x7FL) != 0) {
+            uscita.writeByte((int) (valore & 0x7F) | 0x80);
+            valore >>>= 7;
+        }
+        uscita.writeByte((int) valore);
+    }
+
+    static long leggiVarint(DataInput ingresso) throws IOException {
+        long valore = 0;
+        for (int spostamento = 0; spostamento < 64; spostamento += 7) {
+            int b = ingresso.readUnsignedByte();
+            valore |= (long) (b & 0x7F) << spostamento;
+            if ((b & 0x80) == 0) {
+                return valore;
+            }
+        }
+        throw new IOException("Varint troppo lungo");
+    }
+
+    static long zigZag(long valore) {
+        return (valore << 1) ^ (valore >> 63);
+    }
+
+    static long deZigZag(long valore) {
+        return (valore >>> 1) ^ -(valore & 1);
+    }
+}
@@ -0,0 +1,336 @@
+package battle_cioba;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Registro incrementale dell'economia degli Stati.
+ * Ogni centro e ogni territorio è una "fonte" di reddito con uno slot in
+ * array primitivi; il reddito giornaliero di ogni stato è la somma delle sue
+ * fonti ed è mantenuto aggiornato solo quando una fonte cambia (popolazione,
+ * livello economico, armamento, stato padrone, ...). Il giorno di simulazione
+ * si limita quindi a sommare il reddito al tesoro di ogni stato.
+ */
+public class RegistroEconomico implements FaseSimulazione, OsservatoreMondo {
+
+    /**
+     * Mondo di riferimento.
+     */
+    private Mondo mondo;
+
+    /**
+     * Slot assegnato a ogni fonte (Centro o Territorio).
+     */
+    private final Map<Object, Integer> slotFonti;
+
+    /**
+     * Fonte associata a ogni slot.
+     */
+    private Object[] fonti;
+
+    /**
+     * Ultimo reddito contabilizzato per ogni fonte.
+     */
+    private int[] redditoFonte;
+
+    /**
+     * Indice dello stato a cui è stato accreditato il reddito della fonte (-1 nessuno).
+     */
+    private int[] statoFonte;
+
+    /**
+     * Indica se la fonte è in coda per essere ricalcolata.
+     */
+    private boolean[] fonteSporca;
+
+    /**
+     * Coda degli slot da ricalcolare al prossimo giorno.
+     */
+    private int[] codaSporche;
+
+    /**
+     * Numero di elementi nella coda degli slot da ricalcolare.
+     */
+    private int numSporche;
+
+    /**
+     * Numero di slot assegnati.
+     */
+    private int numFonti;
+
+    /**
+     * Tesoro accumulato per ogni stato (indice denso dello stato).
+     */
+    private long[] tesoro;
+
+    /**
+     * Reddito giornaliero corrente per ogni stato.
+     */
+    private long[] redditoGiornaliero;
+
+    /**
+     * Parte del reddito giornaliero che viene da sistemi esterni al registro
+     * (es. rotte commerciali), conservata quando il registro si reinizializza.
+     */
+    private long[] redditoEsterno;
+
+    /**
+     * Reddito totale accreditato nell'ultimo giorno.
+     */
+    private long redditoUltimoGiorno;
+
+    /**
+     * Costruttore principale.
+     */
+    public RegistroEconomico() {
+        this.slotFonti = new IdentityHashMap<>();
+        this.fonti = new Object[64];
+        this.redditoFonte = new int[64];
+        this.statoFonte = new int[64];
+        this.fonteSporca = new boolean[64];
+        this.codaSporche = new int[64];
+        this.tesoro = new long[16];
+        this.redditoGiornaliero = new long[16];
+        this.redditoEsterno = new long[16];
+    }
+
+    /**
+     * Inizializza il registro percorrendo una sola volta tutti i territori e i centri.
+     * I tesori già accumulati dagli stati esistenti vengono mantenuti.
+     *
+     * @param mondo mondo da contabilizzare
+     */
+    public void inizializza(Mondo mondo) {
+        this.mondo = mondo;
+        slotFonti.clear();
+        Arrays.fill(fonti, 0, numFonti, null);
+        numFonti = 0;
+        numSporche = 0;
+        assicuraCapacitaStati(mondo.getCapacitaStati());
+        System.arraycopy(redditoEsterno, 0, redditoGiornaliero, 0, redditoEsterno.length);
+
+        Territorio[][] mappa = mondo.getMappaTerritori();
+        if (mappa == null) {
+            return;
+        }
+        for (Territorio[] riga : mappa) {
+            for (Territorio t : riga) {
+                if (t == null) continue;
+                segnaSporca(slot(t));
+                if (t.getCentro() != null) {
+                    segnaSporca(slot(t.getCentro()));
+                }
+            }
+        }
+        aggiornaFontiSporche();
+    }
+
+    /* =========================== FASE DI SIMULAZIONE =========================== */
+
+    @Override
+    public String getNome() {
+        return "Economia";
+    }
+
+    @Override
+    public void esegui(Mondo mondo, long giorno) {
+        aggiornaFontiSporche();
+
+        long totale = 0;
+        int n = Math.min(mondo.getCapacitaStati(), tesoro.length);
+        for (int s = 0; s < n; s++) {
+            tesoro[s] += redditoGiornaliero[s];
+            totale += redditoGiornaliero[s];
+        }
+        redditoUltimoGiorno = totale;
+    }
+
+    @Override
+    public void riepiloga(Map<String, Long> indicatori) {
+        long totaleTesoro = 0;
+        for (long t : tesoro) {
+            totaleTesoro += t;
+        }
+        indicatori.put("reddito_giornaliero", redditoUltimoGiorno);
+        indicatori.put("tesoro_totale", totaleTesoro);
+    }
+
+    /* =========================== NOTIFICHE =========================== */
+
+    @Override
+    public void territorioModificato(Territorio territorio) {
+        segnaSporca(slot(territorio));
+    }
+
+    @Override
+    public void centroImpostato(Territorio territorio, Centro vecchio, Centro nuovo) {
+        if (vecchio != null) {
+            segnaSporca(slot(vecchio));
+        }
+        if (nuovo != null) {
+            segnaSporca(slot(nuovo));
+        }
+    }
+
+    @Override
+    public void centroModificato(Centro centro) {
+        segnaSporca(slot(centro));
+    }
+
+    /* =========================== INTERROGAZIONI =========================== */
+
+    /**
+     * Restituisce il tesoro di uno stato.
+     *
+     * @param stato stato da interrogare
+     * @return tesoro accumulato
+     */
+    public long getTesoro(Stato stato) {
+        int s = stato.getIndice();
+        return s >= 0 && s < tesoro.length ? tesoro[s] : 0;
+    }
+
+    /**
+     * Restituisce il reddito giornaliero di uno stato.
+     * Le modifiche non ancora contabilizzate vengono applicate prima di rispondere.
+     *
+     * @param stato stato da interrogare
+     * @return reddito giornaliero
+     */
+    public long getRedditoGiornaliero(Stato stato) {
+        aggiornaFontiSporche();
+        int s = stato.getIndice();
+        return s >= 0 && s < redditoGiornaliero.length ? redditoGiornaliero[s] : 0;
+    }
+
+    /**
+     * Sottrae una spesa dal tesoro di uno stato, se disponibile.
+     *
+     * @param stato stato che spende
+     * @param importo importo da spendere
+     * @return true se la spesa è stata effettuata
+     */
+    public boolean spendi(Stato stato, long importo) {
+        int s = stato.getIndice();
+        if (s < 0 || s >= tesoro.length || importo < 0 || tesoro[s] < importo) {
+            return false;
+        }
+        tesoro[s] -= importo;
+        return true;
+    }
+
+    /**
+     * Accredita un importo al tesoro di uno stato.
+     *
+     * @param stato stato beneficiario
+     * @param importo importo da accreditare
+     */
+    public void accredita(Stato stato, long importo) {
+        int s = stato.getIndice();
+        if (s < 0) return;
+        assicuraCapacitaStati(s + 1);
+        tesoro[s] += importo;
+    }
+
+    /**
+     * Varia il reddito giornaliero di uno stato per una fonte che il registro
+     * non conosce. Chi chiama tiene traccia di quanto ha aggiunto e lo toglie
+     * con una variazione negativa quando la fonte cambia.
+     *
+     * @param stato indice dello stato
+     * @param delta variazione del reddito giornaliero
+     */
+    public void variaReddito(int stato, long delta) {
+        if (stato < 0) {
+            return;
+        }
+        assicuraCapacitaStati(stato + 1);
+        redditoEsterno[stato] += delta;
+        redditoGiornaliero[stato] += delta;
+    }
+
+    /* =========================== GESTIONE INTERNA =========================== */
+
+    /**
+     * Ricalcola le sole fonti modificate e sposta la differenza sul reddito dello stato.
+     */
+    private void aggiornaFontiSporche() {
+        if (numSporche == 0 || mondo == null) {
+            return;
+        }
+        assicuraCapacitaStati(mondo.getCapacitaStati());
+
+        for (int i = 0; i < numSporche; i++) {
+            int slot = codaSporche[i];
+            fonteSporca[slot] = false;
+            Object fonte = fonti[slot];
+
+            int nuovoReddito;
+            int nuovoStato;
+            if (fonte instanceof Centro) {
+                Centro c = (Centro) fonte;
+                // Un centro rimosso dal proprio territorio non produce più
+                boolean attivo = c.getTerritorio() == null || c.getTerritorio().getCentro() == c;
+                nuovoReddito = attivo ? Math.max(0, c.generaRisorse()) : 0;
+                nuovoStato = mondo.indiceStato(c.getStatoPadrone());
+            } else {
+                Territorio t = (Territorio) fonte;
+                nuovoReddito = Math.max(0, t.calcolaRendita());
+                nuovoStato = mondo.indiceStato(t.getStatoPadrone());
+            }
+
+            int vecchioStato = statoFonte[slot];
+            if (vecchioStato >= 0) {
+                redditoGiornaliero[vecchioStato] -= redditoFonte[slot];
+            }
+            if (nuovoStato >= 0) {
+                redditoGiornaliero[nuovoStato] += nuovoReddito;
+            }
+            redditoFonte[slot] = nuovoReddito;
+            statoFonte[slot] = nuovoStato;
+        }
+        numSporche = 0;
+    }
+
+    /**
+     * Restituisce lo slot di una fonte, assegnandone uno nuovo se necessario.
+     */
+    private int slot(Object fonte) {
+        Integer slot = slotFonti.get(fonte);
+        if (slot != null) {
+            return slot;
+        }
+        if (numFonti == fonti.length) {
+            int nuovaCapacita = fonti.length * 2;
+            fonti = Arrays.copyOf(fonti, nuovaCapacita);
+            redditoFonte = Arrays.copyOf(redditoFonte, nuovaCapacita);
+            statoFonte = Arrays.copyOf(statoFonte, nuovaCapacita);
+            fonteSporca = Arrays.copyOf(fonteSporca, nuovaCapacita);
+            codaSporche = Arrays.copyOf(codaSporche, nuovaCapacita);
+        }
+        int nuovo = numFonti++;
+        fonti[nuovo] = fonte;
+        redditoFonte[nuovo] = 0;
+        statoFonte[nuovo] = -1;
+        fonteSporca[nuovo] = false;
+        slotFonti.put(fonte, nuovo);
+        return nuovo;
+    }
+
+    private void segnaSporca(int slot) {
+        if (!fonteSporca[slot]) {
+            fonteSporca[slot] = true;
+            codaSporche[numSporche++] = slot;
+        }
+    }
+
+    private void assicuraCapacitaStati(int capacita) {
+        if (capacita > tesoro.length) {
+            int nuovaCapacita = Math.max(capacita, tesoro.length * 2);
+            tesoro = Arrays.copyOf(tesoro, nuovaCapacita);
+            redditoGiornaliero = Arrays.copyOf(redditoGiornaliero, nuovaCapacita);
+            redditoEsterno = Arrays.copyOf(redditoEsterno, nuovaCapacita);
+        }
+    }
+}
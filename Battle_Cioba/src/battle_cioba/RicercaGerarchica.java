@@ -0,0 +1,1027 @@
+package battle_cioba;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Ricerca gerarchica dei percorsi, per le mappe troppo grandi per A* sulle celle.
+ * <p>
+ * La mappa è divisa in cluster: ogni regione è un cluster, mentre le celle
+ * senza regione (mare aperto, terre di nessuno) sono raggruppate in blocchi
+ * quadrati di LATO_BLOCCO celle. Sui confini tra due cluster vengono scelti
+ * gli ingressi (coppie di celle adiacenti, distanziate di almeno
+ * DISTANZA_INGRESSI celle); dentro ogni cluster si precalcola il costo tra
+ * ogni coppia di ingressi con un Dijkstra limitato al cluster. Ne esce un
+ * grafo astratto molto più piccolo della mappa, uno per funzione di costo.
+ * <p>
+ * Una ricerca collega partenza e arrivo agli ingressi dei loro cluster, cerca
+ * sul grafo astratto e restituisce un PercorsoGerarchico: le tappe vengono
+ * trasformate in celle solo tratto per tratto, quando servono.
+ * <p>
+ * Il grafo astratto ignora la maggiorazione per i territori stranieri (che
+ * dipende da chi si muove): conta solo terreno e profondità. Quando una cella
+ * cambia terreno o passa a un'altra regione i cluster coinvolti (e quelli
+ * confinanti) vengono segnati come sporchi e ricostruiti alla ricerca
+ * successiva; il resto del grafo non viene toccato.
+ */
+public class RicercaGerarchica implements OsservatoreMondo {
+
+    /**
+     * Lato (in celle) dei blocchi che raggruppano le celle senza regione.
+     */
+    public static final int LATO_BLOCCO = 16;
+
+    /**
+     * Distanza minima (in celle) tra due ingressi dello stesso confine.
+     */
+    public static final int DISTANZA_INGRESSI = 6;
+
+    /**
+     * Costo relativo (in decimi) di un passo diagonale.
+     */
+    private static final int DIAGONALE_DECIMI = 14;
+
+    /**
+     * Ricerca sulle celle, usata per raffinare i tratti e per i viaggi
+     * dentro un solo cluster.
+     */
+    private final RicercaPercorsi celle;
+
+    /**
+     * Mondo di riferimento.
+     */
+    private Mondo mondo;
+
+    /**
+     * Righe, colonne e numero di celle della mappa.
+     */
+    private int righe, colonne, numCelle;
+
+    /**
+     * Numero di blocchi per riga.
+     */
+    private int blocchiPerRiga;
+
+    /**
+     * true per le celle marine.
+     */
+    private boolean[] acqua = new boolean[0];
+
+    /**
+     * Profondità media delle celle marine (0 per quelle terrestri).
+     */
+    private int[] profondita = new int[0];
+
+    /**
+     * Cluster di appartenenza di ogni cella.
+     */
+    private int[] clusterCella = new int[0];
+
+    /**
+     * Identificativo del cluster di ogni regione.
+     */
+    private final Map<Regione, Integer> idRegioni;
+
+    /**
+     * Regione di ogni cluster (null per i blocchi).
+     */
+    private Regione[] regioneCluster = new Regione[0];
+
+    /**
+     * Blocco di ogni cluster (-1 per le regioni).
+     */
+    private int[] bloccoCluster = new int[0];
+
+    /**
+     * Identificativo del cluster di ogni blocco (-1 se non ancora usato).
+     */
+    private int[] idBlocco = new int[0];
+
+    /**
+     * Numero di cluster creati.
+     */
+    private int numCluster;
+
+    /**
+     * Grafo astratto di ogni funzione di costo, creato alla prima ricerca.
+     */
+    private final Map<CostoMovimento, GrafoAstratto> grafi;
+
+    /**
+     * Celle raccolte da raccogliCelle (riusato).
+     */
+    private int[] bufferCelle = new int[64];
+
+    /* ---------- buffer del Dijkstra limitato a un cluster ---------- */
+
+    /**
+     * Distanza dalla sorgente (valida se generazioneVisita è corrente).
+     */
+    private int[] distanza = new int[0];
+
+    /**
+     * Generazione in cui la cella è stata raggiunta.
+     */
+    private int[] generazioneVisita = new int[0];
+
+    /**
+     * Generazione del Dijkstra corrente.
+     */
+    private int generazione;
+
+    /**
+     * Coda del Dijkstra.
+     */
+    private final HeapBinario coda;
+
+    /**
+     * Statistiche: ricerche eseguite e cluster ricostruiti.
+     */
+    private long ricerche, clusterRicostruiti;
+
+    /**
+     * Costruttore principale.
+     *
+     * @param celle ricerca sulle celle usata per raffinare i tratti
+     */
+    public RicercaGerarchica(RicercaPercorsi celle) {
+        this.celle = celle;
+        this.idRegioni = new IdentityHashMap<>();
+        this.grafi = new IdentityHashMap<>();
+        this.coda = new HeapBinario(256);
+    }
+
+    /**
+     * Legge terreno e regioni di tutte le celle e scarta i grafi astratti.
+     *
+     * @param mondo mondo di gioco
+     */
+    public synchronized void inizializza(Mondo mondo) {
+        this.mondo = mondo;
+        this.righe = mondo.getRighe();
+        this.colonne = mondo.getColonne();
+        this.numCelle = righe * colonne;
+        this.blocchiPerRiga = (colonne + LATO_BLOCCO - 1) / LATO_BLOCCO;
+        int numBlocchi = blocchiPerRiga * ((righe + LATO_BLOCCO - 1) / LATO_BLOCCO);
+        acqua = new boolean[numCelle];
+        profondita = new int[numCelle];
+        clusterCella = new int[numCelle];
+        distanza = new int[numCelle];
+        generazioneVisita = new int[numCelle];
+        generazione = 0;
+        idRegioni.clear();
+        regioneCluster = new Regione[64];
+        bloccoCluster = new int[64];
+        idBlocco = new int[numBlocchi];
+        Arrays.fill(idBlocco, -1);
+        numCluster = 0;
+        for (int c = 0; c < numCelle; c++) {
+            Territorio t = mondo.getTerritorio(c);
+            if (t != null) {
+                leggiTerreno(c, t);
+            }
+            clusterCella[c] = calcolaCluster(c, t);
+        }
+        grafi.clear();
+    }
+
+    /* =========================== RICERCA =========================== */
+
+    /**
+     * Cerca un piano di viaggio tra due celle.
+     *
+     * @param da cella di partenza
+     * @param a cella di arrivo
+     * @param costo funzione di costo
+     * @param statoUnita indice dello stato dell'unità (-1 nessuno)
+     * @return piano trovato, oppure null se le celle non sono collegate
+     */
+    public synchronized PercorsoGerarchico trovaPercorso(int da, int a, CostoMovimento costo, int statoUnita) {
+        if (mondo == null || da < 0 || da >= numCelle || a < 0 || a >= numCelle || costo == null) {
+            return null;
+        }
+        ricerche++;
+        if (clusterCella[da] == clusterCella[a]) {
+            // Stesso cluster: basta la ricerca sulle celle
+            if (celle.trovaPercorso(da, a, costo, statoUnita) == null) {
+                return null;
+            }
+            return new PercorsoGerarchico(new int[]{da, a}, costo, statoUnita, celle);
+        }
+        GrafoAstratto grafo = grafi.get(costo);
+        if (grafo == null) {
+            grafo = new GrafoAstratto(costo);
+            grafi.put(costo, grafo);
+            for (int k = 0; k < numCluster; k++) {
+                grafo.segnaSporco(k);
+            }
+        }
+        grafo.aggiorna();
+        int[] tappe = grafo.cerca(da, a);
+        return tappe == null ? null : new PercorsoGerarchico(tappe, costo, statoUnita, celle);
+    }
+
+    /* =========================== CLUSTER =========================== */
+
+    private int calcolaCluster(int c, Territorio t) {
+        Regione r = t != null ? t.getRegioneObj() : null;
+        if (r != null) {
+            Integer id = idRegioni.get(r);
+            if (id == null) {
+                id = nuovoCluster(r, -1);
+                idRegioni.put(r, id);
+            }
+            return id;
+        }
+        int b = (c / colonne / LATO_BLOCCO) * blocchiPerRiga + (c % colonne) / LATO_BLOCCO;
+        if (idBlocco[b] < 0) {
+            idBlocco[b] = nuovoCluster(null, b);
+        }
+        return idBlocco[b];
+    }
+
+    private int nuovoCluster(Regione r, int blocco) {
+        if (numCluster == regioneCluster.length) {
+            regioneCluster = Arrays.copyOf(regioneCluster, numCluster * 2);
+            bloccoCluster = Arrays.copyOf(bloccoCluster, numCluster * 2);
+        }
+        regioneCluster[numCluster] = r;
+        bloccoCluster[numCluster] = blocco;
+        return numCluster++;
+    }
+
+    /**
+     * Copia in bufferCelle le celle di un cluster.
+     *
+     * @return numero di celle raccolte
+     */
+    private int raccogliCelle(int k) {
+        int n = 0;
+        Regione r = regioneCluster[k];
+        if (r != null) {
+            for (Territorio t : r.getTerritori()) {
+                int c = t.getIndiceCella();
+                if (c >= 0 && c < numCelle && clusterCella[c] == k) {
+                    n = aggiungiCella(n, c);
+                }
+            }
+            return n;
+        }
+        int b = bloccoCluster[k];
+        int r0 = (b / blocchiPerRiga) * LATO_BLOCCO, c0 = (b % blocchiPerRiga) * LATO_BLOCCO;
+        int r1 = Math.min(righe, r0 + LATO_BLOCCO), c1 = Math.min(colonne, c0 + LATO_BLOCCO);
+        for (int riga = r0; riga < r1; riga++) {
+            for (int col = c0; col < c1; col++) {
+                int c = riga * colonne + col;
+                if (clusterCella[c] == k) {
+                    n = aggiungiCella(n, c);
+                }
+            }
+        }
+        return n;
+    }
+
+    private int aggiungiCella(int n, int c) {
+        if (n == bufferCelle.length) {
+            bufferCelle = Arrays.copyOf(bufferCelle, n * 2);
+        }
+        bufferCelle[n] = c;
+        return n + 1;
+    }
+
+    private void leggiTerreno(int c, Territorio t) {
+        acqua[c] = t.isAcqua();
+        profondita[c] = t instanceof TerritorioMarino ? ((TerritorioMarino) t).getProfonditaMedia() : 0;
+    }
+
+    /**
+     * Costo per entrare in una cella sul grafo astratto (senza la
+     * maggiorazione per i territori stranieri).
+     */
+    private int costoAstratto(CostoMovimento costo, int c) {
+        return costo.costoCella(acqua[c], profondita[c], -1, -1);
+    }
+
+    /**
+     * Dijkstra limitato alle celle di un cluster. Con inverso = true calcola
+     * il costo per andare da ogni cella alla sorgente invece del contrario
+     * (la sorgente è allora l'arrivo, accessibile anche se impraticabile).
+     * I risultati si leggono con distanzaDa.
+     */
+    private void dijkstra(int sorgente, int k, CostoMovimento costo, boolean inverso) {
+        if (++generazione == Integer.MAX_VALUE) {
+            Arrays.fill(generazioneVisita, 0);
+            generazione = 1;
+        }
+        int gen = generazione;
+        boolean diagonali = celle.isDiagonali();
+        int minimo = Math.max(1, costo.costoMinimo());
+        coda.svuota();
+        distanza[sorgente] = 0;
+        generazioneVisita[sorgente] = gen;
+        coda.inserisci(sorgente, 0);
+        while (!coda.isVuoto()) {
+            int priorita = coda.prioritaMinima();
+            int c = coda.estrai();
+            if (priorita > distanza[c]) {
+                continue; // copia obsoleta nell'heap
+            }
+            int r = c / colonne, col = c % colonne;
+            int costoCorrente = costoAstratto(costo, c);
+            if (costoCorrente < 0) {
+                costoCorrente = minimo; // solo la sorgente può essere impraticabile
+            }
+            for (int dr = -1; dr <= 1; dr++) {
+                for (int dc = -1; dc <= 1; dc++) {
+                    boolean diagonale = dr != 0 && dc != 0;
+                    if ((dr == 0 && dc == 0) || (diagonale && !diagonali)) {
+                        continue;
+                    }
+                    int nr = r + dr, nc = col + dc;
+                    if (nr < 0 || nr >= righe || nc < 0 || nc >= colonne) {
+                        continue;
+                    }
+                    int n = nr * colonne + nc;
+                    if (clusterCella[n] != k) {
+                        continue;
+                    }
+                    int costoVicino = costoAstratto(costo, n);
+                    if (costoVicino < 0) {
+                        continue;
+                    }
+                    int passo = inverso ? costoCorrente : costoVicino;
+                    if (diagonale) {
+                        passo = passo * DIAGONALE_DECIMI / 10;
+                    }
+                    int nuovaDistanza = distanza[c] + passo;
+                    if (generazioneVisita[n] != gen || nuovaDistanza < distanza[n]) {
+                        generazioneVisita[n] = gen;
+                        distanza[n] = nuovaDistanza;
+                        coda.inserisci(n, nuovaDistanza);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Distanza calcolata dall'ultimo Dijkstra (-1 se la cella non è stata raggiunta).
+     */
+    private int distanzaDa(int c) {
+        return generazioneVisita[c] == generazione ? distanza[c] : -1;
+    }
+
+    private int euristica(int c, int a, int minimo) {
+        int dr = Math.abs(c / colonne - a / colonne), dc = Math.abs(c % colonne - a % colonne);
+        if (!celle.isDiagonali()) {
+            return (dr + dc) * minimo;
+        }
+        int lungo = Math.max(dr, dc), corto = Math.min(dr, dc);
+        return (lungo * 10 + corto * (DIAGONALE_DECIMI - 10)) * minimo / 10;
+    }
+
+    private boolean adiacenti(int c1, int c2) {
+        int dr = Math.abs(c1 / colonne - c2 / colonne), dc = Math.abs(c1 % colonne - c2 % colonne);
+        return celle.isDiagonali() ? Math.max(dr, dc) == 1 : dr + dc == 1;
+    }
+
+    /* =========================== NOTIFICHE =========================== */
+
+    @Override
+    public synchronized void territorioModificato(Territorio territorio) {
+        int c = territorio.getIndiceCella();
+        if (mondo == null || c < 0 || c >= numCelle) {
+            return;
+        }
+        boolean vecchioAcqua = acqua[c];
+        int vecchiaProfondita = profondita[c];
+        leggiTerreno(c, territorio);
+        int vecchio = clusterCella[c];
+        int nuovo = calcolaCluster(c, territorio);
+        if (nuovo == vecchio && acqua[c] == vecchioAcqua && profondita[c] == vecchiaProfondita) {
+            return;
+        }
+        clusterCella[c] = nuovo;
+        segnaSporco(vecchio);
+        segnaSporco(nuovo);
+        // Anche i cluster vicini: gli ingressi verso questa cella (in
+        // diagonale, se il movimento la ammette) possono essere cambiati
+        int r = c / colonne, col = c % colonne;
+        boolean diagonali = celle.isDiagonali();
+        for (int dr = -1; dr <= 1; dr++) {
+            for (int dc = -1; dc <= 1; dc++) {
+                if ((dr == 0 && dc == 0) || (dr != 0 && dc != 0 && !diagonali)) {
+                    continue;
+                }
+                int rv = r + dr, cv = col + dc;
+                if (rv >= 0 && rv < righe && cv >= 0 && cv < colonne) {
+                    segnaSporco(clusterCella[rv * colonne + cv]);
+                }
+            }
+        }
+    }
+
+    private void segnaSporco(int k) {
+        for (GrafoAstratto grafo : grafi.values()) {
+            grafo.segnaSporco(k);
+        }
+    }
+
+    /* =========================== STATISTICHE =========================== */
+
+    public synchronized long getRicerche() {
+        return ricerche;
+    }
+
+    public synchronized long getClusterRicostruiti() {
+        return clusterRicostruiti;
+    }
+
+    public synchronized int getNumCluster() {
+        return numCluster;
+    }
+
+    /**
+     * Numero di nodi (ingressi) del grafo astratto di una funzione di costo.
+     *
+     * @param costo funzione di costo
+     * @return nodi attivi, 0 se il grafo non è ancora stato costruito
+     */
+    public synchronized int getNumIngressi(CostoMovimento costo) {
+        GrafoAstratto grafo = grafi.get(costo);
+        return grafo == null ? 0 : grafo.nodiAttivi;
+    }
+
+    /* =========================== GRAFO ASTRATTO =========================== */
+
+    /**
+     * Grafo degli ingressi per una funzione di costo. I nodi sono celle di
+     * ingresso (al più un nodo per cella); gli archi sono i passi tra due
+     * cluster confinanti e i costi precalcolati dentro ogni cluster.
+     */
+    private final class GrafoAstratto {
+
+        /**
+         * Funzione di costo del grafo.
+         */
+        private final CostoMovimento costo;
+
+        /**
+         * Cella di ogni nodo (-1 per i nodi liberi).
+         */
+        private int[] cellaNodo = new int[64];
+
+        /**
+         * Cluster di ogni nodo.
+         */
+        private int[] clusterNodo = new int[64];
+
+        /**
+         * Posizione del nodo nella lista del suo cluster.
+         */
+        private int[] posizioneNodo = new int[64];
+
+        /**
+         * Archi uscenti di ogni nodo: nodo di arrivo e costo.
+         */
+        private int[][] archiVerso = new int[64][], archiCosto = new int[64][];
+
+        /**
+         * Numero di archi uscenti di ogni nodo.
+         */
+        private int[] numArchi = new int[64];
+
+        /**
+         * Primo nodo libero e catena dei nodi liberi.
+         */
+        private int primoLibero = -1;
+        private int[] prossimoLibero = new int[64];
+
+        /**
+         * Nodi allocati (liberi compresi) e nodi attivi.
+         */
+        private int numNodi, nodiAttivi;
+
+        /**
+         * Nodo di ogni cella (-1 se la cella non è un ingresso).
+         */
+        private final int[] nodoCella;
+
+        /**
+         * Nodi di ogni cluster.
+         */
+        private int[][] nodiCluster = new int[0][];
+        private int[] numNodiCluster = new int[0];
+
+        /**
+         * Cluster da ricostruire.
+         */
+        private boolean[] sporco = new boolean[0];
+        private int[] sporchi = new int[16];
+        private int numSporchi;
+
+        /* ---------- buffer di A* sul grafo astratto ---------- */
+
+        private int[] costoNodo = new int[0], padreNodo = new int[0];
+        private int[] apertoNodo = new int[0], chiusoNodo = new int[0];
+        private int[] costoVersoArrivo = new int[0], arrivoNodo = new int[0];
+        private int genRicerca;
+        private final HeapBinario aperti = new HeapBinario(256);
+
+        GrafoAstratto(CostoMovimento costo) {
+            this.costo = costo;
+            this.nodoCella = new int[numCelle];
+            Arrays.fill(nodoCella, -1);
+        }
+
+        /* ---------- aggiornamento incrementale ---------- */
+
+        void segnaSporco(int k) {
+            garantisciCluster(k + 1);
+            if (!sporco[k]) {
+                sporco[k] = true;
+                if (numSporchi == sporchi.length) {
+                    sporchi = Arrays.copyOf(sporchi, numSporchi * 2);
+                }
+                sporchi[numSporchi++] = k;
+            }
+        }
+
+        private void garantisciCluster(int n) {
+            if (n > sporco.length) {
+                int capacita = Math.max(n, sporco.length * 2);
+                sporco = Arrays.copyOf(sporco, capacita);
+                numNodiCluster = Arrays.copyOf(numNodiCluster, capacita);
+                nodiCluster = Arrays.copyOf(nodiCluster, capacita);
+            }
+        }
+
+        /**
+         * Ricostruisce gli ingressi e gli archi dei cluster sporchi e gli
+         * archi interni dei cluster confinanti.
+         */
+        void aggiorna() {
+            if (numSporchi == 0) {
+                return;
+            }
+            garantisciCluster(numCluster);
+            int[] daRicostruire = Arrays.copyOf(sporchi, numSporchi);
+            for (int k : daRicostruire) {
+                while (numNodiCluster[k] > 0) {
+                    rimuoviNodo(nodiCluster[k][numNodiCluster[k] - 1]);
+                }
+            }
+            boolean[] toccato = new boolean[sporco.length];
+            int[] toccati = new int[16];
+            int numToccati = 0;
+            for (int k : daRicostruire) {
+                toccato[k] = true;
+                if (numToccati == toccati.length) {
+                    toccati = Arrays.copyOf(toccati, numToccati * 2);
+                }
+                toccati[numToccati++] = k;
+            }
+            for (int k : daRicostruire) {
+                for (int b : creaIngressi(k)) {
+                    if (!toccato[b]) {
+                        toccato[b] = true;
+                        if (numToccati == toccati.length) {
+                            toccati = Arrays.copyOf(toccati, numToccati * 2);
+                        }
+                        toccati[numToccati++] = b;
+                    }
+                }
+            }
+            for (int i = 0; i < numToccati; i++) {
+                ricalcolaArchiInterni(toccati[i]);
+            }
+            for (int k : daRicostruire) {
+                sporco[k] = false;
+            }
+            numSporchi = 0;
+            clusterRicostruiti += daRicostruire.length;
+        }
+
+        /**
+         * Sceglie gli ingressi sui confini del cluster k e crea gli archi tra
+         * i due lati. Le coppie di celle di confine (entrambe praticabili)
+         * vengono divise in tratti contigui: ogni tratto ha almeno un
+         * ingresso, poi uno ogni DISTANZA_INGRESSI celle. Le coppie tra due
+         * cluster entrambi sporchi vengono create una volta sola, dal
+         * cluster con indice minore.
+         *
+         * @return cluster confinanti a cui sono stati aggiunti ingressi
+         */
+        private int[] creaIngressi(int k) {
+            // Coppie (cella interna, cella esterna) per cluster confinante;
+            // il primo elemento di ogni lista è il numero di coppie
+            Map<Integer, long[]> coppie = new HashMap<>();
+            int n = raccogliCelle(k);
+            for (int i = 0; i < n; i++) {
+                int c = bufferCelle[i];
+                if (costoAstratto(costo, c) < 0) {
+                    continue;
+                }
+                int r = c / colonne, col = c % colonne;
+                for (int d = 0; d < 4; d++) {
+                    int nr = r + (d == 0 ? -1 : d == 1 ? 1 : 0);
+                    int nc = col + (d == 2 ? -1 : d == 3 ? 1 : 0);
+                    if (nr < 0 || nr >= righe || nc < 0 || nc >= colonne) {
+                        continue;
+                    }
+                    int v = nr * colonne + nc;
+                    int b = clusterCella[v];
+                    if (b == k || (b < k && sporco[b]) || costoAstratto(costo, v) < 0) {
+                        continue;
+                    }
+                    long[] lista = coppie.get(b);
+                    if (lista == null) {
+                        lista = new long[8];
+                    } else if (lista[0] + 1 == lista.length) {
+                        lista = Arrays.copyOf(lista, lista.length * 2);
+                    }
+                    lista[(int) ++lista[0]] = (long) c * numCelle + v;
+                    coppie.put(b, lista);
+                }
+            }
+            int[] confinanti = new int[coppie.size()];
+            int i = 0;
+            for (Map.Entry<Integer, long[]> e : coppie.entrySet()) {
+                confinanti[i++] = e.getKey();
+                scegliIngressi(k, e.getKey(), e.getValue());
+            }
+            return confinanti;
+        }
+
+        /**
+         * Divide in tratti contigui le coppie di confine tra k e b e sceglie
+         * gli ingressi di ogni tratto. Due coppie sono contigue se le celle
+         * interne e quelle esterne sono uguali o adiacenti.
+         */
+        private void scegliIngressi(int k, int b, long[] lista) {
+            int num = (int) lista[0];
+            Map<Long, Integer> posizione = new HashMap<>(num * 2);
+            for (int i = 1; i <= num; i++) {
+                posizione.put(lista[i], i);
+            }
+            boolean[] visitata = new boolean[num + 1];
+            int[] codaTratto = new int[num];
+            int[] scelti = new int[num + 1];
+            for (int inizio = 1; inizio <= num; inizio++) {
+                if (visitata[inizio]) {
+                    continue;
+                }
+                // Visita in ampiezza del tratto: gli ingressi vengono scelti
+                // nell'ordine di visita, quindi distribuiti lungo il confine
+                int testa = 0, coda = 0;
+                codaTratto[coda++] = inizio;
+                visitata[inizio] = true;
+                scelti[0] = 0;
+                while (testa < coda) {
+                    int p = codaTratto[testa++];
+                    int c = (int) (lista[p] / numCelle), v = (int) (lista[p] % numCelle);
+                    if (!troppoVicino(scelti, c)) {
+                        scelti[++scelti[0]] = c;
+                        int x = nodo(c, k), y = nodo(v, b);
+                        aggiungiArco(x, y, costoAstratto(costo, v));
+                        aggiungiArco(y, x, costoAstratto(costo, c));
+                    }
+                    for (int dc = 0; dc < 5; dc++) {
+                        int c2 = vicino(c, dc);
+                        if (c2 < 0) {
+                            continue;
+                        }
+                        for (int dv = 0; dv < 5; dv++) {
+                            int v2 = vicino(v, dv);
+                            if (v2 < 0) {
+                                continue;
+                            }
+                            Integer q = posizione.get((long) c2 * numCelle + v2);
+                            if (q != null && !visitata[q]) {
+                                visitata[q] = true;
+                                codaTratto[coda++] = q;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Restituisce la cella stessa (d = 0) o una delle quattro adiacenti
+         * (d = 1..4), oppure -1 fuori dalla mappa.
+         */
+        private int vicino(int c, int d) {
+            int r = c / colonne + (d == 1 ? -1 : d == 2 ? 1 : 0);
+            int col = c % colonne + (d == 3 ? -1 : d == 4 ? 1 : 0);
+            return r < 0 || r >= righe || col < 0 || col >= colonne ? -1 : r * colonne + col;
+        }
+
+        /**
+         * Indica se una cella è troppo vicina a un ingresso già scelto
+         * (lista[0] è il numero di elementi).
+         */
+        private boolean troppoVicino(int[] lista, int c) {
+            int r = c / colonne, col = c % colonne;
+            for (int i = 1; i <= lista[0]; i++) {
+                int s = lista[i];
+                if (Math.max(Math.abs(s / colonne - r), Math.abs(s % colonne - col)) < DISTANZA_INGRESSI) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Ricalcola gli archi tra gli ingressi dello stesso cluster. Prima
+         * elimina gli ingressi rimasti senza archi verso altri cluster.
+         */
+        private void ricalcolaArchiInterni(int k) {
+            for (int i = numNodiCluster[k] - 1; i >= 0; i--) {
+                int x = nodiCluster[k][i];
+                boolean esterno = false;
+                for (int j = 0; j < numArchi[x] && !esterno; j++) {
+                    esterno = clusterNodo[archiVerso[x][j]] != k;
+                }
+                if (!esterno) {
+                    rimuoviNodo(x);
+                }
+            }
+            for (int i = 0; i < numNodiCluster[k]; i++) {
+                int x = nodiCluster[k][i];
+                int m = 0;
+                for (int j = 0; j < numArchi[x]; j++) {
+                    if (clusterNodo[archiVerso[x][j]] != k) {
+                        archiVerso[x][m] = archiVerso[x][j];
+                        archiCosto[x][m++] = archiCosto[x][j];
+                    }
+                }
+                numArchi[x] = m;
+            }
+            for (int i = 0; i < numNodiCluster[k]; i++) {
+                int x = nodiCluster[k][i];
+                dijkstra(cellaNodo[x], k, costo, false);
+                for (int j = 0; j < numNodiCluster[k]; j++) {
+                    int y = nodiCluster[k][j];
+                    int d = distanzaDa(cellaNodo[y]);
+                    if (y != x && d >= 0) {
+                        aggiungiArco(x, y, d);
+                    }
+                }
+            }
+        }
+
+        /* ---------- nodi e archi ---------- */
+
+        private int nodo(int c, int k) {
+            int x = nodoCella[c];
+            if (x >= 0) {
+                return x;
+            }
+            if (primoLibero >= 0) {
+                x = primoLibero;
+                primoLibero = prossimoLibero[x];
+            } else {
+                if (numNodi == cellaNodo.length) {
+                    int capacita = numNodi * 2;
+                    cellaNodo = Arrays.copyOf(cellaNodo, capacita);
+                    clusterNodo = Arrays.copyOf(clusterNodo, capacita);
+                    posizioneNodo = Arrays.copyOf(posizioneNodo, capacita);
+                    archiVerso = Arrays.copyOf(archiVerso, capacita);
+                    archiCosto = Arrays.copyOf(archiCosto, capacita);
+                    numArchi = Arrays.copyOf(numArchi, capacita);
+                    prossimoLibero = Arrays.copyOf(prossimoLibero, capacita);
+                }
+                x = numNodi++;
+                archiVerso[x] = new int[4];
+                archiCosto[x] = new int[4];
+            }
+            cellaNodo[x] = c;
+            clusterNodo[x] = k;
+            numArchi[x] = 0;
+            nodoCella[c] = x;
+            if (nodiCluster[k] == null) {
+                nodiCluster[k] = new int[4];
+            } else if (numNodiCluster[k] == nodiCluster[k].length) {
+                nodiCluster[k] = Arrays.copyOf(nodiCluster[k], numNodiCluster[k] * 2);
+            }
+            posizioneNodo[x] = numNodiCluster[k];
+            nodiCluster[k][numNodiCluster[k]++] = x;
+            nodiAttivi++;
+            return x;
+        }
+
+        private void rimuoviNodo(int x) {
+            for (int j = 0; j < numArchi[x]; j++) {
+                rimuoviArco(archiVerso[x][j], x);
+            }
+            numArchi[x] = 0;
+            int k = clusterNodo[x];
+            int ultimo = nodiCluster[k][--numNodiCluster[k]];
+            nodiCluster[k][posizioneNodo[x]] = ultimo;
+            posizioneNodo[ultimo] = posizioneNodo[x];
+            nodoCella[cellaNodo[x]] = -1;
+            cellaNodo[x] = -1;
+            prossimoLibero[x] = primoLibero;
+            primoLibero = x;
+            nodiAttivi--;
+        }
+
+        private void aggiungiArco(int x, int y, int c) {
+            for (int j = 0; j < numArchi[x]; j++) {
+                if (archiVerso[x][j] == y) {
+                    archiCosto[x][j] = Math.min(archiCosto[x][j], c);
+                    return;
+                }
+            }
+            if (numArchi[x] == archiVerso[x].length) {
+                archiVerso[x] = Arrays.copyOf(archiVerso[x], numArchi[x] * 2);
+                archiCosto[x] = Arrays.copyOf(archiCosto[x], numArchi[x] * 2);
+            }
+            archiVerso[x][numArchi[x]] = y;
+            archiCosto[x][numArchi[x]++] = c;
+        }
+
+        private void rimuoviArco(int x, int y) {
+            for (int j = 0; j < numArchi[x]; j++) {
+                if (archiVerso[x][j] == y) {
+                    int ultimo = --numArchi[x];
+                    archiVerso[x][j] = archiVerso[x][ultimo];
+                    archiCosto[x][j] = archiCosto[x][ultimo];
+                    return;
+                }
+            }
+        }
+
+        /* ---------- ricerca ---------- */
+
+        /**
+         * A* sul grafo astratto. Partenza e arrivo vengono collegati agli
+         * ingressi dei loro cluster con un Dijkstra limitato; l'arrivo è un
+         * nodo virtuale con indice numNodi.
+         *
+         * @return tappe del viaggio, oppure null se non c'è collegamento
+         */
+        int[] cerca(int da, int a) {
+            int virtuale = numNodi;
+            if (costoNodo.length <= virtuale) {
+                int capacita = Math.max(virtuale + 1, cellaNodo.length + 1);
+                costoNodo = new int[capacita];
+                padreNodo = new int[capacita];
+                apertoNodo = new int[capacita];
+                chiusoNodo = new int[capacita];
+                costoVersoArrivo = new int[capacita];
+                arrivoNodo = new int[capacita];
+                genRicerca = 0;
+            }
+            if (++genRicerca == Integer.MAX_VALUE) {
+                Arrays.fill(apertoNodo, 0);
+                Arrays.fill(chiusoNodo, 0);
+                Arrays.fill(arrivoNodo, 0);
+                genRicerca = 1;
+            }
+            int gen = genRicerca;
+            int minimo = Math.max(1, costo.costoMinimo());
+
+            // L'arrivo si collega agli ingressi del suo cluster; se è
+            // impraticabile (es. una città costiera per una flotta) o isolato
+            // nel suo cluster, anche a quelli dei cluster confinanti
+            int costoArrivo = costoAstratto(costo, a);
+            boolean collegato = collegaArrivo(a, clusterCella[a], 0, gen);
+            if (costoArrivo < 0 || !collegato) {
+                for (int d = 1; d < 5; d++) {
+                    int v = vicino(a, d);
+                    if (v >= 0 && clusterCella[v] != clusterCella[a] && costoAstratto(costo, v) >= 0) {
+                        collegato |= collegaArrivo(v, clusterCella[v], costoArrivo < 0 ? minimo : costoArrivo, gen);
+                    }
+                }
+            }
+            if (!collegato) {
+                return null;
+            }
+
+            // Stessa cosa per la partenza (es. una flotta ferma in un porto)
+            aperti.svuota();
+            boolean partito = collegaPartenza(da, clusterCella[da], 0, a, minimo, gen);
+            if (costoAstratto(costo, da) < 0 || !partito) {
+                for (int d = 1; d < 5; d++) {
+                    int v = vicino(da, d);
+                    if (v >= 0 && clusterCella[v] != clusterCella[da] && costoAstratto(costo, v) >= 0) {
+                        collegaPartenza(v, clusterCella[v], costoAstratto(costo, v), a, minimo, gen);
+                    }
+                }
+            }
+
+            while (!aperti.isVuoto()) {
+                int x = aperti.estrai();
+                if (chiusoNodo[x] == gen) {
+                    continue;
+                }
+                chiusoNodo[x] = gen;
+                if (x == virtuale) {
+                    return tappe(da, a, virtuale);
+                }
+                if (arrivoNodo[x] == gen) {
+                    int totale = costoNodo[x] + costoVersoArrivo[x];
+                    if (apertoNodo[virtuale] != gen || totale < costoNodo[virtuale]) {
+                        apertoNodo[virtuale] = gen;
+                        costoNodo[virtuale] = totale;
+                        padreNodo[virtuale] = x;
+                        aperti.inserisci(virtuale, totale);
+                    }
+                }
+                for (int j = 0; j < numArchi[x]; j++) {
+                    int y = archiVerso[x][j];
+                    if (chiusoNodo[y] == gen) {
+                        continue;
+                    }
+                    int nuovoCosto = costoNodo[x] + archiCosto[x][j];
+                    if (apertoNodo[y] != gen || nuovoCosto < costoNodo[y]) {
+                        apertoNodo[y] = gen;
+                        costoNodo[y] = nuovoCosto;
+                        padreNodo[y] = x;
+                        aperti.inserisci(y, nuovoCosto + euristica(cellaNodo[y], a, minimo));
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Registra il costo dagli ingressi del cluster k fino all'arrivo,
+         * passando per la cella sorgente (a cui si aggiunge scarto).
+         *
+         * @return true se almeno un ingresso è collegato
+         */
+        private boolean collegaArrivo(int sorgente, int k, int scarto, int gen) {
+            dijkstra(sorgente, k, costo, true);
+            boolean collegato = false;
+            for (int i = 0; i < numNodiCluster[k]; i++) {
+                int y = nodiCluster[k][i];
+                int d = distanzaDa(cellaNodo[y]);
+                if (d >= 0 && (arrivoNodo[y] != gen || d + scarto < costoVersoArrivo[y])) {
+                    costoVersoArrivo[y] = d + scarto;
+                    arrivoNodo[y] = gen;
+                    collegato = true;
+                }
+            }
+            return collegato;
+        }
+
+        /**
+         * Apre gli ingressi del cluster k raggiungibili dalla cella sorgente,
+         * con costo iniziale scarto.
+         *
+         * @return true se almeno un ingresso è raggiungibile
+         */
+        private boolean collegaPartenza(int sorgente, int k, int scarto, int a, int minimo, int gen) {
+            dijkstra(sorgente, k, costo, false);
+            boolean collegato = false;
+            for (int i = 0; i < numNodiCluster[k]; i++) {
+                int x = nodiCluster[k][i];
+                int d = distanzaDa(cellaNodo[x]);
+                if (d >= 0 && (apertoNodo[x] != gen || d + scarto < costoNodo[x])) {
+                    costoNodo[x] = d + scarto;
+                    padreNodo[x] = -1;
+                    apertoNodo[x] = gen;
+                    aperti.inserisci(x, d + scarto + euristica(cellaNodo[x], a, minimo));
+                    collegato = true;
+                }
+            }
+            return collegato;
+        }
+
+        /**
+         * Ricostruisce le tappe risalendo dal nodo virtuale. Il primo lato di
+         * un attraversamento di confine viene omesso: è adiacente all'altro
+         * lato e il tratto successivo lo attraversa comunque.
+         */
+        private int[] tappe(int da, int a, int virtuale) {
+            int n = 0;
+            for (int x = padreNodo[virtuale]; x >= 0; x = padreNodo[x]) {
+                n++;
+            }
+            int[] nodi = new int[n];
+            int i = n;
+            for (int x = padreNodo[virtuale]; x >= 0; x = padreNodo[x]) {
+                nodi[--i] = cellaNodo[x];
+            }
+            int[] risultato = new int[n + 2];
+            int m = 0;
+            risultato[m++] = da;
+            for (int j = 0; j < n; j++) {
+                int c = nodi[j];
+                boolean prossimoAdiacente = j + 1 < n && adiacenti(c, nodi[j + 1]);
+                if (c != risultato[m - 1] && !prossimoAdiacente) {
+                    risultato[m++] = c;
+                }
+            }
+            if (risultato[m - 1] != a) {
+                risultato[m++] = a;
+            }
+            return Arrays.copyOf(risultato, m);
+        }
+    }
+}
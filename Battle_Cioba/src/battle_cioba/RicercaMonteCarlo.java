@@ -0,0 +1,341 @@
+package battle_cioba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ricerca ad albero Monte Carlo (UCT) sulle mosse strategiche di uno stato.
+ * <p>
+ * L'albero contiene solo le mosse dello stato che cerca, un livello per
+ * turno; gli altri stati rispondono con la mossa euristica di
+ * StatoSimulazione. Poiché le battaglie sono casuali l'albero è "a ciclo
+ * aperto": i nodi non conservano uno stato, e a ogni simulazione le mosse
+ * vengono rigiocate da una copia della radice ripristinata con copiaDa,
+ * senza allocare.
+ * <p>
+ * La parallelizzazione è alla radice: ogni lavoratore costruisce il proprio
+ * albero con il proprio flusso casuale, senza sincronizzazione durante la
+ * ricerca, e alla fine le visite dei figli della radice vengono sommate.
+ * Con un solo thread la ricerca gira sul thread chiamante (è il caso dei
+ * controllori degli stati, già eseguiti in parallelo tra loro).
+ */
+public class RicercaMonteCarlo {
+
+    /**
+     * Costante di esplorazione di UCB1.
+     */
+    public static final double ESPLORAZIONE = 1.0;
+
+    /**
+     * Turni simulati per ogni simulazione (albero più partita veloce).
+     */
+    public static final int ORIZZONTE = 8;
+
+    /**
+     * Numero massimo di nodi per albero: oltre non si espande più.
+     */
+    public static final int MAX_NODI = 1 << 20;
+
+    /**
+     * Progressivo per i nomi dei thread.
+     */
+    private static final AtomicInteger NUMERO_GRUPPO = new AtomicInteger();
+
+    /**
+     * Un lavoratore per thread, riusato tra le ricerche.
+     */
+    private final Lavoratore[] lavoratori;
+
+    /**
+     * Thread aggiuntivi (null con un solo lavoratore).
+     */
+    private final ExecutorService esecutore;
+
+    /**
+     * Seme dei flussi casuali.
+     */
+    private final long seme;
+
+    /**
+     * Ricerche eseguite (per derivare semi diversi a ogni ricerca).
+     */
+    private long ricerche;
+
+    /**
+     * Statistiche dell'ultima ricerca.
+     */
+    private long ultimeSimulazioni, ultimaDurataNs;
+
+    /**
+     * Costruttore principale.
+     *
+     * @param numThread numero di lavoratori (1 = sul thread chiamante)
+     * @param seme seme dei flussi casuali
+     */
+    public RicercaMonteCarlo(int numThread, long seme) {
+        int n = Math.max(1, numThread);
+        this.seme = seme;
+        this.lavoratori = new Lavoratore[n];
+        for (int i = 0; i < n; i++) {
+            lavoratori[i] = new Lavoratore();
+        }
+        if (n > 1) {
+            int gruppo = NUMERO_GRUPPO.incrementAndGet();
+            AtomicInteger contatore = new AtomicInteger();
+            this.esecutore = Executors.newFixedThreadPool(n - 1, r -> {
+                Thread t = new Thread(r, "Monte-Carlo-" + gruppo + "-" + contatore.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            this.esecutore = null;
+        }
+    }
+
+    /**
+     * Cerca la mossa migliore per uno stato entro una scadenza.
+     *
+     * @param radice stato di partenza (non viene modificato)
+     * @param giocatore indice dello stato che cerca
+     * @param scadenzaNs istante (System.nanoTime) entro cui rispondere
+     * @return mossa più visitata, oppure StatoSimulazione.PASSA
+     */
+    public synchronized int cerca(StatoSimulazione radice, int giocatore, long scadenzaNs) {
+        long inizio = System.nanoTime();
+        ricerche++;
+        List<Future<?>> aggiuntivi = new ArrayList<>();
+        for (int w = 0; w < lavoratori.length; w++) {
+            lavoratori[w].prepara(radice, giocatore, GeneratoreCasuale.deriva(seme, ricerche * lavoratori.length + w));
+        }
+        for (int w = 1; w < lavoratori.length; w++) {
+            Lavoratore l = lavoratori[w];
+            aggiuntivi.add(esecutore.submit(() -> l.esegui(scadenzaNs)));
+        }
+        lavoratori[0].esegui(scadenzaNs);
+        for (Future<?> f : aggiuntivi) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                System.err.println("Errore nella ricerca Monte Carlo: " + e.getCause());
+            }
+        }
+
+        // Somma delle visite dei figli della radice (stesse mosse, stesso ordine)
+        Lavoratore primo = lavoratori[0];
+        int numFigli = Math.max(0, primo.numFigli[0]);
+        long[] visite = new long[numFigli];
+        long simulazioni = 0;
+        for (Lavoratore l : lavoratori) {
+            simulazioni += l.simulazioni;
+            for (int i = 0; i < Math.min(numFigli, Math.max(0, l.numFigli[0])); i++) {
+                visite[i] += l.visite[l.primoFiglio[0] + i];
+            }
+        }
+        int migliore = StatoSimulazione.PASSA;
+        long piuVisite = -1;
+        for (int i = 0; i < numFigli; i++) {
+            if (visite[i] > piuVisite) {
+                piuVisite = visite[i];
+                migliore = primo.mossa[primo.primoFiglio[0] + i];
+            }
+        }
+        ultimeSimulazioni = simulazioni;
+        ultimaDurataNs = System.nanoTime() - inizio;
+        return migliore;
+    }
+
+    /**
+     * Ferma i thread aggiuntivi.
+     */
+    public void chiudi() {
+        if (esecutore != null) {
+            esecutore.shutdownNow();
+        }
+    }
+
+    /* =========================== STATISTICHE =========================== */
+
+    public int getNumThread() {
+        return lavoratori.length;
+    }
+
+    public long getUltimeSimulazioni() {
+        return ultimeSimulazioni;
+    }
+
+    public long getUltimaDurataNs() {
+        return ultimaDurataNs;
+    }
+
+    /**
+     * Simulazioni al secondo dell'ultima ricerca (tutti i thread insieme).
+     *
+     * @return simulazioni al secondo
+     */
+    public double getSimulazioniAlSecondo() {
+        return ultimaDurataNs > 0 ? ultimeSimulazioni * 1e9 / ultimaDurataNs : 0;
+    }
+
+    /**
+     * Albero e memoria di lavoro di un thread. I nodi sono array paralleli;
+     * i figli di un nodo sono contigui a partire da primoFiglio.
+     */
+    private static final class Lavoratore {
+
+        private int[] mossa = new int[1024];
+        private int[] genitore = new int[1024];
+        private int[] primoFiglio = new int[1024];
+        /** -1 finché il nodo non è stato espanso. */
+        private int[] numFigli = new int[1024];
+        private int[] visite = new int[1024];
+        private double[] valore = new double[1024];
+        private int numNodi;
+
+        private StatoSimulazione radice;
+        private StatoSimulazione lavoro;
+        private int giocatore;
+        private final GeneratoreCasuale casuale = new GeneratoreCasuale(0);
+        private int[] mosse = new int[0];
+        private long simulazioni;
+
+        void prepara(StatoSimulazione radice, int giocatore, long seme) {
+            this.radice = radice;
+            this.giocatore = giocatore;
+            if (lavoro == null || lavoro.getNumRegioni() != radice.getNumRegioni()
+                    || lavoro.getNumStati() != radice.getNumStati()) {
+                lavoro = radice.copia();
+            }
+            if (mosse.length < radice.getMaxMosse()) {
+                mosse = new int[radice.getMaxMosse()];
+            }
+            casuale.imposta(seme);
+            simulazioni = 0;
+            numNodi = 1;
+            mossa[0] = StatoSimulazione.PASSA;
+            genitore[0] = -1;
+            numFigli[0] = -1;
+            visite[0] = 0;
+            valore[0] = 0;
+        }
+
+        void esegui(long scadenzaNs) {
+            do {
+                for (int i = 0; i < 16; i++) {
+                    simula();
+                }
+            } while (System.nanoTime() < scadenzaNs && !Thread.currentThread().isInterrupted());
+        }
+
+        /**
+         * Una simulazione: selezione, espansione, partita veloce, propagazione.
+         */
+        private void simula() {
+            StatoSimulazione sim = lavoro;
+            sim.copiaDa(radice);
+            int nodo = 0;
+            int turni = 0;
+            while (turni < ORIZZONTE && sim.isInGioco(giocatore)) {
+                if (numFigli[nodo] < 0) {
+                    if (nodo != 0 && visite[nodo] == 0) {
+                        break;
+                    }
+                    espandi(nodo, sim);
+                }
+                if (numFigli[nodo] == 0) {
+                    break;
+                }
+                nodo = seleziona(nodo);
+                giocaTurno(sim, mossa[nodo]);
+                turni++;
+                if (visite[nodo] == 0) {
+                    break;
+                }
+            }
+            // Partita veloce fino all'orizzonte
+            for (; turni < ORIZZONTE && sim.isInGioco(giocatore); turni++) {
+                giocaTurno(sim, sim.mossaEuristica(giocatore, casuale, mosse));
+            }
+            double v = sim.valuta(giocatore);
+            for (int n = nodo; n >= 0; n = genitore[n]) {
+                visite[n]++;
+                valore[n] += v;
+            }
+            simulazioni++;
+        }
+
+        /**
+         * Il giocatore fa la sua mossa, gli altri stati la mossa euristica, poi il turno si chiude.
+         */
+        private void giocaTurno(StatoSimulazione sim, int mossaGiocatore) {
+            sim.applica(giocatore, mossaGiocatore, casuale);
+            for (int s = 0; s < sim.getNumStati(); s++) {
+                if (s != giocatore && sim.isInGioco(s)) {
+                    sim.applica(s, sim.mossaEuristica(s, casuale, mosse), casuale);
+                }
+            }
+            sim.avanzaTurno();
+        }
+
+        private void espandi(int nodo, StatoSimulazione sim) {
+            int n = sim.generaMosse(giocatore, mosse);
+            if (numNodi + n > MAX_NODI) {
+                numFigli[nodo] = 0;
+                return;
+            }
+            garantisciCapacita(numNodi + n);
+            primoFiglio[nodo] = numNodi;
+            numFigli[nodo] = n;
+            for (int i = 0; i < n; i++) {
+                int f = numNodi++;
+                mossa[f] = mosse[i];
+                genitore[f] = nodo;
+                numFigli[f] = -1;
+                visite[f] = 0;
+                valore[f] = 0;
+            }
+        }
+
+        /**
+         * Primo figlio mai visitato, altrimenti quello con UCB1 massimo.
+         */
+        private int seleziona(int nodo) {
+            int primo = primoFiglio[nodo];
+            int fine = primo + numFigli[nodo];
+            double logN = Math.log(Math.max(1, visite[nodo]));
+            int migliore = primo;
+            double punteggioMigliore = Double.NEGATIVE_INFINITY;
+            for (int f = primo; f < fine; f++) {
+                if (visite[f] == 0) {
+                    return f;
+                }
+                double punteggio = valore[f] / visite[f] + ESPLORAZIONE * Math.sqrt(logN / visite[f]);
+                if (punteggio > punteggioMigliore) {
+                    punteggioMigliore = punteggio;
+                    migliore = f;
+                }
+            }
+            return migliore;
+        }
+
+        private void garantisciCapacita(int richiesta) {
+            if (richiesta <= mossa.length) {
+                return;
+            }
+            int c = Math.max(richiesta, mossa.length * 2);
+            mossa = Arrays.copyOf(mossa, c);
+            genitore = Arrays.copyOf(genitore, c);
+            primoFiglio = Arrays.copyOf(primoFiglio, c);
+            numFigli = Arrays.copyOf(numFigli, c);
+            visite = Arrays.copyOf(visite, c);
+            valore = Arrays.copyOf(valore, c);
+        }
+    }
+}
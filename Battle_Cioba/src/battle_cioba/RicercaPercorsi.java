@@ -0,0 +1,430 @@
+package battle_cioba;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Servizio di ricerca dei percorsi sulla mappa dei territori.
+ * <p>
+ * Usa A* sugli indici piatti delle celle, con euristica di Manhattan
+ * (4 direzioni) oppure ottile (8 direzioni), e una funzione di costo
+ * intercambiabile (vedi CostoMovimento e ClasseMovimento). La coda aperta è
+ * un heap binario su array primitivo e gli insiemi aperto/chiuso sono array
+ * di "generazioni": invece di azzerarli a ogni ricerca basta incrementare
+ * il contatore di generazione.
+ * <p>
+ * I percorsi trovati finiscono in una cache LRU di dimensione limitata.
+ * Ogni cella ricorda il timbro della sua ultima modifica (terreno o
+ * proprietario): un percorso in cache è valido finché nessuna delle sue
+ * celle è cambiata dopo il calcolo. Un percorso invalidato viene ricalcolato
+ * alla richiesta successiva.
+ */
+public class RicercaPercorsi implements OsservatoreMondo {
+
+    /**
+     * Numero massimo di percorsi in cache.
+     */
+    public static final int CAPACITA_CACHE = 4096;
+
+    /**
+     * Costo relativo (in decimi) di un passo diagonale.
+     */
+    private static final int DIAGONALE_DECIMI = 14;
+
+    /**
+     * Percorso segnaposto per le coppie di celle non collegate.
+     */
+    private static final int[] NESSUNA_CELLA = new int[0];
+
+    /**
+     * true per usare 8 direzioni (euristica ottile), false per 4 (Manhattan).
+     */
+    private final boolean diagonali;
+
+    /**
+     * Righe, colonne e numero di celle della mappa.
+     */
+    private int righe, colonne, numCelle;
+
+    /**
+     * true per le celle marine.
+     */
+    private boolean[] acqua = new boolean[0];
+
+    /**
+     * Profondità media delle celle marine (0 per quelle terrestri).
+     */
+    private int[] profondita = new int[0];
+
+    /**
+     * Indice dello stato proprietario di ogni cella (-1 nessuno).
+     */
+    private int[] proprietario = new int[0];
+
+    /**
+     * Timbro dell'ultima modifica di ogni cella.
+     */
+    private long[] timbroCella = new long[0];
+
+    /**
+     * Timbro corrente (cresce a ogni modifica di una cella).
+     */
+    private long timbro;
+
+    /**
+     * Timbro dell'ultima modifica in qualsiasi cella: i risultati "nessun
+     * percorso" restano validi solo finché la mappa non cambia.
+     */
+    private long timbroUltimaModifica;
+
+    /* ---------- buffer di A*, riusati tra le ricerche ---------- */
+
+    /**
+     * Costo migliore noto dalla partenza (valido se generazioneAperta è corrente).
+     */
+    private int[] costoDa = new int[0];
+
+    /**
+     * Cella precedente sul percorso migliore noto.
+     */
+    private int[] padre = new int[0];
+
+    /**
+     * Generazione in cui la cella è stata raggiunta.
+     */
+    private int[] generazioneAperta = new int[0];
+
+    /**
+     * Generazione in cui la cella è stata chiusa.
+     */
+    private int[] generazioneChiusa = new int[0];
+
+    /**
+     * Generazione della ricerca corrente.
+     */
+    private int generazione;
+
+    /**
+     * Coda aperta di A*.
+     */
+    private final HeapBinario aperti;
+
+    /**
+     * Mondo di riferimento.
+     */
+    private Mondo mondo;
+
+    /**
+     * Cache LRU dei percorsi (ordine di accesso).
+     */
+    private final LinkedHashMap<Chiave, Percorso> cache;
+
+    /**
+     * Statistiche: richieste totali, risposte dalla cache, nodi espansi da A*.
+     */
+    private long richieste, successiCache, nodiEspansi;
+
+    /**
+     * Crea un servizio con movimento in 4 direzioni.
+     */
+    public RicercaPercorsi() {
+        this(false);
+    }
+
+    /**
+     * Costruttore principale.
+     *
+     * @param diagonali true per permettere i passi diagonali
+     */
+    public RicercaPercorsi(boolean diagonali) {
+        this.diagonali = diagonali;
+        this.aperti = new HeapBinario(1024);
+        this.cache = new LinkedHashMap<>(CAPACITA_CACHE * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Chiave, Percorso> piuVecchio) {
+                return size() > CAPACITA_CACHE;
+            }
+        };
+    }
+
+    /**
+     * Legge il terreno e la proprietà di tutte le celle e svuota la cache.
+     *
+     * @param mondo mondo di gioco
+     */
+    public synchronized void inizializza(Mondo mondo) {
+        this.mondo = mondo;
+        this.righe = mondo.getRighe();
+        this.colonne = mondo.getColonne();
+        this.numCelle = righe * colonne;
+        acqua = new boolean[numCelle];
+        profondita = new int[numCelle];
+        proprietario = new int[numCelle];
+        timbroCella = new long[numCelle];
+        costoDa = new int[numCelle];
+        padre = new int[numCelle];
+        generazioneAperta = new int[numCelle];
+        generazioneChiusa = new int[numCelle];
+        generazione = 0;
+        for (int c = 0; c < numCelle; c++) {
+            Territorio t = mondo.getTerritorio(c);
+            if (t != null) {
+                leggiCella(c, t);
+            }
+        }
+        timbroUltimaModifica = ++timbro;
+        cache.clear();
+    }
+
+    /* =========================== RICERCA =========================== */
+
+    /**
+     * Cerca il percorso di costo minimo tra due celle.
+     * La cella di arrivo è sempre accessibile, anche se il suo terreno non lo è:
+     * così si può pianificare l'avvicinamento a un obiettivo (es. una flotta
+     * che attacca una città costiera); sarà chi si muove a fermarsi prima.
+     *
+     * @param da cella di partenza
+     * @param a cella di arrivo
+     * @param costo funzione di costo
+     * @param statoUnita indice dello stato dell'unità (-1 nessuno)
+     * @return percorso trovato, oppure null se le celle non sono collegate
+     */
+    public synchronized Percorso trovaPercorso(int da, int a, CostoMovimento costo, int statoUnita) {
+        if (da < 0 || da >= numCelle || a < 0 || a >= numCelle || costo == null) {
+            return null;
+        }
+        richieste++;
+        Chiave chiave = new Chiave(da, a, costo, statoUnita);
+        Percorso inCache = cache.get(chiave);
+        if (inCache != null) {
+            if (valido(inCache)) {
+                successiCache++;
+                return inCache.getLunghezza() == 0 ? null : inCache;
+            }
+            cache.remove(chiave);
+        }
+
+        Percorso trovato = aStella(da, a, costo, statoUnita);
+        cache.put(chiave, trovato);
+        return trovato.getLunghezza() == 0 ? null : trovato;
+    }
+
+    /**
+     * Indica se il tragitto indicato da un campo di flusso costa per l'unità
+     * quanto il solo terreno, cioè se nessuna cella intermedia ha un
+     * sovrapprezzo di proprietà per il suo stato. In quel caso il tragitto è
+     * anche di costo minimo per trovaPercorso: il campo minimizza il terreno e
+     * il sovrapprezzo non può essere negativo. Partenza e arrivo non contano,
+     * perché sono comuni a tutti i percorsi.
+     *
+     * @param campo campo di flusso (della stessa funzione di costo)
+     * @param da cella di partenza
+     * @param statoUnita indice dello stato dell'unità (-1 nessuno)
+     * @return true se il tragitto del campo raggiunge l'obiettivo senza sovrapprezzi
+     */
+    public synchronized boolean isSenzaSovrapprezzo(CampoDiFlusso campo, int da, int statoUnita) {
+        if (campo == null || da < 0 || da >= numCelle) {
+            return false;
+        }
+        CostoMovimento costo = campo.getCostoMovimento();
+        int c = campo.prossimaCella(da);
+        for (int passi = 0; c >= 0 && c != campo.getObiettivo(); passi++) {
+            if (passi >= numCelle || costo.costoCella(acqua[c], profondita[c], proprietario[c], statoUnita)
+                    != costo.costoCella(acqua[c], profondita[c], -1, -1)) {
+                return false;
+            }
+            c = campo.prossimaCella(c);
+        }
+        return c == campo.getObiettivo();
+    }
+
+    /**
+     * Esegue A* e restituisce il percorso (vuoto se l'arrivo non è raggiungibile).
+     */
+    private Percorso aStella(int da, int a, CostoMovimento costo, int statoUnita) {
+        if (++generazione == Integer.MAX_VALUE) {
+            Arrays.fill(generazioneAperta, 0);
+            Arrays.fill(generazioneChiusa, 0);
+            generazione = 1;
+        }
+        int gen = generazione;
+        int minimo = Math.max(1, costo.costoMinimo());
+        int ra = a / colonne, ca = a % colonne;
+
+        aperti.svuota();
+        costoDa[da] = 0;
+        padre[da] = -1;
+        generazioneAperta[da] = gen;
+        aperti.inserisci(da, euristica(da / colonne, da % colonne, ra, ca, minimo));
+
+        while (!aperti.isVuoto()) {
+            int c = aperti.estrai();
+            if (generazioneChiusa[c] == gen) {
+                continue; // copia obsoleta nell'heap
+            }
+            generazioneChiusa[c] = gen;
+            nodiEspansi++;
+            if (c == a) {
+                return ricostruisci(da, a);
+            }
+            int r = c / colonne, col = c % colonne;
+            for (int dr = -1; dr <= 1; dr++) {
+                for (int dc = -1; dc <= 1; dc++) {
+                    boolean diagonale = dr != 0 && dc != 0;
+                    if ((dr == 0 && dc == 0) || (diagonale && !diagonali)) {
+                        continue;
+                    }
+                    int nr = r + dr, nc = col + dc;
+                    if (nr < 0 || nr >= righe || nc < 0 || nc >= colonne) {
+                        continue;
+                    }
+                    int n = nr * colonne + nc;
+                    if (generazioneChiusa[n] == gen) {
+                        continue;
+                    }
+                    int passo = costo.costoCella(acqua[n], profondita[n], proprietario[n], statoUnita);
+                    if (passo < 0) {
+                        if (n != a) {
+                            continue;
+                        }
+                        passo = minimo;
+                    }
+                    if (diagonale) {
+                        passo = passo * DIAGONALE_DECIMI / 10;
+                    }
+                    int nuovoCosto = costoDa[c] + passo;
+                    if (generazioneAperta[n] != gen || nuovoCosto < costoDa[n]) {
+                        generazioneAperta[n] = gen;
+                        costoDa[n] = nuovoCosto;
+                        padre[n] = c;
+                        aperti.inserisci(n, nuovoCosto + euristica(nr, nc, ra, ca, minimo));
+                    }
+                }
+            }
+        }
+        return new Percorso(NESSUNA_CELLA, -1, timbro);
+    }
+
+    /**
+     * Stima ammissibile del costo residuo.
+     */
+    private int euristica(int r, int c, int ra, int ca, int minimo) {
+        int dr = Math.abs(r - ra), dc = Math.abs(c - ca);
+        if (!diagonali) {
+            return (dr + dc) * minimo;
+        }
+        int lungo = Math.max(dr, dc), corto = Math.min(dr, dc);
+        return (lungo * 10 + corto * (DIAGONALE_DECIMI - 10)) * minimo / 10;
+    }
+
+    private Percorso ricostruisci(int da, int a) {
+        int lunghezza = 1;
+        for (int c = a; c != da; c = padre[c]) {
+            lunghezza++;
+        }
+        int[] celle = new int[lunghezza];
+        int i = lunghezza - 1;
+        for (int c = a; c != da; c = padre[c]) {
+            celle[i--] = c;
+        }
+        celle[0] = da;
+        return new Percorso(celle, costoDa[a], timbro);
+    }
+
+    /* =========================== CACHE E NOTIFICHE =========================== */
+
+    /**
+     * Un percorso è valido se nessuna delle sue celle è cambiata dopo il calcolo.
+     * Per i risultati "nessun percorso" conta qualsiasi modifica della mappa.
+     */
+    private boolean valido(Percorso p) {
+        if (p.getLunghezza() == 0) {
+            return p.getTimbro() >= timbroUltimaModifica;
+        }
+        long t = p.getTimbro();
+        for (int i = 0; i < p.getLunghezza(); i++) {
+            if (timbroCella[p.getCella(i)] > t) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void territorioModificato(Territorio territorio) {
+        int c = territorio.getIndiceCella();
+        if (mondo == null || c < 0 || c >= numCelle) {
+            return;
+        }
+        boolean vecchioAcqua = acqua[c];
+        int vecchiaProfondita = profondita[c], vecchioProprietario = proprietario[c];
+        leggiCella(c, territorio);
+        if (acqua[c] != vecchioAcqua || profondita[c] != vecchiaProfondita
+                || proprietario[c] != vecchioProprietario) {
+            timbroCella[c] = ++timbro;
+            timbroUltimaModifica = timbro;
+        }
+    }
+
+    private void leggiCella(int c, Territorio t) {
+        acqua[c] = t.isAcqua();
+        profondita[c] = t instanceof TerritorioMarino ? ((TerritorioMarino) t).getProfonditaMedia() : 0;
+        proprietario[c] = mondo.indiceStato(t.getStatoPadrone());
+    }
+
+    /**
+     * Chiave della cache: estremi, funzione di costo (per identità) e stato dell'unità.
+     */
+    private static final class Chiave {
+
+        final int da;
+        final int a;
+        final CostoMovimento costo;
+        final int statoUnita;
+
+        Chiave(int da, int a, CostoMovimento costo, int statoUnita) {
+            this.da = da;
+            this.a = a;
+            this.costo = costo;
+            this.statoUnita = statoUnita;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Chiave)) {
+                return false;
+            }
+            Chiave k = (Chiave) o;
+            return da == k.da && a == k.a && costo == k.costo && statoUnita == k.statoUnita;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((da * 31 + a) * 31 + System.identityHashCode(costo)) * 31 + statoUnita;
+        }
+    }
+
+    public boolean isDiagonali() {
+        return diagonali;
+    }
+
+    /* =========================== STATISTICHE =========================== */
+
+    public synchronized long getRichieste() {
+        return richieste;
+    }
+
+    public synchronized long getSuccessiCache() {
+        return successiCache;
+    }
+
+    public synchronized long getNodiEspansi() {
+        return nodiEspansi;
+    }
+
+    public synchronized int getDimensioneCache() {
+        return cache.size();
+    }
+}
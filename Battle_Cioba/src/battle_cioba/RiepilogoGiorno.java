@@ -0,0 +1,136 @@
+package battle_cioba;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Riepilogo immutabile di un giorno di simulazione.
+ * Viene creato dal thread di simulazione e consegnato alla GUI,
+ * che può leggerlo senza sincronizzazione.
+ */
+public final class RiepilogoGiorno {
+
+    /**
+     * Giorno a cui si riferisce il riepilogo.
+     */
+    private final long giorno;
+
+    /**
+     * Nomi delle fasi eseguite, nello stesso ordine delle durate.
+     */
+    private final List<String> nomiFasi;
+
+    /**
+     * Durata di ogni fase in nanosecondi.
+     */
+    private final long[] durateFasi;
+
+    /**
+     * Durata complessiva del giorno in nanosecondi.
+     */
+    private final long durataTotale;
+
+    /**
+     * Moltiplicatore del tempo attivo quando il giorno è stato eseguito.
+     */
+    private final double moltiplicatore;
+
+    /**
+     * Giorni scartati finora dalla politica di recupero limitato.
+     */
+    private final long giorniScartati;
+
+    /**
+     * Indicatori esposti dalle fasi (nome → valore).
+     */
+    private final Map<String, Long> indicatori;
+
+    /**
+     * Costruttore principale.
+     *
+     * @param giorno giorno eseguito
+     * @param nomiFasi nomi delle fasi (lista non modificabile)
+     * @param durateFasi durate delle fasi in nanosecondi (viene copiato)
+     * @param moltiplicatore moltiplicatore del tempo
+     * @param giorniScartati giorni scartati finora
+     * @param indicatori indicatori delle fasi (viene copiato)
+     */
+    public RiepilogoGiorno(long giorno, List<String> nomiFasi, long[] durateFasi,
+                           double moltiplicatore, long giorniScartati, Map<String, Long> indicatori) {
+        this.giorno = giorno;
+        this.nomiFasi = nomiFasi;
+        this.durateFasi = durateFasi.clone();
+        long totale = 0;
+        for (long durata : durateFasi) {
+            totale += durata;
+        }
+        this.durataTotale = totale;
+        this.moltiplicatore = moltiplicatore;
+        this.giorniScartati = giorniScartati;
+        this.indicatori = Collections.unmodifiableMap(new LinkedHashMap<>(indicatori));
+    }
+
+    public long getGiorno() {
+        return giorno;
+    }
+
+    public List<String> getNomiFasi() {
+        return nomiFasi;
+    }
+
+    public int getNumeroFasi() {
+        return durateFasi.length;
+    }
+
+    /**
+     * Restituisce la durata di una fase.
+     *
+     * @param indice indice della fase
+     * @return durata in nanosecondi
+     */
+    public long getDurataFase(int indice) {
+        return durateFasi[indice];
+    }
+
+    public long getDurataTotale() {
+        return durataTotale;
+    }
+
+    public double getMoltiplicatore() {
+        return moltiplicatore;
+    }
+
+    public long getGiorniScartati() {
+        return giorniScartati;
+    }
+
+    public Map<String, Long> getIndicatori() {
+        return indicatori;
+    }
+
+    /**
+     * Restituisce un indicatore o 0 se non presente.
+     *
+     * @param nome nome dell'indicatore
+     * @return valore dell'indicatore
+     */
+    public long getIndicatore(String nome) {
+        Long valore = indicatori.get(nome);
+        return valore != null ? valore : 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Giorno ").append(giorno)
+          .append(" (x").append(moltiplicatore).append(")")
+          .append(" | Totale: ").append(durataTotale / 1000).append(" µs");
+        for (int i = 0; i < durateFasi.length; i++) {
+            sb.append(" | ").append(nomiFasi.get(i)).append(": ")
+              .append(durateFasi[i] / 1000).append(" µs");
+        }
+        return sb.toString();
+    }
+}
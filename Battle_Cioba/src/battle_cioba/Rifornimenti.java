@@ -0,0 +1,491 @@
+package battle_cioba;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Linee di rifornimento degli stati.
+ * Una cella è rifornita per uno stato se si raggiunge entro
+ * RAGGIO_RIFORNIMENTO passi da una delle sue basi camminando su celle
+ * terrestri sue o dei suoi alleati; sono rifornite anche le celle appena
+ * oltre il confine di quella zona, dove si trovano le unità all'attacco.
+ * Sono basi le celle con un centro BaseMilitare e quelle in cui il
+ * generatore ha segnato delle basi (countBasiMilitari).
+ * <p>
+ * Per ogni stato si tiene solo un insieme di bit con le celle rifornite.
+ * Quando una cella cambia proprietario o una base nasce o scompare, un
+ * percorso di rifornimento che passa per quella cella è lungo al massimo
+ * RAGGIO_RIFORNIMENTO + 1, quindi possono cambiare solo le celle entro
+ * quella distanza: si cancellano e si ricalcolano con una BFS dalle sole
+ * basi abbastanza vicine. Le modifiche del giorno si accumulano e vengono
+ * applicate insieme; se sono troppe si ricalcola tutto.
+ * <p>
+ * Le unità terrestri che si trovano su una cella non rifornita perdono
+ * ogni giorno una parte delle truppe e del morale.
+ */
+public class Rifornimenti implements FaseSimulazione, OsservatoreMondo {
+
+    /**
+     * Passi massimi tra una base e una cella rifornita.
+     */
+    public static final int RAGGIO_RIFORNIMENTO = 10;
+
+    /**
+     * Truppe perse ogni giorno senza rifornimenti (per mille).
+     */
+    public static final int LOGORAMENTO_PER_MILLE = 20;
+
+    /**
+     * Morale perso ogni giorno senza rifornimenti.
+     */
+    public static final int MORALE_LOGORAMENTO = 3;
+
+    /**
+     * Distanza entro cui una base può rifornire una cella modificata e le
+     * celle che ne dipendono.
+     */
+    private static final int RAGGIO_BASI = 2 * RAGGIO_RIFORNIMENTO + 2;
+
+    /**
+     * Archivio degli eserciti (può essere null: nessun logoramento).
+     */
+    private final Eserciti eserciti;
+
+    /**
+     * Relazioni diplomatiche (può essere null: nessuna alleanza).
+     */
+    private final Diplomazia diplomazia;
+
+    /**
+     * Mondo di riferimento.
+     */
+    private Mondo mondo;
+
+    private int righe, colonne;
+
+    /**
+     * Indice dello stato proprietario di ogni cella terrestre (-1 nessuno o acqua).
+     */
+    private int[] proprietario = new int[0];
+
+    private boolean[] acqua = new boolean[0];
+
+    /**
+     * Celle con una base.
+     */
+    private boolean[] base = new boolean[0];
+
+    /**
+     * Celle rifornite, un insieme di bit per stato (null se lo stato non ne ha).
+     */
+    private long[][] rifornite = new long[0][];
+
+    /**
+     * Blocco di alleanza di ogni stato all'ultimo controllo.
+     */
+    private int[] bloccoVisto = new int[0];
+
+    /**
+     * Celle modificate da riparare.
+     */
+    private boolean[] cambiata = new boolean[0];
+    private int[] celleCambiate = new int[16];
+    private int numCambiate;
+
+    /**
+     * Indica che tutti i campi vanno ricalcolati.
+     */
+    private boolean ricalcoloTotale = true;
+
+    /**
+     * Lavoro della BFS: generazione di visita e distanza per cella, coda.
+     */
+    private int[] visita = new int[0], distanza = new int[0], coda = new int[0];
+    private int generazione;
+
+    /**
+     * Stati amici (lo stato stesso e i suoi alleati) per la BFS in corso.
+     */
+    private boolean[] amico = new boolean[0];
+
+    /**
+     * Basi trovate vicino a una cella modificata (riusato).
+     */
+    private int[] basiVicine = new int[16];
+
+    /**
+     * Statistiche.
+     */
+    private long riparazioni, ricalcoliTotali, unitaSenzaRifornimenti, truppePerse;
+
+    /**
+     * Costruttore principale.
+     *
+     * @param eserciti archivio degli eserciti (può essere null)
+     * @param diplomazia relazioni diplomatiche (può essere null)
+     */
+    public Rifornimenti(Eserciti eserciti, Diplomazia diplomazia) {
+        this.eserciti = eserciti;
+        this.diplomazia = diplomazia;
+    }
+
+    /**
+     * Legge proprietari e basi e calcola tutti i campi.
+     *
+     * @param mondo mondo di gioco
+     */
+    public void inizializza(Mondo mondo) {
+        this.mondo = mondo;
+        righe = mondo.getRighe();
+        colonne = mondo.getColonne();
+        int n = righe * colonne;
+        proprietario = new int[n];
+        acqua = new boolean[n];
+        base = new boolean[n];
+        cambiata = new boolean[n];
+        visita = new int[n];
+        distanza = new int[n];
+        coda = new int[n];
+        numCambiate = 0;
+        for (int c = 0; c < n; c++) {
+            Territorio t = mondo.getTerritorio(c);
+            acqua[c] = t == null || t.isAcqua();
+            proprietario[c] = acqua[c] ? -1 : mondo.indiceStato(t.getStatoPadrone());
+            base[c] = !acqua[c] && isBase(t);
+        }
+        ricalcolaTutto();
+    }
+
+    private static boolean isBase(Territorio t) {
+        return t.getCentro() instanceof BaseMilitare || t.getCountBasiMilitari() > 0;
+    }
+
+    /* =========================== INTERROGAZIONI =========================== */
+
+    /**
+     * Indica se una cella è rifornita per uno stato.
+     *
+     * @param stato indice dello stato
+     * @param cella indice di cella
+     * @return true se la cella è rifornita
+     */
+    public boolean isRifornita(int stato, int cella) {
+        applicaModifiche();
+        if (stato < 0 || stato >= rifornite.length || rifornite[stato] == null
+                || cella < 0 || cella >= proprietario.length) {
+            return false;
+        }
+        return (rifornite[stato][cella >>> 6] & 1L << cella) != 0;
+    }
+
+    /**
+     * Numero di celle rifornite per uno stato.
+     *
+     * @param stato indice dello stato
+     * @return celle rifornite
+     */
+    public int getNumRifornite(int stato) {
+        applicaModifiche();
+        if (stato < 0 || stato >= rifornite.length || rifornite[stato] == null) {
+            return 0;
+        }
+        int totale = 0;
+        for (long parola : rifornite[stato]) {
+            totale += Long.bitCount(parola);
+        }
+        return totale;
+    }
+
+    /* =========================== CALCOLO DEI CAMPI =========================== */
+
+    /**
+     * Ricalcola i campi di tutti gli stati con una BFS per stato dalle sue basi.
+     */
+    private void ricalcolaTutto() {
+        int numStati = mondo.getCapacitaStati();
+        rifornite = new long[numStati][];
+        bloccoVisto = new int[numStati];
+        amico = new boolean[numStati];
+        for (int s = 0; s < numStati; s++) {
+            bloccoVisto[s] = diplomazia != null ? diplomazia.getBlocco(s) : -1;
+        }
+        // Basi raggruppate per stato: un passaggio sulla mappa, poi una BFS per stato
+        int[] numBasi = new int[numStati + 1];
+        for (int c = 0; c < base.length; c++) {
+            if (base[c] && proprietario[c] >= 0 && proprietario[c] < numStati) {
+                numBasi[proprietario[c] + 1]++;
+            }
+        }
+        for (int s = 0; s < numStati; s++) {
+            numBasi[s + 1] += numBasi[s];
+        }
+        int[] basi = new int[numBasi[numStati]];
+        int[] riempite = Arrays.copyOf(numBasi, numStati);
+        for (int c = 0; c < base.length; c++) {
+            if (base[c] && proprietario[c] >= 0 && proprietario[c] < numStati) {
+                basi[riempite[proprietario[c]]++] = c;
+            }
+        }
+        for (int s = 0; s < numStati; s++) {
+            if (numBasi[s + 1] > numBasi[s]) {
+                rifornite[s] = new long[(base.length + 63) >>> 6];
+                espandi(s, basi, numBasi[s], numBasi[s + 1]);
+            }
+        }
+        Arrays.fill(cambiata, false);
+        numCambiate = 0;
+        ricalcoloTotale = false;
+        ricalcoliTotali++;
+    }
+
+    /**
+     * Ripara i campi intorno alle celle modificate, o ricalcola tutto se
+     * le zone da riparare coprirebbero più della mappa.
+     */
+    private void applicaModifiche() {
+        if (mondo == null) {
+            return;
+        }
+        if (ricalcoloTotale || mondo.getCapacitaStati() > rifornite.length
+                || (long) numCambiate * 2 * RAGGIO_BASI * RAGGIO_BASI > proprietario.length) {
+            ricalcolaTutto();
+            return;
+        }
+        for (int i = 0; i < numCambiate; i++) {
+            int c = celleCambiate[i];
+            cambiata[c] = false;
+            ripara(c);
+        }
+        numCambiate = 0;
+    }
+
+    /**
+     * Ricalcola le celle entro RAGGIO_RIFORNIMENTO + 1 da una cella
+     * modificata per gli stati che hanno basi abbastanza vicine.
+     */
+    private void ripara(int cella) {
+        int numBasi = 0;
+        int r0 = cella / colonne, c0 = cella % colonne;
+        for (int r = Math.max(0, r0 - RAGGIO_BASI); r <= Math.min(righe - 1, r0 + RAGGIO_BASI); r++) {
+            int resto = RAGGIO_BASI - Math.abs(r - r0);
+            for (int c = Math.max(0, c0 - resto); c <= Math.min(colonne - 1, c0 + resto); c++) {
+                int v = r * colonne + c;
+                if (base[v] && proprietario[v] >= 0) {
+                    if (numBasi == basiVicine.length) {
+                        basiVicine = Arrays.copyOf(basiVicine, numBasi * 2);
+                    }
+                    basiVicine[numBasi++] = v;
+                }
+            }
+        }
+        // Le basi vengono ordinate per stato, così ogni stato ha un intervallo contiguo
+        ordinaPerStato(basiVicine, numBasi);
+
+        // Ogni cella della zona era rifornita da basi entro RAGGIO_BASI: si cancella
+        // la zona per tutti gli stati e la si ricostruisce dalle sole basi vicine
+        for (int s = 0; s < rifornite.length; s++) {
+            if (rifornite[s] != null) {
+                cancellaZona(s, r0, c0);
+            }
+        }
+        int inizio = 0;
+        while (inizio < numBasi) {
+            int s = proprietario[basiVicine[inizio]];
+            int fine = inizio;
+            while (fine < numBasi && proprietario[basiVicine[fine]] == s) {
+                fine++;
+            }
+            if (rifornite[s] == null) {
+                rifornite[s] = new long[(base.length + 63) >>> 6];
+            }
+            espandi(s, basiVicine, inizio, fine);
+            inizio = fine;
+        }
+        riparazioni++;
+    }
+
+    private void ordinaPerStato(int[] basi, int n) {
+        // Insertion sort: le basi vicine a una cella sono poche
+        for (int i = 1; i < n; i++) {
+            int b = basi[i];
+            int j = i - 1;
+            while (j >= 0 && proprietario[basi[j]] > proprietario[b]) {
+                basi[j + 1] = basi[j];
+                j--;
+            }
+            basi[j + 1] = b;
+        }
+    }
+
+    /**
+     * Cancella i bit di uno stato entro RAGGIO_RIFORNIMENTO + 1 da una cella.
+     */
+    private void cancellaZona(int s, int r0, int c0) {
+        long[] bit = rifornite[s];
+        int raggio = RAGGIO_RIFORNIMENTO + 1;
+        for (int r = Math.max(0, r0 - raggio); r <= Math.min(righe - 1, r0 + raggio); r++) {
+            int resto = raggio - Math.abs(r - r0);
+            for (int c = Math.max(0, c0 - resto); c <= Math.min(colonne - 1, c0 + resto); c++) {
+                int v = r * colonne + c;
+                bit[v >>> 6] &= ~(1L << v);
+            }
+        }
+    }
+
+    /**
+     * BFS dalle basi[da, a) di uno stato: segna le celle amiche entro
+     * RAGGIO_RIFORNIMENTO passi e le celle terrestri che le toccano.
+     */
+    private void espandi(int s, int[] basi, int da, int a) {
+        long[] bit = rifornite[s];
+        for (int t = 0; t < amico.length; t++) {
+            amico[t] = t == s || (diplomazia != null && bloccoVisto[s] >= 0 && bloccoVisto[t] == bloccoVisto[s]);
+        }
+        if (++generazione == 0) {
+            Arrays.fill(visita, 0);
+            generazione = 1;
+        }
+        int testa = 0, numCoda = 0;
+        for (int i = da; i < a; i++) {
+            int b = basi[i];
+            if (visita[b] != generazione) {
+                visita[b] = generazione;
+                distanza[b] = 0;
+                coda[numCoda++] = b;
+            }
+        }
+        while (testa < numCoda) {
+            int u = coda[testa++];
+            bit[u >>> 6] |= 1L << u;
+            int riga = u / colonne, col = u % colonne;
+            for (int k = 0; k < 4; k++) {
+                int v;
+                if (k == 0) v = riga > 0 ? u - colonne : -1;
+                else if (k == 1) v = riga + 1 < righe ? u + colonne : -1;
+                else if (k == 2) v = col > 0 ? u - 1 : -1;
+                else v = col + 1 < colonne ? u + 1 : -1;
+                if (v < 0 || visita[v] == generazione || acqua[v]) {
+                    continue;
+                }
+                visita[v] = generazione;
+                int p = proprietario[v];
+                if (p >= 0 && p < amico.length && amico[p] && distanza[u] < RAGGIO_RIFORNIMENTO) {
+                    distanza[v] = distanza[u] + 1;
+                    coda[numCoda++] = v;
+                } else {
+                    // Cella oltre il confine o oltre il raggio: rifornita, ma non si prosegue
+                    bit[v >>> 6] |= 1L << v;
+                }
+            }
+        }
+    }
+
+    private void segna(int cella) {
+        if (cambiata[cella]) {
+            return;
+        }
+        cambiata[cella] = true;
+        if (numCambiate == celleCambiate.length) {
+            celleCambiate = Arrays.copyOf(celleCambiate, numCambiate * 2);
+        }
+        celleCambiate[numCambiate++] = cella;
+    }
+
+    /* =========================== FASE DEL GIORNO =========================== */
+
+    @Override
+    public String getNome() {
+        return "Rifornimenti";
+    }
+
+    @Override
+    public void esegui(Mondo mondo, long giorno) {
+        if (this.mondo != mondo || proprietario.length != mondo.getRighe() * mondo.getColonne()) {
+            inizializza(mondo);
+        }
+        // Un'alleanza nata o sciolta cambia le celle percorribili ovunque
+        if (diplomazia != null) {
+            for (int s = 0; s < bloccoVisto.length; s++) {
+                if (diplomazia.getBlocco(s) != bloccoVisto[s]) {
+                    ricalcoloTotale = true;
+                    break;
+                }
+            }
+        }
+        applicaModifiche();
+
+        unitaSenzaRifornimenti = 0;
+        truppePerse = 0;
+        if (eserciti == null) {
+            return;
+        }
+        int limite = eserciti.getLimiteIndici();
+        for (int u = 0; u < limite; u++) {
+            if (!eserciti.isAttiva(u)) {
+                continue;
+            }
+            ClasseMovimento classe = eserciti.getTipo(u).getClasseMovimento();
+            int c = eserciti.getCella(u);
+            if ((classe != ClasseMovimento.TERRESTRE && classe != ClasseMovimento.ANFIBIO)
+                    || c < 0 || c >= acqua.length || acqua[c] || isRifornita(eserciti.getStato(u), c)) {
+                continue;
+            }
+            int perdite = Math.max(1, (int) ((long) eserciti.getForza(u) * LOGORAMENTO_PER_MILLE / 1000));
+            unitaSenzaRifornimenti++;
+            truppePerse += perdite;
+            eserciti.applicaLogoramento(u, perdite, MORALE_LOGORAMENTO);
+        }
+    }
+
+    @Override
+    public void riepiloga(Map<String, Long> indicatori) {
+        indicatori.put("unita_senza_rifornimenti", unitaSenzaRifornimenti);
+        indicatori.put("truppe_perse_logoramento", truppePerse);
+    }
+
+    /* =========================== OSSERVATORE =========================== */
+
+    @Override
+    public void territorioModificato(Territorio territorio) {
+        aggiornaCella(territorio);
+    }
+
+    @Override
+    public void centroImpostato(Territorio territorio, Centro vecchio, Centro nuovo) {
+        aggiornaCella(territorio);
+    }
+
+    @Override
+    public void territorioTrasferito(Territorio territorio, Stato vecchio, Stato nuovo) {
+        aggiornaCella(territorio);
+    }
+
+    /**
+     * Confronta proprietario, acqua e base con i valori noti e segna la cella se cambiano.
+     */
+    private void aggiornaCella(Territorio t) {
+        int c = t.getIndiceCella();
+        if (mondo == null || c < 0 || c >= proprietario.length) {
+            return;
+        }
+        boolean nuovaAcqua = t.isAcqua();
+        int nuovoProprietario = nuovaAcqua ? -1 : mondo.indiceStato(t.getStatoPadrone());
+        boolean nuovaBase = !nuovaAcqua && isBase(t);
+        if (nuovaAcqua != acqua[c] || nuovoProprietario != proprietario[c] || nuovaBase != base[c]) {
+            acqua[c] = nuovaAcqua;
+            proprietario[c] = nuovoProprietario;
+            base[c] = nuovaBase;
+            segna(c);
+        }
+    }
+
+    /* =========================== STATISTICHE =========================== */
+
+    public long getRiparazioni() {
+        return riparazioni;
+    }
+
+    public long getRicalcoliTotali() {
+        return ricalcoliTotali;
+    }
+}
@@ -0,0 +1,192 @@
+package battle_cioba;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Esecuzione senza interfaccia di partite registrate, alla massima velocità
+ * del processore, per i test di regressione e di prestazioni.
+ * <p>
+ * Uso:
+ * <pre>
+ * java battle_cioba.RiproduzionePartita registra file giorni [mappa] [stati] [seme] [livello]
+ * java battle_cioba.RiproduzionePartita riproduci file
+ * </pre>
+ * "registra" genera un mondo dal seme, lo affida tutto all'intelligenza
+ * artificiale e registra i giorni giocati; "riproduci" rigenera lo stesso
+ * mondo e riapplica i comandi registrati al posto dei controllori. Entrambi
+ * riportano giorni al secondo, tempo medio di ogni fase e impronta finale;
+ * la riproduzione confronta anche impronta e carte di ogni giorno con la
+ * registrazione e segnala il primo giorno diverso.
+ */
+public final class RiproduzionePartita {
+
+    /**
+     * Mappa, numero di stati e livello predefiniti per la registrazione.
+     */
+    public static final String MAPPA = "mondoT.csv";
+    public static final int STATI = 6;
+    public static final LivelloDifficolta LIVELLO = LivelloDifficolta.NORMALE;
+
+    /**
+     * Partita in esecuzione.
+     */
+    private final Partita partita;
+
+    /**
+     * Tempo totale di ogni fase per nome, nell'ordine delle fasi.
+     */
+    private final Map<String, Long> tempiFasi = new LinkedHashMap<>();
+
+    /**
+     * Carte giocate nel giorno in corso, come "nome@stato".
+     */
+    private final List<String> carteGiorno = new ArrayList<>();
+
+    private long giorni, nanosTotali;
+
+    private RiproduzionePartita(Partita partita) {
+        this.partita = partita;
+        partita.getEventi().aggiungiOsservatore(new OsservatoreComandi() {
+            @Override
+            public void cartaGiocata(CartaImprevisto carta, Stato stato) {
+                carteGiorno.add(carta.getNome() + "@" + stato.getIndice());
+            }
+        });
+    }
+
+    /**
+     * Genera mondo e partita come descritto da un'intestazione.
+     * I messaggi di generazione del mondo vengono soppressi.
+     *
+     * @param intestazione semi, mappa e numero di stati
+     * @return partita con i sistemi inizializzati
+     * @throws IOException se la mappa non si può leggere
+     */
+    public static Partita creaPartita(RegistrazionePartita.Intestazione intestazione) throws IOException {
+        Mondo mondo = new Mondo(intestazione.semeMondo);
+        mondo.setMessaggi(new PrintStream(OutputStream.nullOutputStream()));
+        mondo.generaTerritori(intestazione.mappa);
+        mondo.generaStati(intestazione.numStati);
+        mondo.setMessaggi(null);
+        Partita partita = new Partita(mondo, intestazione.semePartita);
+        partita.inizializzaSistemi();
+        return partita;
+    }
+
+    /**
+     * Esegue un giorno e ne accumula i tempi.
+     */
+    private RiepilogoGiorno eseguiGiorno() {
+        carteGiorno.clear();
+        long inizio = System.nanoTime();
+        RiepilogoGiorno riepilogo = partita.getMotore().eseguiGiorno();
+        nanosTotali += System.nanoTime() - inizio;
+        giorni++;
+        for (int i = 0; i < riepilogo.getNumeroFasi(); i++) {
+            tempiFasi.merge(riepilogo.getNomiFasi().get(i), riepilogo.getDurataFase(i), Long::sum);
+        }
+        return riepilogo;
+    }
+
+    /**
+     * Registra una partita giocata dall'intelligenza artificiale.
+     */
+    private static void registra(String file, int numGiorni, RegistrazionePartita.Intestazione intestazione,
+            LivelloDifficolta livello) throws IOException {
+        Partita partita = creaPartita(intestazione);
+        partita.getIntelligenza().assegnaTutti(livello);
+        RiproduzionePartita esecuzione = new RiproduzionePartita(partita);
+        try (RegistrazionePartita registrazione = RegistrazionePartita.avvia(file, partita, intestazione)) {
+            for (int g = 0; g < numGiorni; g++) {
+                esecuzione.eseguiGiorno();
+            }
+            esecuzione.stampaRapporto("Registrazione");
+            System.out.println("File: " + file + " (" + registrazione.getByteScritti() + " byte, "
+                    + registrazione.getGiorniScritti() + " giorni)");
+        }
+    }
+
+    /**
+     * Riproduce una registrazione e confronta impronte e carte giorno per giorno.
+     *
+     * @return true se la riproduzione coincide con la registrazione
+     */
+    private static boolean riproduci(String file) throws IOException {
+        try (DataInputStream ingresso = RegistrazionePartita.apri(file)) {
+            RegistrazionePartita.Intestazione intestazione = RegistrazionePartita.leggiIntestazione(ingresso);
+            Partita partita = creaPartita(intestazione);
+            RiproduzionePartita esecuzione = new RiproduzionePartita(partita);
+            long primaDivergenza = -1, divergenze = 0, improntaRegistrata = 0;
+            RegistrazionePartita.Giorno g;
+            while ((g = RegistrazionePartita.leggiGiorno(ingresso)) != null) {
+                Mondo mondo = partita.getMondo();
+                for (int[] scelta : g.scelte) {
+                    Stato stato = mondo.getStatoPerIndice(scelta[0]);
+                    if (stato != null) {
+                        partita.getPolitica().proponi(stato, SceltaPolitica.daOrdinale(scelta[1]));
+                    }
+                }
+                partita.getIntelligenza().riproduci(g.comandi);
+                RiepilogoGiorno riepilogo = esecuzione.eseguiGiorno();
+                improntaRegistrata = g.impronta;
+                if (riepilogo.getGiorno() != g.giorno || partita.calcolaImpronta() != g.impronta
+                        || !esecuzione.carteGiorno.equals(g.carte)) {
+                    divergenze++;
+                    if (primaDivergenza < 0) {
+                        primaDivergenza = g.giorno;
+                    }
+                }
+            }
+            esecuzione.stampaRapporto("Riproduzione");
+            System.out.printf("Impronta registrata: %016x%n", improntaRegistrata);
+            if (primaDivergenza < 0) {
+                System.out.println("Nessuna divergenza");
+            } else {
+                System.out.println("DIVERGENZA dal giorno " + primaDivergenza + " (" + divergenze + " giorni diversi)");
+            }
+            return primaDivergenza < 0;
+        }
+    }
+
+    private void stampaRapporto(String titolo) {
+        double secondi = nanosTotali / 1e9;
+        System.out.printf("%s: %d giorni in %.3f s, %.1f giorni/s%n", titolo, giorni, secondi,
+                secondi > 0 ? giorni / secondi : 0.0);
+        for (Map.Entry<String, Long> fase : tempiFasi.entrySet()) {
+            System.out.printf("  %-28s %10.1f µs/giorno %5.1f%%%n", fase.getKey(),
+                    fase.getValue() / 1000.0 / Math.max(1, giorni),
+                    nanosTotali > 0 ? fase.getValue() * 100.0 / nanosTotali : 0.0);
+        }
+        System.out.printf("Impronta finale: %016x%n", partita.calcolaImpronta());
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("registra")) {
+            String mappa = args.length > 3 ? args[3] : MAPPA;
+            int stati = args.length > 4 ? Integer.parseInt(args[4]) : STATI;
+            long seme = args.length > 5 ? Long.parseLong(args[5]) : System.nanoTime();
+            LivelloDifficolta livello = args.length > 6 ? LivelloDifficolta.valueOf(args[6]) : LIVELLO;
+            registra(args[1], Integer.parseInt(args[2]),
+                    new RegistrazionePartita.Intestazione(seme, GeneratoreCasuale.deriva(seme, 0), stati, mappa),
+                    livello);
+        } else if (args.length == 2 && args[0].equals("riproduci")) {
+            boolean uguale = riproduci(args[1]);
+            if (!uguale) {
+                System.exit(1);
+            }
+        } else {
+            System.err.println("Uso: RiproduzionePartita registra <file> <giorni> [mappa] [stati] [seme] [livello]");
+            System.err.println("     RiproduzionePartita riproduci <file>");
+            System.exit(2);
+        }
+        // I thread dell'intelligenza artificiale non devono tenere in vita la JVM
+        System.exit(0);
+    }
+}
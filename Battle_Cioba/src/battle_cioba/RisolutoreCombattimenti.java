@@ -0,0 +1,400 @@
+package battle_cioba;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Risolve in blocco tutti i combattimenti dichiarati durante un giorno.
+ * L'attaccante può essere una base militare o un'unità degli Eserciti;
+ * il difensore è sempre un Centro.
+ * <p>
+ * Il giorno è diviso in tre passi:
+ * <ol>
+ * <li>raccolta: i dati di attaccante e difensore vengono copiati in array
+ *     primitivi (una fotografia presa all'inizio della fase);</li>
+ * <li>calcolo: le battaglie sono indipendenti e vengono risolte in parallelo;
+ *     ognuna ha il proprio flusso casuale derivato da seme, giorno e indice,
+ *     quindi l'esito non dipende dal numero di thread né dall'ordine;</li>
+ * <li>fusione: un solo thread applica perdite, danni e conquiste nell'ordine
+ *     di dichiarazione, senza alcuna condivisione tra thread.</li>
+ * </ol>
+ */
+public class RisolutoreCombattimenti implements FaseSimulazione {
+
+    /**
+     * Numero di battaglie per blocco di calcolo parallelo.
+     * Sotto questa soglia il calcolo resta sul thread della simulazione.
+     */
+    static final int BATTAGLIE_PER_BLOCCO = 4096;
+
+    /**
+     * Frazione massima delle truppe persa in una battaglia.
+     */
+    private static final double PERDITA_MASSIMA = 0.3;
+
+    /**
+     * Seme da cui derivano i flussi casuali delle battaglie.
+     */
+    private final long seme;
+
+    /**
+     * Mondo di riferimento (impostato alla prima esecuzione).
+     */
+    private Mondo mondo;
+
+    /**
+     * Basi attaccanti, in ordine di dichiarazione (null se attacca un esercito).
+     */
+    private BaseMilitare[] attaccanti = new BaseMilitare[64];
+
+    /**
+     * Archivio degli eserciti attaccanti (impostato al primo attacco di un esercito).
+     */
+    private Eserciti eserciti;
+
+    /**
+     * Unità dell'esercito attaccante (-1 se attacca una base).
+     */
+    private int[] unitaAtt = new int[64];
+
+    /**
+     * Generazione dello slot dell'unità attaccante al momento della dichiarazione.
+     */
+    private int[] generazioneAtt = new int[64];
+
+    /**
+     * Centri difensori, in ordine di dichiarazione.
+     */
+    private Centro[] difensori = new Centro[64];
+
+    /**
+     * Fotografia: truppe dell'attaccante.
+     */
+    private int[] truppeAtt = new int[64];
+
+    /**
+     * Fotografia: armamento dell'attaccante.
+     */
+    private int[] armamentoAtt = new int[64];
+
+    /**
+     * Fotografia: truppe del difensore (0 se non è una base).
+     */
+    private int[] truppeDif = new int[64];
+
+    /**
+     * Fotografia: armamento del difensore (0 se non è una base).
+     */
+    private int[] armamentoDif = new int[64];
+
+    /**
+     * Fotografia: livello di difesa del difensore.
+     */
+    private int[] difesaDif = new int[64];
+
+    /**
+     * Esito: truppe perse dall'attaccante.
+     */
+    private int[] perditeAtt = new int[64];
+
+    /**
+     * Esito: truppe perse dal difensore.
+     */
+    private int[] perditeDif = new int[64];
+
+    /**
+     * Esito: true se l'attaccante ha vinto.
+     */
+    private boolean[] vittoria = new boolean[64];
+
+    /**
+     * Centri conquistati nel giorno in corso di fusione: le battaglie
+     * successive contro di loro sono annullate.
+     */
+    private final Set<Centro> conquistatiOggi = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Numero di battaglie dichiarate per il giorno corrente.
+     */
+    private int numBattaglie;
+
+    /**
+     * Battaglie risolte nell'ultimo giorno.
+     */
+    private int battaglieUltimoGiorno;
+
+    /**
+     * Vittorie degli attaccanti nell'ultimo giorno.
+     */
+    private int vittorieUltimoGiorno;
+
+    /**
+     * Territori conquistati nell'ultimo giorno.
+     */
+    private int conquisteUltimoGiorno;
+
+    /**
+     * Costruttore principale.
+     *
+     * @param seme seme dei flussi casuali delle battaglie
+     */
+    public RisolutoreCombattimenti(long seme) {
+        this.seme = seme;
+    }
+
+    /**
+     * Dichiara un attacco, che verrà risolto alla prossima fase dei combattimenti.
+     * Va chiamato con il lock del mondo acquisito.
+     *
+     * @param attaccante base che attacca
+     * @param difensore centro attaccato
+     * @return true se l'attacco è stato accettato (stati diversi, base con truppe)
+     */
+    public boolean dichiaraAttacco(BaseMilitare attaccante, Centro difensore) {
+        if (attaccante == null || difensore == null || attaccante == difensore
+                || attaccante.getStatoPadrone() == null
+                || attaccante.getStatoPadrone().equals(difensore.getStatoPadrone())
+                || attaccante.getNumeroTruppe() <= 0) {
+            return false;
+        }
+        int i = nuovaBattaglia();
+        attaccanti[i] = attaccante;
+        unitaAtt[i] = -1;
+        difensori[i] = difensore;
+        return true;
+    }
+
+    /**
+     * Dichiara l'attacco di un esercito contro un centro.
+     * Va chiamato con il lock del mondo acquisito.
+     *
+     * @param archivio archivio degli eserciti
+     * @param unita indice dell'unità attaccante
+     * @param difensore centro attaccato
+     * @return true se l'attacco è stato accettato (unità attiva, centro di un altro stato)
+     */
+    public boolean dichiaraAttacco(Eserciti archivio, int unita, Centro difensore) {
+        if (archivio == null || difensore == null || !archivio.isAttiva(unita)
+                || (eserciti != null && eserciti != archivio)
+                || (mondo != null && archivio.getStato(unita) == mondo.indiceStato(difensore.getStatoPadrone()))) {
+            return false;
+        }
+        eserciti = archivio;
+        int i = nuovaBattaglia();
+        attaccanti[i] = null;
+        unitaAtt[i] = unita;
+        generazioneAtt[i] = archivio.getGenerazione(unita);
+        difensori[i] = difensore;
+        return true;
+    }
+
+    /**
+     * Riserva lo slot per una nuova battaglia, ingrandendo gli array se necessario.
+     */
+    private int nuovaBattaglia() {
+        if (numBattaglie == attaccanti.length) {
+            int nuovaCapacita = attaccanti.length * 2;
+            attaccanti = Arrays.copyOf(attaccanti, nuovaCapacita);
+            difensori = Arrays.copyOf(difensori, nuovaCapacita);
+            truppeAtt = Arrays.copyOf(truppeAtt, nuovaCapacita);
+            armamentoAtt = Arrays.copyOf(armamentoAtt, nuovaCapacita);
+            truppeDif = Arrays.copyOf(truppeDif, nuovaCapacita);
+            armamentoDif = Arrays.copyOf(armamentoDif, nuovaCapacita);
+            difesaDif = Arrays.copyOf(difesaDif, nuovaCapacita);
+            perditeAtt = Arrays.copyOf(perditeAtt, nuovaCapacita);
+            perditeDif = Arrays.copyOf(perditeDif, nuovaCapacita);
+            vittoria = Arrays.copyOf(vittoria, nuovaCapacita);
+            unitaAtt = Arrays.copyOf(unitaAtt, nuovaCapacita);
+            generazioneAtt = Arrays.copyOf(generazioneAtt, nuovaCapacita);
+        }
+        return numBattaglie++;
+    }
+
+    /**
+     * Restituisce il numero di battaglie in attesa di risoluzione.
+     */
+    public int getBattaglieInAttesa() {
+        return numBattaglie;
+    }
+
+    public int getBattaglieUltimoGiorno() {
+        return battaglieUltimoGiorno;
+    }
+
+    public int getVittorieUltimoGiorno() {
+        return vittorieUltimoGiorno;
+    }
+
+    public int getConquisteUltimoGiorno() {
+        return conquisteUltimoGiorno;
+    }
+
+    /* =========================== FASE DI SIMULAZIONE =========================== */
+
+    @Override
+    public String getNome() {
+        return "Combattimenti";
+    }
+
+    @Override
+    public void esegui(Mondo mondo, long giorno) {
+        this.mondo = mondo;
+        int n = numBattaglie;
+        numBattaglie = 0;
+        battaglieUltimoGiorno = n;
+        vittorieUltimoGiorno = 0;
+        conquisteUltimoGiorno = 0;
+        if (n == 0) {
+            return;
+        }
+
+        raccogli(n);
+
+        long semeGiorno = GeneratoreCasuale.deriva(seme, giorno);
+        int blocchi = (n + BATTAGLIE_PER_BLOCCO - 1) / BATTAGLIE_PER_BLOCCO;
+        if (blocchi == 1) {
+            risolviBlocco(0, n, semeGiorno);
+        } else {
+            IntStream.range(0, blocchi).parallel().forEach(b -> risolviBlocco(
+                    b * BATTAGLIE_PER_BLOCCO, Math.min(n, (b + 1) * BATTAGLIE_PER_BLOCCO), semeGiorno));
+        }
+
+        fondi(n);
+        Arrays.fill(attaccanti, 0, n, null);
+        Arrays.fill(difensori, 0, n, null);
+    }
+
+    @Override
+    public void riepiloga(Map<String, Long> indicatori) {
+        indicatori.put("battaglie", (long) battaglieUltimoGiorno);
+        indicatori.put("conquiste", (long) conquisteUltimoGiorno);
+    }
+
+    /* =========================== PASSI DEL GIORNO =========================== */
+
+    /**
+     * Copia in array primitivi i dati di tutte le battaglie (fotografia).
+     */
+    private void raccogli(int n) {
+        for (int i = 0; i < n; i++) {
+            BaseMilitare a = attaccanti[i];
+            Centro d = difensori[i];
+            if (a != null) {
+                truppeAtt[i] = a.getNumeroTruppe();
+                armamentoAtt[i] = a.getLivelloArmamento();
+            } else if (eserciti.isAttiva(unitaAtt[i]) && eserciti.getGenerazione(unitaAtt[i]) == generazioneAtt[i]) {
+                truppeAtt[i] = eserciti.getForzaEffettiva(unitaAtt[i]);
+                armamentoAtt[i] = eserciti.getArmamento(unitaAtt[i]);
+            } else {
+                // L'unità è stata congedata dopo la dichiarazione
+                truppeAtt[i] = 0;
+                armamentoAtt[i] = 0;
+            }
+            difesaDif[i] = d.getLivelloDifesa();
+            if (d instanceof BaseMilitare) {
+                truppeDif[i] = ((BaseMilitare) d).getNumeroTruppe();
+                armamentoDif[i] = ((BaseMilitare) d).getLivelloArmamento();
+            } else {
+                truppeDif[i] = 0;
+                armamentoDif[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * Risolve le battaglie [da, a). Legge solo la fotografia e scrive solo
+     * gli esiti delle proprie battaglie, quindi i blocchi non interferiscono.
+     */
+    private void risolviBlocco(int da, int a, long semeGiorno) {
+        GeneratoreCasuale generatore = new GeneratoreCasuale(0);
+        for (int i = da; i < a; i++) {
+            generatore.imposta(GeneratoreCasuale.deriva(semeGiorno, i));
+            double fattoreAtt = 0.8 + generatore.prossimoDouble() * 0.4;
+            double fattoreDif = 0.8 + generatore.prossimoDouble() * 0.4;
+
+            double potenzaAtt = BaseMilitare.calcolaPotenzaAttacco(truppeAtt[i], armamentoAtt[i], fattoreAtt);
+            double potenzaDif = BaseMilitare.calcolaPotenzaAttacco(truppeDif[i], armamentoDif[i], fattoreDif)
+                    + difesaDif[i] * 5 * fattoreDif;
+
+            double totale = potenzaAtt + potenzaDif;
+            if (totale <= 0) {
+                perditeAtt[i] = 0;
+                perditeDif[i] = 0;
+                vittoria[i] = false;
+                continue;
+            }
+            perditeAtt[i] = (int) (truppeAtt[i] * PERDITA_MASSIMA * potenzaDif / totale);
+            perditeDif[i] = (int) (truppeDif[i] * PERDITA_MASSIMA * potenzaAtt / totale);
+            vittoria[i] = potenzaAtt > potenzaDif;
+        }
+    }
+
+    /**
+     * Applica gli esiti in ordine di dichiarazione. Più attacchi allo stesso
+     * centro si sommano; un centro con le difese già al minimo che subisce
+     * una sconfitta viene conquistato insieme al suo territorio. Un centro
+     * cambia proprietario al massimo una volta al giorno: le battaglie
+     * successive contro di lui, calcolate sulla vecchia fotografia, sono annullate.
+     */
+    private void fondi(int n) {
+        conquistatiOggi.clear();
+        for (int i = 0; i < n; i++) {
+            BaseMilitare a = attaccanti[i];
+            Centro d = difensori[i];
+            Stato vincitore;
+            if (a != null) {
+                if (conquistatiOggi.contains(d) || conquistatiOggi.contains(a)) {
+                    continue;
+                }
+                if (perditeAtt[i] > 0) {
+                    a.setNumeroTruppe(Math.max(0, a.getNumeroTruppe() - perditeAtt[i]));
+                }
+                vincitore = mondo.getStatoPerNome(a.getStatoPadrone());
+            } else {
+                int u = unitaAtt[i];
+                if (conquistatiOggi.contains(d) || !eserciti.isAttiva(u)
+                        || eserciti.getGenerazione(u) != generazioneAtt[i]) {
+                    continue;
+                }
+                vincitore = mondo.getStatoPerIndice(eserciti.getStato(u));
+                eserciti.applicaEsito(u, perditeAtt[i], vittoria[i]);
+            }
+            if (perditeDif[i] > 0 && d instanceof BaseMilitare) {
+                BaseMilitare base = (BaseMilitare) d;
+                base.setNumeroTruppe(Math.max(0, base.getNumeroTruppe() - perditeDif[i]));
+            }
+            if (!vittoria[i]) {
+                continue;
+            }
+            vittorieUltimoGiorno++;
+            if (d.getLivelloDifesa() > 1) {
+                d.setLivelloDifesa(d.getLivelloDifesa() - 1);
+            } else if (conquista(vincitore, d)) {
+                conquistatiOggi.add(d);
+                conquisteUltimoGiorno++;
+            }
+        }
+        conquistatiOggi.clear();
+    }
+
+    /**
+     * Trasferisce il territorio del centro sconfitto allo stato dell'attaccante.
+     */
+    private boolean conquista(Stato vincitore, Centro difensore) {
+        Territorio territorio = difensore.getTerritorio();
+        if (territorio == null || vincitore == null || territorio.getCentro() != difensore
+                || vincitore.getNome().equals(territorio.getStatoPadrone())) {
+            return false;
+        }
+        try {
+            return mondo.trasferisciTerritorio(territorio, vincitore);
+        } catch (IllegalArgumentException e) {
+            // Territorio fuori mappa o stato non registrato: la conquista non avviene
+            return false;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package battle_cioba;
+
+/**
+ * Rotta marittima tra due porti confinanti (capoluoghi o capitali sulla costa).
+ * La rotta ricorda il percorso ottimo senza blocchi e quello usato oggi:
+ * finché nessuna flotta nemica si mette sul percorso non viene ricalcolata.
+ */
+public class RottaCommerciale {
+
+    /**
+     * Condizione della rotta.
+     */
+    public enum Condizione {
+        /**
+         * Segue il percorso ottimo.
+         */
+        APERTA("Aperta"),
+        /**
+         * Aggira un blocco navale con un percorso più lungo.
+         */
+        DEVIATA("Deviata"),
+        /**
+         * Nessun percorso libero: non produce reddito.
+         */
+        BLOCCATA("Bloccata");
+
+        private final String nome;
+
+        Condizione(String nome) {
+            this.nome = nome;
+        }
+
+        public String getNome() {
+            return nome;
+        }
+    }
+
+    /**
+     * Celle dei due porti.
+     */
+    private final int portoA, portoB;
+
+    /**
+     * Celle marine del percorso ottimo, dal porto A al porto B.
+     */
+    private final int[] percorsoBase;
+
+    /**
+     * Costo del percorso ottimo.
+     */
+    private final int costoBase;
+
+    /**
+     * Percorso e costo in uso (uguali a quelli base se la rotta è aperta).
+     */
+    int[] percorso;
+    int costo;
+
+    Condizione condizione = Condizione.APERTA;
+
+    /**
+     * Stati a cui è accreditato il reddito della rotta e quote accreditate.
+     */
+    int statoA = -1, statoB = -1;
+    long quotaA, quotaB;
+
+    RottaCommerciale(int portoA, int portoB, int[] percorsoBase, int costoBase) {
+        this.portoA = portoA;
+        this.portoB = portoB;
+        this.percorsoBase = percorsoBase;
+        this.costoBase = costoBase;
+        this.percorso = percorsoBase;
+        this.costo = costoBase;
+    }
+
+    public int getPortoA() {
+        return portoA;
+    }
+
+    public int getPortoB() {
+        return portoB;
+    }
+
+    /**
+     * Cella del percorso ottimo in una posizione.
+     *
+     * @param posizione indice nel percorso (0 = accanto al porto A)
+     * @return indice di cella
+     */
+    public int getPercorsoBaseCella(int posizione) {
+        return percorsoBase[posizione];
+    }
+
+    int[] getPercorsoBase() {
+        return percorsoBase;
+    }
+
+    public int getCostoBase() {
+        return costoBase;
+    }
+
+    public int getCosto() {
+        return costo;
+    }
+
+    public Condizione getCondizione() {
+        return condizione;
+    }
+
+    /**
+     * Numero di celle marine attraversate oggi.
+     *
+     * @return lunghezza del percorso in uso
+     */
+    public int getLunghezza() {
+        return percorso.length;
+    }
+
+    /**
+     * Reddito giornaliero accreditato dalla rotta (le due quote sommate).
+     *
+     * @return reddito giornaliero
+     */
+    public long getReddito() {
+        return quotaA + quotaB;
+    }
+}
@@ -0,0 +1,662 @@
+package battle_cioba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Rete del commercio marittimo tra i porti, cioè i capoluoghi e le capitali
+ * che si affacciano sul mare.
+ * <p>
+ * La rete si costruisce con una sola ricerca a più sorgenti: tutti i porti
+ * partono insieme e ogni cella marina viene assegnata al porto più vicino.
+ * Due porti le cui zone si toccano sono collegati da una rotta, il cui
+ * percorso ottimo viene poi calcolato con A*. Il grafo ottenuto è sparso
+ * (i porti commerciano con i vicini, non con tutti) e la ricerca costa
+ * quanto un solo Dijkstra sulla mappa più una ricerca breve per rotta.
+ * <p>
+ * Ogni giorno vengono controllate solo le rotte che passano per una cella
+ * con una flotta, più quelle già deviate o bloccate. Una flotta in guerra
+ * con uno dei due stati della rotta blocca la cella: la rotta cerca una
+ * deviazione con A* e torna sul percorso ottimo appena questo è libero.
+ * La rete intera si ricostruisce solo quando nasce o scompare un porto.
+ * <p>
+ * Il reddito delle rotte aperte o deviate va diviso tra gli stati dei due
+ * porti (tutto a uno stato se i porti sono suoi) e viene passato al
+ * RegistroEconomico come variazione del reddito giornaliero. Le rotte tra
+ * stati in guerra non rendono nulla.
+ */
+public class RotteCommerciali implements FaseSimulazione, OsservatoreMondo {
+
+    /**
+     * Reddito giornaliero di una rotta per ogni livello economico dei due porti.
+     */
+    public static final int REDDITO_PER_LIVELLO = 3;
+
+    /**
+     * Livello economico con cui commercia una capitale.
+     */
+    public static final int LIVELLO_CAPITALE = 8;
+
+    /**
+     * Sistema economico che riceve i redditi.
+     */
+    private final RegistroEconomico economia;
+
+    /**
+     * Relazioni diplomatiche (può essere null: nessuna guerra).
+     */
+    private final Diplomazia diplomazia;
+
+    /**
+     * Archivio degli eserciti per le flotte (può essere null: nessun blocco).
+     */
+    private final Eserciti eserciti;
+
+    /**
+     * Mondo di riferimento.
+     */
+    private Mondo mondo;
+
+    private int righe, colonne;
+
+    /**
+     * Costo per entrare in ogni cella marina (IMPRATICABILE per le celle terrestri).
+     */
+    private int[] costo = new int[0];
+
+    /**
+     * Celle dei porti, in ordine crescente.
+     */
+    private int[] porti = new int[0];
+
+    /**
+     * Rotte della rete.
+     */
+    private RottaCommerciale[] rotte = new RottaCommerciale[0];
+
+    /**
+     * Rotte il cui percorso ottimo passa per una cella: quelle della cella c
+     * sono rotteCella[inizioRotteCella[c] .. inizioRotteCella[c + 1]).
+     */
+    private int[] inizioRotteCella = new int[1], rotteCella = new int[0];
+
+    /**
+     * Prima flotta in ogni cella (-1 nessuna) e flotta successiva nella stessa cella.
+     */
+    private int[] primaFlotta = new int[0], prossimaFlotta = new int[0];
+
+    /**
+     * Celle con almeno una flotta, da ripulire il giorno dopo.
+     */
+    private int[] celleFlotte = new int[16];
+    private int numCelleFlotte;
+
+    /**
+     * Impronta delle flotte (unità, cella, stato) di oggi e di ieri: se non
+     * cambia, una rotta bloccata resta bloccata senza ripetere la ricerca.
+     */
+    private long firmaFlotte, firmaPrecedente;
+
+    /**
+     * Rotte da controllare nel giorno.
+     */
+    private boolean[] daVerificare = new boolean[0];
+    private int[] codaVerifica = new int[0];
+
+    /**
+     * Lavoro delle ricerche di deviazione: distanza, predecessore e
+     * generazione di visita per cella (le celle con una generazione vecchia
+     * valgono come non visitate, così non serve ripulire gli array).
+     */
+    private int[] distanza = new int[0], precedente = new int[0], visita = new int[0];
+    private int generazione;
+    private final HeapBinario heap = new HeapBinario(256);
+
+    /**
+     * Indica che la rete va ricostruita.
+     */
+    private boolean sporco = true;
+
+    /**
+     * Statistiche.
+     */
+    private long costruzioni, ricalcoliGiorno, ricalcoliTotali, redditoGiorno;
+    private int rotteDeviate, rotteBloccate;
+
+    /**
+     * Costruttore principale.
+     *
+     * @param economia sistema economico
+     * @param diplomazia relazioni diplomatiche (può essere null)
+     * @param eserciti archivio degli eserciti (può essere null)
+     */
+    public RotteCommerciali(RegistroEconomico economia, Diplomazia diplomazia, Eserciti eserciti) {
+        this.economia = economia;
+        this.diplomazia = diplomazia;
+        this.eserciti = eserciti;
+    }
+
+    /**
+     * Costruisce la rete e accredita i redditi iniziali.
+     *
+     * @param mondo mondo di gioco
+     */
+    public void inizializza(Mondo mondo) {
+        this.mondo = mondo;
+        // Il registro può essere stato reinizializzato: le quote accreditate ripartono da zero
+        for (RottaCommerciale r : rotte) {
+            r.statoA = r.statoB = -1;
+            r.quotaA = r.quotaB = 0;
+        }
+        rotte = new RottaCommerciale[0];
+        costruisci();
+        aggiornaRedditi();
+    }
+
+    /* =========================== COSTRUZIONE DELLA RETE =========================== */
+
+    /**
+     * Ricerca a più sorgenti dai porti e collegamento dei porti le cui zone
+     * si toccano.
+     */
+    private void costruisci() {
+        righe = mondo.getRighe();
+        colonne = mondo.getColonne();
+        int n = righe * colonne;
+        if (costo.length != n) {
+            costo = new int[n];
+            primaFlotta = new int[n];
+            distanza = new int[n];
+            precedente = new int[n];
+            visita = new int[n];
+            Arrays.fill(primaFlotta, -1);
+            numCelleFlotte = 0;
+        }
+        List<Integer> elencoPorti = new ArrayList<>();
+        for (int c = 0; c < n; c++) {
+            Territorio t = mondo.getTerritorio(c);
+            costo[c] = t instanceof TerritorioMarino && t.isAcqua()
+                    ? ClasseMovimento.NAVALE.costoCella(true, ((TerritorioMarino) t).getProfonditaMedia(), -1, -1)
+                    : CostoMovimento.IMPRATICABILE;
+        }
+        for (int c = 0; c < n; c++) {
+            if (isPorto(mondo.getTerritorio(c))) {
+                elencoPorti.add(c);
+            }
+        }
+        porti = new int[elencoPorti.size()];
+        for (int i = 0; i < porti.length; i++) {
+            porti[i] = elencoPorti.get(i);
+        }
+
+        int[] dist = new int[n];
+        int[] origine = new int[n];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        Arrays.fill(origine, -1);
+        // Coppie di porti le cui zone si toccano (indice minore nei 32 bit alti)
+        Set<Long> contatti = new TreeSet<>();
+
+        heap.svuota();
+        int[] vicine = new int[4];
+        for (int i = 0; i < porti.length; i++) {
+            int numVicine = vicineMarine(porti[i], vicine);
+            for (int k = 0; k < numVicine; k++) {
+                int s = vicine[k];
+                if (origine[s] >= 0 && origine[s] != i) {
+                    // Due porti sulla stessa cella di mare
+                    contatti.add(coppia(origine[s], i));
+                } else if (costo[s] < dist[s]) {
+                    dist[s] = costo[s];
+                    origine[s] = i;
+                    heap.inserisci(s, dist[s]);
+                }
+            }
+        }
+        while (!heap.isVuoto()) {
+            int priorita = heap.prioritaMinima();
+            int u = heap.estrai();
+            if (priorita != dist[u]) {
+                continue;
+            }
+            int numVicine = vicineMarine(u, vicine);
+            for (int k = 0; k < numVicine; k++) {
+                int v = vicine[k];
+                int nd = dist[u] + costo[v];
+                if (nd < dist[v]) {
+                    dist[v] = nd;
+                    origine[v] = origine[u];
+                    heap.inserisci(v, nd);
+                }
+            }
+        }
+
+        // Confini tra le zone dei porti (lati a destra e in basso, ogni lato una volta)
+        for (int u = 0; u < n; u++) {
+            if (origine[u] < 0) {
+                continue;
+            }
+            int riga = u / colonne, col = u % colonne;
+            int destra = col + 1 < colonne ? u + 1 : -1;
+            int sotto = riga + 1 < righe ? u + colonne : -1;
+            for (int k = 0; k < 2; k++) {
+                int v = k == 0 ? destra : sotto;
+                if (v >= 0 && origine[v] >= 0 && origine[v] != origine[u]) {
+                    contatti.add(coppia(origine[u], origine[v]));
+                }
+            }
+        }
+
+        // Nuove rotte: le quote delle vecchie vengono tolte dal registro
+        for (RottaCommerciale r : rotte) {
+            accredita(r, -1, -1, 0, 0);
+        }
+        List<RottaCommerciale> nuove = new ArrayList<>();
+        for (long c : contatti) {
+            int a = porti[(int) (c >>> 32)], b = porti[(int) c];
+            int arrivo = cerca(a, b, -1, -1, false);
+            if (arrivo >= 0) {
+                nuove.add(new RottaCommerciale(a, b, ricostruisciPercorso(precedente, arrivo), distanza[arrivo]));
+            }
+        }
+        rotte = nuove.toArray(new RottaCommerciale[0]);
+        indicizzaRotte();
+        daVerificare = new boolean[rotte.length];
+        codaVerifica = new int[rotte.length];
+        sporco = false;
+        costruzioni++;
+    }
+
+    private static long coppia(int a, int b) {
+        return a < b ? (long) a << 32 | b : (long) b << 32 | a;
+    }
+
+    /**
+     * Percorso dal porto di partenza fino a una cella, risalendo i predecessori.
+     */
+    private static int[] ricostruisciPercorso(int[] prec, int arrivo) {
+        int lunghezza = 0;
+        for (int c = arrivo; c >= 0; c = prec[c]) {
+            lunghezza++;
+        }
+        int[] percorso = new int[lunghezza];
+        for (int c = arrivo, i = lunghezza - 1; c >= 0; c = prec[c], i--) {
+            percorso[i] = c;
+        }
+        return percorso;
+    }
+
+    /**
+     * Indice cella -> rotte in formato compresso, sui percorsi ottimi.
+     */
+    private void indicizzaRotte() {
+        int n = costo.length;
+        int[] inizio = new int[n + 1];
+        for (RottaCommerciale r : rotte) {
+            for (int c : r.getPercorsoBase()) {
+                inizio[c + 1]++;
+            }
+        }
+        for (int c = 0; c < n; c++) {
+            inizio[c + 1] += inizio[c];
+        }
+        int[] riempite = Arrays.copyOf(inizio, n);
+        int[] elenco = new int[inizio[n]];
+        for (int i = 0; i < rotte.length; i++) {
+            for (int c : rotte[i].getPercorsoBase()) {
+                elenco[riempite[c]++] = i;
+            }
+        }
+        inizioRotteCella = inizio;
+        rotteCella = elenco;
+    }
+
+    /**
+     * Un porto è una cella terrestre con un capoluogo o una capitale che
+     * confina con il mare.
+     */
+    private boolean isPorto(Territorio t) {
+        if (t == null || t.isAcqua() || livelloCommerciale(t.getCentro()) == 0) {
+            return false;
+        }
+        return vicineMarine(t.getIndiceCella(), new int[4]) > 0;
+    }
+
+    private static int livelloCommerciale(Centro centro) {
+        if (centro instanceof Capoluogo) {
+            return ((Capoluogo) centro).getLivelloEconomico();
+        }
+        return centro instanceof Capitale ? LIVELLO_CAPITALE : 0;
+    }
+
+    /**
+     * Celle marine nel 4-vicinato di una cella.
+     *
+     * @return numero di celle scritte in vicine
+     */
+    private int vicineMarine(int cella, int[] vicine) {
+        int riga = cella / colonne, col = cella % colonne;
+        int numero = 0;
+        if (riga > 0 && costo[cella - colonne] > 0) vicine[numero++] = cella - colonne;
+        if (riga + 1 < righe && costo[cella + colonne] > 0) vicine[numero++] = cella + colonne;
+        if (col > 0 && costo[cella - 1] > 0) vicine[numero++] = cella - 1;
+        if (col + 1 < colonne && costo[cella + 1] > 0) vicine[numero++] = cella + 1;
+        return numero;
+    }
+
+    /* =========================== FASE DEL GIORNO =========================== */
+
+    @Override
+    public String getNome() {
+        return "Rotte commerciali";
+    }
+
+    @Override
+    public void esegui(Mondo mondo, long giorno) {
+        if (this.mondo != mondo || sporco) {
+            this.mondo = mondo;
+            costruisci();
+        }
+        ricalcoliGiorno = 0;
+        segnaFlotte();
+
+        // Rotte da controllare: quelle che passano per una flotta e quelle fuori dal percorso ottimo
+        int numVerifica = 0;
+        for (int i = 0; i < numCelleFlotte; i++) {
+            int c = celleFlotte[i];
+            for (int k = inizioRotteCella[c]; k < inizioRotteCella[c + 1]; k++) {
+                numVerifica = accoda(rotteCella[k], numVerifica);
+            }
+        }
+        for (int r = 0; r < rotte.length; r++) {
+            if (rotte[r].condizione != RottaCommerciale.Condizione.APERTA) {
+                numVerifica = accoda(r, numVerifica);
+            }
+        }
+        for (int i = 0; i < numVerifica; i++) {
+            int r = codaVerifica[i];
+            daVerificare[r] = false;
+            verifica(rotte[r]);
+        }
+        ricalcoliTotali += ricalcoliGiorno;
+        firmaPrecedente = firmaFlotte;
+
+        aggiornaRedditi();
+    }
+
+    private int accoda(int r, int numVerifica) {
+        if (!daVerificare[r]) {
+            daVerificare[r] = true;
+            codaVerifica[numVerifica++] = r;
+        }
+        return numVerifica;
+    }
+
+    /**
+     * Elenca le flotte per cella, ripulendo solo le celle del giorno prima.
+     */
+    private void segnaFlotte() {
+        for (int i = 0; i < numCelleFlotte; i++) {
+            primaFlotta[celleFlotte[i]] = -1;
+        }
+        numCelleFlotte = 0;
+        firmaFlotte = 0;
+        if (eserciti == null) {
+            return;
+        }
+        int limite = eserciti.getLimiteIndici();
+        if (prossimaFlotta.length < limite) {
+            prossimaFlotta = new int[Math.max(limite, prossimaFlotta.length * 2)];
+        }
+        for (int u = 0; u < limite; u++) {
+            if (!eserciti.isAttiva(u) || eserciti.getTipo(u).getClasseMovimento() != ClasseMovimento.NAVALE) {
+                continue;
+            }
+            int c = eserciti.getCella(u);
+            if (c < 0 || c >= costo.length) {
+                continue;
+            }
+            if (primaFlotta[c] < 0) {
+                if (numCelleFlotte == celleFlotte.length) {
+                    celleFlotte = Arrays.copyOf(celleFlotte, numCelleFlotte * 2);
+                }
+                celleFlotte[numCelleFlotte++] = c;
+            }
+            prossimaFlotta[u] = primaFlotta[c];
+            primaFlotta[c] = u;
+            firmaFlotte = GeneratoreCasuale.mescola(firmaFlotte ^ ((long) u << 40 | (long) c << 16 | eserciti.getStato(u)));
+        }
+    }
+
+    /**
+     * Rimette la rotta sul percorso ottimo se è libero, altrimenti tiene la
+     * deviazione finché è libera o ne cerca una nuova.
+     */
+    private void verifica(RottaCommerciale r) {
+        int sa = statoPorto(r.getPortoA()), sb = statoPorto(r.getPortoB());
+        if (!percorsoOstile(r.getPercorsoBase(), sa, sb)) {
+            r.percorso = r.getPercorsoBase();
+            r.costo = r.getCostoBase();
+            r.condizione = RottaCommerciale.Condizione.APERTA;
+            return;
+        }
+        if (r.condizione == RottaCommerciale.Condizione.DEVIATA && !percorsoOstile(r.percorso, sa, sb)) {
+            return;
+        }
+        if (r.condizione == RottaCommerciale.Condizione.BLOCCATA && firmaFlotte == firmaPrecedente
+                && sa == r.statoA && sb == r.statoB) {
+            return;
+        }
+        devia(r, sa, sb);
+    }
+
+    /**
+     * Cerca una deviazione che eviti le celle ostili; senza, la rotta è bloccata.
+     */
+    private void devia(RottaCommerciale r, int sa, int sb) {
+        ricalcoliGiorno++;
+        int arrivo = cerca(r.getPortoA(), r.getPortoB(), sa, sb, true);
+        if (arrivo < 0) {
+            r.percorso = r.getPercorsoBase();
+            r.costo = r.getCostoBase();
+            r.condizione = RottaCommerciale.Condizione.BLOCCATA;
+            return;
+        }
+        r.costo = distanza[arrivo];
+        r.percorso = ricostruisciPercorso(precedente, arrivo);
+        r.condizione = RottaCommerciale.Condizione.DEVIATA;
+    }
+
+    /**
+     * A* sulle celle marine dal porto A a una cella accanto al porto B.
+     * Il risultato resta in distanza e precedente.
+     *
+     * @param evitaOstili true per scartare le celle con flotte nemiche di sa o sb
+     * @return cella d'arrivo, -1 se non c'è percorso
+     */
+    private int cerca(int portoA, int portoB, int sa, int sb, boolean evitaOstili) {
+        if (++generazione == 0) {
+            Arrays.fill(visita, 0);
+            generazione = 1;
+        }
+        heap.svuota();
+        int[] vicine = new int[4];
+        int numVicine = vicineMarine(portoA, vicine);
+        for (int k = 0; k < numVicine; k++) {
+            int s = vicine[k];
+            if (!evitaOstili || !cellaOstile(s, sa, sb)) {
+                distanza[s] = costo[s];
+                precedente[s] = -1;
+                visita[s] = generazione;
+                heap.inserisci(s, costo[s] + stima(s, portoB));
+            }
+        }
+        while (!heap.isVuoto()) {
+            int priorita = heap.prioritaMinima();
+            int u = heap.estrai();
+            if (priorita != distanza[u] + stima(u, portoB)) {
+                continue;
+            }
+            if (manhattan(u, portoB) == 1) {
+                return u;
+            }
+            numVicine = vicineMarine(u, vicine);
+            for (int k = 0; k < numVicine; k++) {
+                int v = vicine[k];
+                int nd = distanza[u] + costo[v];
+                if ((visita[v] != generazione || nd < distanza[v]) && (!evitaOstili || !cellaOstile(v, sa, sb))) {
+                    visita[v] = generazione;
+                    distanza[v] = nd;
+                    precedente[v] = u;
+                    heap.inserisci(v, nd + stima(v, portoB));
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Euristica ammissibile: ogni cella costa almeno COSTO_BASE e l'ultima
+     * cella marina è accanto al porto.
+     */
+    private int stima(int cella, int obiettivo) {
+        return Math.max(0, manhattan(cella, obiettivo) - 1) * ClasseMovimento.COSTO_BASE;
+    }
+
+    private int manhattan(int a, int b) {
+        return Math.abs(a / colonne - b / colonne) + Math.abs(a % colonne - b % colonne);
+    }
+
+    private boolean percorsoOstile(int[] percorso, int sa, int sb) {
+        for (int c : percorso) {
+            if (primaFlotta[c] >= 0 && cellaOstile(c, sa, sb)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Una cella è ostile se vi si trova una flotta in guerra con uno dei due stati.
+     */
+    private boolean cellaOstile(int cella, int sa, int sb) {
+        if (diplomazia == null) {
+            return false;
+        }
+        for (int u = primaFlotta[cella]; u >= 0; u = prossimaFlotta[u]) {
+            int s = eserciti.getStato(u);
+            if ((sa >= 0 && s != sa && diplomazia.isInGuerra(s, sa))
+                    || (sb >= 0 && s != sb && diplomazia.isInGuerra(s, sb))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int statoPorto(int cella) {
+        Territorio t = mondo.getTerritorio(cella);
+        return t != null ? mondo.indiceStato(t.getStatoPadrone()) : -1;
+    }
+
+    /* =========================== REDDITI =========================== */
+
+    /**
+     * Ricalcola il reddito di ogni rotta e passa al registro solo le differenze.
+     * Il reddito scala con il rapporto tra costo ottimo e costo del percorso in uso.
+     */
+    private void aggiornaRedditi() {
+        long totale = 0;
+        int deviate = 0, bloccate = 0;
+        for (RottaCommerciale r : rotte) {
+            int sa = statoPorto(r.getPortoA()), sb = statoPorto(r.getPortoB());
+            long reddito = 0;
+            if (r.condizione == RottaCommerciale.Condizione.BLOCCATA) {
+                bloccate++;
+            } else if (sa >= 0 && sb >= 0 && (sa == sb || diplomazia == null || !diplomazia.isInGuerra(sa, sb))) {
+                int livelli = livelloCommerciale(mondo.getTerritorio(r.getPortoA()).getCentro())
+                        + livelloCommerciale(mondo.getTerritorio(r.getPortoB()).getCentro());
+                reddito = (long) livelli * REDDITO_PER_LIVELLO * r.getCostoBase() / Math.max(1, r.costo);
+            }
+            if (r.condizione == RottaCommerciale.Condizione.DEVIATA) {
+                deviate++;
+            }
+            long quotaA = sa == sb ? reddito : (reddito + 1) / 2;
+            accredita(r, sa, sb, quotaA, reddito - quotaA);
+            totale += reddito;
+        }
+        redditoGiorno = totale;
+        rotteDeviate = deviate;
+        rotteBloccate = bloccate;
+    }
+
+    private void accredita(RottaCommerciale r, int sa, int sb, long quotaA, long quotaB) {
+        if (sa == r.statoA && sb == r.statoB && quotaA == r.quotaA && quotaB == r.quotaB) {
+            return;
+        }
+        economia.variaReddito(r.statoA, -r.quotaA);
+        economia.variaReddito(r.statoB, -r.quotaB);
+        economia.variaReddito(sa, quotaA);
+        economia.variaReddito(sb, quotaB);
+        r.statoA = sa;
+        r.statoB = sb;
+        r.quotaA = sa >= 0 ? quotaA : 0;
+        r.quotaB = sb >= 0 ? quotaB : 0;
+    }
+
+    @Override
+    public void riepiloga(Map<String, Long> indicatori) {
+        indicatori.put("rotte_commerciali", (long) rotte.length);
+        indicatori.put("rotte_deviate", (long) rotteDeviate);
+        indicatori.put("rotte_bloccate", (long) rotteBloccate);
+        indicatori.put("reddito_commercio", redditoGiorno);
+    }
+
+    /* =========================== OSSERVATORE =========================== */
+
+    @Override
+    public void centroImpostato(Territorio territorio, Centro vecchio, Centro nuovo) {
+        int c = territorio.getIndiceCella();
+        if (c < 0 || c >= costo.length) {
+            return;
+        }
+        // Una capitale che prende il posto di un capoluogo resta lo stesso porto
+        boolean eraPorto = Arrays.binarySearch(porti, c) >= 0;
+        if (eraPorto != isPorto(territorio)) {
+            sporco = true;
+        }
+    }
+
+    @Override
+    public void territorioModificato(Territorio territorio) {
+        int c = territorio.getIndiceCella();
+        if (c >= 0 && c < costo.length && territorio.isAcqua() != (costo[c] > 0)) {
+            sporco = true;
+        }
+    }
+
+    /* =========================== INTERROGAZIONI =========================== */
+
+    public List<RottaCommerciale> getRotte() {
+        return Collections.unmodifiableList(Arrays.asList(rotte.clone()));
+    }
+
+    public int getNumPorti() {
+        return porti.length;
+    }
+
+    public long getCostruzioni() {
+        return costruzioni;
+    }
+
+    public long getRicalcoliTotali() {
+        return ricalcoliTotali;
+    }
+
+    public long getRedditoGiorno() {
+        return redditoGiorno;
+    }
+}
@@ -0,0 +1,179 @@
+package battle_cioba;
+
+import java.util.List;
+
+/**
+ * Ruota temporale gerarchica sui giorni di simulazione.
+ * Ha NUM_LIVELLI livelli di SLOT_PER_LIVELLO slot: il livello 0 ha uno slot
+ * per giorno, il livello 1 uno slot ogni 64 giorni, e così via. Un evento
+ * sta nel livello più basso in cui il suo giorno condivide con il giorno
+ * corrente tutti i bit sopra quelli del livello; quando il giorno corrente
+ * entra in un nuovo blocco, lo slot corrispondente del livello superiore
+ * viene ridistribuito verso il basso.
+ * <p>
+ * Inserire e rimuovere costano O(1) (liste doppiamente collegate negli
+ * EventoProgrammato stessi); avanzare di un giorno costa quanto gli eventi
+ * che scadono più quelli ridistribuiti, non quanto tutti quelli in attesa.
+ * Ogni evento viene ridistribuito al massimo una volta per livello.
+ */
+class RuotaTemporale {
+
+    /**
+     * Bit del giorno gestiti da ogni livello.
+     */
+    static final int BIT_PER_LIVELLO = 6;
+
+    /**
+     * Slot per livello.
+     */
+    static final int SLOT_PER_LIVELLO = 1 << BIT_PER_LIVELLO;
+
+    /**
+     * Numero di livelli (orizzonte di 64^4 giorni; oltre, gli eventi restano
+     * nell'ultimo livello e vengono ricontrollati a ogni giro).
+     */
+    static final int NUM_LIVELLI = 4;
+
+    private static final int MASCHERA = SLOT_PER_LIVELLO - 1;
+
+    /**
+     * Primo evento di ogni slot, per livello.
+     */
+    private final EventoProgrammato[][] teste = new EventoProgrammato[NUM_LIVELLI][SLOT_PER_LIVELLO];
+
+    /**
+     * Ultimo giorno già elaborato.
+     */
+    private long giornoCorrente;
+
+    /**
+     * Eventi presenti nella ruota.
+     */
+    private int numEventi;
+
+    /**
+     * Eventi spostati da un livello a quello inferiore (statistica).
+     */
+    private long ridistribuiti;
+
+    RuotaTemporale(long giornoIniziale) {
+        this.giornoCorrente = giornoIniziale;
+    }
+
+    long getGiornoCorrente() {
+        return giornoCorrente;
+    }
+
+    int getNumEventi() {
+        return numEventi;
+    }
+
+    long getRidistribuiti() {
+        return ridistribuiti;
+    }
+
+    /**
+     * Inserisce un evento non presente nella ruota. Un giorno già passato
+     * viene trattato come il giorno successivo a quello corrente.
+     */
+    void inserisci(EventoProgrammato evento) {
+        if (evento.giorno <= giornoCorrente) {
+            evento.giorno = giornoCorrente + 1;
+        }
+        collega(evento);
+        numEventi++;
+    }
+
+    /**
+     * Toglie un evento dalla ruota.
+     *
+     * @return false se l'evento non era nella ruota
+     */
+    boolean rimuovi(EventoProgrammato evento) {
+        if (evento.livello < 0) {
+            return false;
+        }
+        scollega(evento);
+        numEventi--;
+        return true;
+    }
+
+    /**
+     * Avanza fino al giorno indicato e aggiunge alla lista gli eventi
+     * scaduti, che escono dalla ruota.
+     *
+     * @param giorno giorno da raggiungere
+     * @param scaduti lista in cui aggiungere gli eventi che scattano
+     */
+    void avanza(long giorno, List<EventoProgrammato> scaduti) {
+        while (giornoCorrente < giorno) {
+            giornoCorrente++;
+            // Dall'alto verso il basso, così un evento può scendere di più livelli
+            for (int l = NUM_LIVELLI - 1; l > 0; l--) {
+                if ((giornoCorrente & ((1L << (BIT_PER_LIVELLO * l)) - 1)) == 0) {
+                    ridistribuisci(l, (int) (giornoCorrente >>> (BIT_PER_LIVELLO * l)) & MASCHERA);
+                }
+            }
+            int s = (int) giornoCorrente & MASCHERA;
+            EventoProgrammato e = teste[0][s];
+            teste[0][s] = null;
+            while (e != null) {
+                EventoProgrammato successivo = e.successivo;
+                e.precedente = e.successivo = null;
+                e.livello = e.slot = -1;
+                numEventi--;
+                scaduti.add(e);
+                e = successivo;
+            }
+        }
+    }
+
+    private void ridistribuisci(int livello, int slot) {
+        EventoProgrammato e = teste[livello][slot];
+        teste[livello][slot] = null;
+        while (e != null) {
+            EventoProgrammato successivo = e.successivo;
+            e.precedente = e.successivo = null;
+            collega(e);
+            ridistribuiti++;
+            e = successivo;
+        }
+    }
+
+    /**
+     * Mette l'evento nel livello più basso compatibile con il giorno corrente.
+     */
+    private void collega(EventoProgrammato evento) {
+        int livello = NUM_LIVELLI - 1;
+        for (int l = 0; l < NUM_LIVELLI - 1; l++) {
+            int spostamento = BIT_PER_LIVELLO * (l + 1);
+            if ((evento.giorno >>> spostamento) == (giornoCorrente >>> spostamento)) {
+                livello = l;
+                break;
+            }
+        }
+        int slot = (int) (evento.giorno >>> (BIT_PER_LIVELLO * livello)) & MASCHERA;
+        EventoProgrammato testa = teste[livello][slot];
+        evento.precedente = null;
+        evento.successivo = testa;
+        if (testa != null) {
+            testa.precedente = evento;
+        }
+        teste[livello][slot] = evento;
+        evento.livello = livello;
+        evento.slot = slot;
+    }
+
+    private void scollega(EventoProgrammato evento) {
+        if (evento.precedente != null) {
+            evento.precedente.successivo = evento.successivo;
+        } else {
+            teste[evento.livello][evento.slot] = evento.successivo;
+        }
+        if (evento.successivo != null) {
+            evento.successivo.precedente = evento.precedente;
+        }
+        evento.precedente = evento.successivo = null;
+        evento.livello = evento.slot = -1;
+    }
+}
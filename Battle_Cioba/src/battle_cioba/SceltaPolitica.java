@@ -0,0 +1,92 @@
+package battle_cioba;
+
+/**
+ * Scelte politiche che un governo può mettere in coda per il giorno successivo.
+ * Ogni scelta ha un costo in monete (negativo se fa incassare), un effetto
+ * base sulla stabilità della capitale con un'incertezza, un effetto
+ * immediato sul consenso delle regioni e una variazione in percentuale dei
+ * rivoltosi.
+ */
+public enum SceltaPolitica {
+    PROPAGANDA("Propaganda", 200, 3, 3, 4, 0),
+    CONCESSIONI("Concessioni al popolo", 400, 6, 2, 6, -20),
+    REPRESSIONE("Repressione del dissenso", 100, 2, 6, -8, -50),
+    RIFORMA_FISCALE("Riforma fiscale", -300, -5, 4, -5, 10),
+    RIFORME_SOCIALI("Riforme sociali", 600, 4, 5, 10, -10);
+
+    /**
+     * Scelte indicizzate per ordinale (evita di ricreare l'array di values()).
+     */
+    private static final SceltaPolitica[] VALORI = values();
+
+    private final String nome;
+    private final int costo;
+    private final int effettoStabilita;
+    private final int incertezza;
+    private final int effettoConsensi;
+    private final int variazioneRivoltosi;
+
+    SceltaPolitica(String nome, int costo, int effettoStabilita, int incertezza,
+            int effettoConsensi, int variazioneRivoltosi) {
+        this.nome = nome;
+        this.costo = costo;
+        this.effettoStabilita = effettoStabilita;
+        this.incertezza = incertezza;
+        this.effettoConsensi = effettoConsensi;
+        this.variazioneRivoltosi = variazioneRivoltosi;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    /**
+     * Monete spese (negativo: monete incassate).
+     */
+    public int getCosto() {
+        return costo;
+    }
+
+    /**
+     * Effetto medio sulla stabilità della capitale.
+     */
+    public int getEffettoStabilita() {
+        return effettoStabilita;
+    }
+
+    /**
+     * Scarto massimo dall'effetto medio, in più o in meno.
+     */
+    public int getIncertezza() {
+        return incertezza;
+    }
+
+    /**
+     * Punti di consenso aggiunti a ogni regione dello stato.
+     */
+    public int getEffettoConsensi() {
+        return effettoConsensi;
+    }
+
+    /**
+     * Variazione percentuale dei rivoltosi di ogni regione.
+     */
+    public int getVariazioneRivoltosi() {
+        return variazioneRivoltosi;
+    }
+
+    /**
+     * Restituisce la scelta con l'ordinale indicato.
+     *
+     * @param ordinale ordinale della scelta
+     * @return scelta corrispondente
+     */
+    public static SceltaPolitica daOrdinale(int ordinale) {
+        return VALORI[ordinale];
+    }
+
+    @Override
+    public String toString() {
+        return nome;
+    }
+}
@@ -0,0 +1,831 @@
+package battle_cioba;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Server autorevole di una partita: il mondo si simula solo qui e i client
+ * ricevono lo stato da mostrare, senza interfaccia grafica sul server.
+ * <p>
+ * Chi si collega riceve un'istantanea completa; poi, alla fine di ogni
+ * giorno, un delta con le sole celle cambiate (dal bus degli eventi del
+ * mondo), le regioni e gli aggregati degli stati diversi dall'ultimo invio.
+ * I valori sono assoluti, quindi riapplicare un delta non fa danni. Il delta
+ * si costruisce una volta per giorno e lo stesso array di byte va a tutti i
+ * client: il costo per client è solo la scrittura sul socket.
+ * <p>
+ * Un solo thread serve tutti i socket con un selettore, senza bloccarsi.
+ * Ogni client ha un limite di byte al secondo e uno di byte in coda: un
+ * client che resta indietro oltre la coda perde i delta accodati e riceve
+ * una nuova istantanea, così memoria e banda restano limitate qualunque sia
+ * la sua velocità.
+ * <p>
+ * Formato di un frame (interi varint, quelli con segno a zig-zag):
+ * <pre>
+ * frame:    lunghezza (int), tipo (byte), giorno, [righe, colonne solo nell'istantanea],
+ *           numero di stati, stato..., numero di regioni, regione...,
+ *           numero di celle, cella...
+ * stato:    indice, flag (1 esiste, 2 segue il nome), [nome (UTF)], territori, popolazione, tesoro
+ * regione:  id, flag (2 segue il nome, 4 regione sparita), [nome (UTF)], stato, consensi, rivoltosi
+ * cella:    distanza dalla cella precedente, proprietario, civili, tipo di centro
+ * </pre>
+ */
+public class ServerPartita implements OsservatoreSimulazione, Closeable {
+
+    /**
+     * Tipi di frame.
+     */
+    static final byte ISTANTANEA = 1, DELTA = 2;
+
+    /**
+     * Flag dei record di stati e regioni.
+     */
+    static final int ESISTE = 1, CON_NOME = 2, RIMOSSA = 4;
+
+    /**
+     * Byte al secondo concessi a ogni client.
+     */
+    public static final long BANDA_PREDEFINITA = 4L << 20;
+
+    /**
+     * Byte che possono restare in coda per un client prima di rimandargli un'istantanea.
+     */
+    public static final int CODA_MASSIMA = 2 << 20;
+
+    /**
+     * Attesa massima del selettore, che ricarica anche la banda dei client.
+     */
+    private static final long ATTESA_MS = 10;
+
+    /**
+     * Un delta pronto, con il suo numero d'ordine.
+     */
+    private static final class Frame {
+
+        final long numero;
+        final byte[] dati;
+
+        Frame(long numero, byte[] dati) {
+            this.numero = numero;
+            this.dati = dati;
+        }
+    }
+
+    /**
+     * Un client collegato (solo il thread del selettore lo usa).
+     */
+    private final class Cliente {
+
+        final SocketChannel canale;
+        final SelectionKey chiave;
+        final String indirizzo;
+
+        /**
+         * Frame ancora da scrivere, con i byte che occupano.
+         */
+        final ArrayDeque<ByteBuffer> coda = new ArrayDeque<>();
+        long byteInCoda;
+
+        /**
+         * Primo delta successivo all'ultima istantanea inviata.
+         */
+        long primoDelta;
+
+        /**
+         * Byte che si possono ancora scrivere e ultima ricarica.
+         */
+        double banda;
+        long ultimaRicarica = System.nanoTime();
+
+        /**
+         * Statistiche.
+         */
+        long byteInviati, frameInviati, istantanee, nanosScrittura;
+        final long collegato = System.nanoTime();
+
+        Cliente(SocketChannel canale, SelectionKey chiave) throws IOException {
+            this.canale = canale;
+            this.chiave = chiave;
+            this.indirizzo = String.valueOf(canale.getRemoteAddress());
+            this.banda = bandaPerCliente;
+        }
+    }
+
+    /**
+     * Partita servita.
+     */
+    private final Partita partita;
+    private final Mondo mondo;
+
+    /**
+     * Socket in ascolto, selettore e thread che li serve.
+     */
+    private final ServerSocketChannel ascolto;
+    private final Selector selettore;
+    private final Thread thread;
+    private volatile boolean attivo = true;
+
+    /**
+     * Byte al secondo concessi a ogni client.
+     */
+    private final long bandaPerCliente;
+
+    /**
+     * Delta costruiti dal thread della simulazione e non ancora distribuiti.
+     */
+    private final ConcurrentLinkedQueue<Frame> daDistribuire = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Client collegati (li modifica solo il thread del selettore).
+     */
+    private final List<Cliente> clienti = new CopyOnWriteArrayList<>();
+
+    /* ---------- ultimo stato inviato (accesso con il lock del mondo) ---------- */
+
+    /**
+     * Celle cambiate dall'ultimo delta, senza ripetizioni.
+     */
+    private final BusEventiMondo.Lettore lettore;
+    private final boolean[] sporca;
+    private final int[] celleSporche;
+    private int numSporche;
+    private boolean tutteSporche;
+
+    /**
+     * Aggregati degli stati all'ultimo delta (indice = indice dello stato).
+     */
+    private boolean[] statoEsiste = new boolean[0];
+    private int[] territoriStato = new int[0];
+    private long[] popolazioneStato = new long[0];
+    private long[] tesoroStato = new long[0];
+    private String[] nomeStato = new String[0];
+
+    /**
+     * Stati il cui nome va nel prossimo delta.
+     */
+    private boolean[] nomeNuovo = new boolean[0];
+
+    /**
+     * Stato, consensi, rivoltosi, nome da inviare (1) e ultimo giro in cui è
+     * stata vista, per ogni regione all'ultimo delta.
+     */
+    private final Map<Regione, int[]> regioniInviate = new IdentityHashMap<>();
+    private int giroRegioni;
+
+    /**
+     * Id delle regioni sparite dall'ultimo delta.
+     */
+    private final List<Long> regioniRimosse = new ArrayList<>();
+
+    /**
+     * Delta costruiti finora.
+     */
+    private long numeroDelta;
+
+    /**
+     * Statistiche della costruzione dei frame.
+     */
+    private volatile long nanosUltimoDelta, byteUltimoDelta, celleUltimoDelta;
+    private volatile int ultimaIstantanea;
+
+    /**
+     * Serve la partita sulla porta indicata dell'interfaccia di loopback,
+     * con la banda predefinita.
+     *
+     * @param partita partita con i sistemi inizializzati
+     * @param porta porta (0 = una libera)
+     * @return server avviato
+     * @throws IOException se la porta non si può aprire
+     */
+    public static ServerPartita avvia(Partita partita, int porta) throws IOException {
+        return avvia(partita, new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), BANDA_PREDEFINITA);
+    }
+
+    /**
+     * Serve la partita: apre l'indirizzo, si registra presso il motore e
+     * avvia il thread del selettore.
+     *
+     * @param partita partita con i sistemi inizializzati
+     * @param indirizzo indirizzo su cui ascoltare
+     * @param bandaPerCliente byte al secondo concessi a ogni client
+     * @return server avviato
+     * @throws IOException se l'indirizzo non si può aprire
+     */
+    public static ServerPartita avvia(Partita partita, InetSocketAddress indirizzo, long bandaPerCliente)
+            throws IOException {
+        ServerPartita server = new ServerPartita(partita, indirizzo, bandaPerCliente);
+        // Solo a oggetto completo: da qui arrivano i giorni e i client
+        partita.getMotore().aggiungiOsservatore(server);
+        server.thread.start();
+        return server;
+    }
+
+    /**
+     * Costruttore principale: prepara lo stato iniziale e il socket in ascolto.
+     */
+    private ServerPartita(Partita partita, InetSocketAddress indirizzo, long bandaPerCliente) throws IOException {
+        this.partita = partita;
+        this.mondo = partita.getMondo();
+        this.bandaPerCliente = bandaPerCliente;
+        int celle = mondo.getRighe() * mondo.getColonne();
+        this.sporca = new boolean[celle];
+        this.celleSporche = new int[celle];
+        synchronized (mondo) {
+            this.lettore = partita.getEventiMondo().nuovoLettore();
+            aggiornaStati();
+            aggiornaRegioni(null);
+            regioniRimosse.clear();
+        }
+        this.selettore = Selector.open();
+        this.ascolto = ServerSocketChannel.open();
+        ascolto.bind(indirizzo);
+        ascolto.configureBlocking(false);
+        ascolto.register(selettore, SelectionKey.OP_ACCEPT);
+        this.thread = new Thread(this::servi, "Server partita");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Porta su cui il server ascolta.
+     *
+     * @return numero di porta
+     */
+    public int getPorta() {
+        return ascolto.socket().getLocalPort();
+    }
+
+    /* =========================== COSTRUZIONE DEI FRAME (thread della simulazione) =========================== */
+
+    @Override
+    public void giornoCompletato(RiepilogoGiorno riepilogo) {
+        if (!attivo) {
+            return;
+        }
+        long inizio = System.nanoTime();
+        Frame frame;
+        synchronized (mondo) {
+            frame = new Frame(++numeroDelta, codificaDelta(riepilogo.getGiorno()));
+        }
+        nanosUltimoDelta = System.nanoTime() - inizio;
+        byteUltimoDelta = frame.dati.length;
+        daDistribuire.add(frame);
+        selettore.wakeup();
+    }
+
+    /**
+     * Delta dall'ultimo invio. Da chiamare con il lock del mondo.
+     */
+    private byte[] codificaDelta(long giorno) {
+        lettore.leggi(new BusEventiMondo.Consumatore() {
+            @Override
+            public void evento(BusEventiMondo.Tipo tipo, int cella, int stato, long valore) {
+                if (cella >= 0 && !sporca[cella]) {
+                    sporca[cella] = true;
+                    celleSporche[numSporche++] = cella;
+                }
+            }
+
+            @Override
+            public void eventiPersi(long numero) {
+                tutteSporche = true;
+            }
+        });
+        try {
+            Scrittore s = new Scrittore(DELTA, giorno);
+            s.scriviStati(aggiornaStati(), false);
+            s.scriviRegioni(aggiornaRegioni(new ArrayList<>()), regioniRimosse, false);
+            regioniRimosse.clear();
+            if (tutteSporche) {
+                s.scriviTutteLeCelle();
+            } else {
+                Arrays.sort(celleSporche, 0, numSporche);
+                s.scriviCelle(celleSporche, numSporche);
+            }
+            celleUltimoDelta = tutteSporche ? sporca.length : numSporche;
+            for (int i = 0; i < numSporche; i++) {
+                sporca[celleSporche[i]] = false;
+            }
+            numSporche = 0;
+            tutteSporche = false;
+            return s.chiudi();
+        } catch (IOException e) {
+            // Si scrive in memoria: non succede
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Istantanea completa del mondo. Da chiamare con il lock del mondo.
+     */
+    private byte[] codificaIstantanea() {
+        try {
+            Scrittore s = new Scrittore(ISTANTANEA, partita.getMotore().getGiorno());
+            int[] tutti = new int[statoEsiste.length];
+            for (int i = 0; i < tutti.length; i++) {
+                tutti[i] = i;
+            }
+            s.scriviStati(tutti, true);
+            s.scriviRegioni(new ArrayList<>(regioniInviate.keySet()), List.of(), true);
+            s.scriviTutteLeCelle();
+            byte[] dati = s.chiudi();
+            ultimaIstantanea = dati.length;
+            return dati;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Rilegge gli aggregati degli stati e restituisce gli indici di quelli cambiati.
+     * Anche l'istantanea usa i valori letti qui: quelli cambiati dopo l'ultimo
+     * delta li porterà il prossimo, identici.
+     */
+    private int[] aggiornaStati() {
+        int n = mondo.getCapacitaStati();
+        if (n > statoEsiste.length) {
+            statoEsiste = Arrays.copyOf(statoEsiste, n);
+            territoriStato = Arrays.copyOf(territoriStato, n);
+            popolazioneStato = Arrays.copyOf(popolazioneStato, n);
+            tesoroStato = Arrays.copyOf(tesoroStato, n);
+            nomeStato = Arrays.copyOf(nomeStato, n);
+            nomeNuovo = Arrays.copyOf(nomeNuovo, n);
+        }
+        int[] cambiati = new int[n];
+        int numCambiati = 0;
+        for (int i = 0; i < n; i++) {
+            Stato stato = mondo.getStatoPerIndice(i);
+            boolean esiste = stato != null;
+            int territori = esiste ? stato.getAggregato().getTerritoriTotali() : 0;
+            long popolazione = esiste ? stato.getAggregato().getPopolazione() : 0;
+            long tesoro = esiste ? partita.getEconomia().getTesoro(stato) : 0;
+            nomeNuovo[i] = esiste && !stato.getNome().equals(nomeStato[i]);
+            if (nomeNuovo[i]) {
+                nomeStato[i] = stato.getNome();
+            }
+            if (nomeNuovo[i] || esiste != statoEsiste[i] || territori != territoriStato[i]
+                    || popolazione != popolazioneStato[i] || tesoro != tesoroStato[i]) {
+                statoEsiste[i] = esiste;
+                territoriStato[i] = territori;
+                popolazioneStato[i] = popolazione;
+                tesoroStato[i] = tesoro;
+                cambiati[numCambiati++] = i;
+            }
+        }
+        return Arrays.copyOf(cambiati, numCambiati);
+    }
+
+    /**
+     * Rilegge le regioni e aggiunge a cambiate quelle diverse dall'ultimo
+     * invio; quelle non più appartenenti a nessuno stato finiscono tra le rimosse.
+     */
+    private List<Regione> aggiornaRegioni(List<Regione> cambiate) {
+        giroRegioni++;
+        for (Stato stato : mondo.getStati()) {
+            for (Regione r : stato.getRegioni()) {
+                int indice = r.getStato() != null ? r.getStato().getIndice() : -1;
+                int[] inviata = regioniInviate.get(r);
+                if (inviata == null) {
+                    inviata = new int[]{indice, r.getConsensi(), r.getRivoltosi(), 1, 0};
+                    regioniInviate.put(r, inviata);
+                } else if (inviata[0] != indice || inviata[1] != r.getConsensi() || inviata[2] != r.getRivoltosi()) {
+                    inviata[0] = indice;
+                    inviata[1] = r.getConsensi();
+                    inviata[2] = r.getRivoltosi();
+                } else {
+                    inviata[4] = giroRegioni;
+                    continue;
+                }
+                inviata[4] = giroRegioni;
+                if (cambiate != null) {
+                    cambiate.add(r);
+                }
+            }
+        }
+        Iterator<Map.Entry<Regione, int[]>> voci = regioniInviate.entrySet().iterator();
+        while (voci.hasNext()) {
+            Map.Entry<Regione, int[]> voce = voci.next();
+            if (voce.getValue()[4] != giroRegioni) {
+                regioniRimosse.add(voce.getKey().getId());
+                voci.remove();
+            }
+        }
+        return cambiate;
+    }
+
+    /**
+     * Scrive un frame in memoria.
+     */
+    private final class Scrittore {
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        private final DataOutputStream uscita = new DataOutputStream(buffer);
+
+        Scrittore(byte tipo, long giorno) throws IOException {
+            uscita.writeInt(0);
+            uscita.writeByte(tipo);
+            RegistrazionePartita.scriviVarint(uscita, giorno);
+            if (tipo == ISTANTANEA) {
+                RegistrazionePartita.scriviVarint(uscita, mondo.getRighe());
+                RegistrazionePartita.scriviVarint(uscita, mondo.getColonne());
+            }
+        }
+
+        void scriviStati(int[] indici, boolean nomi) throws IOException {
+            RegistrazionePartita.scriviVarint(uscita, indici.length);
+            for (int i : indici) {
+                // Il nome va nelle istantanee e quando compare o cambia
+                boolean conNome = statoEsiste[i] && nomeStato[i] != null && (nomi || nomeNuovo[i]);
+                RegistrazionePartita.scriviVarint(uscita, i);
+                uscita.writeByte((statoEsiste[i] ? ESISTE : 0) | (conNome ? CON_NOME : 0));
+                if (conNome) {
+                    uscita.writeUTF(nomeStato[i]);
+                }
+                RegistrazionePartita.scriviVarint(uscita, territoriStato[i]);
+                RegistrazionePartita.scriviVarint(uscita, popolazioneStato[i]);
+                RegistrazionePartita.scriviVarint(uscita, RegistrazionePartita.zigZag(tesoroStato[i]));
+            }
+        }
+
+        void scriviRegioni(List<Regione> regioni, List<Long> rimosse, boolean nomi) throws IOException {
+            RegistrazionePartita.scriviVarint(uscita, regioni.size() + rimosse.size());
+            for (long id : rimosse) {
+                RegistrazionePartita.scriviVarint(uscita, id);
+                uscita.writeByte(RIMOSSA);
+                for (int k = 0; k < 3; k++) {
+                    RegistrazionePartita.scriviVarint(uscita, 0);
+                }
+            }
+            for (Regione r : regioni) {
+                int[] v = regioniInviate.get(r);
+                // Il nome va nelle istantanee e nel primo delta che contiene la regione
+                boolean conNome = nomi || v[3] == 1;
+                if (!nomi) {
+                    v[3] = 0;
+                }
+                RegistrazionePartita.scriviVarint(uscita, r.getId());
+                uscita.writeByte(conNome ? CON_NOME : 0);
+                if (conNome) {
+                    uscita.writeUTF(r.getNome());
+                }
+                RegistrazionePartita.scriviVarint(uscita, RegistrazionePartita.zigZag(v[0]));
+                RegistrazionePartita.scriviVarint(uscita, RegistrazionePartita.zigZag(v[1]));
+                RegistrazionePartita.scriviVarint(uscita, RegistrazionePartita.zigZag(v[2]));
+            }
+        }
+
+        void scriviTutteLeCelle() throws IOException {
+            RegistrazionePartita.scriviVarint(uscita, sporca.length);
+            for (int c = 0; c < sporca.length; c++) {
+                scriviCella(c, 1);
+            }
+        }
+
+        void scriviCelle(int[] celle, int numero) throws IOException {
+            RegistrazionePartita.scriviVarint(uscita, numero);
+            int precedente = -1;
+            for (int i = 0; i < numero; i++) {
+                scriviCella(celle[i], celle[i] - precedente);
+                precedente = celle[i];
+            }
+        }
+
+        private void scriviCella(int c, int distanza) throws IOException {
+            Territorio t = mondo.getTerritorio(c);
+            Centro centro = t != null ? t.getCentro() : null;
+            RegistrazionePartita.scriviVarint(uscita, distanza);
+            RegistrazionePartita.scriviVarint(uscita,
+                    RegistrazionePartita.zigZag(t != null ? mondo.indiceStato(t.getStatoPadrone()) : -1));
+            RegistrazionePartita.scriviVarint(uscita, t != null ? t.getNumCivili() : 0);
+            RegistrazionePartita.scriviVarint(uscita,
+                    RegistrazionePartita.zigZag(centro != null ? centro.getTipo().ordinal() : -1));
+        }
+
+        /**
+         * Scrive la lunghezza in testa e restituisce il frame.
+         */
+        byte[] chiudi() {
+            byte[] dati = buffer.toByteArray();
+            ByteBuffer.wrap(dati).putInt(0, dati.length - Integer.BYTES);
+            return dati;
+        }
+    }
+
+    /* =========================== RETE (thread del selettore) =========================== */
+
+    private void servi() {
+        ByteBuffer scarto = ByteBuffer.allocate(512);
+        while (attivo) {
+            try {
+                selettore.select(ATTESA_MS);
+                Iterator<SelectionKey> chiavi = selettore.selectedKeys().iterator();
+                while (chiavi.hasNext()) {
+                    SelectionKey chiave = chiavi.next();
+                    chiavi.remove();
+                    if (!chiave.isValid()) {
+                        continue;
+                    }
+                    if (chiave.isAcceptable()) {
+                        accetta();
+                    } else if (chiave.isReadable()) {
+                        // I client non mandano comandi: si legge solo per accorgersi della chiusura
+                        scarto.clear();
+                        leggiOChiudi((Cliente) chiave.attachment(), scarto);
+                    }
+                }
+                distribuisci();
+                for (int i = clienti.size() - 1; i >= 0; i--) {
+                    scrivi(clienti.get(i));
+                }
+            } catch (IOException e) {
+                if (attivo) {
+                    System.err.println("Server partita: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void leggiOChiudi(Cliente c, ByteBuffer scarto) {
+        try {
+            if (c.canale.read(scarto) < 0) {
+                chiudi(c);
+            }
+        } catch (IOException e) {
+            chiudi(c);
+        }
+    }
+
+    private void accetta() throws IOException {
+        SocketChannel canale;
+        while ((canale = ascolto.accept()) != null) {
+            canale.configureBlocking(false);
+            canale.socket().setTcpNoDelay(true);
+            SelectionKey chiave = canale.register(selettore, SelectionKey.OP_READ);
+            Cliente c = new Cliente(canale, chiave);
+            chiave.attach(c);
+            clienti.add(c);
+            inviaIstantanea(c);
+        }
+    }
+
+    /**
+     * Sostituisce la coda del client con un'istantanea del mondo.
+     */
+    private void inviaIstantanea(Cliente c) {
+        byte[] dati;
+        synchronized (mondo) {
+            dati = codificaIstantanea();
+            // I delta già costruiti sono compresi nell'istantanea
+            c.primoDelta = numeroDelta + 1;
+        }
+        // Un frame scritto a metà va finito, altrimenti il client perde l'allineamento
+        ByteBuffer iniziato = c.coda.peekFirst();
+        c.coda.clear();
+        c.byteInCoda = 0;
+        if (iniziato != null && iniziato.position() > 0) {
+            c.coda.add(iniziato);
+            c.byteInCoda += iniziato.remaining();
+        }
+        c.coda.add(ByteBuffer.wrap(dati));
+        c.byteInCoda += dati.length;
+        c.istantanee++;
+    }
+
+    /**
+     * Accoda a ogni client i delta costruiti dalla simulazione.
+     */
+    private void distribuisci() {
+        Frame frame;
+        while ((frame = daDistribuire.poll()) != null) {
+            for (Cliente c : clienti) {
+                if (frame.numero < c.primoDelta) {
+                    continue;
+                }
+                if (c.byteInCoda + frame.dati.length > CODA_MASSIMA) {
+                    // Troppo indietro: un'istantanea sostituisce tutti i delta accodati
+                    inviaIstantanea(c);
+                    continue;
+                }
+                c.coda.add(ByteBuffer.wrap(frame.dati));
+                c.byteInCoda += frame.dati.length;
+            }
+        }
+    }
+
+    /**
+     * Scrive quanto la banda del client consente, senza bloccarsi.
+     */
+    private void scrivi(Cliente c) {
+        long ora = System.nanoTime();
+        c.banda = Math.min(bandaPerCliente, c.banda + (ora - c.ultimaRicarica) * bandaPerCliente / 1e9);
+        c.ultimaRicarica = ora;
+        try {
+            while (!c.coda.isEmpty() && c.banda >= 1) {
+                ByteBuffer b = c.coda.peekFirst();
+                int limite = b.limit();
+                b.limit((int) Math.min(limite, b.position() + (long) c.banda));
+                int scritti = c.canale.write(b);
+                b.limit(limite);
+                c.banda -= scritti;
+                c.byteInviati += scritti;
+                c.byteInCoda -= scritti;
+                if (b.hasRemaining()) {
+                    break;
+                }
+                c.coda.pollFirst();
+                c.frameInviati++;
+            }
+        } catch (IOException e) {
+            chiudi(c);
+            return;
+        }
+        c.nanosScrittura += System.nanoTime() - ora;
+        // Si chiede la scrittura al selettore solo se il socket è pieno, non se manca la banda
+        boolean attendeSocket = !c.coda.isEmpty() && c.banda >= 1;
+        if (c.chiave.isValid()) {
+            c.chiave.interestOps(SelectionKey.OP_READ | (attendeSocket ? SelectionKey.OP_WRITE : 0));
+        }
+    }
+
+    private void chiudi(Cliente c) {
+        clienti.remove(c);
+        c.chiave.cancel();
+        try {
+            c.canale.close();
+        } catch (IOException e) {
+            // Già chiuso
+        }
+    }
+
+    /* =========================== STATISTICHE =========================== */
+
+    /**
+     * Una riga per client collegato: byte inviati, banda media, frame,
+     * istantanee, coda e tempo di scrittura medio per giorno.
+     * Le statistiche dei client sono del thread del selettore: i valori letti
+     * da un altro thread possono essere indietro di qualche frame.
+     *
+     * @return descrizione dei client
+     */
+    public List<String> descriviClienti() {
+        List<String> righe = new ArrayList<>();
+        long giorni = Math.max(1, numeroDelta);
+        for (Cliente c : clienti) {
+            double secondi = Math.max(1e-9, (System.nanoTime() - c.collegato) / 1e9);
+            righe.add(String.format("%s: %d byte (%.1f KB/s), %d frame, %d istantanee, coda %d byte, %.1f µs/giorno",
+                    c.indirizzo, c.byteInviati, c.byteInviati / 1024.0 / secondi, c.frameInviati,
+                    c.istantanee, c.byteInCoda, c.nanosScrittura / 1000.0 / giorni));
+        }
+        return righe;
+    }
+
+    public int getNumClienti() {
+        return clienti.size();
+    }
+
+    public long getBandaPerCliente() {
+        return bandaPerCliente;
+    }
+
+    /**
+     * Tempo per costruire l'ultimo delta, condiviso da tutti i client.
+     *
+     * @return nanosecondi
+     */
+    public long getNanosUltimoDelta() {
+        return nanosUltimoDelta;
+    }
+
+    public long getByteUltimoDelta() {
+        return byteUltimoDelta;
+    }
+
+    public long getCelleUltimoDelta() {
+        return celleUltimoDelta;
+    }
+
+    public int getByteUltimaIstantanea() {
+        return ultimaIstantanea;
+    }
+
+    /**
+     * Smette di osservare la partita e chiude tutte le connessioni.
+     *
+     * @throws IOException se la chiusura del socket in ascolto fallisce
+     */
+    @Override
+    public void close() throws IOException {
+        attivo = false;
+        partita.getMotore().rimuoviOsservatore(this);
+        selettore.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Cliente c : clienti) {
+            chiudi(c);
+        }
+        ascolto.close();
+        selettore.close();
+    }
+
+    /* =========================== ESECUZIONE SENZA INTERFACCIA =========================== */
+
+    /**
+     * Genera un mondo, lo affida all'intelligenza artificiale e lo serve.
+     * <p>
+     * Uso: {@code java battle_cioba.ServerPartita [porta] [giorni] [client di prova] [seme] [banda]}
+     * <p>
+     * Con giorni &gt; 0 simula quei giorni alla massima velocità, con i client
+     * di prova collegati in loopback, poi riporta banda e tempi per client e
+     * controlla che ogni copia coincida con il mondo del server. Con giorni = 0
+     * il tempo scorre normalmente e il server resta attivo finché il processo
+     * non viene fermato.
+     *
+     * @param args argomenti della riga di comando
+     * @throws Exception se la mappa o la porta non sono disponibili
+     */
+    public static void main(String[] args) throws Exception {
+        int porta = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        int giorni = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        int numClienti = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        long seme = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+        long banda = args.length > 4 ? Long.parseLong(args[4]) : BANDA_PREDEFINITA;
+        Partita partita = RiproduzionePartita.creaPartita(new RegistrazionePartita.Intestazione(seme,
+                GeneratoreCasuale.deriva(seme, 0), RiproduzionePartita.STATI, RiproduzionePartita.MAPPA));
+        partita.getIntelligenza().assegnaTutti(RiproduzionePartita.LIVELLO);
+        try (ServerPartita server = ServerPartita.avvia(partita,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), banda)) {
+            System.out.println("Server in ascolto su " + server.ascolto.getLocalAddress()
+                    + " (istantanea " + server.codificaIstantaneaBloccata().length + " byte)");
+            if (giorni <= 0) {
+                partita.getMotore().avvia();
+                partita.getMotore().riprendi();
+                while (true) {
+                    Thread.sleep(30_000);
+                    System.out.println("Giorno " + partita.getMotore().getGiorno() + ", " + server.getNumClienti()
+                            + " client, ultimo delta " + server.getByteUltimoDelta() + " byte in "
+                            + server.getNanosUltimoDelta() / 1000 + " µs");
+                    server.descriviClienti().forEach(riga -> System.out.println("  " + riga));
+                }
+            }
+            ClientePartita[] clienti = new ClientePartita[numClienti];
+            for (int i = 0; i < numClienti; i++) {
+                clienti[i] = new ClientePartita(InetAddress.getLoopbackAddress().getHostAddress(), server.getPorta());
+            }
+            long nanosDelta = 0, nanosDeltaMax = 0, byteDelta = 0, celle = 0, inizio = System.nanoTime();
+            RiepilogoGiorno riepilogo = null;
+            for (int g = 0; g < giorni; g++) {
+                riepilogo = partita.getMotore().eseguiGiorno();
+                nanosDelta += server.getNanosUltimoDelta();
+                nanosDeltaMax = Math.max(nanosDeltaMax, server.getNanosUltimoDelta());
+                byteDelta += server.getByteUltimoDelta();
+                celle += server.getCelleUltimoDelta();
+            }
+            double secondi = (System.nanoTime() - inizio) / 1e9;
+            System.out.printf("%d giorni in %.3f s (%.1f giorni/s)%n", giorni, secondi, giorni / secondi);
+            System.out.printf("Delta: %.0f byte/giorno, %.1f celle/giorno, costruzione %.1f µs/giorno (massimo %d µs)%n",
+                    (double) byteDelta / giorni, (double) celle / giorni, nanosDelta / 1000.0 / giorni,
+                    nanosDeltaMax / 1000);
+            int errori = 0;
+            for (ClientePartita c : clienti) {
+                boolean arrivato = c.attendiGiorno(riepilogo.getGiorno(), 30_000);
+                int differenze = c.contaDifferenze(partita);
+                errori += !arrivato || differenze > 0 ? 1 : 0;
+                System.out.println("Client: giorno " + c.getGiorno() + ", " + c.getByteRicevuti() + " byte, "
+                        + c.getFrameRicevuti() + " frame, " + c.getIstantanee() + " istantanee, "
+                        + differenze + " differenze");
+            }
+            server.descriviClienti().forEach(riga -> System.out.println("  " + riga));
+            for (ClientePartita c : clienti) {
+                c.close();
+            }
+            System.out.println(errori == 0 ? "Copie coerenti con il server" : errori + " copie DIVERSE dal server");
+            System.exit(errori == 0 ? 0 : 1);
+        }
+    }
+
+    private byte[] codificaIstantaneaBloccata() {
+        synchronized (mondo) {
+            return codificaIstantanea();
+        }
+    }
+}
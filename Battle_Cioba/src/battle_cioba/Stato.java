@@ -1,13 +1,14 @@
 package battle_cioba;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
 /**
  * Classe che rappresenta uno Stato, contenente più Regioni.
  */
-public class Stato {
+public final class Stato {
 
     /**
      * Contatore statico per ID univoci di Stato.
@@ -31,16 +32,19 @@ public class Stato {
 
     /**
      * Lista delle regioni che compongono lo Stato.
+     * Ogni regione ricorda la propria posizione per la rimozione in O(1).
      */
     private final List<Regione> regioni;
 
     /**
      * Potenza complessiva dello Stato (metrica arbitraria).
+     * Una volta indicizzato il mondo, è la potenza militare aggregata delle basi.
      */
     private int potenza;
 
     /**
      * Popolazione totale dello Stato.
+     * Una volta indicizzato il mondo, è la somma aggregata dei civili dei territori.
      */
     private long popolazione;
 
@@ -54,6 +58,18 @@ public class Stato {
      */
     private int opposizione;
 
+    /**
+     * Indice denso dello Stato nel Mondo (-1 se non registrato).
+     * Usato dai sistemi di simulazione per indicizzare array primitivi.
+     */
+    private int indice = -1;
+
+    /**
+     * Somme in cache delle regioni dello Stato. Mantiene allineati
+     * popolazione e potenza con i territori posseduti.
+     */
+    private final AggregatoTerritoriale aggregato;
+
     /**
      * Costruttore base per uno Stato.
      *
@@ -70,9 +86,10 @@ public class Stato {
         this.potenza = potenza;
         this.popolazione = popolazione;
         this.capitale = capitale;
-        this.regioni = new LinkedList<>();
+        this.regioni = new ArrayList<>();
+        this.aggregato = new AggregatoTerritoriale(this);
         if (capitale != null) {
-            regioni.add(capitale);
+            collegaRegione(capitale);
         }
     }
 
@@ -82,6 +99,14 @@ public class Stato {
         return id;
     }
 
+    public int getIndice() {
+        return indice;
+    }
+
+    void setIndice(int indice) {
+        this.indice = indice;
+    }
+
     public String getNome() {
         return nome;
     }
@@ -99,7 +124,7 @@ public class Stato {
     }
 
     public List<Regione> getRegioni() {
-        return regioni;
+        return Collections.unmodifiableList(regioni);
     }
 
     public int getPotenza() {
@@ -118,10 +143,30 @@ public class Stato {
         this.popolazione = popolazione;
     }
 
+    /**
+     * Restituisce le somme in cache dei territori dello Stato (lettura O(1)).
+     */
+    public AggregatoTerritoriale getAggregato() {
+        return aggregato;
+    }
+
     public Regione getCapitale() {
         return capitale;
     }
 
+    /**
+     * Restituisce il centro Capitale sul capoluogo della regione capitale.
+     *
+     * @return capitale dello stato, null se manca
+     */
+    public Capitale getCentroCapitale() {
+        if (capitale == null || capitale.getCapoluogo() == null) {
+            return null;
+        }
+        Centro centro = capitale.getCapoluogo().getCentro();
+        return centro instanceof Capitale ? (Capitale) centro : null;
+    }
+
     public void setCapitale(Regione capitale) {
         // Se c'era già una capitale precedente, rimuovi il flag
         if (this.capitale != null && this.capitale.getCapoluogo() != null) {
@@ -132,8 +177,8 @@ public class Stato {
         this.capitale = capitale;
         
         // Aggiungi la regione alla lista delle regioni se non è già presente
-        if (capitale != null && !regioni.contains(capitale)) {
-            regioni.add(capitale);
+        if (capitale != null && capitale.getStato() != this) {
+            collegaRegione(capitale);
             
             // Imposta il capoluogo della regione come territorio capitale
             if (capitale.getCapoluogo() != null) {
@@ -153,16 +198,30 @@ public class Stato {
     /* =========================== METODI DI GESTIONE =========================== */
 
     /**
-     * Aggiunge una regione allo Stato.
+     * Aggiunge una regione allo Stato. Se la regione apparteneva
+     * a un altro Stato, viene prima rimossa da quello.
      *
      * @param regione la regione da aggiungere
      */
     public void addRegione(Regione regione) {
-        if (regione != null && !regioni.contains(regione)) {
-            regioni.add(regione);
+        if (regione != null && regione.getStato() != this) {
+            collegaRegione(regione);
         }
     }
 
+    /**
+     * Aggiunge la regione alla lista e sposta le sue somme sotto questo Stato.
+     */
+    private void collegaRegione(Regione regione) {
+        if (regione.getStato() != null) {
+            regione.getStato().removeRegione(regione);
+        }
+        regione.setPosizioneInStato(regioni.size());
+        regioni.add(regione);
+        regione.setStato(this);
+        regione.getAggregato().setPadre(aggregato);
+    }
+
     /**
      * Rimuove una regione dallo Stato.
      *
@@ -170,12 +229,22 @@ public class Stato {
      * @return true se la regione è stata rimossa, false altrimenti
      */
     public boolean removeRegione(Regione regione) {
-        if (regione == null) return false;
+        if (regione == null || regione.getStato() != this) return false;
         // Se rimuovo la capitale, la setto a null
         if (Objects.equals(capitale, regione)) {
             capitale = null;
         }
-        return regioni.remove(regione);
+        // Rimozione O(1): l'ultima regione prende il posto di quella rimossa
+        int posizione = regione.getPosizioneInStato();
+        Regione ultima = regioni.remove(regioni.size() - 1);
+        if (ultima != regione) {
+            regioni.set(posizione, ultima);
+            ultima.setPosizioneInStato(posizione);
+        }
+        regione.setPosizioneInStato(-1);
+        regione.setStato(null);
+        regione.getAggregato().setPadre(null);
+        return true;
     }
 
     /**
@@ -0,0 +1,486 @@
+package battle_cioba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stato del mondo ridotto all'osso per la ricerca delle mosse.
+ * <p>
+ * Ogni regione è un indice; proprietario, forza militare e tesoro sono array
+ * primitivi, per cui copiare lo stato costa pochi System.arraycopy invece di
+ * clonare il grafo di oggetti del Mondo. Le parti che non cambiano durante la
+ * ricerca (adiacenze tra regioni, reddito e difesa delle regioni) sono
+ * condivise tra tutte le copie.
+ * <p>
+ * Il modello in avanti lavora a turni strategici di GIORNI_PER_TURNO giorni:
+ * a ogni turno gli stati incassano il reddito delle regioni che possiedono e
+ * possono attaccare una regione confinante oppure arruolare con il tesoro.
+ * Il combattimento è una versione semplificata di quello del
+ * RisolutoreCombattimenti (forza contro forza moltiplicata per la difesa).
+ */
+public class StatoSimulazione {
+
+    /**
+     * Giorni di gioco rappresentati da un turno di simulazione.
+     */
+    public static final int GIORNI_PER_TURNO = 10;
+
+    /**
+     * Monete necessarie per un punto di forza militare.
+     */
+    public static final int MONETE_PER_FORZA = 100;
+
+    /**
+     * Mossa nulla: lo stato non fa niente per un turno.
+     */
+    public static final int PASSA = -1;
+
+    /* ---------- parte condivisa tra le copie (non cambia durante la ricerca) ---------- */
+
+    /**
+     * Numero di regioni e capacità degli stati.
+     */
+    private final int numRegioni, numStati;
+
+    /**
+     * Adiacenze tra regioni in formato compresso: i vicini di r sono
+     * adiacenti[inizioAdiacenti[r] .. inizioAdiacenti[r + 1]).
+     */
+    private final int[] inizioAdiacenti, adiacenti;
+
+    /**
+     * Reddito per turno e livello di difesa (0-10) di ogni regione.
+     */
+    private final int[] reddito, difesa;
+
+    /**
+     * Cella del capoluogo di ogni regione (-1 se sconosciuta), per tornare alla mappa.
+     */
+    private final int[] cellaRegione;
+
+    /* ---------- parte copiata ---------- */
+
+    /**
+     * Stato proprietario di ogni regione (indice denso, -1 nessuno).
+     */
+    private final int[] proprietario;
+
+    /**
+     * Forza militare di ogni regione.
+     */
+    private final int[] forza;
+
+    /**
+     * Tesoro di ogni stato.
+     */
+    private final long[] tesoro;
+
+    /**
+     * Numero di regioni possedute da ogni stato.
+     */
+    private final int[] regioniStato;
+
+    /**
+     * Turni simulati dall'istantanea iniziale.
+     */
+    private int turno;
+
+    /**
+     * Costruttore usato da cattura e copia.
+     */
+    private StatoSimulazione(int numRegioni, int numStati, int[] inizioAdiacenti, int[] adiacenti,
+            int[] reddito, int[] difesa, int[] cellaRegione) {
+        this.numRegioni = numRegioni;
+        this.numStati = numStati;
+        this.inizioAdiacenti = inizioAdiacenti;
+        this.adiacenti = adiacenti;
+        this.reddito = reddito;
+        this.difesa = difesa;
+        this.cellaRegione = cellaRegione;
+        this.proprietario = new int[numRegioni];
+        this.forza = new int[numRegioni];
+        this.tesoro = new long[numStati];
+        this.regioniStato = new int[numStati];
+    }
+
+    /**
+     * Costruisce lo stato compatto a partire dal mondo. Percorre la mappa
+     * una volta per trovare le regioni confinanti.
+     *
+     * @param mondo mondo di gioco (già indicizzato)
+     * @param economia registro economico per i tesori (può essere null)
+     * @return nuovo stato di simulazione
+     */
+    public static StatoSimulazione cattura(Mondo mondo, RegistroEconomico economia) {
+        List<Regione> regioni = new ArrayList<>();
+        for (Stato s : mondo.getStati()) {
+            regioni.addAll(s.getRegioni());
+        }
+        int n = regioni.size();
+        int numStati = mondo.getCapacitaStati();
+
+        // Indice di regione per ogni cella
+        int righe = mondo.getRighe(), colonne = mondo.getColonne();
+        int[] regioneCella = new int[righe * colonne];
+        Arrays.fill(regioneCella, -1);
+        int[] reddito = new int[n];
+        int[] difesa = new int[n];
+        int[] cellaRegione = new int[n];
+        for (int r = 0; r < n; r++) {
+            Regione regione = regioni.get(r);
+            long rendita = 0;
+            for (Territorio t : regione.getTerritori()) {
+                regioneCella[t.getIndiceCella()] = r;
+                rendita += Math.max(0, t.calcolaRendita());
+                Centro c = t.getCentro();
+                if (c != null) {
+                    rendita += Math.max(0, c.generaRisorse());
+                    difesa[r] = Math.max(difesa[r], c.getLivelloDifesa());
+                }
+            }
+            reddito[r] = (int) Math.min(Integer.MAX_VALUE, rendita * GIORNI_PER_TURNO);
+            Territorio capoluogo = regione.getCapoluogo();
+            cellaRegione[r] = capoluogo != null ? capoluogo.getIndiceCella() : -1;
+        }
+
+        // Coppie di regioni confinanti (4-vicinato), senza duplicati
+        long[] coppie = new long[64];
+        int numCoppie = 0;
+        for (int riga = 0; riga < righe; riga++) {
+            for (int col = 0; col < colonne; col++) {
+                int a = regioneCella[riga * colonne + col];
+                if (a < 0) {
+                    continue;
+                }
+                int destra = col + 1 < colonne ? regioneCella[riga * colonne + col + 1] : -1;
+                int sotto = riga + 1 < righe ? regioneCella[(riga + 1) * colonne + col] : -1;
+                for (int k = 0; k < 2; k++) {
+                    int b = k == 0 ? destra : sotto;
+                    if (b >= 0 && b != a) {
+                        if (numCoppie + 2 > coppie.length) {
+                            coppie = Arrays.copyOf(coppie, coppie.length * 2);
+                        }
+                        coppie[numCoppie++] = (long) a << 32 | b;
+                        coppie[numCoppie++] = (long) b << 32 | a;
+                    }
+                }
+            }
+        }
+        Arrays.sort(coppie, 0, numCoppie);
+        int[] inizio = new int[n + 1];
+        int[] vicini = new int[numCoppie];
+        int numVicini = 0;
+        for (int i = 0; i < numCoppie; i++) {
+            if (i > 0 && coppie[i] == coppie[i - 1]) {
+                continue;
+            }
+            inizio[(int) (coppie[i] >>> 32) + 1]++;
+            vicini[numVicini++] = (int) coppie[i];
+        }
+        for (int r = 0; r < n; r++) {
+            inizio[r + 1] += inizio[r];
+        }
+
+        StatoSimulazione sim = new StatoSimulazione(n, numStati, inizio,
+                Arrays.copyOf(vicini, numVicini), reddito, difesa, cellaRegione);
+        for (int r = 0; r < n; r++) {
+            Regione regione = regioni.get(r);
+            int s = regione.getStato() != null ? regione.getStato().getIndice() : -1;
+            sim.proprietario[r] = s;
+            sim.forza[r] = (int) Math.min(Integer.MAX_VALUE / 4, regione.getAggregato().getPotenzaMilitare());
+            if (s >= 0) {
+                sim.regioniStato[s]++;
+            }
+        }
+        if (economia != null) {
+            for (Stato s : mondo.getStati()) {
+                sim.tesoro[s.getIndice()] = economia.getTesoro(s);
+            }
+        }
+        return sim;
+    }
+
+    /**
+     * Crea una copia indipendente (la parte immutabile resta condivisa).
+     *
+     * @return copia dello stato
+     */
+    public StatoSimulazione copia() {
+        StatoSimulazione c = new StatoSimulazione(numRegioni, numStati, inizioAdiacenti, adiacenti,
+                reddito, difesa, cellaRegione);
+        c.copiaDa(this);
+        return c;
+    }
+
+    /**
+     * Ripristina questo stato copiandone un altro con la stessa struttura,
+     * senza allocare. È l'operazione che la ricerca ripete a ogni simulazione.
+     *
+     * @param altro stato da copiare (ottenuto da copia() dello stesso originale)
+     */
+    public void copiaDa(StatoSimulazione altro) {
+        System.arraycopy(altro.proprietario, 0, proprietario, 0, numRegioni);
+        System.arraycopy(altro.forza, 0, forza, 0, numRegioni);
+        System.arraycopy(altro.tesoro, 0, tesoro, 0, numStati);
+        System.arraycopy(altro.regioniStato, 0, regioniStato, 0, numStati);
+        turno = altro.turno;
+    }
+
+    /* =========================== MOSSE =========================== */
+
+    /**
+     * Codifica un attacco dalla regione da alla regione a.
+     */
+    public static int attacco(int da, int a) {
+        return da << 16 | a;
+    }
+
+    /**
+     * Codifica un arruolamento nella regione r (spende tutto il tesoro).
+     */
+    public static int arruolamento(int r) {
+        return r << 16 | r;
+    }
+
+    public static int getOrigine(int mossa) {
+        return mossa >>> 16;
+    }
+
+    public static int getDestinazione(int mossa) {
+        return mossa & 0xFFFF;
+    }
+
+    public static boolean isAttacco(int mossa) {
+        return mossa != PASSA && getOrigine(mossa) != getDestinazione(mossa);
+    }
+
+    /**
+     * Elenca le mosse legali di uno stato: PASSA, un arruolamento (nella
+     * regione di confine più esposta) se il tesoro basta, e gli attacchi da
+     * ogni regione con forza verso ogni regione confinante di un altro stato.
+     *
+     * @param s indice dello stato
+     * @param mosse buffer di uscita (abbastanza grande: numRegioni + numero di adiacenze + 2)
+     * @return numero di mosse scritte
+     */
+    public int generaMosse(int s, int[] mosse) {
+        int n = 0;
+        mosse[n++] = PASSA;
+        int esposta = -1;
+        int minimo = Integer.MAX_VALUE;
+        for (int r = 0; r < numRegioni; r++) {
+            if (proprietario[r] != s) {
+                continue;
+            }
+            boolean confine = false;
+            for (int i = inizioAdiacenti[r]; i < inizioAdiacenti[r + 1]; i++) {
+                int v = adiacenti[i];
+                if (proprietario[v] != s) {
+                    confine = true;
+                    if (forza[r] > 1) {
+                        mosse[n++] = attacco(r, v);
+                    }
+                }
+            }
+            if (confine && forza[r] < minimo) {
+                minimo = forza[r];
+                esposta = r;
+            }
+        }
+        if (esposta >= 0 && tesoro[s] >= MONETE_PER_FORZA) {
+            mosse[n++] = arruolamento(esposta);
+        }
+        return n;
+    }
+
+    /**
+     * Capacità minima del buffer per generaMosse.
+     *
+     * @return numero massimo di mosse di uno stato
+     */
+    public int getMaxMosse() {
+        return adiacenti.length + 2;
+    }
+
+    /**
+     * Sceglie una mossa per le simulazioni veloci: un attacco favorevole se
+     * ce n'è uno (scelto a caso tra i favorevoli), altrimenti un
+     * arruolamento, altrimenti PASSA. Non alloca.
+     *
+     * @param s indice dello stato
+     * @param casuale flusso casuale
+     * @param mosse buffer di lavoro
+     * @return mossa scelta
+     */
+    public int mossaEuristica(int s, GeneratoreCasuale casuale, int[] mosse) {
+        int n = generaMosse(s, mosse);
+        int favorevoli = 0;
+        int arruola = PASSA;
+        for (int i = 1; i < n; i++) {
+            int m = mosse[i];
+            if (!isAttacco(m)) {
+                arruola = m;
+            } else if (forzaAttacco(getOrigine(m)) > forzaDifesa(getDestinazione(m))) {
+                mosse[favorevoli++] = m;
+            }
+        }
+        if (favorevoli > 0) {
+            return mosse[casuale.prossimoInt(favorevoli)];
+        }
+        return arruola;
+    }
+
+    /**
+     * Applica la mossa di uno stato. Le mosse non più valide (regione persa
+     * nel frattempo) vengono ignorate.
+     *
+     * @param s indice dello stato
+     * @param mossa mossa da applicare
+     * @param casuale flusso casuale per l'esito delle battaglie
+     */
+    public void applica(int s, int mossa, GeneratoreCasuale casuale) {
+        if (mossa == PASSA) {
+            return;
+        }
+        int da = getOrigine(mossa);
+        int a = getDestinazione(mossa);
+        if (proprietario[da] != s) {
+            return;
+        }
+        if (da == a) {
+            int reclute = (int) Math.min(Integer.MAX_VALUE / 4 - forza[a], tesoro[s] / MONETE_PER_FORZA);
+            forza[a] += reclute;
+            tesoro[s] -= (long) reclute * MONETE_PER_FORZA;
+            return;
+        }
+        if (proprietario[a] == s || forza[da] <= 1) {
+            return;
+        }
+        int attaccanti = forzaAttacco(da);
+        forza[da] -= attaccanti;
+        // Fattori casuali in [0.8, 1.2) come nelle battaglie vere
+        long potenzaAtt = (long) attaccanti * (80 + casuale.prossimoInt(40));
+        long potenzaDif = (long) forzaDifesa(a) * (80 + casuale.prossimoInt(40));
+        if (potenzaAtt > potenzaDif) {
+            int vecchio = proprietario[a];
+            if (vecchio >= 0) {
+                regioniStato[vecchio]--;
+            }
+            regioniStato[s]++;
+            proprietario[a] = s;
+            forza[a] = (int) Math.max(1, attaccanti * (potenzaAtt - potenzaDif) / potenzaAtt);
+        } else {
+            forza[a] = (int) Math.max(1, forza[a] * (potenzaDif - potenzaAtt) / potenzaDif);
+        }
+    }
+
+    /**
+     * Chiude il turno: ogni stato incassa il reddito delle proprie regioni.
+     */
+    public void avanzaTurno() {
+        for (int r = 0; r < numRegioni; r++) {
+            int s = proprietario[r];
+            if (s >= 0) {
+                tesoro[s] += reddito[r];
+            }
+        }
+        turno++;
+    }
+
+    /**
+     * Forza che una regione manda all'attacco (il resto resta di presidio).
+     */
+    private int forzaAttacco(int r) {
+        return forza[r] - forza[r] / 4;
+    }
+
+    /**
+     * Forza della difesa moltiplicata per il livello di difesa della regione.
+     */
+    private int forzaDifesa(int r) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) forza[r] * (10 + difesa[r]) / 10);
+    }
+
+    /* =========================== VALUTAZIONE =========================== */
+
+    /**
+     * Valuta la posizione di uno stato: quota del reddito e della forza del
+     * mondo che controlla, in [0, 1].
+     *
+     * @param s indice dello stato
+     * @return valore della posizione
+     */
+    public double valuta(int s) {
+        long redditoProprio = 0, redditoTotale = 0, forzaPropria = 0, forzaTotale = 0;
+        for (int r = 0; r < numRegioni; r++) {
+            redditoTotale += reddito[r];
+            forzaTotale += forza[r];
+            if (proprietario[r] == s) {
+                redditoProprio += reddito[r];
+                forzaPropria += forza[r];
+            }
+        }
+        double quotaReddito = redditoTotale > 0 ? (double) redditoProprio / redditoTotale : 0;
+        double quotaForza = forzaTotale > 0 ? (double) forzaPropria / forzaTotale : 0;
+        return 0.7 * quotaReddito + 0.3 * quotaForza;
+    }
+
+    /**
+     * Indica se uno stato possiede ancora almeno una regione.
+     *
+     * @param s indice dello stato
+     * @return true se lo stato è in gioco
+     */
+    public boolean isInGioco(int s) {
+        return s >= 0 && s < numStati && regioniStato[s] > 0;
+    }
+
+    /* =========================== GETTER =========================== */
+
+    public int getNumRegioni() {
+        return numRegioni;
+    }
+
+    public int getNumStati() {
+        return numStati;
+    }
+
+    public int getTurno() {
+        return turno;
+    }
+
+    public int getProprietario(int r) {
+        return proprietario[r];
+    }
+
+    public int getForza(int r) {
+        return forza[r];
+    }
+
+    public int getReddito(int r) {
+        return reddito[r];
+    }
+
+    public int getDifesa(int r) {
+        return difesa[r];
+    }
+
+    public long getTesoro(int s) {
+        return tesoro[s];
+    }
+
+    public int getRegioniStato(int s) {
+        return regioniStato[s];
+    }
+
+    /**
+     * Cella del capoluogo di una regione, per tradurre le mosse in ordini sulla mappa.
+     *
+     * @param r indice della regione
+     * @return indice di cella, oppure -1
+     */
+    public int getCellaRegione(int r) {
+        return cellaRegione[r];
+    }
+}
@@ -1,6 +1,5 @@
 package battle_cioba;
 
-import java.awt.Point;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -52,6 +51,21 @@ public abstract class Territorio {
      */
     protected String regione;
 
+    /**
+     * Oggetto Regione a cui appartiene il territorio (impostato dalla Regione).
+     */
+    private Regione regioneObj;
+
+    /**
+     * Indice piatto della cella nella mappa (riga * colonne + colonna), -1 se fuori mappa.
+     */
+    private int indiceCella = -1;
+
+    /**
+     * Posizione del territorio nella lista della sua regione (-1 se nessuna).
+     */
+    private int posizioneInRegione = -1;
+
     /**
      * Numero di basi militari presenti nel territorio.
      */
@@ -67,6 +81,11 @@ public abstract class Territorio {
      */
     protected Centro centro;
 
+    /**
+     * Osservatore notificato quando cambiano i dati del territorio (impostato dal Mondo).
+     */
+    private OsservatoreMondo osservatore;
+
     /**
      * Costruttore astratto. Le sottoclassi dovranno chiamare super(...) per istanziare correttamente il Territorio.
      *
@@ -113,6 +132,7 @@ public abstract class Territorio {
 
     public void setStatoPadrone(String statoPadrone) {
         this.statoPadrone = statoPadrone;
+        notificaModifica();
     }
 
     public boolean isAcqua() {
@@ -121,6 +141,7 @@ public abstract class Territorio {
 
     public void setAcqua(boolean acqua) {
         this.acqua = acqua;
+        notificaModifica();
     }
 
     /**
@@ -139,6 +160,7 @@ public abstract class Territorio {
     public void addRisorsa(String risorsa) {
         if (risorsa != null && !risorse.contains(risorsa)) {
             risorse.add(risorsa);
+            notificaModifica();
         }
     }
 
@@ -148,7 +170,9 @@ public abstract class Territorio {
      * @param risorsa risorsa da rimuovere
      */
     public void removeRisorsa(String risorsa) {
-        risorse.remove(risorsa);
+        if (risorse.remove(risorsa)) {
+            notificaModifica();
+        }
     }
 
     public long getNumCivili() {
@@ -157,6 +181,7 @@ public abstract class Territorio {
 
     public void setNumCivili(long numCivili) {
         this.numCivili = numCivili;
+        notificaModifica();
     }
 
     public String getRegione() {
@@ -167,12 +192,37 @@ public abstract class Territorio {
         this.regione = regione;
     }
 
+    public Regione getRegioneObj() {
+        return regioneObj;
+    }
+
+    void setRegioneObj(Regione regioneObj) {
+        this.regioneObj = regioneObj;
+    }
+
+    public int getIndiceCella() {
+        return indiceCella;
+    }
+
+    void setIndiceCella(int indiceCella) {
+        this.indiceCella = indiceCella;
+    }
+
+    int getPosizioneInRegione() {
+        return posizioneInRegione;
+    }
+
+    void setPosizioneInRegione(int posizioneInRegione) {
+        this.posizioneInRegione = posizioneInRegione;
+    }
+
     public int getCountBasiMilitari() {
         return countBasiMilitari;
     }
 
     public void setCountBasiMilitari(int countBasiMilitari) {
         this.countBasiMilitari = countBasiMilitari;
+        notificaModifica();
     }
 
     public boolean isCapitale() {
@@ -198,7 +248,11 @@ public abstract class Territorio {
      * @param centro oggetto Centro da impostare
      */
     public void setCentro(Centro centro) {
+        Centro vecchio = this.centro;
         this.centro = centro;
+        if (osservatore != null && vecchio != centro) {
+            osservatore.centroImpostato(this, vecchio, centro);
+        }
     }
 
     /**
@@ -208,14 +262,41 @@ public abstract class Territorio {
      * 
      * @return null, perché la posizione è gestita da Mondo.java
      */
-    public Point getPosizione() {
+    public Posizione getPosizione() {
         // Il metodo trovaCoordinateTerritorio in Mondo.java si occupa 
         // di cercare la posizione effettiva nella matrice mappaTerritori
         return null;
     }
 
+    OsservatoreMondo getOsservatore() {
+        return osservatore;
+    }
+
+    void setOsservatore(OsservatoreMondo osservatore) {
+        this.osservatore = osservatore;
+    }
+
+    /**
+     * Notifica all'osservatore che un dato del territorio è cambiato.
+     */
+    protected void notificaModifica() {
+        if (osservatore != null) {
+            osservatore.territorioModificato(this);
+        }
+    }
+
     /* =========================== METODI UTILI =========================== */
 
+    /**
+     * Calcola la rendita giornaliera del territorio, indipendente dal centro.
+     * Dipende dai civili e dal numero di risorse presenti.
+     *
+     * @return rendita giornaliera
+     */
+    public int calcolaRendita() {
+        return (int) (numCivili / 1000) + risorse.size() * 5;
+    }
+
     /**
      * Incrementa il numero di basi militari di una certa quantità.
      *
@@ -226,6 +307,7 @@ public abstract class Territorio {
         if (this.countBasiMilitari < 0) {
             this.countBasiMilitari = 0; // Evita valori negativi
         }
+        notificaModifica();
     }
 
     /**
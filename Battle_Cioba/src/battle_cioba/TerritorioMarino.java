@@ -52,6 +52,7 @@ public class TerritorioMarino extends Territorio {
      */
     public void setProfonditaMedia(int profonditaMedia) {
         this.profonditaMedia = Math.max(1, profonditaMedia);
+        notificaModifica();
     }
     
     @Override
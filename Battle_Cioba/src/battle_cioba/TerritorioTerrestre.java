@@ -52,6 +52,7 @@ public class TerritorioTerrestre extends Territorio {
      */
     public void setFertilitaTerreno(int fertilitaTerreno) {
         this.fertilitaTerreno = Math.max(0, Math.min(100, fertilitaTerreno));
+        notificaModifica();
     }
     
     @Override
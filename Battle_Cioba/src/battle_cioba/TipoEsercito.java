@@ -0,0 +1,90 @@
+package battle_cioba;
+
+/**
+ * Tipologie di esercito reclutabili dalle basi militari.
+ * Ogni tipologia ha una velocità (celle per giorno), un bonus di armamento
+ * rispetto alla base che la recluta e una classe di movimento, che decide
+ * su quali celle può muoversi e quanto le costano.
+ */
+public enum TipoEsercito {
+    FANTERIA("Fanteria", 1, 0, ClasseMovimento.TERRESTRE),
+    CAVALLERIA("Cavalleria", 2, 1, ClasseMovimento.TERRESTRE),
+    ARTIGLIERIA("Artiglieria", 1, 3, ClasseMovimento.TERRESTRE),
+    FANTERIA_DI_MARINA("Fanteria di marina", 1, 1, ClasseMovimento.ANFIBIO),
+    FLOTTA("Flotta", 3, 2, ClasseMovimento.NAVALE),
+    AVIAZIONE("Aviazione", 4, 4, ClasseMovimento.AEREO);
+
+    /**
+     * Tipologie indicizzate per ordinale (evita di ricreare l'array di values()).
+     */
+    private static final TipoEsercito[] VALORI = values();
+
+    private final String nome;
+    private final int velocita;
+    private final int bonusArmamento;
+    private final ClasseMovimento classeMovimento;
+
+    TipoEsercito(String nome, int velocita, int bonusArmamento, ClasseMovimento classeMovimento) {
+        this.nome = nome;
+        this.velocita = velocita;
+        this.bonusArmamento = bonusArmamento;
+        this.classeMovimento = classeMovimento;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public int getVelocita() {
+        return velocita;
+    }
+
+    public int getBonusArmamento() {
+        return bonusArmamento;
+    }
+
+    public ClasseMovimento getClasseMovimento() {
+        return classeMovimento;
+    }
+
+    /**
+     * Indica se la tipologia può entrare in una cella.
+     *
+     * @param acqua true se la cella è marina
+     * @return true se la cella è percorribile
+     */
+    public boolean puoEntrare(boolean acqua) {
+        return classeMovimento.costoCella(acqua, ClasseMovimento.PROFONDITA_MEDIA, -1, -1)
+                != CostoMovimento.IMPRATICABILE;
+    }
+
+    /**
+     * Indica se una base di un certo tipo può reclutare questa tipologia.
+     *
+     * @param tipoBase tipo della base
+     * @return true se la base può reclutarla
+     */
+    public boolean reclutabileDa(BaseMilitare.TipoBase tipoBase) {
+        switch (tipoBase) {
+            case NAVALE:
+                return this == FLOTTA || this == FANTERIA_DI_MARINA;
+            case AEREA:
+                return this == AVIAZIONE;
+            case INTEGRATA:
+                return true;
+            case TERRESTRE:
+            default:
+                return classeMovimento == ClasseMovimento.TERRESTRE;
+        }
+    }
+
+    /**
+     * Restituisce la tipologia dato il suo ordinale.
+     *
+     * @param ordinale ordinale della tipologia
+     * @return tipologia corrispondente
+     */
+    public static TipoEsercito daOrdinale(int ordinale) {
+        return VALORI[ordinale];
+    }
+}
@@ -0,0 +1,393 @@
+package battle_cioba;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Nebbia di guerra: le celle che ogni stato vede.
+ * Vedono un rombo di celle (distanza di Manhattan) intorno a sé:
+ * <ul>
+ * <li>i territori dello stato, fino a RAGGIO_TERRITORIO;</li>
+ * <li>i centri, fino al loro raggioInfluenza();</li>
+ * <li>le unità, fino a un raggio che dipende dalla classe di movimento.</li>
+ * </ul>
+ * Per ogni stato si tiene un insieme di bit sulla griglia, così "la cella
+ * è visibile allo stato s" è un solo test di bit, e accanto un contatore
+ * per cella delle sorgenti che la vedono. Quando una sorgente nasce, si
+ * sposta o scompare si aggiornano solo i contatori del suo rombo: un bit
+ * cambia quando il contatore passa da zero a uno o torna a zero, senza
+ * ricalcolare le altre sorgenti.
+ * <p>
+ * Territori e centri si aggiornano con le notifiche del mondo; le unità
+ * una volta al giorno, confrontando la loro cella con l'ultima vista.
+ */
+public class Visibilita implements FaseSimulazione, OsservatoreMondo {
+
+    /**
+     * Raggio di vista di un territorio: la cella stessa e quelle che la toccano.
+     */
+    public static final int RAGGIO_TERRITORIO = 1;
+
+    /**
+     * Raggio di vista delle unità terrestri e anfibie.
+     */
+    public static final int RAGGIO_UNITA_TERRESTRE = 2;
+
+    /**
+     * Raggio di vista delle flotte.
+     */
+    public static final int RAGGIO_UNITA_NAVALE = 3;
+
+    /**
+     * Raggio di vista dell'aviazione.
+     */
+    public static final int RAGGIO_UNITA_AEREA = 4;
+
+    /**
+     * Archivio degli eserciti (può essere null: solo territori e centri).
+     */
+    private final Eserciti eserciti;
+
+    /**
+     * Mondo di riferimento.
+     */
+    private Mondo mondo;
+
+    private int righe, colonne, numCelle;
+
+    /**
+     * Celle visibili, un insieme di bit per stato (null se lo stato non vede nulla).
+     */
+    private long[][] visibile = new long[0][];
+
+    /**
+     * Sorgenti che vedono ogni cella, per stato (null come sopra).
+     */
+    private char[][] sorgenti = new char[0][];
+
+    /**
+     * Versione dei bit di ogni stato: cresce a ogni bit cambiato, così chi
+     * ne tiene una copia sa se deve rifarla.
+     */
+    private int[] versione = new int[0];
+
+    /**
+     * Stato che vede dalla cella come territorio (-1 nessuno o acqua).
+     */
+    private int[] proprietario = new int[0];
+
+    /**
+     * Stato e raggio del centro di ogni cella, come sono stati registrati (-1 nessun centro).
+     */
+    private int[] statoCentro = new int[0], raggioCentro = new int[0];
+
+    /**
+     * Stato, cella e raggio di ogni unità all'ultimo controllo (cella -1 = nessuna vista).
+     */
+    private int[] statoUnita = new int[0], cellaUnita = new int[0], raggioUnita = new int[0];
+
+    /**
+     * Statistiche.
+     */
+    private long rombiAggiornati, rombiGiorno, unitaSpostate;
+
+    /**
+     * Costruttore principale.
+     *
+     * @param eserciti archivio degli eserciti (può essere null)
+     */
+    public Visibilita(Eserciti eserciti) {
+        this.eserciti = eserciti;
+    }
+
+    /**
+     * Registra tutte le sorgenti di vista del mondo.
+     *
+     * @param mondo mondo di gioco
+     */
+    public void inizializza(Mondo mondo) {
+        this.mondo = mondo;
+        righe = mondo.getRighe();
+        colonne = mondo.getColonne();
+        numCelle = righe * colonne;
+        int numStati = mondo.getCapacitaStati();
+        visibile = new long[numStati][];
+        sorgenti = new char[numStati][];
+        versione = new int[numStati];
+        proprietario = new int[numCelle];
+        statoCentro = new int[numCelle];
+        raggioCentro = new int[numCelle];
+        Arrays.fill(proprietario, -1);
+        Arrays.fill(statoCentro, -1);
+        Arrays.fill(raggioCentro, -1);
+        statoUnita = new int[0];
+        cellaUnita = new int[0];
+        raggioUnita = new int[0];
+        for (int c = 0; c < numCelle; c++) {
+            Territorio t = mondo.getTerritorio(c);
+            if (t != null) {
+                aggiornaCella(t, c);
+            }
+        }
+        aggiornaUnita();
+    }
+
+    /* =========================== INTERROGAZIONI =========================== */
+
+    /**
+     * Indica se una cella è visibile a uno stato.
+     *
+     * @param stato indice dello stato
+     * @param cella indice di cella
+     * @return true se almeno una sorgente dello stato vede la cella
+     */
+    public boolean isVisibile(int stato, int cella) {
+        long[][] bit = visibile;
+        if (stato < 0 || stato >= bit.length || bit[stato] == null || cella < 0 || cella >= numCelle) {
+            return false;
+        }
+        return (bit[stato][cella >>> 6] & 1L << cella) != 0;
+    }
+
+    /**
+     * Numero di celle visibili a uno stato.
+     *
+     * @param stato indice dello stato
+     * @return celle visibili
+     */
+    public int getNumVisibili(int stato) {
+        if (stato < 0 || stato >= visibile.length || visibile[stato] == null) {
+            return 0;
+        }
+        int totale = 0;
+        for (long parola : visibile[stato]) {
+            totale += Long.bitCount(parola);
+        }
+        return totale;
+    }
+
+    /**
+     * Versione dei bit di uno stato (cambia a ogni cella che entra o esce dalla vista).
+     *
+     * @param stato indice dello stato
+     * @return versione corrente
+     */
+    public int getVersione(int stato) {
+        return stato >= 0 && stato < versione.length ? versione[stato] : 0;
+    }
+
+    /**
+     * Copia i bit di uno stato in un array di parole.
+     *
+     * @param stato indice dello stato
+     * @param destinazione array di almeno getNumParole() parole
+     */
+    void copiaBit(int stato, long[] destinazione) {
+        long[] bit = stato >= 0 && stato < visibile.length ? visibile[stato] : null;
+        if (bit == null) {
+            Arrays.fill(destinazione, 0, getNumParole(), 0L);
+        } else {
+            System.arraycopy(bit, 0, destinazione, 0, bit.length);
+        }
+    }
+
+    /**
+     * Parole di 64 bit necessarie per una griglia.
+     *
+     * @return numero di parole
+     */
+    int getNumParole() {
+        return (numCelle + 63) >>> 6;
+    }
+
+    /* =========================== SORGENTI DI VISTA =========================== */
+
+    /**
+     * Raggio di vista di un'unità.
+     *
+     * @param tipo tipo dell'unità
+     * @return raggio in celle
+     */
+    public static int raggioUnita(TipoEsercito tipo) {
+        switch (tipo.getClasseMovimento()) {
+            case NAVALE:
+                return RAGGIO_UNITA_NAVALE;
+            case AEREO:
+                return RAGGIO_UNITA_AEREA;
+            default:
+                return RAGGIO_UNITA_TERRESTRE;
+        }
+    }
+
+    /**
+     * Aggiunge (delta 1) o toglie (delta -1) una sorgente che vede un rombo
+     * di celle. Cambiano solo i bit delle celle il cui contatore passa per zero.
+     */
+    private void varia(int s, int cella, int raggio, int delta) {
+        if (s < 0 || cella < 0 || raggio < 0) {
+            return;
+        }
+        if (s >= visibile.length) {
+            int n = Math.max(s + 1, mondo.getCapacitaStati());
+            visibile = Arrays.copyOf(visibile, n);
+            sorgenti = Arrays.copyOf(sorgenti, n);
+            versione = Arrays.copyOf(versione, n);
+        }
+        if (visibile[s] == null) {
+            if (delta < 0) {
+                return;
+            }
+            visibile[s] = new long[getNumParole()];
+            sorgenti[s] = new char[numCelle];
+        }
+        long[] bit = visibile[s];
+        char[] conta = sorgenti[s];
+        boolean cambiato = false;
+        int r0 = cella / colonne, c0 = cella % colonne;
+        for (int r = Math.max(0, r0 - raggio); r <= Math.min(righe - 1, r0 + raggio); r++) {
+            int resto = raggio - Math.abs(r - r0);
+            int v = r * colonne + Math.max(0, c0 - resto);
+            int fine = r * colonne + Math.min(colonne - 1, c0 + resto);
+            for (; v <= fine; v++) {
+                if (delta > 0) {
+                    if (conta[v]++ == 0) {
+                        bit[v >>> 6] |= 1L << v;
+                        cambiato = true;
+                    }
+                } else if (conta[v] > 0 && --conta[v] == 0) {
+                    bit[v >>> 6] &= ~(1L << v);
+                    cambiato = true;
+                }
+            }
+        }
+        if (cambiato) {
+            versione[s]++;
+        }
+        rombiAggiornati++;
+    }
+
+    /**
+     * Confronta proprietario e centro della cella con quelli registrati e
+     * sposta le sorgenti che sono cambiate.
+     */
+    private void aggiornaCella(Territorio t, int c) {
+        int nuovoProprietario = t.isAcqua() ? -1 : mondo.indiceStato(t.getStatoPadrone());
+        if (nuovoProprietario != proprietario[c]) {
+            varia(proprietario[c], c, RAGGIO_TERRITORIO, -1);
+            varia(nuovoProprietario, c, RAGGIO_TERRITORIO, 1);
+            proprietario[c] = nuovoProprietario;
+        }
+        Centro centro = t.getCentro();
+        int nuovoStato = centro != null ? nuovoProprietario : -1;
+        int nuovoRaggio = centro != null ? Math.max(0, centro.raggioInfluenza()) : -1;
+        if (nuovoStato != statoCentro[c] || nuovoRaggio != raggioCentro[c]) {
+            varia(statoCentro[c], c, raggioCentro[c], -1);
+            varia(nuovoStato, c, nuovoRaggio, 1);
+            statoCentro[c] = nuovoStato;
+            raggioCentro[c] = nuovoRaggio;
+        }
+    }
+
+    /**
+     * Sposta la vista delle unità che hanno cambiato cella (o stato o tipo)
+     * dall'ultimo controllo e toglie quella delle unità sciolte.
+     */
+    private void aggiornaUnita() {
+        int limite = eserciti != null ? eserciti.getLimiteIndici() : 0;
+        if (limite > cellaUnita.length) {
+            int vecchio = cellaUnita.length;
+            statoUnita = Arrays.copyOf(statoUnita, limite);
+            cellaUnita = Arrays.copyOf(cellaUnita, limite);
+            raggioUnita = Arrays.copyOf(raggioUnita, limite);
+            Arrays.fill(cellaUnita, vecchio, limite, -1);
+        }
+        for (int u = 0; u < cellaUnita.length; u++) {
+            int stato = -1, cella = -1, raggio = -1;
+            if (u < limite && eserciti.isAttiva(u)) {
+                stato = eserciti.getStato(u);
+                cella = eserciti.getCella(u);
+                raggio = raggioUnita(eserciti.getTipo(u));
+                if (cella >= numCelle) {
+                    cella = -1;
+                }
+            }
+            if (cella == cellaUnita[u] && stato == statoUnita[u] && raggio == raggioUnita[u]) {
+                continue;
+            }
+            if (cellaUnita[u] >= 0) {
+                varia(statoUnita[u], cellaUnita[u], raggioUnita[u], -1);
+            }
+            if (cella >= 0) {
+                varia(stato, cella, raggio, 1);
+            }
+            statoUnita[u] = stato;
+            cellaUnita[u] = cella;
+            raggioUnita[u] = raggio;
+            unitaSpostate++;
+        }
+    }
+
+    /* =========================== FASE DEL GIORNO =========================== */
+
+    @Override
+    public String getNome() {
+        return "Visibilita";
+    }
+
+    @Override
+    public void esegui(Mondo mondo, long giorno) {
+        if (this.mondo != mondo || numCelle != mondo.getRighe() * mondo.getColonne()) {
+            inizializza(mondo);
+        }
+        long prima = rombiAggiornati;
+        unitaSpostate = 0;
+        aggiornaUnita();
+        rombiGiorno = rombiAggiornati - prima;
+    }
+
+    @Override
+    public void riepiloga(Map<String, Long> indicatori) {
+        indicatori.put("unita_vista_aggiornata", unitaSpostate);
+        indicatori.put("rombi_vista_aggiornati", rombiGiorno);
+    }
+
+    /* =========================== OSSERVATORE =========================== */
+
+    @Override
+    public void territorioModificato(Territorio territorio) {
+        aggiorna(territorio);
+    }
+
+    @Override
+    public void centroImpostato(Territorio territorio, Centro vecchio, Centro nuovo) {
+        aggiorna(territorio);
+    }
+
+    @Override
+    public void centroModificato(Centro centro) {
+        // Il raggio di un centro può cambiare con il suo livello
+        Territorio t = centro.getTerritorio();
+        if (t != null && t.getCentro() == centro) {
+            aggiorna(t);
+        }
+    }
+
+    @Override
+    public void territorioTrasferito(Territorio territorio, Stato vecchio, Stato nuovo) {
+        aggiorna(territorio);
+    }
+
+    private void aggiorna(Territorio t) {
+        int c = t.getIndiceCella();
+        if (mondo == null || c < 0 || c >= numCelle) {
+            return;
+        }
+        aggiornaCella(t, c);
+    }
+
+    /* =========================== STATISTICHE =========================== */
+
+    public long getRombiAggiornati() {
+        return rombiAggiornati;
+    }
+}